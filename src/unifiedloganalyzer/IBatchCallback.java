@@ -0,0 +1,37 @@
+package unifiedloganalyzer;
+
+import trskop.ICallback;
+
+
+/**
+ * Callback that can also receive messages in batches.
+ *
+ * It's registered the same way as any other callback, see
+ * IRegisterCallbacks, objects that produce messages in batches then pass
+ * them in one call instead of one call per message. Callbacks that don't
+ * implement this interface are adapted, see
+ * unifiedloganalyzer.adapter.BatchCallbackAdapter.
+ *
+ * @author Peter Trsko
+ *
+ * @param <T>
+ *   Type of messages callback will receive.
+ */
+public interface IBatchCallback<T> extends ICallback<T>
+{
+    /**
+     * Process messages in order.
+     *
+     * Result has to be the same as if runCallback() was called for each
+     * message. Array belongs to the caller and it may be reused after this
+     * call returns, callback can keep messages, but not the array.
+     *
+     * @param messages
+     *   Array with messages, none of them is <code>null</code>.
+     * @param offset
+     *   Index of the first message.
+     * @param length
+     *   Number of messages.
+     */
+    void runBatchCallback(T[] messages, int offset, int length);
+}
@@ -22,6 +22,37 @@ public interface IParser extends IRegisterCallbacks<ParsedData>
      */
     void parse(String message);
 
+    /**
+     * Parses specified message that may be a mutable view of the input.
+     *
+     * Message is valid only during this call, any part of it that parser
+     * keeps has to be copied.
+     *
+     * @param message
+     *   Message to be parsed.
+     *
+     * @see #parse(java.lang.String)
+     * @see unifiedloganalyzer.utils.LineView
+     */
+    void parse(CharSequence message);
+
+    /**
+     * Parses specified messages in order.
+     *
+     * Result has to be the same as if parse() was called for each message.
+     * Messages are valid only during this call.
+     *
+     * @param messages
+     *   Array with messages to be parsed.
+     * @param offset
+     *   Index of the first message to be parsed.
+     * @param length
+     *   Number of messages to be parsed.
+     *
+     * @see #parse(java.lang.CharSequence)
+     */
+    void parseBatch(CharSequence[] messages, int offset, int length);
+
     /**
      * Notify parser that file/stream ended.
      *
@@ -4,6 +4,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.NoSuchElementException;
 
+import unifiedloganalyzer.utils.LineView;
+
 
 /**
  * Interface for objects that provide input data that will be later processed
@@ -37,4 +39,42 @@ public interface ISource extends Closeable
      *   If the lower layer failed due to I/O error.
      */
     String next() throws NoSuchElementException, IOException;
+
+    /**
+     * Fill batch with next messages.
+     *
+     * Batch doesn't have to be filled completely even if there are more
+     * messages available, e.g. when waiting for them would block.
+     *
+     * @param batch
+     *   Array to be filled with messages, starting at index zero.
+     *
+     * @return
+     *   Number of messages stored in batch, zero if there are no more messages
+     *   available.
+     *
+     * @throws IOException
+     *   If the lower layer failed due to I/O error.
+     */
+    int nextBatch(String[] batch) throws IOException;
+
+    /**
+     * Fill batch of line views with next messages.
+     *
+     * Views may point directly in to buffers of this source, therefore they
+     * are valid only until next call to any method of this source. Batch
+     * doesn't have to be filled completely even if there are more messages
+     * available.
+     *
+     * @param batch
+     *   Views to be set to messages, starting at index zero.
+     *
+     * @return
+     *   Number of views that were set, zero if there are no more messages
+     *   available.
+     *
+     * @throws IOException
+     *   If the lower layer failed due to I/O error.
+     */
+    int nextBatch(LineView[] batch) throws IOException;
 }
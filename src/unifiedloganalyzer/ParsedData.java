@@ -2,13 +2,19 @@ package unifiedloganalyzer;
 
 import java.io.IOException;
 
+import unifiedloganalyzer.utils.IRetainable;
+
 
 /**
  * Top-level wrapper for parsed data.
  *
+ * Parser in pooled mode reuses the same wrapper for subsequent messages, see
+ * pooled() and IRetainable.
+ *
  * @author Peter Trsko
  */
-public class ParsedData implements IParsedData, IOutputMessage
+public class ParsedData
+    implements IParsedData, IOutputMessage, IRetainable<ParsedData>
 {
     /**
      * Type of encapsulated data.
@@ -22,6 +28,7 @@ public class ParsedData implements IParsedData, IOutputMessage
 
     private Type _dataType;
     private IParsedData _data;
+    private boolean _isPooled = false;
 
     // {{{ Constructors ///////////////////////////////////////////////////////
 
@@ -89,6 +96,22 @@ public class ParsedData implements IParsedData, IOutputMessage
         return new ParsedData(Type.PARSE_ERROR, data);
     }
 
+    /**
+     * Create wrapper that its owner reuses for subsequent messages by
+     * calling reset().
+     *
+     * @return
+     *   Empty ParsedData instance that can be reset.
+     */
+    public static ParsedData pooled()
+    {
+        ParsedData ret = emptyMessage();
+
+        ret._isPooled = true;
+
+        return ret;
+    }
+
     // }}} Constructors ///////////////////////////////////////////////////////
 
     // {{{ Getters and setters ////////////////////////////////////////////////
@@ -125,8 +148,58 @@ public class ParsedData implements IParsedData, IOutputMessage
         return _data.getOriginalMessage();
     }
 
+    /**
+     * Replace content of wrapper created by pooled().
+     *
+     * @param dataType
+     *   Type of message, see ParsedData(Type, IParsedData).
+     * @param parsedData
+     *   Data of the message.
+     *
+     * @return
+     *   This wrapper.
+     */
+    public ParsedData reset(Type dataType, IParsedData parsedData)
+    {
+        if (!_isPooled)
+        {
+            throw new IllegalStateException("Not pooled.");
+        }
+
+        if (dataType != Type.EMPTY_MESSAGE && parsedData == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _dataType = dataType;
+        _data = parsedData;
+
+        return this;
+    }
+
     // }}} Getters and setters ////////////////////////////////////////////////
 
+    /**
+     * {@inheritDoc}
+     *
+     * Encapsulated data are retained as well, if they implement
+     * IRetainable.
+     */
+    @Override
+    public ParsedData retain()
+    {
+        IParsedData data = _data instanceof IRetainable
+            ? (IParsedData)((IRetainable<?>)_data).retain()
+            : _data;
+
+        if (!_isPooled && data == _data)
+        {
+            return this;
+        }
+
+        return new ParsedData(_dataType, data);
+    }
+
     /**
      * {@inheritDoc}
      */
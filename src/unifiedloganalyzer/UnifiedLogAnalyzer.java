@@ -1,26 +1,59 @@
 package unifiedloganalyzer;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import unifiedloganalyzer.adapter.AnalyzerCallback;
 import unifiedloganalyzer.adapter.SinkCallback;
 import unifiedloganalyzer.analyze.AnalysisChain;
+import unifiedloganalyzer.analyze.AnalyzerGraph;
 import unifiedloganalyzer.analyze.DummyAnalyzer;
+import unifiedloganalyzer.analyze.ParseErrorAggregator;
 import unifiedloganalyzer.analyze.path.MagicPathAnalyzer;
+import unifiedloganalyzer.analyze.path.strace.ShardedStracePathAnalyzer;
 import unifiedloganalyzer.analyze.path.strace.StracePathAnalyzer;
+import unifiedloganalyzer.io.Checkpoint;
 import unifiedloganalyzer.io.FileSource;
 import unifiedloganalyzer.io.FileSink;
+import unifiedloganalyzer.io.FollowingFileSource;
+import unifiedloganalyzer.io.IndexedFileSource;
+import unifiedloganalyzer.io.LineIndex;
+import unifiedloganalyzer.io.MappedFileSource;
+import unifiedloganalyzer.io.PrefetchingSource;
+import unifiedloganalyzer.io.StdinSource;
 import unifiedloganalyzer.io.StdoutSink;
+import unifiedloganalyzer.io.StraceFfSource;
+import unifiedloganalyzer.io.TarSource;
 import unifiedloganalyzer.parse.DummyParser;
+import unifiedloganalyzer.parse.IPooledDataConsumer;
+import unifiedloganalyzer.parse.strace.IStraceSyscallPublisher;
+import unifiedloganalyzer.parse.strace.IStraceSyscallSubscriber;
+import unifiedloganalyzer.parse.strace.ParallelStraceParser;
 import unifiedloganalyzer.parse.strace.StraceParser;
+import unifiedloganalyzer.pipeline.ArchiveAnalysis;
+import unifiedloganalyzer.pipeline.BatchAnalysis;
+import unifiedloganalyzer.pipeline.Pipeline;
 
 import unifiedloganalyzer.main.AnalysisAlgorithm;
 import unifiedloganalyzer.main.Configuration;
 import unifiedloganalyzer.main.InputFormat;
 import unifiedloganalyzer.main.ParseOptions;
+import unifiedloganalyzer.utils.ICheckpointable;
+import unifiedloganalyzer.utils.IFactory;
+import unifiedloganalyzer.utils.LineView;
+import unifiedloganalyzer.utils.VirtualThreads;
 
 
 /**
@@ -32,9 +65,19 @@ public class UnifiedLogAnalyzer
 {
     // {{{ Core algorithm /////////////////////////////////////////////////////
 
+    /**
+     * Number of messages that are read from source and passed to parser at
+     * once.
+     */
+    public static final int BATCH_SIZE = 1024;
+
     /**
      * Core algorithm without the plumbing that was left in main.
      *
+     * Messages are processed in batches of BATCH_SIZE, which amortizes
+     * per-message dispatch through interfaces and gives JIT tight loops to
+     * optimize.
+     *
      * @param source
      *   Object used as source of messages.
      * @param parser
@@ -54,14 +97,242 @@ public class UnifiedLogAnalyzer
         IAnalyzer analyzer,
         ISink sink) throws IOException
     {
+        doMain(source, parser, analyzer, sink, false);
+    }
+
+    /**
+     * Same as doMain(source, parser, analyzer, sink), but when incremental
+     * is <code>true</code> sink is flushed whenever source has no more
+     * messages immediately available, i.e. when it returns a batch that
+     * isn't full. Results are therefore visible while input is still being
+     * produced.
+     */
+    public static void doMain(
+        ISource source,
+        IParser parser,
+        IAnalyzer analyzer,
+        ISink sink,
+        boolean incremental) throws IOException
+    {
+        connect(parser, analyzer);
+        analyzer.registerCallback(new SinkCallback(sink));
+
+        LineView[] batch = new LineView[BATCH_SIZE];
+        int length;
+
+        for (int i = 0; i < batch.length; i++)
+        {
+            batch[i] = new LineView();
+        }
+
+        while ((length = source.nextBatch(batch)) > 0)
+        {
+            parser.parseBatch(batch, 0, length);
+
+            if (incremental && length < batch.length)
+            {
+                flush(analyzer);
+                sink.flush();
+            }
+        }
+        parser.eof();
+        sink.close();
+    }
+
+    /**
+     * Variant of doMain() that runs source, parser, analyzer and sink
+     * concurrently, each on its own thread, see Pipeline. Results are the
+     * same, statistics of the stages are logged at the end.
+     *
+     * @param capacity
+     *   Number of batches that each buffer between two stages holds.
+     */
+    public static void doPipeline(
+        ISource source,
+        IParser parser,
+        IAnalyzer analyzer,
+        ISink sink,
+        boolean incremental,
+        int capacity) throws IOException
+    {
+        // Parsed data are handed over to another thread, therefore they are
+        // never pooled.
+        subscribe(parser, analyzer);
+
+        Pipeline pipeline = new Pipeline(source, parser, analyzer, sink,
+            incremental, capacity, BATCH_SIZE);
+
+        pipeline.run();
+
+        Logger.getLogger(Pipeline.class.getName()).info(
+            pipeline.getStatistics());
+    }
+
+    /**
+     * Tell strace parser which syscalls the analyzer consumes, if it
+     * declares them, so that it doesn't parse the rest.
+     */
+    private static void subscribe(IParser parser, IAnalyzer analyzer)
+    {
+        if (parser instanceof IStraceSyscallPublisher
+            && analyzer instanceof IStraceSyscallSubscriber)
+        {
+            ((IStraceSyscallPublisher)parser).setSubscribedSyscalls(
+                ((IStraceSyscallSubscriber)analyzer).getSubscribedSyscalls());
+        }
+    }
+
+    /**
+     * Make parser pass parsed data to analyzer.
+     *
+     * StraceParser is told which syscalls the analyzer consumes, see
+     * subscribe(), and it reuses parsed data if analyzer allows it, see
+     * IPooledDataConsumer.
+     */
+    public static void connect(IParser parser, IAnalyzer analyzer)
+    {
+        subscribe(parser, analyzer);
+
+        if (parser instanceof StraceParser
+            && analyzer instanceof IPooledDataConsumer)
+        {
+            ((StraceParser)parser).setPooled(
+                ((IPooledDataConsumer)analyzer).acceptsPooledData());
+        }
+
         parser.registerCallback(new AnalyzerCallback(analyzer));
+    }
+
+    private static Serializable saveState(Object component)
+    {
+        return component instanceof ICheckpointable
+            ? ((ICheckpointable)component).saveState()
+            : null;
+    }
+
+    private static void restoreState(Object component, Serializable state)
+    {
+        if (component instanceof ICheckpointable)
+        {
+            ((ICheckpointable)component).restoreState(state);
+        }
+    }
+
+    /**
+     * Analyzers that run asynchronously, e.g. AnalyzerGraph, deliver
+     * results of everything analyzed so far, so that they can be flushed to
+     * sink.
+     */
+    private static void flush(Object component) throws IOException
+    {
+        if (component instanceof Flushable)
+        {
+            ((Flushable)component).flush();
+        }
+    }
+
+    /**
+     * Variant of doMain() for uncompressed files read by IndexedFileSource,
+     * which can store checkpoints of the analysis.
+     *
+     * Checkpoint is stored after at least <code>checkpointInterval</code>
+     * lines were processed since the last one, it's always done at the end
+     * of a batch. Output written so far is flushed first. Message that sink
+     * is still counting, see FileSink, is stored in the checkpoint instead,
+     * so that repeated messages are counted the same way as if there was no
+     * checkpoint, other sinks are flushed completely. Checkpoint is removed
+     * when the analysis finishes. Line index of the input is stored when the
+     * analysis finishes, if it was extended.
+     *
+     * @param source
+     *   Source of messages, already positioned where analysis starts.
+     * @param parser
+     *   Object implementing parsing algorithm of source messages, its state
+     *   has to match position of source.
+     * @param analyzer
+     *   Object implementing analysis algorithm, its state has to match
+     *   position of source.
+     * @param sink
+     *   Object used as sink for the analysis result(s).
+     * @param checkpointInterval
+     *   Number of lines between checkpoints, zero disables them.
+     * @param saveIndex
+     *   Store line index in to its sidecar file, see LineIndex.
+     *
+     * @throws IOException
+     *   If any source, parser, analyzer or writer method encounters I/O
+     *   exception, or if checkpoint can't be stored.
+     */
+    public static void doMainIndexed(
+        IndexedFileSource source,
+        IParser parser,
+        IAnalyzer analyzer,
+        ISink sink,
+        long checkpointInterval,
+        boolean saveIndex) throws IOException
+    {
+        connect(parser, analyzer);
         analyzer.registerCallback(new SinkCallback(sink));
 
-        while (source.hasNext()) {
-            parser.parse(source.next());
+        LineView[] batch = new LineView[BATCH_SIZE];
+        int length;
+        long nextCheckpoint = checkpointInterval > 0
+            ? source.getLineNumber() + checkpointInterval
+            : Long.MAX_VALUE;
+
+        for (int i = 0; i < batch.length; i++)
+        {
+            batch[i] = new LineView();
+        }
+
+        while ((length = source.nextBatch(batch)) > 0)
+        {
+            parser.parseBatch(batch, 0, length);
+
+            if (source.getLineNumber() >= nextCheckpoint)
+            {
+                // Parser may deliver pending results when its state is
+                // taken, e.g. ParallelStraceParser, and analyzer as well,
+                // therefore sink state and output length are taken last.
+                Serializable parserState = saveState(parser);
+
+                flush(analyzer);
+
+                Serializable analyzerState = saveState(analyzer);
+                Serializable sinkState = saveState(sink);
+
+                if (sinkState == null)
+                {
+                    sink.flush();
+                }
+
+                new Checkpoint(source.getFile(),
+                    source.getLineNumber(),
+                    source.getOffset(),
+                    sink instanceof FileSink
+                        ? ((FileSink)sink).getLength()
+                        : -1,
+                    source.getIndex(),
+                    parserState,
+                    analyzerState,
+                    sinkState).save(source.getFile());
+
+                nextCheckpoint = source.getLineNumber() + checkpointInterval;
+            }
         }
         parser.eof();
         sink.close();
+        source.close();
+
+        if (saveIndex && source.isIndexExtended())
+        {
+            source.getIndex().save(source.getFile());
+        }
+
+        if (checkpointInterval > 0)
+        {
+            Checkpoint.delete(source.getFile());
+        }
     }
 
     // }}} Core algorithm /////////////////////////////////////////////////////
@@ -72,36 +343,223 @@ public class UnifiedLogAnalyzer
      * Detect files ending with <code>.tar.gz</code>, <code>.tgz</code> and
      * <code>.gz</code>.
      */
-    private static final String _IS_GZIPPED_REGEX = "^.*\\.(t(ar\\.)?)?gz$";
+    public static final String IS_GZIPPED_REGEX = "^.*\\.(t(ar\\.)?)?gz$";
+
+    /**
+     * Detect files ending with <code>.tar</code>, <code>.tar.gz</code> and
+     * <code>.tgz</code>.
+     */
+    public static final String IS_TAR_REGEX = "^.*\\.(tar|tar\\.gz|tgz)$";
 
     /**
      * Select appropriate ISource implementation.
+     */
+    private static ISource sourceFactory(Configuration config)
+        throws FileNotFoundException, IOException
+    {
+        ISource source;
+
+        // Directory of strace -ff would be silently followed as one file.
+        if (config.followInput && config.inputFormat == InputFormat.STRACE_FF)
+        {
+            ParseOptions.usageError(config.inputFormat.toArgument(),
+                "Input format can not be followed.");
+        }
+
+        if (config.followInput && config.inputFile != null)
+        {
+            if (config.inputFile.matches(IS_GZIPPED_REGEX)
+                || config.inputFile.matches(IS_TAR_REGEX))
+            {
+                ParseOptions.usageError(config.inputFile,
+                    "Compressed input file can not be followed.");
+            }
+
+            // Standard input is never read past its end, so it's followed
+            // by StdinSource already.
+            source = new FollowingFileSource(config.inputFile);
+        }
+        else if (config.inputFormat == InputFormat.STRACE_FF)
+        {
+            if (config.inputFile == null)
+            {
+                ParseOptions.usageError(config.inputFormat.toArgument(),
+                    "Input format can not be read from standard input.");
+            }
+
+            source = new StraceFfSource(config.inputFile);
+        }
+        else if (config.inputFile != null
+            && config.inputFile.matches(IS_TAR_REGEX))
+        {
+            // Entries are processed separately, and ArchiveAnalysis always
+            // reads them ahead of their analysis.
+            if (config.prefetchInput)
+            {
+                ParseOptions.usageError("--prefetch",
+                    "Archive entries are always read ahead.");
+            }
+
+            if (config.memoryMappedInput || config.pipelineCapacity > 0
+                || config.parseThreads > 1 || config.analysisShards > 1)
+            {
+                ParseOptions.usageError(config.inputFile,
+                    "Entries of archive are analysed concurrently, can not be"
+                    + " combined with --mmap, --pipeline, --parse-threads and"
+                    + " --shards.");
+            }
+
+            return new TarSource(config.inputFile,
+                config.inputFile.matches(IS_GZIPPED_REGEX));
+        }
+        else
+        {
+            source = sourceFactory(config.inputFile,
+                config.memoryMappedInput);
+        }
+
+        if (config.prefetchInput)
+        {
+            source = new PrefetchingSource(source);
+        }
+
+        return source;
+    }
+
+    /**
+     * Check if configuration requires IndexedFileSource and doMainIndexed().
+     */
+    private static boolean isIndexed(Configuration config)
+    {
+        return config.indexInput
+            || config.checkpointInterval > 0
+            || config.resumeFromCheckpoint
+            || config.firstLine > 0;
+    }
+
+    /**
+     * Option that made isIndexed() true, used in error messages.
+     */
+    private static String indexedOption(Configuration config)
+    {
+        if (config.indexInput)
+        {
+            return "--index";
+        }
+        else if (config.checkpointInterval > 0)
+        {
+            return "--checkpoint-every";
+        }
+        else if (config.resumeFromCheckpoint)
+        {
+            return "--resume";
+        }
+
+        return "--lines";
+    }
+
+    /**
+     * Create IndexedFileSource positioned according to configuration, or
+     * according to checkpoint if it's not <code>null</code>.
+     */
+    private static IndexedFileSource indexedSourceFactory(
+        Configuration config,
+        Checkpoint checkpoint) throws FileNotFoundException, IOException
+    {
+        if (config.inputFile == null || config.followInput
+            || config.inputFormat == InputFormat.STRACE_FF
+            || config.inputFile.matches(IS_GZIPPED_REGEX)
+            || config.inputFile.matches(IS_TAR_REGEX))
+        {
+            ParseOptions.usageError(config.inputFile == null
+                    ? "-"
+                    : config.inputFile,
+                "Line index can be used only with uncompressed input file.");
+        }
+
+        // Input is read by doMainIndexed() on the main thread, so that
+        // checkpoints refer to lines that were analysed.
+        if (config.memoryMappedInput || config.prefetchInput
+            || config.pipelineCapacity > 0)
+        {
+            ParseOptions.usageError(indexedOption(config),
+                "Can not be combined with --mmap, --prefetch and"
+                + " --pipeline.");
+        }
+
+        if (checkpoint != null)
+        {
+            return new IndexedFileSource(config.inputFile,
+                checkpoint.getIndex(), checkpoint.getLine(),
+                checkpoint.getOffset(), Long.MAX_VALUE);
+        }
+
+        LineIndex index = LineIndex.load(config.inputFile);
+
+        if (index == null)
+        {
+            index = new LineIndex();
+        }
+
+        // Line numbers in configuration start from one.
+        return new IndexedFileSource(config.inputFile, index,
+            Math.max(config.firstLine - 1, 0),
+            config.lastLine == 0 ? Long.MAX_VALUE : config.lastLine);
+    }
+
+    /**
+     * Select appropriate ISource implementation for a file, or stdin if
+     * fileName is <code>null</code>.
      *
-     * TODO: StdinSource.
+     * @param mmap
+     *   Map uncompressed file in to memory, see MappedFileSource.
+     * @param isInflatedInParallel
+     *   Inflate gzipped file on background threads, see FileSource.
      */
-    private static ISource sourceFactory(String fileName)
+    public static ISource sourceFactory(String fileName, boolean mmap,
+        boolean isInflatedInParallel)
         throws FileNotFoundException, IOException
     {
         if (fileName == null)
         {
-            //return new StdinSource();
-            return null;
+            return new StdinSource();
         }
 
-        return new FileSource(fileName, fileName.matches(_IS_GZIPPED_REGEX));
+        boolean isGzipped = fileName.matches(IS_GZIPPED_REGEX);
+
+        // Compressed data can not be split in to lines without decompressing
+        // them first, so mapping them in to memory makes no sense.
+        if (mmap && !isGzipped)
+        {
+            return new MappedFileSource(fileName);
+        }
+
+        return new FileSource(fileName, isGzipped, isInflatedInParallel);
+    }
+
+    private static ISource sourceFactory(String fileName, boolean mmap)
+        throws FileNotFoundException, IOException
+    {
+        return sourceFactory(fileName, mmap, true);
     }
 
     /**
      * Select appropriate IParser implementation.
+     *
+     * @param threads
+     *   Number of threads that parse input, see ParallelStraceParser.
      */
-    private static IParser parserFactory(InputFormat inputFormat)
+    private static IParser parserFactory(InputFormat inputFormat, int threads)
     {
         switch (inputFormat)
         {
             case DUMMY:
                 return new DummyParser();
             case STRACE:
-                return new StraceParser();
+            case STRACE_FF:
+                return threads > 1
+                    ? new ParallelStraceParser(threads)
+                    : new StraceParser();
         }
 
         return null;
@@ -109,13 +567,25 @@ public class UnifiedLogAnalyzer
 
     /**
      * Select appropriate IAnalyzer implementation.
+     *
+     * @param shards
+     *   Strace path analysis is split in to this many shards, see
+     *   ShardedStracePathAnalyzer, if it's more than one.
      */
     private static IAnalyzer analyzerFactory(InputFormat inputFormat,
-        AnalysisAlgorithm analysisAlgorithm)
+        AnalysisAlgorithm analysisAlgorithm,
+        boolean incremental,
+        int shards)
     {
         StracePathAnalyzer.Configuration straceConfig =
             StracePathAnalyzer.Configuration.theDefault();
 
+        if (incremental)
+        {
+            straceConfig =
+                StracePathAnalyzer.Configuration.incremental(straceConfig);
+        }
+
         if (!analysisAlgorithm.isSupportedForInputFormat(inputFormat))
         {
             return null;
@@ -130,7 +600,7 @@ public class UnifiedLogAnalyzer
                 straceConfig = StracePathAnalyzer.Configuration
                     .preserveParsedData(straceConfig);
             case STRACE_PATH_ANALYSIS:
-                return new StracePathAnalyzer(straceConfig);
+                return stracePathAnalyzer(straceConfig, shards);
 
             case MAGIC_PATH_ANALYSIS_PARSED_DATA_PRESERVED:
                 straceConfig = StracePathAnalyzer.Configuration
@@ -139,10 +609,11 @@ public class UnifiedLogAnalyzer
                 MagicPathAnalyzer magicPathAnalyzer =
                     new MagicPathAnalyzer();
 
-                if (inputFormat == InputFormat.STRACE)
+                if (inputFormat == InputFormat.STRACE
+                    || inputFormat == InputFormat.STRACE_FF)
                 {
                     return new AnalysisChain(
-                        new StracePathAnalyzer(straceConfig),
+                        stracePathAnalyzer(straceConfig, shards),
                         magicPathAnalyzer);
                 }
 
@@ -152,12 +623,74 @@ public class UnifiedLogAnalyzer
         return null;
     }
 
+    private static IAnalyzer stracePathAnalyzer(
+        StracePathAnalyzer.Configuration config,
+        int shards)
+    {
+        return shards > 1
+            ? new ShardedStracePathAnalyzer(config, shards)
+            : new StracePathAnalyzer(config);
+    }
+
+    /**
+     * Select appropriate IAnalyzer implementation and put
+     * ParseErrorAggregator in front of it, unless parseErrorSamples is
+     * negative.
+     *
+     * If there are any parallelAlgorithms, then analyzers of them and of
+     * analysisAlgorithm are branches of an AnalyzerGraph.
+     */
+    private static IAnalyzer analyzerFactory(InputFormat inputFormat,
+        AnalysisAlgorithm analysisAlgorithm,
+        List<AnalysisAlgorithm> parallelAlgorithms,
+        boolean incremental,
+        int shards,
+        int parseErrorSamples)
+    {
+        IAnalyzer analyzer = analyzerFactory(inputFormat, analysisAlgorithm,
+            incremental, shards);
+
+        if (analyzer != null && !parallelAlgorithms.isEmpty())
+        {
+            AnalyzerGraph graph = new AnalyzerGraph();
+
+            graph.addBranch(analyzer);
+
+            for (AnalysisAlgorithm algorithm : parallelAlgorithms)
+            {
+                IAnalyzer branch = analyzerFactory(inputFormat, algorithm,
+                    incremental, shards);
+
+                if (branch == null)
+                {
+                    return null;
+                }
+                graph.addBranch(branch);
+            }
+            analyzer = graph;
+        }
+
+        return analyzer == null || parseErrorSamples < 0
+            ? analyzer
+            : new ParseErrorAggregator(analyzer, parseErrorSamples);
+    }
+
     /**
      * Select appropriate ISink implementation.
      *
      * @throws NoSuchFileException
      */
-    private static ISink sinkFactory(String fileName)
+    public static ISink sinkFactory(String fileName)
+        throws FileNotFoundException, IOException
+    {
+        return sinkFactory(fileName, null);
+    }
+
+    /**
+     * Select appropriate ISink implementation, output file continues output
+     * recorded in checkpoint if it's not <code>null</code>.
+     */
+    private static ISink sinkFactory(String fileName, Checkpoint checkpoint)
         throws FileNotFoundException, IOException
     {
         if (fileName == null)
@@ -165,13 +698,235 @@ public class UnifiedLogAnalyzer
             return new StdoutSink();
         }
 
-        return new FileSink(fileName, fileName.matches(_IS_GZIPPED_REGEX));
+        return new FileSink(fileName, fileName.matches(IS_GZIPPED_REGEX),
+            true, checkpoint == null ? -1 : checkpoint.getOutputLength());
     }
 
     // }}} Factory methods ////////////////////////////////////////////////////
 
     // {{{ Main ///////////////////////////////////////////////////////////////
 
+    /**
+     * Maximal time, in milliseconds, that is given to the analysis to finish
+     * after the application was asked to terminate.
+     */
+    private static final long _SHUTDOWN_TIMEOUT = 5000;
+
+    /**
+     * Default maximal number of inputs of batch mode per processor that are
+     * analysed at the same time. More than one, so that reading of some
+     * inputs overlaps with analysis of others.
+     */
+    private static final int _BATCH_CONCURRENCY_PER_PROCESSOR = 4;
+
+    private static void checkParallelAlgorithms(Configuration config)
+    {
+        for (AnalysisAlgorithm algorithm : config.parallelAlgorithms)
+        {
+            if (!algorithm.isSupportedForInputFormat(config.inputFormat))
+            {
+                ParseOptions.analysisAlgorithmNotAvailableForThisInputFormat(
+                    algorithm, config.inputFormat);
+            }
+        }
+    }
+
+    /**
+     * Read names of inputs of batch mode, one per line, from batchList or
+     * from stdin if it's <code>null</code>. Empty lines are skipped.
+     */
+    private static List<String> readBatchList(String batchList)
+        throws FileNotFoundException, IOException
+    {
+        List<String> inputs = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            batchList == null ? System.in : new FileInputStream(batchList))))
+        {
+            for (String line; (line = reader.readLine()) != null; )
+            {
+                if (!line.isEmpty())
+                {
+                    inputs.add(line);
+                }
+            }
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Batch mode of main, see BatchAnalysis.
+     *
+     * @return
+     *   Number of inputs whose analysis failed.
+     */
+    private static int mainBatch(Configuration config) throws IOException
+    {
+        if (config.inputFile != null)
+        {
+            ParseOptions.usageError(config.inputFile,
+                "Inputs of --batch are listed in LIST.");
+        }
+
+        if (config.outputFile != null)
+        {
+            ParseOptions.usageError("--batch",
+                "Can not be combined with --output, use --output-dir.");
+        }
+
+        if (config.followInput || config.indexInput
+            || config.checkpointInterval > 0 || config.resumeFromCheckpoint
+            || config.firstLine > 0)
+        {
+            ParseOptions.usageError("--batch",
+                "Can not be combined with --follow, --index,"
+                + " --checkpoint-every, --resume and --lines.");
+        }
+
+        // Inputs are already analysed concurrently, therefore each of them
+        // is read, parsed and analysed by a single thread.
+        if (config.prefetchInput || config.pipelineCapacity > 0
+            || config.parseThreads > 1 || config.analysisShards > 1)
+        {
+            ParseOptions.usageError("--batch",
+                "Can not be combined with --prefetch, --pipeline,"
+                + " --parse-threads and --shards.");
+        }
+
+        if (config.inputFormat == InputFormat.STRACE_FF)
+        {
+            ParseOptions.usageError(config.inputFormat.toArgument(),
+                "Input format can not be used with --batch.");
+        }
+
+        final InputFormat inputFormat = config.inputFormat;
+        final AnalysisAlgorithm analysisAlgorithm = config.analysisAlgorithm;
+        final List<AnalysisAlgorithm> parallelAlgorithms =
+            config.parallelAlgorithms;
+        final int parseErrorSamples = config.parseErrorSamples;
+
+        if (parserFactory(inputFormat, 1) == null)
+        {
+            ParseOptions.unsupportedInputFormat(inputFormat);
+        }
+
+        checkParallelAlgorithms(config);
+
+        if (analyzerFactory(inputFormat, analysisAlgorithm,
+            parallelAlgorithms, false, 1, parseErrorSamples) == null)
+        {
+            ParseOptions.analysisAlgorithmNotAvailableForThisInputFormat(
+                analysisAlgorithm, inputFormat);
+        }
+
+        List<String> inputs = null;
+
+        try
+        {
+            inputs = readBatchList(config.batchList);
+        }
+        catch (FileNotFoundException ex)
+        {
+            ParseOptions.usageError(config.batchList,
+                "Batch list not found.");
+        }
+
+        String collision =
+            BatchAnalysis.findCollision(inputs, config.outputDirectory);
+
+        if (collision != null)
+        {
+            ParseOptions.usageError(collision,
+                "Output file collides with another input or its output.");
+        }
+
+        int maxConcurrency = config.maxConcurrency > 0
+            ? config.maxConcurrency
+            : Runtime.getRuntime().availableProcessors()
+                * _BATCH_CONCURRENCY_PER_PROCESSOR;
+        long maxMemory = config.maxMemory > 0
+            ? config.maxMemory
+            : Runtime.getRuntime().maxMemory() / 2;
+        long start = System.nanoTime();
+        int failures;
+
+        try
+        {
+            failures = new BatchAnalysis(config.outputDirectory,
+                config.memoryMappedInput,
+                new IFactory<IParser>()
+                {
+                    @Override
+                    public IParser create()
+                    {
+                        return parserFactory(inputFormat, 1);
+                    }
+                },
+                new IFactory<IAnalyzer>()
+                {
+                    @Override
+                    public IAnalyzer create()
+                    {
+                        return analyzerFactory(inputFormat,
+                            analysisAlgorithm, parallelAlgorithms, false, 1,
+                            parseErrorSamples);
+                    }
+                },
+                maxConcurrency,
+                maxMemory).run(inputs);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        }
+
+        Logger.getLogger(UnifiedLogAnalyzer.class.getName()).info(
+            String.format("Analysed %d inputs, %d failed, in %d ms"
+                + " on %s threads.", inputs.size(), failures,
+                (System.nanoTime() - start) / 1000000,
+                VirtualThreads.isAvailable() ? "virtual" : "platform"));
+
+        return failures;
+    }
+
+    /**
+     * Followed input never ends by itself. When the application is asked to
+     * terminate, e.g. by Ctrl+C, stop following it and let main thread
+     * finish the analysis, so that final results and statistics are written.
+     *
+     * @return
+     *   Latch that has to be counted down when the analysis is finished.
+     */
+    private static CountDownLatch stopOnShutdown(
+        final FollowingFileSource source)
+    {
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        Runtime.getRuntime().addShutdownHook(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    source.stop();
+
+                    try
+                    {
+                        finished.await(_SHUTDOWN_TIMEOUT,
+                            TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        // Terminate anyway.
+                    }
+                }
+            });
+
+        return finished;
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -181,44 +936,170 @@ public class UnifiedLogAnalyzer
 
         try
         {
-            ISource source = sourceFactory(config.inputFile);
-            if (source == null)
+            Checkpoint checkpoint = null;
+
+            if (config.resumeFromCheckpoint && config.firstLine > 0)
             {
-                if (config.inputFile == null)
+                ParseOptions.usageError("--resume",
+                    "Can not be combined with --lines.");
+            }
+
+            if (config.batchMode)
+            {
+                if (mainBatch(config) > 0)
                 {
-                    System.err.println(
-                        "Error: `stdin': Currently not supported.");
-                    System.exit(2);
+                    System.exit(1);
                 }
-                else
+
+                return;
+            }
+
+            if (config.outputDirectory != null || config.maxConcurrency > 0
+                || config.maxMemory > 0)
+            {
+                ParseOptions.usageError("Options --output-dir,"
+                    + " --max-concurrency and --max-memory require --batch.");
+            }
+
+            if (config.resumeFromCheckpoint && config.inputFile != null)
+            {
+                checkpoint = Checkpoint.load(config.inputFile);
+
+                if (checkpoint == null)
                 {
-                    throw new NullPointerException("source");
+                    Logger.getLogger(Checkpoint.class.getName()).info(
+                        config.inputFile + ": No valid checkpoint found,"
+                        + " starting from the beginning.");
                 }
             }
 
-            ISink sink = sinkFactory(config.outputFile);
+            ISource source = isIndexed(config)
+                ? indexedSourceFactory(config, checkpoint)
+                : sourceFactory(config);
+            if (source == null)
+            {
+                throw new NullPointerException("source");
+            }
+
+            ISink sink = sinkFactory(config.outputFile, checkpoint);
             if (sink == null)
             {
                 throw new NullPointerException("writer");
             }
 
-            IParser parser = parserFactory(config.inputFormat);
+            IParser parser =
+                parserFactory(config.inputFormat, config.parseThreads);
             if (parser == null)
             {
                 ParseOptions.unsupportedInputFormat(config.inputFormat);
             }
 
+            checkParallelAlgorithms(config);
+
             IAnalyzer analyzer = analyzerFactory(
                 config.inputFormat,
-                config.analysisAlgorithm);
-            if (parser == null)
+                config.analysisAlgorithm,
+                config.parallelAlgorithms,
+                config.followInput,
+                config.analysisShards,
+                config.parseErrorSamples);
+            if (analyzer == null)
             {
                 ParseOptions.analysisAlgorithmNotAvailableForThisInputFormat(
                     config.analysisAlgorithm,
                     config.inputFormat);
             }
 
-            doMain(source, parser, analyzer, sink);
+            if (source instanceof IndexedFileSource)
+            {
+                if (checkpoint != null)
+                {
+                    restoreState(parser, checkpoint.getParserState());
+                    restoreState(analyzer, checkpoint.getAnalyzerState());
+
+                    if (checkpoint.getSinkState() != null)
+                    {
+                        restoreState(sink, checkpoint.getSinkState());
+                    }
+                }
+
+                doMainIndexed((IndexedFileSource)source, parser, analyzer,
+                    sink, config.checkpointInterval, config.indexInput);
+
+                return;
+            }
+
+            if (source instanceof TarSource)
+            {
+                final Configuration entryConfig = config;
+
+                new ArchiveAnalysis((TarSource)source,
+                    new IFactory<IParser>()
+                    {
+                        @Override
+                        public IParser create()
+                        {
+                            // Entries are already parsed concurrently.
+                            return parserFactory(entryConfig.inputFormat, 1);
+                        }
+                    },
+                    new IFactory<IAnalyzer>()
+                    {
+                        @Override
+                        public IAnalyzer create()
+                        {
+                            // Entries are already analysed concurrently.
+                            return analyzerFactory(entryConfig.inputFormat,
+                                entryConfig.analysisAlgorithm,
+                                entryConfig.parallelAlgorithms, false, 1,
+                                entryConfig.parseErrorSamples);
+                        }
+                    },
+                    sink,
+                    Runtime.getRuntime().availableProcessors(),
+                    BATCH_SIZE).run();
+
+                return;
+            }
+
+            CountDownLatch finished = null;
+
+            if (source instanceof FollowingFileSource)
+            {
+                finished = stopOnShutdown((FollowingFileSource)source);
+            }
+
+            try
+            {
+                if (config.pipelineCapacity > 0)
+                {
+                    doPipeline(source, parser, analyzer, sink,
+                        config.followInput, config.pipelineCapacity);
+                }
+                else
+                {
+                    doMain(source, parser, analyzer, sink,
+                        config.followInput);
+                }
+            }
+            finally
+            {
+                if (finished != null)
+                {
+                    // Logging is already shut down if we were terminated by
+                    // a signal.
+                    System.err.println(
+                        ((FollowingFileSource)source).getStatistics());
+                    finished.countDown();
+                }
+            }
+
+            if (source instanceof PrefetchingSource)
+            {
+                Logger.getLogger(PrefetchingSource.class.getName()).info(
+                    ((PrefetchingSource)source).getStatistics());
+            }
+
         }
         catch (FileNotFoundException ex)
         {
@@ -4,6 +4,7 @@ import trskop.ICallback;
 
 import unifiedloganalyzer.IOutputMessage;
 import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IBatchCallback;
 import unifiedloganalyzer.ParsedData;
 
 
@@ -11,12 +12,21 @@ import unifiedloganalyzer.ParsedData;
  * Adapter that provides ICallback&lt;ParsedData&gt; interface implementation
  * for IAnalyzer instances, while keeping IAnalyzer interface available too.
  *
+ * Batches of parsed data are passed to analyzer as they are if it supports
+ * them, see IBatchCallback, and one by one otherwise.
+ *
  * @author Peter Trsko
  */
-public class AnalyzerCallback implements IAnalyzer, ICallback<ParsedData>
+public class AnalyzerCallback
+    implements IAnalyzer, IBatchCallback<ParsedData>
 {
     private final IAnalyzer _analyzer;
 
+    /**
+     * Analyzer itself if it supports batches, <code>null</code> otherwise.
+     */
+    private final IBatchCallback<ParsedData> _batchAnalyzer;
+
     // {{{ Constructors ///////////////////////////////////////////////////////
 
     /**
@@ -27,9 +37,15 @@ public class AnalyzerCallback implements IAnalyzer, ICallback<ParsedData>
      *   Concrete analyzer that will be extended with
      *   ICallback&lt;ParsedData&gt; interface.
      */
+    @SuppressWarnings("unchecked")
     public AnalyzerCallback(IAnalyzer analyzer)
     {
         _analyzer = analyzer;
+
+        // Analyzers receive only parsed data.
+        _batchAnalyzer = analyzer instanceof IBatchCallback
+            ? (IBatchCallback<ParsedData>)analyzer
+            : null;
     }
 
     // }}} Constructors ///////////////////////////////////////////////////////
@@ -53,6 +69,28 @@ public class AnalyzerCallback implements IAnalyzer, ICallback<ParsedData>
         analyze(message);
     }
 
+    /**
+     * Analyze batch of parsed messages.
+     *
+     * @see unifiedloganalyzer.IBatchCallback
+     */
+    @Override
+    public void runBatchCallback(ParsedData[] messages, int offset,
+        int length)
+    {
+        if (_batchAnalyzer != null)
+        {
+            _batchAnalyzer.runBatchCallback(messages, offset, length);
+
+            return;
+        }
+
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            _analyzer.analyze(messages[i]);
+        }
+    }
+
     // }}} IAnalyzer implementation ///////////////////////////////////////////
 
     // {{{ ICallback<IOutputMessage> implementation ///////////////////////////
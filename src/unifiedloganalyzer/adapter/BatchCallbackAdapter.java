@@ -0,0 +1,62 @@
+package unifiedloganalyzer.adapter;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IBatchCallback;
+
+
+/**
+ * Adapts ICallback&lt;T&gt; to IBatchCallback&lt;T&gt; by passing messages
+ * of a batch one by one.
+ *
+ * @author Peter Trsko
+ */
+public class BatchCallbackAdapter<T> implements IBatchCallback<T>
+{
+    private final ICallback<T> _callback;
+
+    public BatchCallbackAdapter(ICallback<T> callback)
+    {
+        if (callback == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _callback = callback;
+    }
+
+    /**
+     * Callback itself if it already supports batches, adapter otherwise.
+     */
+    public static <T> IBatchCallback<T> adapt(ICallback<T> callback)
+    {
+        return callback instanceof IBatchCallback
+            ? (IBatchCallback<T>)callback
+            : new BatchCallbackAdapter<>(callback);
+    }
+
+    // {{{ IBatchCallback<T> interface implementation /////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runCallback(T message)
+    {
+        _callback.runCallback(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runBatchCallback(T[] messages, int offset, int length)
+    {
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            _callback.runCallback(messages[i]);
+        }
+    }
+
+    // }}} IBatchCallback<T> interface implementation /////////////////////////
+}
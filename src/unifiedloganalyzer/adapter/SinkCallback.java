@@ -4,19 +4,18 @@ import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import trskop.ICallback;
-
+import unifiedloganalyzer.IBatchCallback;
 import unifiedloganalyzer.IOutputMessage;
 import unifiedloganalyzer.ISink;
 
 
 /**
- * Adapts ISink interface to ICallback&lt;IOutputMessage&gt; while also
+ * Adapts ISink interface to IBatchCallback&lt;IOutputMessage&gt; while also
  * proxying ISink interface.
  *
  * @author Peter Trsko
  */
-public class SinkCallback implements ISink, ICallback<IOutputMessage>
+public class SinkCallback implements ISink, IBatchCallback<IOutputMessage>
 {
     private final ISink _writer;
 
@@ -59,7 +58,7 @@ public class SinkCallback implements ISink, ICallback<IOutputMessage>
 
     // }}} ISink interface implementation ///////////////////////////////////
 
-    // {{{ ICallback<IOutputMessage> interface implementation /////////////////
+    // {{{ IBatchCallback<IOutputMessage> interface implementation ////////////
 
     /**
      * Write analysis result.
@@ -81,5 +80,36 @@ public class SinkCallback implements ISink, ICallback<IOutputMessage>
         }
     }
 
-    // }}} ICallback<IOutputMessage> interface implementation /////////////////
+    /**
+     * Write batch of analysis results.
+     *
+     * Message that fails to be written is logged and the rest are written
+     * anyway, as if they were passed to runCallback() one by one.
+     */
+    @Override
+    public void runBatchCallback(IOutputMessage[] messages, int offset,
+        int length)
+    {
+        int i = offset;
+        int end = offset + length;
+
+        while (i < end)
+        {
+            try
+            {
+                for (; i < end; i++)
+                {
+                    _writer.write(messages[i]);
+                }
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(SinkCallback.class.getName())
+                    .log(Level.SEVERE, null, ex);
+                i++;
+            }
+        }
+    }
+
+    // }}} IBatchCallback<IOutputMessage> interface implementation ////////////
 }
@@ -3,6 +3,7 @@ package unifiedloganalyzer.analyze;
 import trskop.ICallback;
 
 import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IBatchCallback;
 import unifiedloganalyzer.IOutputMessage;
 import unifiedloganalyzer.IParsedData;
 import unifiedloganalyzer.ParsedData;
@@ -13,9 +14,14 @@ import unifiedloganalyzer.utils.CallbacksManager;
  * Abstract implementation of IAnalyzer that simplifies implementation of
  * concrete analysers.
  *
+ * It's also a callback of parser, batches of parsed data are analyzed
+ * without dispatch through adapter for each of them, and results of a batch
+ * are delivered to callbacks as a batch as well.
+ *
  * @author Peter Trsko
  */
-public abstract class AAnalyzer implements IAnalyzer
+public abstract class AAnalyzer
+    implements IAnalyzer, IBatchCallback<ParsedData>
 {
     private CallbacksManager<IOutputMessage> _callbacksManager;
 
@@ -23,7 +29,7 @@ public abstract class AAnalyzer implements IAnalyzer
 
     public AAnalyzer()
     {
-        _callbacksManager = new CallbacksManager<>();
+        _callbacksManager = new CallbacksManager<>(IOutputMessage.class);
     }
 
     public AAnalyzer(ICallback<IOutputMessage> callback)
@@ -79,6 +85,40 @@ public abstract class AAnalyzer implements IAnalyzer
 
     // }}} IAnalyzer implementation ///////////////////////////////////////////
 
+    // {{{ IBatchCallback<ParsedData> implementation //////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runCallback(ParsedData parsedData)
+    {
+        analyze(parsedData);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runBatchCallback(ParsedData[] batch, int offset, int length)
+    {
+        _callbacksManager.beginBatch();
+
+        try
+        {
+            for (int i = offset, end = offset + length; i < end; i++)
+            {
+                analyze(batch[i]);
+            }
+        }
+        finally
+        {
+            _callbacksManager.endBatch();
+        }
+    }
+
+    // }}} IBatchCallback<ParsedData> implementation //////////////////////////
+
     /**
      * Notify registered objects with analysis results.
      *
@@ -1,12 +1,24 @@
 package unifiedloganalyzer.analyze;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+
 import trskop.ICallback;
 
 import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IBatchCallback;
 import unifiedloganalyzer.IParsedData;
 import unifiedloganalyzer.IOutputMessage;
 import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.adapter.AnalyzerCallback;
+import unifiedloganalyzer.parse.IPooledDataConsumer;
+import unifiedloganalyzer.parse.strace.IStraceSyscallSubscriber;
+import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
 import unifiedloganalyzer.utils.CompoundMessage;
+import unifiedloganalyzer.utils.ICheckpointable;
 
 
 /**
@@ -14,22 +26,44 @@ import unifiedloganalyzer.utils.CompoundMessage;
  *
  * Note that either of them can be also AnalysisChain instance.
  *
+ * State of the chain, for the purpose of checkpoints, consists of states of
+ * both analyzers, if they implement ICheckpointable.
+ *
+ * Only the first analyzer receives parsed data, therefore it alone decides
+ * which syscalls have to be parsed, see IStraceSyscallSubscriber, and
+ * whether they can be reused by parser, see IPooledDataConsumer.
+ *
+ * Batches of parsed data, see IBatchCallback, are passed to the first
+ * analyzer and batches of its results to the second one.
+ *
+ * Flushing, see java.io.Flushable, is passed to both analyzers, first one
+ * first, if they support it.
+ *
  * @author Peter Trsko
  */
-public class AnalysisChain implements IAnalyzer
+public class AnalysisChain
+    implements IAnalyzer, IBatchCallback<ParsedData>, ICheckpointable,
+        IStraceSyscallSubscriber, IPooledDataConsumer, IParseErrorCounter,
+        Flushable
 {
     // first.analyze() -> transformer.runCallback() -> second.analyze()
-    private static class Transformer implements ICallback<IOutputMessage>
+    private static class Transformer implements IBatchCallback<IOutputMessage>
     {
         IAnalyzer _analyzer = null;
+        AnalyzerCallback _callback = null;
+
+        /**
+         * Converted messages of a batch, reused by subsequent batches.
+         */
+        ParsedData[] _batch = new ParsedData[0];
 
         public Transformer(IAnalyzer analyzer)
         {
             _analyzer = analyzer;
+            _callback = new AnalyzerCallback(analyzer);
         }
 
-        @Override
-        public void runCallback(IOutputMessage message)
+        private static ParsedData transform(IOutputMessage message)
         {
             ParsedData parsedData;
 
@@ -49,13 +83,48 @@ public class AnalysisChain implements IAnalyzer
                         null));     // Not providing parsed data!
             }
 
-            _analyzer.analyze(parsedData);
+            return parsedData;
+        }
+
+        @Override
+        public void runCallback(IOutputMessage message)
+        {
+            _analyzer.analyze(transform(message));
+        }
+
+        @Override
+        public void runBatchCallback(IOutputMessage[] messages, int offset,
+            int length)
+        {
+            if (_batch.length < length)
+            {
+                _batch = new ParsedData[length];
+            }
+
+            for (int i = 0; i < length; i++)
+            {
+                _batch[i] = transform(messages[offset + i]);
+            }
+
+            try
+            {
+                _callback.runBatchCallback(_batch, 0, length);
+            }
+            finally
+            {
+                Arrays.fill(_batch, 0, length, null);
+            }
         }
     }
 
     private IAnalyzer _firstAnalyzer = null;
     private IAnalyzer _secondAnalyzer = null;
 
+    /**
+     * Passes batches to the first analyzer.
+     */
+    private AnalyzerCallback _firstCallback = null;
+
     /**
      * First analyzer passes its result to second analyzer.
      *
@@ -77,6 +146,7 @@ public class AnalysisChain implements IAnalyzer
 
         _firstAnalyzer = first;
         _secondAnalyzer = second;
+        _firstCallback = new AnalyzerCallback(first);
 
         first.registerCallback(new Transformer(second));
     }
@@ -102,4 +172,141 @@ public class AnalysisChain implements IAnalyzer
     }
 
     // }}} IAnalyzer interface implementation /////////////////////////////////
+
+    // {{{ IBatchCallback<ParsedData> interface implementation ////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runCallback(ParsedData parsedData)
+    {
+        _firstAnalyzer.analyze(parsedData);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runBatchCallback(ParsedData[] batch, int offset, int length)
+    {
+        _firstCallback.runBatchCallback(batch, offset, length);
+    }
+
+    // }}} IBatchCallback<ParsedData> interface implementation ////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    private static Serializable saveState(IAnalyzer analyzer)
+    {
+        return analyzer instanceof ICheckpointable
+            ? ((ICheckpointable)analyzer).saveState()
+            : null;
+    }
+
+    private static void restoreState(IAnalyzer analyzer, Serializable state)
+    {
+        if (analyzer instanceof ICheckpointable)
+        {
+            ((ICheckpointable)analyzer).restoreState(state);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Serializable saveState()
+    {
+        return new Serializable[]
+            {
+                saveState(_firstAnalyzer),
+                saveState(_secondAnalyzer)
+            };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        if (!(state instanceof Serializable[])
+            || ((Serializable[])state).length != 2)
+        {
+            throw new IllegalArgumentException("state");
+        }
+
+        restoreState(_firstAnalyzer, ((Serializable[])state)[0]);
+        restoreState(_secondAnalyzer, ((Serializable[])state)[1]);
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
+
+    // {{{ IStraceSyscallSubscriber interface implementation //////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<StraceSyscallParsedData.Syscall> getSubscribedSyscalls()
+    {
+        return _firstAnalyzer instanceof IStraceSyscallSubscriber
+            ? ((IStraceSyscallSubscriber)_firstAnalyzer)
+                .getSubscribedSyscalls()
+            : null;
+    }
+
+    // }}} IStraceSyscallSubscriber interface implementation //////////////////
+
+    // {{{ IPooledDataConsumer interface implementation ///////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsPooledData()
+    {
+        return _firstAnalyzer instanceof IPooledDataConsumer
+            && ((IPooledDataConsumer)_firstAnalyzer).acceptsPooledData();
+    }
+
+    // }}} IPooledDataConsumer interface implementation ///////////////////////
+
+    // {{{ IParseErrorCounter interface implementation ////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Parse errors are passed only to the first analyzer.
+     */
+    @Override
+    public boolean countsParseErrors()
+    {
+        return _firstAnalyzer instanceof IParseErrorCounter
+            && ((IParseErrorCounter)_firstAnalyzer).countsParseErrors();
+    }
+
+    // }}} IParseErrorCounter interface implementation ////////////////////////
+
+    // {{{ Flushable interface implementation /////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (_firstAnalyzer instanceof Flushable)
+        {
+            ((Flushable)_firstAnalyzer).flush();
+        }
+
+        if (_secondAnalyzer instanceof Flushable)
+        {
+            ((Flushable)_secondAnalyzer).flush();
+        }
+    }
+
+    // }}} Flushable interface implementation /////////////////////////////////
 }
@@ -0,0 +1,779 @@
+package unifiedloganalyzer.analyze;
+
+import java.io.Flushable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IBatchCallback;
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.adapter.AnalyzerCallback;
+import unifiedloganalyzer.adapter.BatchCallbackAdapter;
+import unifiedloganalyzer.parse.IPooledDataConsumer;
+import unifiedloganalyzer.parse.strace.IStraceSyscallSubscriber;
+import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
+import unifiedloganalyzer.utils.CallbacksManager;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+import unifiedloganalyzer.utils.ICheckpointable;
+import unifiedloganalyzer.utils.SpscRingBuffer;
+
+
+/**
+ * Analyzer that passes the same parsed data to several independent
+ * analyzers, branches of the graph, that run in parallel, each on its own
+ * thread.
+ *
+ * Parsed data are collected in to batches that are put in to the queue of
+ * every branch, they are shared, therefore branches must not modify them.
+ * Results of each branch are either passed to callbacks registered with the
+ * graph, which merges them in to one stream, or to a callback of the branch,
+ * e.g. a separate sink, see addBranch().
+ *
+ * Results are delivered on the thread that calls analyze(), so callbacks
+ * don't have to be thread safe, and in deterministic order: results of a
+ * batch are delivered after all branches processed it, those of the first
+ * branch first. Number of batches that are processed and not delivered yet
+ * is bounded, analyze() waits if branches don't keep up.
+ *
+ * Merged stream is therefore not a concatenation of what each branch would
+ * produce alone, results of branches are interleaved at batch boundaries.
+ * A sink that collapses repeated messages, like FileSink, sees a run of
+ * repetitions split wherever results of another branch were delivered in
+ * between, and counts it as several runs. Where output has to be the same
+ * as that of a standalone analyzer, give each branch its own callback.
+ *
+ * EMPTY_MESSAGE, which parser sends at the end of input, is passed to all
+ * branches, then graph waits for all of their results and stops their
+ * threads. They are started again if another input follows. flush() and
+ * saveState() wait for results as well, but leave threads running.
+ *
+ * Error of a branch is rethrown by analyze() when results of the batch in
+ * which it happened are due, after threads are stopped. Results of that
+ * batch and of those that follow it are discarded.
+ *
+ * @author Peter Trsko
+ */
+public class AnalyzerGraph
+    implements IAnalyzer, IBatchCallback<ParsedData>, ICheckpointable,
+        IStraceSyscallSubscriber, IPooledDataConsumer, IParseErrorCounter,
+        Flushable
+{
+    /**
+     * Default number of batches that are processed and not delivered yet.
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Default number of parsed data in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // {{{ Nested types ///////////////////////////////////////////////////////
+
+    /**
+     * Parsed data passed to all branches.
+     */
+    private static class Batch
+    {
+        public final ParsedData[] items;
+        public int length = 0;
+
+        public Batch(int size)
+        {
+            items = new ParsedData[size];
+        }
+    }
+
+    private static final Batch _END = new Batch(0);
+
+    /**
+     * Results of one branch for one batch.
+     */
+    private static class Output
+    {
+        public final List<IOutputMessage> messages = new ArrayList<>();
+        public Throwable error = null;
+    }
+
+    private static class Branch
+        implements Runnable, IBatchCallback<IOutputMessage>
+    {
+        public final IAnalyzer analyzer;
+
+        /**
+         * Callback of the branch, or <code>null</code> if results go to
+         * callbacks of the graph.
+         */
+        public final IBatchCallback<IOutputMessage> target;
+
+        public SpscRingBuffer<Batch> inputs = null;
+        public SpscRingBuffer<Output> outputs = null;
+        public Thread thread = null;
+
+        /**
+         * Results of the oldest batch that wasn't delivered yet, used only
+         * by thread that calls analyze().
+         */
+        public Output ready = null;
+
+        private final AnalyzerCallback _callback;
+
+        // Used only by branch thread.
+        private Output _current = null;
+
+        public Branch(IAnalyzer analyzer,
+            IBatchCallback<IOutputMessage> target)
+        {
+            this.analyzer = analyzer;
+            this.target = target;
+            _callback = new AnalyzerCallback(analyzer);
+            analyzer.registerCallback(this);
+        }
+
+        @Override
+        public void run()
+        {
+            Throwable error = null;
+
+            try
+            {
+                for (Batch batch = inputs.take(); batch != _END;
+                    batch = inputs.take())
+                {
+                    Output output = new Output();
+
+                    // After an error the branch only confirms batches, so
+                    // that the graph doesn't wait for it.
+                    if (error == null)
+                    {
+                        _current = output;
+
+                        try
+                        {
+                            _callback.runBatchCallback(batch.items, 0,
+                                batch.length);
+                        }
+                        catch (RuntimeException | Error ex)
+                        {
+                            error = ex;
+                        }
+                        _current = null;
+                    }
+
+                    output.error = error;
+                    outputs.put(output);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                // Graph was abandoned.
+            }
+        }
+
+        @Override
+        public void runCallback(IOutputMessage message)
+        {
+            if (_current == null)
+            {
+                throw new IllegalStateException(
+                    "Analyzer produced result outside of analysis.");
+            }
+
+            _current.messages.add(message);
+        }
+
+        @Override
+        public void runBatchCallback(IOutputMessage[] messages, int offset,
+            int length)
+        {
+            for (int i = offset, end = offset + length; i < end; i++)
+            {
+                runCallback(messages[i]);
+            }
+        }
+    }
+
+    // }}} Nested types ///////////////////////////////////////////////////////
+
+    private final int _capacity;
+    private final int _batchSize;
+    private final List<Branch> _branches = new ArrayList<>();
+    private final CallbacksManager<IOutputMessage> _callbacksManager =
+        new CallbacksManager<>();
+    private final DaemonThreadFactory _threadFactory =
+        new DaemonThreadFactory("analyzer");
+
+    private boolean _isRunning = false;
+    private Batch _pending = null;
+
+    /**
+     * Number of batches that were submitted and whose results weren't
+     * delivered yet.
+     */
+    private int _inFlight = 0;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * @param capacity
+     *   Maximal number of batches that are processed and not delivered yet.
+     * @param batchSize
+     *   Number of parsed data in a batch.
+     */
+    public AnalyzerGraph(int capacity, int batchSize)
+    {
+        if (capacity <= 0 || batchSize <= 0)
+        {
+            throw new IllegalArgumentException("capacity = " + capacity
+                + ", batchSize = " + batchSize);
+        }
+
+        _capacity = capacity;
+        _batchSize = batchSize;
+    }
+
+    public AnalyzerGraph()
+    {
+        this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Add branch whose results are passed to callbacks of the graph.
+     */
+    public void addBranch(IAnalyzer analyzer)
+    {
+        addBranch(analyzer, null);
+    }
+
+    /**
+     * Add branch whose results are passed only to specified callback.
+     *
+     * Branches can be added only before analysis starts or after the end of
+     * input.
+     *
+     * @param analyzer
+     *   Analyzer of the branch, it must not be used by anyone else.
+     * @param callback
+     *   Callback that receives results of the branch, or <code>null</code>
+     *   if they should go to callbacks of the graph.
+     */
+    public void addBranch(IAnalyzer analyzer,
+        ICallback<IOutputMessage> callback)
+    {
+        if (analyzer == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (_isRunning)
+        {
+            throw new IllegalStateException(
+                "Branch can not be added during analysis.");
+        }
+
+        _branches.add(new Branch(analyzer,
+            callback == null ? null : BatchCallbackAdapter.adapt(callback)));
+    }
+
+    public int getBranchCount()
+    {
+        return _branches.size();
+    }
+
+    /**
+     * Whether branch threads are running, i.e. analysis started and the end
+     * of input wasn't reached yet.
+     */
+    public boolean isRunning()
+    {
+        return _isRunning;
+    }
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private void start()
+    {
+        if (_branches.isEmpty())
+        {
+            throw new IllegalStateException("Graph has no branches.");
+        }
+
+        for (Branch branch : _branches)
+        {
+            // Input queue has room for the end of input as well.
+            branch.inputs = new SpscRingBuffer<>(_capacity + 1);
+            branch.outputs = new SpscRingBuffer<>(_capacity);
+            branch.ready = null;
+            branch.thread = _threadFactory.newThread(branch);
+            branch.thread.start();
+        }
+
+        _isRunning = true;
+        _inFlight = 0;
+    }
+
+    private void add(ParsedData parsedData)
+    {
+        if (!_isRunning)
+        {
+            start();
+        }
+
+        if (_pending == null)
+        {
+            _pending = new Batch(_batchSize);
+        }
+
+        _pending.items[_pending.length++] = parsedData.retain();
+
+        if (_pending.length == _batchSize)
+        {
+            submit();
+        }
+    }
+
+    /**
+     * Pass collected parsed data to all branches and deliver results that
+     * are already available.
+     */
+    private void submit()
+    {
+        if (_pending == null)
+        {
+            return;
+        }
+
+        while (_inFlight >= _capacity)
+        {
+            deliverOldest(true);
+        }
+
+        for (Branch branch : _branches)
+        {
+            put(branch.inputs, _pending);
+        }
+
+        _pending = null;
+        _inFlight++;
+
+        while (_inFlight > 0 && deliverOldest(false))
+        {
+            // Deliver as much as possible without waiting.
+        }
+    }
+
+    /**
+     * Deliver results of the oldest batch, once all branches processed it.
+     *
+     * @param isBlocking
+     *   Wait for branches that didn't finish yet.
+     *
+     * @return
+     *   <code>false</code> if results aren't ready and isBlocking is
+     *   <code>false</code>.
+     */
+    private boolean deliverOldest(boolean isBlocking)
+    {
+        for (Branch branch : _branches)
+        {
+            if (branch.ready == null)
+            {
+                branch.ready = isBlocking
+                    ? take(branch.outputs)
+                    : branch.outputs.poll();
+
+                if (branch.ready == null)
+                {
+                    return false;
+                }
+            }
+        }
+
+        _inFlight--;
+
+        for (Branch branch : _branches)
+        {
+            if (branch.ready.error != null)
+            {
+                abort(branch.ready.error);
+            }
+        }
+
+        for (Branch branch : _branches)
+        {
+            Output output = branch.ready;
+
+            branch.ready = null;
+            deliver(branch, output.messages);
+        }
+
+        return true;
+    }
+
+    private void deliver(Branch branch, List<IOutputMessage> messages)
+    {
+        if (messages.isEmpty())
+        {
+            return;
+        }
+
+        IOutputMessage[] batch =
+            messages.toArray(new IOutputMessage[messages.size()]);
+
+        if (branch.target == null)
+        {
+            _callbacksManager.runCallbacks(batch, 0, batch.length);
+        }
+        else
+        {
+            branch.target.runBatchCallback(batch, 0, batch.length);
+        }
+    }
+
+    /**
+     * Deliver results of all submitted batches.
+     */
+    private void drain()
+    {
+        submit();
+
+        while (_inFlight > 0)
+        {
+            deliverOldest(true);
+        }
+    }
+
+    /**
+     * Deliver all results and stop branch threads.
+     */
+    private void stop()
+    {
+        drain();
+
+        for (Branch branch : _branches)
+        {
+            put(branch.inputs, _END);
+        }
+
+        join();
+    }
+
+    /**
+     * Stop branch threads, without delivering results, and rethrow error of
+     * a branch.
+     */
+    private void abort(Throwable error)
+    {
+        for (Branch branch : _branches)
+        {
+            // Branches that failed, or will fail, keep taking batches, so
+            // there is always room.
+            branch.inputs.offer(_END);
+        }
+
+        try
+        {
+            join();
+        }
+        catch (IllegalStateException ex)
+        {
+            // Interrupted, error of the branch is reported instead.
+        }
+
+        if (error instanceof Error)
+        {
+            throw (Error)error;
+        }
+
+        throw (RuntimeException)error;
+    }
+
+    /**
+     * Wait for branch threads that were told to end.
+     */
+    private void join()
+    {
+        try
+        {
+            for (Branch branch : _branches)
+            {
+                branch.thread.join();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for analyzer.", ex);
+        }
+        finally
+        {
+            for (Branch branch : _branches)
+            {
+                branch.thread = null;
+                branch.ready = null;
+            }
+
+            _isRunning = false;
+            _pending = null;
+            _inFlight = 0;
+        }
+    }
+
+    private static <T> void put(SpscRingBuffer<T> ring, T element)
+    {
+        try
+        {
+            ring.put(element);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for analyzer.", ex);
+        }
+    }
+
+    private static <T> T take(SpscRingBuffer<T> ring)
+    {
+        try
+        {
+            return ring.take();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for analyzer.", ex);
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Deliver results of all parsed data analyzed so far.
+     *
+     * It's used in incremental mode, when input isn't available at the
+     * moment and results are about to be flushed.
+     */
+    @Override
+    public void flush()
+    {
+        if (_isRunning)
+        {
+            drain();
+        }
+    }
+
+    // {{{ IAnalyzer interface implementation /////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Callback receives results of branches that don't have their own.
+     */
+    @Override
+    public void registerCallback(ICallback<IOutputMessage> callback)
+    {
+        _callbacksManager.registerCallback(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void analyze(ParsedData parsedData)
+    {
+        if (parsedData == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        add(parsedData);
+
+        if (parsedData.getType() == ParsedData.Type.EMPTY_MESSAGE)
+        {
+            stop();
+        }
+    }
+
+    // }}} IAnalyzer interface implementation /////////////////////////////////
+
+    // {{{ IBatchCallback<ParsedData> interface implementation ////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runCallback(ParsedData parsedData)
+    {
+        analyze(parsedData);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runBatchCallback(ParsedData[] batch, int offset, int length)
+    {
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            analyze(batch[i]);
+        }
+    }
+
+    // }}} IBatchCallback<ParsedData> interface implementation ////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Results of all parsed data analyzed so far are delivered first, state
+     * consists of states of all branches, if they implement ICheckpointable.
+     */
+    @Override
+    public Serializable saveState()
+    {
+        flush();
+
+        Serializable[] state = new Serializable[_branches.size()];
+
+        for (int i = 0; i < state.length; i++)
+        {
+            IAnalyzer analyzer = _branches.get(i).analyzer;
+
+            state[i] = analyzer instanceof ICheckpointable
+                ? ((ICheckpointable)analyzer).saveState()
+                : null;
+        }
+
+        return state;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        if (!(state instanceof Serializable[])
+            || ((Serializable[])state).length != _branches.size())
+        {
+            throw new IllegalArgumentException("state");
+        }
+
+        flush();
+
+        for (int i = 0; i < _branches.size(); i++)
+        {
+            IAnalyzer analyzer = _branches.get(i).analyzer;
+
+            if (analyzer instanceof ICheckpointable)
+            {
+                ((ICheckpointable)analyzer).restoreState(
+                    ((Serializable[])state)[i]);
+            }
+        }
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
+
+    // {{{ IStraceSyscallSubscriber interface implementation //////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Union of syscalls of all branches, or <code>null</code> if any of
+     * them doesn't declare them.
+     */
+    @Override
+    public Set<StraceSyscallParsedData.Syscall> getSubscribedSyscalls()
+    {
+        if (_branches.isEmpty())
+        {
+            return null;
+        }
+
+        Set<StraceSyscallParsedData.Syscall> ret =
+            EnumSet.noneOf(StraceSyscallParsedData.Syscall.class);
+
+        for (Branch branch : _branches)
+        {
+            Set<StraceSyscallParsedData.Syscall> syscalls =
+                branch.analyzer instanceof IStraceSyscallSubscriber
+                    ? ((IStraceSyscallSubscriber)branch.analyzer)
+                        .getSubscribedSyscalls()
+                    : null;
+
+            if (syscalls == null)
+            {
+                return null;
+            }
+
+            ret.addAll(syscalls);
+        }
+
+        return ret;
+    }
+
+    // }}} IStraceSyscallSubscriber interface implementation //////////////////
+
+    // {{{ IPooledDataConsumer interface implementation ///////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Parsed data are handed over to other threads, therefore they are never
+     * pooled.
+     */
+    @Override
+    public boolean acceptsPooledData()
+    {
+        return false;
+    }
+
+    // }}} IPooledDataConsumer interface implementation ///////////////////////
+
+    // {{{ IParseErrorCounter interface implementation ////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * All branches receive the same parsed data, therefore all of them have
+     * to only count parse errors.
+     */
+    @Override
+    public boolean countsParseErrors()
+    {
+        if (_branches.isEmpty())
+        {
+            return false;
+        }
+
+        for (Branch branch : _branches)
+        {
+            if (!(branch.analyzer instanceof IParseErrorCounter)
+                || !((IParseErrorCounter)branch.analyzer)
+                    .countsParseErrors())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // }}} IParseErrorCounter interface implementation ////////////////////////
+}
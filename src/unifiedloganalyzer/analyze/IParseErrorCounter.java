@@ -0,0 +1,22 @@
+package unifiedloganalyzer.analyze;
+
+
+/**
+ * Interface for analyzers that only count parse errors, e.g. in their
+ * statistics, and don't report them otherwise.
+ *
+ * ParseErrorAggregator passes parse errors on to such analyzer, so that its
+ * count stays correct, instead of only summarizing them.
+ *
+ * @author Peter Trsko
+ */
+public interface IParseErrorCounter
+{
+    /**
+     * Check if parse errors may be passed to this analyzer.
+     *
+     * @return
+     *   <code>true</code> if this analyzer only counts parse errors.
+     */
+    boolean countsParseErrors();
+}
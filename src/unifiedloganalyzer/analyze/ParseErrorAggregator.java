@@ -0,0 +1,517 @@
+package unifiedloganalyzer.analyze;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.IParsedData;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.parse.IPooledDataConsumer;
+import unifiedloganalyzer.parse.ParseError;
+import unifiedloganalyzer.parse.strace.IStraceSyscallSubscriber;
+import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
+import unifiedloganalyzer.utils.CStringLiteral;
+import unifiedloganalyzer.utils.CallbacksManager;
+import unifiedloganalyzer.utils.ICheckpointable;
+
+
+/**
+ * Analyzer that takes parse errors out of the stream of parsed data and
+ * reports only their summary, the rest is passed to another analyzer.
+ *
+ * Errors are grouped by signature of their original message, see
+ * signature(). Each group keeps number of its errors and only first few of
+ * them as samples, shortened if they are too long. Number of groups is
+ * limited too, errors that don't fit in to any of them are only counted,
+ * therefore memory use doesn't depend on number of errors.
+ *
+ * Analyzer that only counts parse errors, e.g. in its statistics, gets
+ * them as well, see IParseErrorCounter, so that its count stays correct.
+ *
+ * Summary is reported after the other analyzer processes EMPTY_MESSAGE,
+ * which parser sends at the end of input, and only if there were any
+ * errors. Then it starts over.
+ *
+ * Like AnalysisChain, it passes checkpoints, subscribed syscalls, support of
+ * pooled parsed data and flushing through to the other analyzer.
+ *
+ * @author Peter Trsko
+ */
+public class ParseErrorAggregator
+    implements IAnalyzer, ICheckpointable, IStraceSyscallSubscriber,
+        IPooledDataConsumer, Flushable
+{
+    public static final int DEFAULT_MAX_GROUPS = 256;
+
+    /**
+     * Signatures are built from at most this many characters.
+     */
+    private static final int _MAX_SIGNATURE_LENGTH = 64;
+
+    /**
+     * Samples are truncated to this many characters.
+     */
+    private static final int _MAX_SAMPLE_LENGTH = 256;
+
+    // {{{ Nested types ///////////////////////////////////////////////////////
+
+    /**
+     * Errors with the same signature.
+     */
+    private static class Group implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final String signature;
+        public final String error;
+        public final List<String> samples = new ArrayList<>();
+        public long count = 0;
+
+        public Group(String signature, String error)
+        {
+            this.signature = signature;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Errors seen since the last summary.
+     */
+    private static class State implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final Map<String, Group> groups = new LinkedHashMap<>();
+        public long count = 0;
+        public long ungroupedCount = 0;
+    }
+
+    /**
+     * Summary of parse errors, groups are ordered by number of errors, most
+     * frequent first.
+     */
+    public static class Summary implements IOutputMessage
+    {
+        private final List<Group> _groups;
+        private final long _count;
+        private final long _ungroupedCount;
+
+        private Summary(State state)
+        {
+            _groups = new ArrayList<>(state.groups.values());
+            _count = state.count;
+            _ungroupedCount = state.ungroupedCount;
+
+            // Stable, groups with the same count stay in order of their
+            // first error.
+            Collections.sort(_groups, new Comparator<Group>()
+                {
+                    @Override
+                    public int compare(Group a, Group b)
+                    {
+                        return Long.compare(b.count, a.count);
+                    }
+                });
+        }
+
+        /**
+         * Number of all parse errors.
+         */
+        public long getCount()
+        {
+            return _count;
+        }
+
+        /**
+         * Number of parse errors that didn't fit in to any group.
+         */
+        public long getUngroupedCount()
+        {
+            return _ungroupedCount;
+        }
+
+        public int getGroupCount()
+        {
+            return _groups.size();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void appendTo(Appendable buff) throws IOException
+        {
+            buff.append(this.getClass().getName()).append(':')
+                .append("\n{ parseErrors = ")
+                    .append(Long.toString(_count))
+                .append("\n, ungrouped = ")
+                    .append(Long.toString(_ungroupedCount))
+                .append("\n, groups =");
+
+            if (_groups.isEmpty())
+            {
+                buff.append(" []");
+            }
+
+            for (int i = 0; i < _groups.size(); i++)
+            {
+                Group group = _groups.get(i);
+
+                buff.append(i == 0 ? "\n  [ " : "\n  , ")
+                    .append("{ signature = ");
+                CStringLiteral.appendEscaped(buff, group.signature);
+                buff.append("\n    , count = ")
+                        .append(Long.toString(group.count))
+                    .append("\n    , error = ")
+                        .append(group.error)
+                    .append("\n    , samples =");
+
+                if (group.samples.isEmpty())
+                {
+                    buff.append(" []");
+                }
+
+                for (int j = 0; j < group.samples.size(); j++)
+                {
+                    buff.append(j == 0 ? "\n      [ " : "\n      , ");
+                    CStringLiteral.appendEscaped(buff, group.samples.get(j));
+                }
+
+                if (!group.samples.isEmpty())
+                {
+                    buff.append("\n      ]");
+                }
+                buff.append("\n    }");
+            }
+
+            if (!_groups.isEmpty())
+            {
+                buff.append("\n  ]");
+            }
+            buff.append("\n}");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean messageEquals(IOutputMessage message)
+        {
+            return message instanceof Summary && this.equals(message);
+        }
+    }
+
+    // }}} Nested types ///////////////////////////////////////////////////////
+
+    private final IAnalyzer _analyzer;
+    private final int _maxSamples;
+    private final int _maxGroups;
+    private final CallbacksManager<IOutputMessage> _callbacksManager =
+        new CallbacksManager<>();
+
+    private State _state = new State();
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * @param analyzer
+     *   Analyzer that receives everything except parse errors.
+     * @param maxSamples
+     *   Number of errors kept as samples of each group.
+     * @param maxGroups
+     *   Maximal number of groups.
+     */
+    public ParseErrorAggregator(IAnalyzer analyzer, int maxSamples,
+        int maxGroups)
+    {
+        if (analyzer == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (maxSamples < 0 || maxGroups < 0)
+        {
+            throw new IllegalArgumentException("maxSamples = " + maxSamples
+                + ", maxGroups = " + maxGroups);
+        }
+
+        _analyzer = analyzer;
+        _maxSamples = maxSamples;
+        _maxGroups = maxGroups;
+    }
+
+    public ParseErrorAggregator(IAnalyzer analyzer, int maxSamples)
+    {
+        this(analyzer, maxSamples, DEFAULT_MAX_GROUPS);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Structural signature of a message that failed to parse.
+     *
+     * Numbers, including hexadecimal ones, are replaced by <code>#</code>,
+     * content of string literals is dropped and runs of spaces are
+     * collapsed. Signature ends after the first opening parenthesis, since
+     * arguments of a syscall differ from message to message, or after
+     * _MAX_SIGNATURE_LENGTH characters.
+     *
+     * @param message
+     *   Original message.
+     *
+     * @return
+     *   Signature, e.g. <code>[pid #] foo(</code> for
+     *   <code>[pid 123] foo("bar", 0x10) = 0 bad</code>.
+     */
+    public static String signature(CharSequence message)
+    {
+        StringBuilder buff = new StringBuilder();
+        int length = Math.min(message.length(), _MAX_SIGNATURE_LENGTH);
+
+        for (int i = 0; i < length; i++)
+        {
+            char ch = message.charAt(i);
+
+            if (ch >= '0' && ch <= '9')
+            {
+                while (i + 1 < length && isNumberChar(message.charAt(i + 1)))
+                {
+                    i++;
+                }
+                buff.append('#');
+            }
+            else if (ch == '"')
+            {
+                // Closing quote is the first one that isn't escaped.
+                for (i++; i < length && message.charAt(i) != '"'; i++)
+                {
+                    if (message.charAt(i) == '\\')
+                    {
+                        i++;
+                    }
+                }
+                buff.append("\"\"");
+            }
+            else if (ch == ' ')
+            {
+                while (i + 1 < length && message.charAt(i + 1) == ' ')
+                {
+                    i++;
+                }
+                buff.append(' ');
+            }
+            else
+            {
+                buff.append(ch);
+
+                if (ch == '(')
+                {
+                    break;
+                }
+            }
+        }
+
+        return buff.toString();
+    }
+
+    private static boolean isNumberChar(char ch)
+    {
+        return (ch >= '0' && ch <= '9')
+            || (ch >= 'a' && ch <= 'f')
+            || (ch >= 'A' && ch <= 'F')
+            || ch == 'x' || ch == '.';
+    }
+
+    private void aggregate(IParsedData parsedData)
+    {
+        String message = parsedData.getOriginalMessage();
+
+        if (message == null)
+        {
+            message = "";
+        }
+
+        String signature = signature(message);
+        Group group = _state.groups.get(signature);
+
+        _state.count++;
+
+        if (group == null)
+        {
+            if (_state.groups.size() >= _maxGroups)
+            {
+                _state.ungroupedCount++;
+
+                return;
+            }
+
+            group = new Group(signature, parsedData instanceof ParseError
+                ? ((ParseError)parsedData).getError()
+                : null);
+            _state.groups.put(signature, group);
+        }
+
+        group.count++;
+
+        if (group.samples.size() < _maxSamples)
+        {
+            group.samples.add(message.length() > _MAX_SAMPLE_LENGTH
+                ? message.substring(0, _MAX_SAMPLE_LENGTH) + "..."
+                : message);
+        }
+    }
+
+    // {{{ IAnalyzer interface implementation /////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Callback is registered with the other analyzer as well.
+     */
+    @Override
+    public void registerCallback(ICallback<IOutputMessage> callback)
+    {
+        _analyzer.registerCallback(callback);
+        _callbacksManager.registerCallback(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void analyze(ParsedData parsedData)
+    {
+        if (parsedData == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        switch (parsedData.getType())
+        {
+            case PARSE_ERROR:
+                aggregate(parsedData.getData());
+
+                if (_analyzer instanceof IParseErrorCounter
+                    && ((IParseErrorCounter)_analyzer).countsParseErrors())
+                {
+                    _analyzer.analyze(parsedData);
+                }
+                break;
+
+            case EMPTY_MESSAGE:
+                _analyzer.analyze(parsedData);
+
+                if (_state.count > 0)
+                {
+                    Summary summary = new Summary(_state);
+
+                    _state = new State();
+                    _callbacksManager.runCallbacks(summary);
+                }
+                break;
+
+            default:
+                _analyzer.analyze(parsedData);
+                break;
+        }
+    }
+
+    // }}} IAnalyzer interface implementation /////////////////////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Serializable saveState()
+    {
+        return new Serializable[]
+            {
+                _analyzer instanceof ICheckpointable
+                    ? ((ICheckpointable)_analyzer).saveState()
+                    : null,
+                _state
+            };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        if (!(state instanceof Serializable[])
+            || ((Serializable[])state).length != 2
+            || !(((Serializable[])state)[1] instanceof State))
+        {
+            throw new IllegalArgumentException("state");
+        }
+
+        if (_analyzer instanceof ICheckpointable)
+        {
+            ((ICheckpointable)_analyzer).restoreState(
+                ((Serializable[])state)[0]);
+        }
+
+        _state = (State)((Serializable[])state)[1];
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
+
+    // {{{ IStraceSyscallSubscriber interface implementation //////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<StraceSyscallParsedData.Syscall> getSubscribedSyscalls()
+    {
+        return _analyzer instanceof IStraceSyscallSubscriber
+            ? ((IStraceSyscallSubscriber)_analyzer).getSubscribedSyscalls()
+            : null;
+    }
+
+    // }}} IStraceSyscallSubscriber interface implementation //////////////////
+
+    // {{{ IPooledDataConsumer interface implementation ///////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsPooledData()
+    {
+        return _analyzer instanceof IPooledDataConsumer
+            && ((IPooledDataConsumer)_analyzer).acceptsPooledData();
+    }
+
+    // }}} IPooledDataConsumer interface implementation ///////////////////////
+
+    // {{{ Flushable interface implementation /////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (_analyzer instanceof Flushable)
+        {
+            ((Flushable)_analyzer).flush();
+        }
+    }
+
+    // }}} Flushable interface implementation /////////////////////////////////
+}
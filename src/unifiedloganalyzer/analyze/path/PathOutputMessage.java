@@ -1,10 +1,12 @@
 package unifiedloganalyzer.analyze.path;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.utils.CStringLiteral;
 import unifiedloganalyzer.utils.IHasPath;
 import unifiedloganalyzer.utils.IHasTags;
 import unifiedloganalyzer.utils.Tag;
@@ -13,10 +15,16 @@ import unifiedloganalyzer.utils.Tag;
 /**
  * Analysis result that has as its main purpose pass file path allong.
  *
+ * It's serializable, so that a message that is still being counted by
+ * FileSink can be stored in a checkpoint.
+ *
  * @author Peter Trsko
  */
-public class PathOutputMessage implements IOutputMessage, IHasPath, IHasTags
+public class PathOutputMessage
+    implements IOutputMessage, IHasPath, IHasTags, Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     private String _path;
     private List<Tag> _tags;
 
@@ -108,9 +116,10 @@ public class PathOutputMessage implements IOutputMessage, IHasPath, IHasTags
     @Override
     public void appendTo(Appendable buff) throws IOException
     {
-        buff.append("{path=\"")
-            .append(_path)
-            .append("\", tags=[");
+        // Path is decoded and may contain double quotes or line terminators.
+        buff.append("{path=\"");
+        CStringLiteral.appendEscaped(buff, _path);
+        buff.append("\", tags=[");
 
         boolean isFirstTag = true;
         for (Tag tag : _tags)
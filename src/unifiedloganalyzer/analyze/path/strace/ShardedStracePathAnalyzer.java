@@ -0,0 +1,1014 @@
+package unifiedloganalyzer.analyze.path.strace;
+
+import java.io.Flushable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IBatchCallback;
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.IParsedData;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.analyze.IParseErrorCounter;
+import unifiedloganalyzer.parse.IPooledDataConsumer;
+import unifiedloganalyzer.parse.strace.IStraceSyscallSubscriber;
+import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
+import unifiedloganalyzer.utils.CallbacksManager;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+import unifiedloganalyzer.utils.ICheckpointable;
+import unifiedloganalyzer.utils.IHasPid;
+import unifiedloganalyzer.utils.IntObjectHashMap;
+import unifiedloganalyzer.utils.SpscRingBuffer;
+
+
+/**
+ * StracePathAnalyzer split in to shards that analyse disjoint process trees
+ * in parallel, each on its own thread.
+ *
+ * Process is bound to a shard for as long as process model of
+ * StracePathAnalyzer would contain it. Root of a process tree, i.e. process
+ * that appears without being forked, is bound to the next shard in round
+ * robin order, forked child is bound to the shard of its parent, so that it
+ * inherits its working directory, and binding ends when process exits.
+ * Root that turns out to be a child, because its fork was reported after its
+ * first syscall, is moved to the shard of its parent once all messages
+ * routed so far are analysed.
+ * Messages of a process are analysed by its shard, messages of processes
+ * that aren't bound affect only statistics and are analysed by the first
+ * shard. Analysis therefore scales with the number of independent process
+ * trees in the input.
+ *
+ * Results are delivered on the thread that calls analyze() in the same order
+ * as StracePathAnalyzer would produce them, statistics of shards are merged
+ * in to one. Results are the same as those of StracePathAnalyzer.
+ *
+ * Parsed data are collected in to batches, at most capacity batches are
+ * processed and not delivered yet. EMPTY_MESSAGE, which parser sends at the
+ * end of input, is analysed by all shards, then all results are delivered
+ * and shard threads are stopped, see AnalyzerGraph.
+ *
+ * @author Peter Trsko
+ */
+public class ShardedStracePathAnalyzer
+    implements IAnalyzer, IBatchCallback<ParsedData>, ICheckpointable,
+        IStraceSyscallSubscriber, IPooledDataConsumer, IParseErrorCounter,
+        Flushable
+{
+    /**
+     * Default number of batches that are processed and not delivered yet.
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Default number of parsed data in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Route of messages that are analysed by all shards.
+     */
+    private static final int _ALL_SHARDS = -1;
+
+    // {{{ Nested types ///////////////////////////////////////////////////////
+
+    private static class Batch
+    {
+        public final ParsedData[] items;
+
+        /**
+         * Index of shard that analyses each item, or _ALL_SHARDS.
+         */
+        public final int[] routes;
+
+        public int length = 0;
+
+        /**
+         * Shards report their statistics after this batch.
+         */
+        public boolean isSnapshot = false;
+
+        public Batch(int size)
+        {
+            items = new ParsedData[size];
+            routes = new int[size];
+        }
+    }
+
+    private static final Batch _END = new Batch(0);
+
+    /**
+     * Results of one shard for one batch, each tagged with index of the item
+     * that produced it.
+     */
+    private static class Output
+    {
+        public IOutputMessage[] messages = new IOutputMessage[16];
+        public int[] indices = new int[16];
+        public int length = 0;
+        public Statistics snapshot = null;
+        public Throwable error = null;
+
+        /**
+         * Position of the next message to deliver, used by thread that calls
+         * analyze().
+         */
+        public int cursor = 0;
+
+        public void add(IOutputMessage message, int index)
+        {
+            if (length == messages.length)
+            {
+                messages = Arrays.copyOf(messages, 2 * length);
+                indices = Arrays.copyOf(indices, 2 * length);
+            }
+
+            messages[length] = message;
+            indices[length] = index;
+            length++;
+        }
+    }
+
+    private static class Shard implements Runnable, ICallback<IOutputMessage>
+    {
+        public final int index;
+        public final StracePathAnalyzer analyzer;
+
+        public SpscRingBuffer<Batch> inputs = null;
+        public SpscRingBuffer<Output> outputs = null;
+        public Thread thread = null;
+
+        /**
+         * Results of the oldest batch that wasn't delivered yet, used only
+         * by thread that calls analyze().
+         */
+        public Output ready = null;
+
+        // Used only by shard thread.
+        private Output _current = null;
+        private int _item = 0;
+
+        public Shard(int index, StracePathAnalyzer analyzer)
+        {
+            this.index = index;
+            this.analyzer = analyzer;
+            analyzer.registerCallback(this);
+        }
+
+        @Override
+        public void run()
+        {
+            Throwable error = null;
+
+            try
+            {
+                for (Batch batch = inputs.take(); batch != _END;
+                    batch = inputs.take())
+                {
+                    Output output = new Output();
+
+                    if (error == null)
+                    {
+                        _current = output;
+
+                        try
+                        {
+                            analyze(batch);
+                        }
+                        catch (RuntimeException | Error ex)
+                        {
+                            error = ex;
+                        }
+                        _current = null;
+                    }
+
+                    output.error = error;
+                    outputs.put(output);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                // Analyzer was abandoned.
+            }
+        }
+
+        private void analyze(Batch batch)
+        {
+            for (int i = 0; i < batch.length; i++)
+            {
+                if (batch.routes[i] == index
+                    || batch.routes[i] == _ALL_SHARDS)
+                {
+                    _item = i;
+                    analyzer.analyze(batch.items[i]);
+                }
+            }
+
+            if (batch.isSnapshot)
+            {
+                _current.snapshot = analyzer.getStatistics().snapshot();
+            }
+        }
+
+        @Override
+        public void runCallback(IOutputMessage message)
+        {
+            if (_current == null)
+            {
+                throw new IllegalStateException(
+                    "Analyzer produced result outside of analysis.");
+            }
+
+            // Statistics are reported at the end of input as they are and
+            // analysis goes on after that.
+            _current.add(message instanceof Statistics
+                ? ((Statistics)message).snapshot()
+                : message, _item);
+        }
+    }
+
+    /**
+     * State stored in checkpoints.
+     */
+    private static class State implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final IntObjectHashMap<Integer> bindings;
+        public final IntObjectHashMap<Boolean> roots;
+        public final int nextShard;
+        public final boolean isFirstSyscall;
+        public final Serializable[] shards;
+
+        public State(IntObjectHashMap<Integer> bindings,
+            IntObjectHashMap<Boolean> roots, int nextShard,
+            boolean isFirstSyscall, Serializable[] shards)
+        {
+            this.bindings = bindings;
+            this.roots = roots;
+            this.nextShard = nextShard;
+            this.isFirstSyscall = isFirstSyscall;
+            this.shards = shards;
+        }
+    }
+
+    // }}} Nested types ///////////////////////////////////////////////////////
+
+    private final Shard[] _shards;
+    private final int _capacity;
+    private final int _batchSize;
+    private final long _snapshotInterval;
+    private final CallbacksManager<IOutputMessage> _callbacksManager =
+        new CallbacksManager<>();
+    private final DaemonThreadFactory _threadFactory =
+        new DaemonThreadFactory("strace-path-shard");
+
+    /**
+     * Shard of each process that process model would contain.
+     */
+    private IntObjectHashMap<Integer> _bindings = new IntObjectHashMap<>();
+
+    /**
+     * Bound processes that process model would contain without parent, i.e.
+     * roots of process trees.
+     */
+    private IntObjectHashMap<Boolean> _roots = new IntObjectHashMap<>();
+
+    /**
+     * Shard of the next root of a process tree.
+     */
+    private int _nextShard = 0;
+
+    /**
+     * No syscall was routed yet, see StracePathAnalyzer.isFirstSyscall().
+     */
+    private boolean _isFirstSyscall = true;
+
+    private boolean _isRunning = false;
+    private Batch _pending = null;
+
+    /**
+     * Batches that were submitted and whose results weren't delivered yet,
+     * oldest at _inFlightHead. Results are merged in order of their items.
+     */
+    private final Batch[] _inFlightBatches;
+    private int _inFlightHead = 0;
+    private int _inFlightTail = 0;
+    private int _inFlight = 0;
+
+    private long _nextSnapshot = 0;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * @param config
+     *   Configuration of StracePathAnalyzer, or <code>null</code> for the
+     *   default one. In incremental mode merged statistics of all shards are
+     *   reported after a batch once snapshot interval elapsed.
+     * @param shards
+     *   Number of shards.
+     * @param capacity
+     *   Maximal number of batches that are processed and not delivered yet.
+     * @param batchSize
+     *   Number of parsed data in a batch.
+     */
+    public ShardedStracePathAnalyzer(StracePathAnalyzer.Configuration config,
+        int shards, int capacity, int batchSize)
+    {
+        if (shards <= 0 || capacity <= 0 || batchSize <= 0)
+        {
+            throw new IllegalArgumentException("shards = " + shards
+                + ", capacity = " + capacity + ", batchSize = " + batchSize);
+        }
+
+        if (config == null)
+        {
+            config = StracePathAnalyzer.Configuration.theDefault();
+        }
+
+        _shards = new Shard[shards];
+        _inFlightBatches = new Batch[capacity];
+        _capacity = capacity;
+        _batchSize = batchSize;
+        _snapshotInterval = TimeUnit.MILLISECONDS.toNanos(
+            config.getSnapshotInterval());
+        _nextSnapshot = System.nanoTime() + _snapshotInterval;
+
+        for (int i = 0; i < shards; i++)
+        {
+            // Snapshots are taken by this class, so that they cover all
+            // shards.
+            StracePathAnalyzer.Configuration shardConfig =
+                StracePathAnalyzer.Configuration.theDefault();
+
+            if (config.shouldPreserveParsedData())
+            {
+                StracePathAnalyzer.Configuration.preserveParsedData(
+                    shardConfig);
+            }
+
+            _shards[i] = new Shard(i, new StracePathAnalyzer(shardConfig));
+        }
+    }
+
+    public ShardedStracePathAnalyzer(StracePathAnalyzer.Configuration config,
+        int shards)
+    {
+        this(config, shards, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    public int getShardCount()
+    {
+        return _shards.length;
+    }
+
+    /**
+     * Whether shard threads are running, i.e. analysis started and the end
+     * of input wasn't reached yet.
+     */
+    public boolean isRunning()
+    {
+        return _isRunning;
+    }
+
+    // {{{ Routing ////////////////////////////////////////////////////////////
+
+    private int bind(int pid, int shard)
+    {
+        _bindings.put(pid, shard);
+
+        return shard;
+    }
+
+    private int bindRoot(int pid)
+    {
+        int shard = _nextShard;
+
+        _nextShard = (_nextShard + 1) % _shards.length;
+        _roots.put(pid, Boolean.TRUE);
+
+        return bind(pid, shard);
+    }
+
+    /**
+     * Move running process to another shard, after all messages routed so
+     * far were analysed, while shard threads are waiting for more.
+     */
+    private void move(int pid, int from, int to)
+    {
+        drain();
+        _shards[to].analyzer.addProcess(
+            _shards[from].analyzer.removeProcess(pid));
+        bind(pid, to);
+    }
+
+    /**
+     * Shard of bound process, or the first shard.
+     */
+    private int shardOf(int pid)
+    {
+        Integer shard = _bindings.get(pid);
+
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Select shard that analyses parsed data and update bindings the same
+     * way as StracePathAnalyzer.analyzeSyscall() updates its process model.
+     */
+    private int route(ParsedData parsedData)
+    {
+        if (parsedData.getType() == ParsedData.Type.EMPTY_MESSAGE)
+        {
+            return _ALL_SHARDS;
+        }
+
+        IParsedData data = parsedData.getData();
+
+        if (!(data instanceof StraceSyscallParsedData))
+        {
+            // Affects only statistics.
+            return data instanceof IHasPid
+                ? shardOf(((IHasPid)data).getPid())
+                : 0;
+        }
+
+        StraceSyscallParsedData syscall = (StraceSyscallParsedData)data;
+        int pid = syscall.getPid();
+        Integer shard = _bindings.get(pid);
+        boolean isFirstSyscall = _isFirstSyscall;
+
+        _isFirstSyscall = false;
+
+        if (shard == null && isFirstSyscall)
+        {
+            shard = bindRoot(pid);
+        }
+
+        boolean isResumed =
+            syscall.getFlag() == StraceSyscallParsedData.Flag.RESUMED_CALL;
+
+        switch (syscall.getSyscall())
+        {
+            case FORK:
+                int childPid = syscall.getChildPid();
+
+                if (childPid == -1)
+                {
+                    break;
+                }
+
+                Integer childShard = _bindings.get(childPid);
+
+                if (childShard == null)
+                {
+                    if (shard == null)
+                    {
+                        shard = bindRoot(pid);
+                    }
+                    bind(childPid, shard);
+                }
+                else if (_roots.remove(childPid) != null)
+                {
+                    // Child is adopted by its parent.
+                    if (shard == null)
+                    {
+                        shard = bindRoot(pid);
+                    }
+
+                    if (childShard.intValue() != shard.intValue())
+                    {
+                        move(childPid, childShard, shard);
+                    }
+                }
+                break;
+
+            case EXIT:
+                if (syscall.hasExitCode())
+                {
+                    _bindings.remove(pid);
+                    _roots.remove(pid);
+                }
+                break;
+
+            case EXEC:
+            case GETCWD:
+            case CHDIR:
+            case CREAT:
+            case OPEN:
+            case OPENAT:
+                if (shard == null && !isResumed)
+                {
+                    shard = bindRoot(pid);
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        return shard == null ? 0 : shard;
+    }
+
+    // }}} Routing ////////////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private void start()
+    {
+        for (Shard shard : _shards)
+        {
+            // Input queue has room for the end of input as well.
+            shard.inputs = new SpscRingBuffer<>(_capacity + 1);
+            shard.outputs = new SpscRingBuffer<>(_capacity);
+            shard.ready = null;
+            shard.thread = _threadFactory.newThread(shard);
+            shard.thread.start();
+        }
+
+        _isRunning = true;
+        _inFlight = 0;
+    }
+
+    private void add(ParsedData parsedData)
+    {
+        if (!_isRunning)
+        {
+            start();
+        }
+
+        // Routing may submit pending batch, see move().
+        int route = route(parsedData);
+
+        if (_pending == null)
+        {
+            _pending = new Batch(_batchSize);
+        }
+
+        _pending.routes[_pending.length] = route;
+        _pending.items[_pending.length++] = parsedData.retain();
+
+        if (_pending.length == _batchSize)
+        {
+            submit();
+        }
+    }
+
+    private void submit()
+    {
+        if (_pending == null)
+        {
+            return;
+        }
+
+        if (_snapshotInterval > 0)
+        {
+            long now = System.nanoTime();
+
+            if (now - _nextSnapshot >= 0)
+            {
+                _pending.isSnapshot = true;
+                _nextSnapshot = now + _snapshotInterval;
+            }
+        }
+
+        while (_inFlight >= _capacity)
+        {
+            deliverOldest(true);
+        }
+
+        for (Shard shard : _shards)
+        {
+            put(shard.inputs, _pending);
+        }
+
+        _inFlightBatches[_inFlightTail] = _pending;
+        _inFlightTail = (_inFlightTail + 1) % _inFlightBatches.length;
+        _inFlight++;
+        _pending = null;
+
+        while (_inFlight > 0 && deliverOldest(false))
+        {
+            // Deliver as much as possible without waiting.
+        }
+    }
+
+    private boolean deliverOldest(boolean isBlocking)
+    {
+        for (Shard shard : _shards)
+        {
+            if (shard.ready == null)
+            {
+                shard.ready = isBlocking
+                    ? take(shard.outputs)
+                    : shard.outputs.poll();
+
+                if (shard.ready == null)
+                {
+                    return false;
+                }
+            }
+        }
+
+        for (Shard shard : _shards)
+        {
+            if (shard.ready.error != null)
+            {
+                abort(shard.ready.error);
+            }
+        }
+
+        Batch batch = _inFlightBatches[_inFlightHead];
+
+        _inFlightBatches[_inFlightHead] = null;
+        _inFlightHead = (_inFlightHead + 1) % _inFlightBatches.length;
+        _inFlight--;
+
+        Output[] outputs = new Output[_shards.length];
+
+        for (int i = 0; i < _shards.length; i++)
+        {
+            outputs[i] = _shards[i].ready;
+            _shards[i].ready = null;
+        }
+
+        deliver(batch, outputs);
+
+        return true;
+    }
+
+    /**
+     * Deliver results of shards in order of items that produced them.
+     */
+    private void deliver(Batch batch, Output[] outputs)
+    {
+        int count = 1;
+
+        for (Output output : outputs)
+        {
+            count += output.length;
+        }
+
+        IOutputMessage[] messages = new IOutputMessage[count];
+        int length = 0;
+
+        for (int i = 0; i < batch.length; i++)
+        {
+            if (batch.routes[i] != _ALL_SHARDS)
+            {
+                Output output = outputs[batch.routes[i]];
+
+                while (output.cursor < output.length
+                    && output.indices[output.cursor] == i)
+                {
+                    messages[length++] = output.messages[output.cursor++];
+                }
+
+                continue;
+            }
+
+            Statistics statistics = null;
+
+            for (Output output : outputs)
+            {
+                while (output.cursor < output.length
+                    && output.indices[output.cursor] == i)
+                {
+                    IOutputMessage message =
+                        output.messages[output.cursor++];
+
+                    if (message instanceof Statistics)
+                    {
+                        statistics = merge(statistics, (Statistics)message);
+                    }
+                    else
+                    {
+                        messages[length++] = message;
+                    }
+                }
+            }
+
+            if (statistics != null)
+            {
+                messages[length++] = statistics;
+            }
+        }
+
+        if (batch.isSnapshot)
+        {
+            Statistics statistics = null;
+
+            for (Output output : outputs)
+            {
+                statistics = merge(statistics, output.snapshot);
+            }
+            messages[length++] = statistics;
+        }
+
+        if (length > 0)
+        {
+            _callbacksManager.runCallbacks(messages, 0, length);
+        }
+    }
+
+    private static Statistics merge(Statistics merged, Statistics statistics)
+    {
+        if (merged == null)
+        {
+            merged = new Statistics();
+        }
+        merged.add(statistics);
+
+        return merged;
+    }
+
+    private void drain()
+    {
+        submit();
+
+        while (_inFlight > 0)
+        {
+            deliverOldest(true);
+        }
+    }
+
+    private void stop()
+    {
+        drain();
+
+        for (Shard shard : _shards)
+        {
+            put(shard.inputs, _END);
+        }
+
+        join();
+    }
+
+    /**
+     * Stop shard threads, without delivering results, and rethrow error of
+     * a shard.
+     */
+    private void abort(Throwable error)
+    {
+        for (Shard shard : _shards)
+        {
+            // Shards that failed, or will fail, keep taking batches, so
+            // there is always room.
+            shard.inputs.offer(_END);
+        }
+
+        try
+        {
+            join();
+        }
+        catch (IllegalStateException ex)
+        {
+            // Interrupted, error of the shard is reported instead.
+        }
+
+        if (error instanceof Error)
+        {
+            throw (Error)error;
+        }
+
+        throw (RuntimeException)error;
+    }
+
+    /**
+     * Wait for shard threads that were told to end.
+     */
+    private void join()
+    {
+        try
+        {
+            for (Shard shard : _shards)
+            {
+                shard.thread.join();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for analyzer.", ex);
+        }
+        finally
+        {
+            for (Shard shard : _shards)
+            {
+                shard.thread = null;
+                shard.ready = null;
+            }
+
+            Arrays.fill(_inFlightBatches, null);
+            _inFlightHead = 0;
+            _inFlightTail = 0;
+            _isRunning = false;
+            _pending = null;
+            _inFlight = 0;
+        }
+    }
+
+    private static <T> void put(SpscRingBuffer<T> ring, T element)
+    {
+        try
+        {
+            ring.put(element);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for analyzer.", ex);
+        }
+    }
+
+    private static <T> T take(SpscRingBuffer<T> ring)
+    {
+        try
+        {
+            return ring.take();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for analyzer.", ex);
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Deliver results of all parsed data analyzed so far.
+     */
+    @Override
+    public void flush()
+    {
+        if (_isRunning)
+        {
+            drain();
+        }
+    }
+
+    // {{{ IAnalyzer interface implementation /////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerCallback(ICallback<IOutputMessage> callback)
+    {
+        _callbacksManager.registerCallback(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void analyze(ParsedData parsedData)
+    {
+        if (parsedData == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        add(parsedData);
+
+        if (parsedData.getType() == ParsedData.Type.EMPTY_MESSAGE)
+        {
+            stop();
+        }
+    }
+
+    // }}} IAnalyzer interface implementation /////////////////////////////////
+
+    // {{{ IBatchCallback<ParsedData> interface implementation ////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runCallback(ParsedData parsedData)
+    {
+        analyze(parsedData);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void runBatchCallback(ParsedData[] batch, int offset, int length)
+    {
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            analyze(batch[i]);
+        }
+    }
+
+    // }}} IBatchCallback<ParsedData> interface implementation ////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Results of all parsed data analyzed so far are delivered first.
+     */
+    @Override
+    public Serializable saveState()
+    {
+        flush();
+
+        Serializable[] shards = new Serializable[_shards.length];
+
+        for (int i = 0; i < shards.length; i++)
+        {
+            shards[i] = _shards[i].analyzer.saveState();
+        }
+
+        return new State(_bindings, _roots, _nextShard, _isFirstSyscall,
+            shards);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        if (!(state instanceof State)
+            || ((State)state).shards.length != _shards.length)
+        {
+            throw new IllegalArgumentException("state");
+        }
+
+        flush();
+
+        State restored = (State)state;
+
+        _bindings = restored.bindings;
+        _roots = restored.roots;
+        _nextShard = restored.nextShard;
+        _isFirstSyscall = restored.isFirstSyscall;
+
+        for (int i = 0; i < _shards.length; i++)
+        {
+            _shards[i].analyzer.restoreState(restored.shards[i]);
+        }
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
+
+    // {{{ IStraceSyscallSubscriber interface implementation //////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<StraceSyscallParsedData.Syscall> getSubscribedSyscalls()
+    {
+        return _shards[0].analyzer.getSubscribedSyscalls();
+    }
+
+    // }}} IStraceSyscallSubscriber interface implementation //////////////////
+
+    // {{{ IPooledDataConsumer interface implementation ///////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Parsed data are handed over to other threads, therefore they are never
+     * pooled.
+     */
+    @Override
+    public boolean acceptsPooledData()
+    {
+        return false;
+    }
+
+    // }}} IPooledDataConsumer interface implementation ///////////////////////
+
+    // {{{ IParseErrorCounter interface implementation ////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Parse errors are only counted in statistics of shards.
+     */
+    @Override
+    public boolean countsParseErrors()
+    {
+        return true;
+    }
+
+    // }}} IParseErrorCounter interface implementation ////////////////////////
+}
@@ -1,6 +1,7 @@
 package unifiedloganalyzer.analyze.path.strace;
 
 import java.io.IOException;
+import java.io.Serializable;
 
 import unifiedloganalyzer.IOutputMessage;
 
@@ -13,8 +14,10 @@ import unifiedloganalyzer.IOutputMessage;
  *
  * @author Peter Trsko
  */
-class Statistics implements IOutputMessage
+class Statistics implements IOutputMessage, Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     public static enum Event
     {
         // {{{ Statistics of messages received by the analyzer. ///////////////
@@ -154,6 +157,73 @@ class Statistics implements IOutputMessage
     private int _pwdEnvVarMissesCount = 0;
     private int _unreportedParsingFailureCount = 0;
 
+    /**
+     * Create a copy of current statistics, which isn't affected by further
+     * updates. Used when statistics are reported before the analysis ends.
+     */
+    public Statistics snapshot()
+    {
+        Statistics copy = new Statistics();
+
+        copy._messageCount = _messageCount;
+        copy._syscallCount = _syscallCount;
+        copy._signalCount = _signalCount;
+        copy._statusChangeCount = _statusChangeCount;
+        copy._parseErrorCount = _parseErrorCount;
+        copy._unknownMessageCount = _unknownMessageCount;
+
+        copy._ignoredSyscallCount = _ignoredSyscallCount;
+        copy._ignoredResumedSyscallCount = _ignoredResumedSyscallCount;
+        copy._forkCount = _forkCount;
+        copy._execCount = _execCount;
+        copy._exitCount = _exitCount;
+        copy._creatCount = _creatCount;
+        copy._openCount = _openCount;
+        copy._getcwdCount = _getcwdCount;
+        copy._chdirCount = _chdirCount;
+
+        copy._getProcessMissesCount = _getProcessMissesCount;
+        copy._terminateProcessMissesCount = _terminateProcessMissesCount;
+        copy._wdMissesCount = _wdMissesCount;
+
+        copy._pwdEnvVarMissesCount = _pwdEnvVarMissesCount;
+        copy._unreportedParsingFailureCount = _unreportedParsingFailureCount;
+
+        return copy;
+    }
+
+    /**
+     * Add statistics of another analysis, used to merge statistics of
+     * analyzers that processed disjoint parts of the same input.
+     */
+    public void add(Statistics other)
+    {
+        _messageCount += other._messageCount;
+        _syscallCount += other._syscallCount;
+        _signalCount += other._signalCount;
+        _statusChangeCount += other._statusChangeCount;
+        _parseErrorCount += other._parseErrorCount;
+        _unknownMessageCount += other._unknownMessageCount;
+
+        _ignoredSyscallCount += other._ignoredSyscallCount;
+        _ignoredResumedSyscallCount += other._ignoredResumedSyscallCount;
+        _forkCount += other._forkCount;
+        _execCount += other._execCount;
+        _exitCount += other._exitCount;
+        _creatCount += other._creatCount;
+        _openCount += other._openCount;
+        _getcwdCount += other._getcwdCount;
+        _chdirCount += other._chdirCount;
+
+        _getProcessMissesCount += other._getProcessMissesCount;
+        _terminateProcessMissesCount += other._terminateProcessMissesCount;
+        _wdMissesCount += other._wdMissesCount;
+
+        _pwdEnvVarMissesCount += other._pwdEnvVarMissesCount;
+        _unreportedParsingFailureCount +=
+            other._unreportedParsingFailureCount;
+    }
+
     public void update(Event event)
     {
         switch (event)
@@ -221,6 +291,11 @@ class Statistics implements IOutputMessage
         }
     }
 
+    public int getMessageCount()
+    {
+        return _messageCount;
+    }
+
     public int getSyscallCount()
     {
         return _syscallCount;
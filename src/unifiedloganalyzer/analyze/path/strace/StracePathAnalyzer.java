@@ -1,12 +1,16 @@
 package unifiedloganalyzer.analyze.path.strace;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.TreeMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 //import java.util.Stack;
 
 import trskop.IAppendTo;
@@ -15,12 +19,17 @@ import trskop.utils.AppendableLike;
 import unifiedloganalyzer.IOutputMessage;
 import unifiedloganalyzer.IParsedData;
 import unifiedloganalyzer.analyze.AAnalyzer;
+import unifiedloganalyzer.analyze.IParseErrorCounter;
 import unifiedloganalyzer.analyze.path.PathCompoundMessage;
 import unifiedloganalyzer.analyze.path.PathOutputMessage;
+import unifiedloganalyzer.parse.IPooledDataConsumer;
+import unifiedloganalyzer.parse.strace.IStraceSyscallSubscriber;
 import unifiedloganalyzer.parse.strace.StraceProcessStatusChangedParsedData;
 import unifiedloganalyzer.parse.strace.StraceSignalParsedData;
 import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
+import unifiedloganalyzer.utils.ICheckpointable;
 import unifiedloganalyzer.utils.IHasPid;
+import unifiedloganalyzer.utils.IntObjectHashMap;
 
 
 /**
@@ -30,16 +39,33 @@ import unifiedloganalyzer.utils.IHasPid;
  * produce absolute paths instead of just stupidly printing path arguments to
  * open calls.
  *
+ * Process model and statistics can be stored in a checkpoint, see
+ * ICheckpointable.
+ *
+ * Only syscalls that affect process model or open files are consumed, other
+ * syscalls are only counted, therefore parser doesn't need to parse them,
+ * see IStraceSyscallSubscriber.
+ *
+ * Parsed data aren't kept, except when they are preserved in output, and
+ * then they are retained, therefore parser can reuse them, see
+ * IPooledDataConsumer.
+ *
  * @author Peter Trsko
  */
 public class StracePathAnalyzer extends AAnalyzer
+    implements ICheckpointable, IStraceSyscallSubscriber, IPooledDataConsumer,
+        IParseErrorCounter
 {
     // {{{ Process model //////////////////////////////////////////////////////
 
-    private static class Process implements IHasPid, IAppendTo
+    private static class Process implements IHasPid, IAppendTo, Serializable
     {
-        private static class OpenedFile
+        private static final long serialVersionUID = 1L;
+
+        private static class OpenedFile implements Serializable
         {
+            private static final long serialVersionUID = 1L;
+
             public String path = null;
             public int openCount = 0;
             public int closeCount = 0;
@@ -165,6 +191,11 @@ public class StracePathAnalyzer extends AAnalyzer
             return _parentPid;
         }
 
+        public void setParentPid(int parentPid)
+        {
+            _parentPid = parentPid;
+        }
+
 
         public String getExecutable()
         {
@@ -279,8 +310,10 @@ public class StracePathAnalyzer extends AAnalyzer
         // }}} IAppendTo //////////////////////////////////////////////////////
     }
 
-    private static class ProcessModel
+    private static class ProcessModel implements Serializable
     {
+        private static final long serialVersionUID = 1L;
+
         /**
          * Reference to analysis statistics.
          *
@@ -293,7 +326,7 @@ public class StracePathAnalyzer extends AAnalyzer
          * Map of running processes with PID as key (process ID) and its state
          * as value.
          */
-        private Map<Integer, Process> _processes = null;
+        private IntObjectHashMap<Process> _processes = null;
 
         /**
          * List of already terminated processes.
@@ -306,7 +339,7 @@ public class StracePathAnalyzer extends AAnalyzer
         public ProcessModel(Statistics statistics)
         {
             _statistics = statistics;
-            _processes = new TreeMap<>();
+            _processes = new IntObjectHashMap<>();
             _terminatedProcesses = new ArrayList<>();
         }
 
@@ -338,21 +371,61 @@ public class StracePathAnalyzer extends AAnalyzer
                 throw new IllegalArgumentException("pid = " + pid);
             }
 
+            Process parent = getOrCreateParent(parentPid);
+            Process child =
+                new Process(pid, parentPid, parent.getWorkingDirectory());
+            child.setWorkingDirectory(parent.getWorkingDirectory());
+
+            _processes.put(pid, child);
+
+            return child;
+        }
+
+        private Process getOrCreateParent(int parentPid)
+        {
             Process parent = getProcess(parentPid);
 
             if (parent == null)
             {
                 parent = new Process(parentPid, null);
-                _processes.put(new Integer(parentPid), parent);
+                _processes.put(parentPid, parent);
             }
 
-            Process child =
-                new Process(pid, parentPid, parent.getWorkingDirectory());
-            child.setWorkingDirectory(parent.getWorkingDirectory());
+            return parent;
+        }
 
-            _processes.put(new Integer(pid), child);
+        /**
+         * Add child of a process to the model.
+         *
+         * Child may have been already seen if the call was unfinished and
+         * then resumed after the child made its first syscall. Such child
+         * was created without parent and it's adopted now, it inherits
+         * working directory of its parent unless it already knows its own.
+         *
+         * @param parentPid
+         *   PID of the process that forked the child.
+         * @param pid
+         *   PID of the child.
+         */
+        private void forkProcess(int parentPid, int pid)
+        {
+            Process child = _processes.get(pid);
 
-            return child;
+            if (child == null)
+            {
+                createProcess(parentPid, pid);
+            }
+            else if (child.getParentPid() == Process.NO_PID)
+            {
+                Process parent = getOrCreateParent(parentPid);
+
+                child.setParentPid(parentPid);
+
+                if (!child.hasWorkingDirectory())
+                {
+                    child.setWorkingDirectory(parent.getWorkingDirectory());
+                }
+            }
         }
 
         /**
@@ -428,13 +501,39 @@ public class StracePathAnalyzer extends AAnalyzer
         }
     }
 
+    /**
+     * State stored in checkpoints. Process model and statistics are stored
+     * together, so that the model still refers to the same statistics after
+     * they are restored.
+     */
+    private static class State implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final ProcessModel model;
+        public final Statistics statistics;
+
+        public State(ProcessModel model, Statistics statistics)
+        {
+            this.model = model;
+            this.statistics = statistics;
+        }
+    }
+
     // {{{ Process model //////////////////////////////////////////////////////
 
     // {{{ Configuration //////////////////////////////////////////////////////
 
     public static class Configuration
     {
+        /**
+         * Default interval, in milliseconds, between statistics snapshots in
+         * incremental mode.
+         */
+        public static final long DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
         private boolean _preserveParsedData = false;
+        private long _snapshotInterval = 0;
 
         public static Configuration theDefault()
         {
@@ -457,18 +556,83 @@ public class StracePathAnalyzer extends AAnalyzer
         {
             return _preserveParsedData;
         }
+
+        /**
+         * Report statistics periodically while analysing, not just at the
+         * end of input. Meant for inputs that are still being written.
+         *
+         * @param config
+         *   Configuration to be modified.
+         * @param snapshotInterval
+         *   Minimal time, in milliseconds, between two statistics snapshots.
+         */
+        public static Configuration incremental(Configuration config,
+            long snapshotInterval)
+        {
+            if (snapshotInterval <= 0)
+            {
+                throw new IllegalArgumentException(
+                    "snapshotInterval = " + snapshotInterval);
+            }
+
+            config._snapshotInterval = snapshotInterval;
+
+            return config;
+        }
+
+        public static Configuration incremental(Configuration config)
+        {
+            return incremental(config, DEFAULT_SNAPSHOT_INTERVAL);
+        }
+
+        public boolean isIncremental()
+        {
+            return _snapshotInterval > 0;
+        }
+
+        public long getSnapshotInterval()
+        {
+            return _snapshotInterval;
+        }
     }
 
     // }}} Configuration //////////////////////////////////////////////////////
 
     // {{{ Private attributes /////////////////////////////////////////////////
 
+    /**
+     * Statistics snapshot is considered once per this many messages, must be
+     * a power of two.
+     */
+    private static final int _SNAPSHOT_CHECK_PERIOD = 64;
+    private static final int _SNAPSHOT_CHECK_MASK = _SNAPSHOT_CHECK_PERIOD - 1;
+
+    /**
+     * Syscalls handled by analyzeSyscall(), the rest is only counted.
+     */
+    private static final Set<StraceSyscallParsedData.Syscall>
+        _SUBSCRIBED_SYSCALLS = Collections.unmodifiableSet(EnumSet.of(
+            StraceSyscallParsedData.Syscall.FORK,
+            StraceSyscallParsedData.Syscall.EXEC,
+            StraceSyscallParsedData.Syscall.EXIT,
+            StraceSyscallParsedData.Syscall.GETCWD,
+            StraceSyscallParsedData.Syscall.CHDIR,
+            StraceSyscallParsedData.Syscall.CREAT,
+            StraceSyscallParsedData.Syscall.OPEN,
+            StraceSyscallParsedData.Syscall.OPENAT));
+
     private ProcessModel _model = null;
 
     private Statistics _statistics = null;
 
     private Configuration _config = null;
 
+    /**
+     * Time, as returned by System.nanoTime(), when the next statistics
+     * snapshot is due in incremental mode.
+     */
+    private long _nextSnapshot = 0;
+
     // }}} Private attributes /////////////////////////////////////////////////
 
     // {{{ Constructors ///////////////////////////////////////////////////////
@@ -478,6 +642,8 @@ public class StracePathAnalyzer extends AAnalyzer
         _statistics = new Statistics();
         _model = new ProcessModel(_statistics);
         _config = config == null ? Configuration.theDefault() : config;
+        _nextSnapshot = System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(_config.getSnapshotInterval());
     }
 
     /**
@@ -490,6 +656,41 @@ public class StracePathAnalyzer extends AAnalyzer
 
     // }}} Constructors ///////////////////////////////////////////////////////
 
+    /**
+     * Current statistics, they are updated by further analysis.
+     */
+    Statistics getStatistics()
+    {
+        return _statistics;
+    }
+
+    /**
+     * Remove running process from process model, so that it can be moved to
+     * the process model of another analyzer by addProcess(). Statistics
+     * aren't affected.
+     *
+     * @return
+     *   Removed process, or <code>null</code> if there is no such running
+     *   process.
+     */
+    Serializable removeProcess(int pid)
+    {
+        return _model._processes.remove(pid);
+    }
+
+    /**
+     * Add process that was removed from another analyzer by removeProcess().
+     */
+    void addProcess(Serializable process)
+    {
+        if (!(process instanceof Process))
+        {
+            throw new IllegalArgumentException("process");
+        }
+
+        _model._processes.put(((Process)process).getPid(), (Process)process);
+    }
+
     /**
      * Update statistics with specified event.
      *
@@ -501,6 +702,29 @@ public class StracePathAnalyzer extends AAnalyzer
         _statistics.update(event);
     }
 
+    /**
+     * In incremental mode report copy of current statistics if the snapshot
+     * interval elapsed. Clock is consulted only every
+     * <code>_SNAPSHOT_CHECK_PERIOD</code> messages.
+     */
+    private void maybeReportSnapshot()
+    {
+        if (!_config.isIncremental()
+            || (_statistics.getMessageCount() & _SNAPSHOT_CHECK_MASK) != 0)
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (now - _nextSnapshot >= 0)
+        {
+            runCallbacks(_statistics.snapshot());
+            _nextSnapshot = now
+                + TimeUnit.MILLISECONDS.toNanos(_config.getSnapshotInterval());
+        }
+    }
+
     /**
      * Ask Statistics if we are processing first syscall.
      */
@@ -530,7 +754,7 @@ public class StracePathAnalyzer extends AAnalyzer
             updateStatistics(Statistics.Event.WORKING_DIRECTORY_MISS);
         }
 
-        if (file.matches("^\\./.*") && wd != null)
+        if (file.startsWith("./") && wd != null)
         {
             return wd + file.substring(1);
         }
@@ -637,11 +861,12 @@ public class StracePathAnalyzer extends AAnalyzer
 
     private IOutputMessage outputMessageFactory(
         String file,
-        IParsedData parsedData)
+        StraceSyscallParsedData parsedData)
     {
         if (_config.shouldPreserveParsedData())
         {
-            return new PathCompoundMessage(file, parsedData);
+            // Parser may reuse parsed data once this method returns.
+            return new PathCompoundMessage(file, parsedData.retain());
         }
 
         return new PathOutputMessage(file);
@@ -669,7 +894,7 @@ public class StracePathAnalyzer extends AAnalyzer
             case FORK:
                 if (parsedData.getChildPid() != -1)
                 {
-                    _model.createProcess(pid, parsedData.getChildPid());
+                    _model.forkProcess(pid, parsedData.getChildPid());
                 }
                 break;
 
@@ -743,6 +968,8 @@ public class StracePathAnalyzer extends AAnalyzer
         {
             updateStatistics(Statistics.Event.UNKNOWN_MESSAGE);
         }
+
+        maybeReportSnapshot();
     }
 
     /**
@@ -755,4 +982,73 @@ public class StracePathAnalyzer extends AAnalyzer
     }
 
     // }}} AAnalyzer, implementation of abstract methods //////////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Serializable saveState()
+    {
+        return new State(_model, _statistics);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        if (!(state instanceof State))
+        {
+            throw new IllegalArgumentException("state");
+        }
+
+        _model = ((State)state).model;
+        _statistics = ((State)state).statistics;
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
+
+    // {{{ IStraceSyscallSubscriber interface implementation //////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<StraceSyscallParsedData.Syscall> getSubscribedSyscalls()
+    {
+        return _SUBSCRIBED_SYSCALLS;
+    }
+
+    // }}} IStraceSyscallSubscriber interface implementation //////////////////
+
+    // {{{ IPooledDataConsumer interface implementation ///////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean acceptsPooledData()
+    {
+        return true;
+    }
+
+    // }}} IPooledDataConsumer interface implementation ///////////////////////
+
+    // {{{ IParseErrorCounter interface implementation ////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Parse errors are only counted in statistics.
+     */
+    @Override
+    public boolean countsParseErrors()
+    {
+        return true;
+    }
+
+    // }}} IParseErrorCounter interface implementation ////////////////////////
 }
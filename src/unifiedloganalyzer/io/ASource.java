@@ -0,0 +1,117 @@
+package unifiedloganalyzer.io;
+
+import java.io.IOException;
+
+import unifiedloganalyzer.ISource;
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Abstract source that implements batch reading on top of hasNext() and
+ * next(). Sources that split lines at the byte level should override batch
+ * reading in to line views, so that lines don't have to be copied.
+ *
+ * If next() fails after some lines of a batch were read, those lines are
+ * returned and the error is thrown by the following batch reading.
+ *
+ * @author Peter Trsko
+ */
+public abstract class ASource implements ISource
+{
+    private Exception _pendingError = null;
+
+    /**
+     * {@inheritDoc}
+     *
+     * Default implementation fills whole batch unless the end of input is
+     * reached.
+     */
+    @Override
+    public int nextBatch(String[] batch) throws IOException
+    {
+        rethrowPendingError();
+
+        int n = 0;
+
+        try
+        {
+            while (n < batch.length && hasNext())
+            {
+                String line = next();
+
+                batch[n++] = line;
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            deferError(ex, n);
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Default implementation sets views to messages returned by next().
+     */
+    @Override
+    public int nextBatch(LineView[] batch) throws IOException
+    {
+        rethrowPendingError();
+
+        int n = 0;
+
+        try
+        {
+            while (n < batch.length && hasNext())
+            {
+                String line = next();
+
+                batch[n++].set(line);
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            deferError(ex, n);
+        }
+
+        return n;
+    }
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Throw error immediately if no lines were read, otherwise keep it for
+     * the following batch.
+     */
+    private void deferError(Exception error, int linesRead)
+        throws IOException
+    {
+        _pendingError = error;
+
+        if (linesRead == 0)
+        {
+            rethrowPendingError();
+        }
+    }
+
+    private void rethrowPendingError() throws IOException
+    {
+        Exception error = _pendingError;
+
+        if (error != null)
+        {
+            _pendingError = null;
+
+            if (error instanceof IOException)
+            {
+                throw (IOException)error;
+            }
+
+            throw (RuntimeException)error;
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+}
@@ -0,0 +1,306 @@
+package unifiedloganalyzer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Splits data read from a channel in to lines at the byte level.
+ *
+ * Data are read in to a large direct buffer and newlines are searched for
+ * directly in it, there is no per-character locking or decoding as with
+ * BufferedReader. Channel is read only when the buffer doesn't contain a
+ * complete line, therefore a line is available as soon as its terminator
+ * arrives.
+ *
+ * Line terminators are handled the same way as BufferedReader.readLine()
+ * handles them for <code>"\n"</code> and <code>"\r\n"</code>.
+ *
+ * Not thread safe.
+ *
+ * @author Peter Trsko
+ */
+final class ChannelLineReader
+{
+    /**
+     * Default size of the buffer, it's enlarged when a line doesn't fit in to
+     * it.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final ReadableByteChannel _channel;
+    private final LineDecoder _decoder;
+    private ByteBuffer _buffer;
+
+    /**
+     * Valid data in <code>_buffer</code> are <code>[0, _limit)</code>.
+     */
+    private int _limit = 0;
+    private boolean _isEndOfInput = false;
+
+    /**
+     * Absolute position, in the input, of the first byte in the buffer.
+     */
+    private long _bufferOffset = 0;
+
+    /**
+     * Position where next line starts and where the search for its terminator
+     * continues, both relative to the start of the buffer.
+     */
+    private int _lineStart = 0;
+    private int _scanPosition = 0;
+    private int _ascii = 0;
+
+    /**
+     * Boundaries of the current line, <code>_currentEnd</code> excludes line
+     * terminator.
+     */
+    private int _currentStart = 0;
+    private int _currentEnd = 0;
+    private boolean _isAsciiLine = true;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct line reader.
+     *
+     * @param channel
+     *   Channel from which data are read.
+     * @param bufferSize
+     *   Initial size of a direct buffer for data.
+     */
+    public ChannelLineReader(ReadableByteChannel channel, int bufferSize)
+    {
+        if (channel == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (bufferSize <= 0)
+        {
+            throw new IllegalArgumentException("bufferSize = " + bufferSize);
+        }
+
+        _channel = channel;
+        _decoder = new LineDecoder();
+        _buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public ChannelLineReader(ReadableByteChannel channel)
+    {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Read more data from the channel and note the end of input.
+     */
+    private void readMore() throws IOException
+    {
+        if (fill() < 0)
+        {
+            _isEndOfInput = true;
+        }
+    }
+
+    /**
+     * Move unprocessed data to the start of the buffer, or enlarge it if
+     * there is no space left, and read more data from the channel.
+     *
+     * @return
+     *   Number of bytes read, or -1 if channel has no more data.
+     */
+    private int fill() throws IOException
+    {
+        if (_lineStart > 0)
+        {
+            _buffer.limit(_limit);
+            _buffer.position(_lineStart);
+            _buffer.compact();
+
+            _bufferOffset += _lineStart;
+            _limit -= _lineStart;
+            _scanPosition -= _lineStart;
+            _lineStart = 0;
+        }
+        else if (_limit == _buffer.capacity())
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(_limit * 2);
+
+            _buffer.limit(_limit);
+            _buffer.position(0);
+            buffer.put(_buffer);
+            _buffer = buffer;
+        }
+
+        _buffer.limit(_buffer.capacity());
+        _buffer.position(_limit);
+
+        int n = _channel.read(_buffer);
+
+        if (n > 0)
+        {
+            _limit = _buffer.position();
+        }
+
+        return n;
+    }
+
+    private void setLine(int start, int end)
+    {
+        // Strip carriage return of "\r\n" line terminator.
+        if (end > start && _buffer.get(end - 1) == '\r')
+        {
+            end--;
+        }
+
+        _currentStart = start;
+        _currentEnd = end;
+        _isAsciiLine = _ascii >= 0;
+        _ascii = 0;
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Find next line, blocking until it's terminated or the end of input is
+     * reached.
+     *
+     * @return
+     *   <code>false</code> if there are no more lines.
+     */
+    public boolean readLine() throws IOException
+    {
+        return readLine(true);
+    }
+
+    /**
+     * Find next line.
+     *
+     * @param block
+     *   If <code>false</code> then only data that are already buffered are
+     *   searched and channel is never read.
+     *
+     * @return
+     *   <code>false</code> if there are no more lines, or, when not blocking,
+     *   if buffer doesn't contain complete line.
+     */
+    public boolean readLine(boolean block) throws IOException
+    {
+        for (;;)
+        {
+            for (int i = _scanPosition; i < _limit; i++)
+            {
+                byte b = _buffer.get(i);
+
+                if (b == '\n')
+                {
+                    setLine(_lineStart, i);
+                    _lineStart = _scanPosition = i + 1;
+
+                    return true;
+                }
+
+                _ascii |= b;
+            }
+            _scanPosition = _limit;
+
+            if (_isEndOfInput)
+            {
+                // Last line isn't terminated by a newline. Empty rest is not a
+                // line, same as with BufferedReader.
+                if (_lineStart < _limit)
+                {
+                    setLine(_lineStart, _limit);
+                    _lineStart = _limit;
+
+                    return true;
+                }
+
+                return false;
+            }
+
+            if (!block)
+            {
+                return false;
+            }
+
+            readMore();
+        }
+    }
+
+    /**
+     * Find next complete line in data that the channel has available right
+     * now, without treating the lack of data as the end of input.
+     *
+     * This is meant for files that are still being written. Incomplete last
+     * line is retained until the rest of it, including its terminator, is
+     * written. Same as blocking readLine(), this may move data in the
+     * buffer.
+     *
+     * @return
+     *   <code>false</code> if there is no complete line available.
+     */
+    public boolean readCompleteLine() throws IOException
+    {
+        while (!readLine(false))
+        {
+            if (_isEndOfInput || fill() <= 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decode line found by last successful call to readLine().
+     */
+    public String decodeLine()
+    {
+        return _decoder.decode(_buffer, _currentStart, _currentEnd,
+            _isAsciiLine);
+    }
+
+    /**
+     * Set view to the line found by last successful call to readLine().
+     *
+     * View is valid until next call to blocking readLine(), since it may
+     * move data in the buffer.
+     */
+    public void decodeLine(LineView view)
+    {
+        _decoder.decode(_buffer, _currentStart, _currentEnd, _isAsciiLine,
+            view);
+    }
+
+    /**
+     * Absolute position in the input where the line found by last successful
+     * call to readLine() starts.
+     */
+    public long getLineOffset()
+    {
+        return _bufferOffset + _currentStart;
+    }
+
+    /**
+     * Absolute position in the input right after the terminator of the line
+     * found by last successful call to readLine().
+     */
+    public long getNextLineOffset()
+    {
+        return _bufferOffset + _lineStart;
+    }
+
+    public void close() throws IOException
+    {
+        _channel.close();
+    }
+}
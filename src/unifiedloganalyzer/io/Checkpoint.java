@@ -0,0 +1,225 @@
+package unifiedloganalyzer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+
+/**
+ * Checkpoint of an analysis of a file, which allows to resume it after it was
+ * interrupted.
+ *
+ * Checkpoint contains position in the input, i.e. number and byte offset of
+ * the first line that wasn't processed yet, size of the output written so
+ * far, index of the input and states of the parser, analyzer and sink, see
+ * ICheckpointable. It's stored in a sidecar file, <code>FILE.ckpt</code>,
+ * and it's valid only as long as the input file has the same size and
+ * modification time.
+ *
+ * @author Peter Trsko
+ */
+public class Checkpoint implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long _inputLength;
+    private final long _inputLastModified;
+    private final long _line;
+    private final long _offset;
+    private final long _outputLength;
+    private final LineIndex _index;
+    private final Serializable _parserState;
+    private final Serializable _analyzerState;
+    private final Serializable _sinkState;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct checkpoint of analysis of specified file.
+     *
+     * @param file
+     *   Analysed file.
+     * @param line
+     *   Number of the first line that wasn't processed, starting from zero.
+     * @param offset
+     *   Byte offset of that line.
+     * @param outputLength
+     *   Size of the output written so far, or -1 if output isn't a file.
+     * @param index
+     *   Index of the analysed file.
+     * @param parserState
+     *   State of the parser or <code>null</code> if it's stateless.
+     * @param analyzerState
+     *   State of the analyzer or <code>null</code> if it's stateless.
+     * @param sinkState
+     *   State of the sink or <code>null</code> if it's stateless.
+     */
+    public Checkpoint(String file, long line, long offset, long outputLength,
+        LineIndex index, Serializable parserState, Serializable analyzerState,
+        Serializable sinkState)
+    {
+        if (file == null || index == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        File input = new File(file);
+
+        _inputLength = input.length();
+        _inputLastModified = input.lastModified();
+        _line = line;
+        _offset = offset;
+        _outputLength = outputLength;
+        _index = index;
+        _parserState = parserState;
+        _analyzerState = analyzerState;
+        _sinkState = sinkState;
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Getters ////////////////////////////////////////////////////////////
+
+    public long getLine()
+    {
+        return _line;
+    }
+
+    public long getOffset()
+    {
+        return _offset;
+    }
+
+    public long getOutputLength()
+    {
+        return _outputLength;
+    }
+
+    public LineIndex getIndex()
+    {
+        return _index;
+    }
+
+    public Serializable getParserState()
+    {
+        return _parserState;
+    }
+
+    public Serializable getAnalyzerState()
+    {
+        return _analyzerState;
+    }
+
+    public Serializable getSinkState()
+    {
+        return _sinkState;
+    }
+
+    // }}} Getters ////////////////////////////////////////////////////////////
+
+    // {{{ Checkpoint file ////////////////////////////////////////////////////
+
+    /**
+     * Sidecar file in which checkpoint of analysis of specified file is
+     * stored.
+     */
+    public static File fileOf(String file)
+    {
+        return new File(file + ".ckpt");
+    }
+
+    /**
+     * Load checkpoint of analysis of specified file.
+     *
+     * @param file
+     *   Analysed file, not the checkpoint file.
+     *
+     * @return
+     *   Checkpoint, or <code>null</code> if there is none or if it doesn't
+     *   match current state of the analysed file.
+     *
+     * @throws IOException
+     *   If checkpoint file can't be read.
+     */
+    public static Checkpoint load(String file) throws IOException
+    {
+        File checkpointFile = fileOf(file);
+        File input = new File(file);
+
+        if (!checkpointFile.isFile())
+        {
+            return null;
+        }
+
+        Checkpoint checkpoint;
+
+        try (ObjectInputStream in = new ObjectInputStream(
+            new BufferedInputStream(new FileInputStream(checkpointFile))))
+        {
+            checkpoint = (Checkpoint)in.readObject();
+        }
+        catch (ClassNotFoundException | ClassCastException
+            | InvalidClassException ex)
+        {
+            // Written by incompatible version.
+            return null;
+        }
+
+        if (checkpoint._inputLength != input.length()
+            || checkpoint._inputLastModified != input.lastModified())
+        {
+            return null;
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Store this checkpoint, replacing the previous one.
+     *
+     * Checkpoint is written in to a temporary file first, which then
+     * replaces the old one, so that a valid checkpoint exists even if the
+     * application is terminated while writing it.
+     *
+     * @param file
+     *   Analysed file, not the checkpoint file.
+     *
+     * @throws IOException
+     *   If checkpoint file can't be written.
+     */
+    public void save(String file) throws IOException
+    {
+        File checkpointFile = fileOf(file);
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+
+        try (ObjectOutputStream out = new ObjectOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tmp))))
+        {
+            out.writeObject(this);
+        }
+
+        Files.move(tmp.toPath(), checkpointFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remove checkpoint of analysis of specified file, e.g. when the
+     * analysis finished.
+     */
+    public static void delete(String file) throws IOException
+    {
+        Files.deleteIfExists(fileOf(file).toPath());
+    }
+
+    // }}} Checkpoint file ////////////////////////////////////////////////////
+}
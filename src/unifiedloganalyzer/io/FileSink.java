@@ -2,19 +2,46 @@ package unifiedloganalyzer.io;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
 
 import unifiedloganalyzer.IOutputMessage;
 import unifiedloganalyzer.ISink;
+import unifiedloganalyzer.utils.ICheckpointable;
 
 
 /**
+ * Sink that writes messages in to a file, repeated messages are written once
+ * prefixed by the number of their repetitions.
+ *
+ * Its state, i.e. the message that is still being counted, can be stored
+ * in a checkpoint, see ICheckpointable, so that a resumed analysis counts
+ * the repetitions the same way as an uninterrupted one.
  *
  * @author Kamil Cupr
  */
-public class FileSink implements ISink
+public class FileSink implements ISink, ICheckpointable
 {
+    /**
+     * State stored in checkpoints.
+     */
+    private static class State implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final IOutputMessage previousMessage;
+        public final int messageCounter;
+
+        public State(IOutputMessage previousMessage, int messageCounter)
+        {
+            this.previousMessage = previousMessage;
+            this.messageCounter = messageCounter;
+        }
+    }
+
     private File _file = null;
     private BufferedWriter _writer = null;
     private IOutputMessage _previousMessage = null;
@@ -25,9 +52,44 @@ public class FileSink implements ISink
 
     public FileSink(String file, boolean isGzipped, boolean countMessages)
         throws IOException
+    {
+        this(file, isGzipped, countMessages, -1);
+    }
+
+    /**
+     * Construct sink that continues output of interrupted analysis.
+     *
+     * @param file
+     *   Output file.
+     * @param isGzipped
+     *   Compress output by gzip. Every flush ends a gzip member, therefore
+     *   compressed output can be continued too.
+     * @param countMessages
+     *   Prefix each message by the number of its repetitions.
+     * @param length
+     *   Size of the output, as returned by getLength(), at the point where
+     *   the analysis is continued. Anything after it is discarded. Negative
+     *   value means that the file is overwritten.
+     */
+    public FileSink(String file, boolean isGzipped, boolean countMessages,
+        long length) throws IOException
     {
         _file = new File(file);
-        _writer = new BufferedWriter(new FileWriter(_file));
+
+        FileOutputStream fileStream = new FileOutputStream(_file, length >= 0);
+        if (length >= 0)
+        {
+            // File is opened in append mode, so writing continues at the
+            // new end.
+            fileStream.getChannel().truncate(length);
+        }
+
+        OutputStream stream = fileStream;
+        if (isGzipped)
+        {
+            stream = new ParallelGzipOutputStream(stream);
+        }
+        _writer = new BufferedWriter(new OutputStreamWriter(stream));
         _countMessages = countMessages;
     }
 
@@ -43,6 +105,15 @@ public class FileSink implements ISink
 
     // }}} Constructors ///////////////////////////////////////////////////////
 
+    /**
+     * Size of the output file. All messages are included only right after
+     * flush().
+     */
+    public long getLength()
+    {
+        return _file.length();
+    }
+
     private void doWrite() throws IOException
     {
         if (_previousMessage != null)
@@ -95,4 +166,50 @@ public class FileSink implements ISink
     }
 
     // }}} ISink implementation ///////////////////////////////////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Everything but the message that is still being counted is written to
+     * the file first, so that getLength() matches the returned state. That
+     * message is written as well if it isn't serializable.
+     */
+    @Override
+    public Serializable saveState()
+    {
+        try
+        {
+            if (!(_previousMessage instanceof Serializable))
+            {
+                doWrite();
+            }
+            _writer.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalStateException(
+                "Unable to write output of checkpoint.", ex);
+        }
+
+        return new State(_previousMessage, _messageCounter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        if (!(state instanceof State))
+        {
+            throw new IllegalArgumentException("state");
+        }
+
+        _previousMessage = ((State)state).previousMessage;
+        _messageCounter = ((State)state).messageCounter;
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
 }
@@ -2,32 +2,54 @@ package unifiedloganalyzer.io;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.NoSuchElementException;
-
-import unifiedloganalyzer.ISource;
+import java.util.zip.GZIPInputStream;
 
 
 /**
  *
  * @author Kamil Cupr
  */
-public class FileSource implements ISource
+public class FileSource extends ASource
 {
     private File _file = null;
     private BufferedReader _buffer = null;
     private String _currentLine = null;
 
-    public FileSource(String file, boolean isGzipped)
+    /**
+     * @param isInflatedInParallel
+     *   Gzipped file is inflated by ParallelGzipInputStream, otherwise by
+     *   GZIPInputStream on the calling thread, e.g. when many files are
+     *   read concurrently anyway.
+     */
+    public FileSource(String file, boolean isGzipped,
+        boolean isInflatedInParallel)
         throws FileNotFoundException, IOException
     {
         _file = new File(file);
-        _buffer = new BufferedReader(new FileReader(_file));
+
+        InputStream stream = new FileInputStream(_file);
+        if (isGzipped)
+        {
+            stream = isInflatedInParallel
+                ? new ParallelGzipInputStream(stream)
+                : new GZIPInputStream(stream);
+        }
+        _buffer = new BufferedReader(new InputStreamReader(stream));
         _currentLine = _buffer.readLine();
     }
 
+    public FileSource(String file, boolean isGzipped)
+        throws FileNotFoundException, IOException
+    {
+        this(file, isGzipped, true);
+    }
+
     public FileSource(String file) throws FileNotFoundException, IOException
     {
         this(file, false);
@@ -0,0 +1,511 @@
+package unifiedloganalyzer.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Source that follows a file that is still being written, same as
+ * <code>tail -f</code> does.
+ *
+ * Reaching the end of the file doesn't end the input. Source waits for more
+ * data to be appended instead, only complete lines are handed out, the
+ * incomplete last line is retained until its terminator is written. Input
+ * ends when stop() is called, data that were already written are processed
+ * first.
+ *
+ * Waiting is done by WatchService, which is notified by the operating system
+ * when the file is modified, if it's available. In any case the file is also
+ * polled, with poll interval growing from MIN_POLL_INTERVAL to
+ * MAX_POLL_INTERVAL while the file stays unmodified, since not every file
+ * system reports modifications, e.g. network file systems.
+ *
+ * When the file is truncated or replaced by another file, e.g. by log
+ * rotation, it's reopened and read from the beginning.
+ *
+ * Source measures latency of data that are appended while it's waiting, i.e.
+ * time between the last modification of the file and the moment when the
+ * lines are handed out to the parser. Its precision is limited by precision
+ * of modification time provided by the file system.
+ *
+ * @author Peter Trsko
+ */
+public class FollowingFileSource extends ASource
+{
+    /**
+     * Poll interval, in milliseconds, used right after new data were read.
+     */
+    public static final long MIN_POLL_INTERVAL = 1;
+
+    /**
+     * Poll interval, in milliseconds, used when the file isn't modified for
+     * a while. It's also the upper bound of the time stop() takes to end
+     * input.
+     */
+    public static final long MAX_POLL_INTERVAL = 250;
+
+    private static final Logger _LOGGER =
+        Logger.getLogger(FollowingFileSource.class.getName());
+
+    private final Path _path;
+    private final int _bufferSize;
+    private FileChannel _channel = null;
+    private ChannelLineReader _reader = null;
+    private Object _fileKey = null;
+    private WatchService _watcher = null;
+
+    private volatile boolean _stopped = false;
+    private long _pollInterval = MIN_POLL_INTERVAL;
+
+    /**
+     * State of look-ahead done by hasNext(); <code>null</code> means that it
+     * wasn't done yet.
+     */
+    private Boolean _hasLine = null;
+    private IOException _exception = null;
+
+    // Latency statistics, see measureLatency().
+    private boolean _waited = false;
+    private long _latencyCount = 0;
+    private long _latencySum = 0;
+    private long _latencyMax = 0;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct source that follows specified file.
+     *
+     * @param file
+     *   Path to the file, which has to exist already.
+     * @param bufferSize
+     *   Initial size of the buffer for input data.
+     *
+     * @throws FileNotFoundException
+     *   If file doesn't exist.
+     * @throws IOException
+     *   If file can't be opened.
+     */
+    public FollowingFileSource(String file, int bufferSize)
+        throws FileNotFoundException, IOException
+    {
+        if (file == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _path = Paths.get(file).toAbsolutePath();
+        _bufferSize = bufferSize;
+
+        try
+        {
+            open();
+        }
+        catch (NoSuchFileException ex)
+        {
+            throw new FileNotFoundException(file);
+        }
+
+        try
+        {
+            _watcher = FileSystems.getDefault().newWatchService();
+            _path.getParent().register(_watcher,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        catch (IOException | UnsupportedOperationException ex)
+        {
+            _LOGGER.log(Level.FINE, "Falling back to polling.", ex);
+            closeWatcher();
+        }
+    }
+
+    public FollowingFileSource(String file)
+        throws FileNotFoundException, IOException
+    {
+        this(file, ChannelLineReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private void open() throws IOException
+    {
+        _channel = FileChannel.open(_path, StandardOpenOption.READ);
+        _reader = new ChannelLineReader(_channel, _bufferSize);
+        _fileKey = fileKey();
+    }
+
+    private Object fileKey() throws IOException
+    {
+        return Files.readAttributes(_path, BasicFileAttributes.class)
+            .fileKey();
+    }
+
+    private void closeWatcher()
+    {
+        if (_watcher != null)
+        {
+            try
+            {
+                _watcher.close();
+            }
+            catch (IOException ex)
+            {
+                // Nothing to do.
+            }
+            _watcher = null;
+        }
+    }
+
+    /**
+     * Reopen the file if it was truncated or replaced. Called only when all
+     * data of the current file were read.
+     */
+    private void reopenIfChanged() throws IOException
+    {
+        boolean isTruncated;
+        boolean isReplaced;
+
+        try
+        {
+            isTruncated = _channel.size() < _channel.position();
+            isReplaced = _fileKey != null && !_fileKey.equals(fileKey());
+        }
+        catch (NoSuchFileException ex)
+        {
+            // File was removed, new one may be created later.
+            return;
+        }
+
+        if (isTruncated || isReplaced)
+        {
+            _LOGGER.info(_path + ": File was "
+                + (isTruncated ? "truncated" : "replaced")
+                + ", reading it from the beginning.");
+
+            _reader.close();
+            open();
+        }
+    }
+
+    /**
+     * Wait until the file is modified or until the poll interval elapses,
+     * whichever comes first.
+     */
+    private void waitForData() throws IOException
+    {
+        reopenIfChanged();
+
+        try
+        {
+            if (_watcher != null)
+            {
+                WatchKey key = _watcher.poll(_pollInterval,
+                    TimeUnit.MILLISECONDS);
+
+                if (key != null)
+                {
+                    // Modification of any file in the directory just ends
+                    // the wait, the file is read anyway.
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+            else
+            {
+                Thread.sleep(_pollInterval);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            stop();
+        }
+        catch (ClosedWatchServiceException ex)
+        {
+            _watcher = null;
+        }
+
+        _pollInterval = Math.min(_pollInterval * 2, MAX_POLL_INTERVAL);
+        _waited = true;
+    }
+
+    /**
+     * Find next complete line, waiting for it if necessary.
+     *
+     * @return
+     *   <code>false</code> if there are no more lines, i.e. source was
+     *   stopped and all data were read.
+     */
+    private boolean readLine() throws IOException
+    {
+        for (;;)
+        {
+            if (_reader.readCompleteLine())
+            {
+                _pollInterval = MIN_POLL_INTERVAL;
+
+                return true;
+            }
+
+            if (_stopped)
+            {
+                // Last line doesn't have to be terminated.
+                return _reader.readLine();
+            }
+
+            waitForData();
+        }
+    }
+
+    /**
+     * Same as hasNext(), but never waits, <code>false</code> is returned
+     * instead.
+     */
+    private boolean hasBufferedNext()
+    {
+        if (_hasLine == null)
+        {
+            try
+            {
+                if (!_reader.readLine(false))
+                {
+                    return false;
+                }
+            }
+            catch (IOException ex)
+            {
+                _exception = ex;
+            }
+
+            _hasLine = true;
+        }
+
+        return _hasLine;
+    }
+
+    /**
+     * Consume line found by look-ahead.
+     */
+    private void advance() throws NoSuchElementException, IOException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        // Don't look ahead, that would wait until next line is available.
+        _hasLine = null;
+
+        if (_exception != null)
+        {
+            IOException ex = _exception;
+
+            _exception = null;
+            throw ex;
+        }
+    }
+
+    /**
+     * Record latency of lines that are handed out, if they were appended
+     * while this source was waiting for them. Lines that were already in the
+     * file when it was opened would only show how old the file is.
+     */
+    private void measureLatency()
+    {
+        if (!_waited)
+        {
+            return;
+        }
+        _waited = false;
+
+        long modified;
+
+        try
+        {
+            modified = Files.getLastModifiedTime(_path).toMillis();
+        }
+        catch (IOException ex)
+        {
+            return;
+        }
+
+        long latency = Math.max(0, System.currentTimeMillis() - modified);
+
+        _latencyCount++;
+        _latencySum += latency;
+        _latencyMax = Math.max(_latencyMax, latency);
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    /**
+     * End input once all data written so far are read. Can be called from
+     * any thread, e.g. from a shutdown hook.
+     */
+    public void stop()
+    {
+        _stopped = true;
+    }
+
+    // {{{ Statistics /////////////////////////////////////////////////////////
+
+    /**
+     * Number of latency measurements, i.e. how many times data were appended
+     * while this source was waiting.
+     */
+    public long getLatencyCount()
+    {
+        return _latencyCount;
+    }
+
+    /**
+     * Average time, in milliseconds, between modification of the file and
+     * handing out of appended lines.
+     */
+    public double getAverageLatency()
+    {
+        return _latencyCount == 0 ? 0.0 : (double)_latencySum / _latencyCount;
+    }
+
+    /**
+     * Maximal time, in milliseconds, between modification of the file and
+     * handing out of appended lines.
+     */
+    public long getMaxLatency()
+    {
+        return _latencyMax;
+    }
+
+    /**
+     * Human readable summary of statistics.
+     */
+    public String getStatistics()
+    {
+        return String.format(Locale.ROOT,
+            "Following %s: %s, latency measured %d times,"
+            + " average=%.2f ms, max=%d ms",
+            _path, _watcher == null ? "polling" : "watching",
+            getLatencyCount(), getAverageLatency(), getMaxLatency());
+    }
+
+    // }}} Statistics /////////////////////////////////////////////////////////
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks until next line is written or until the source is stopped.
+     * Possible I/O error is thrown by following call to next().
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (_hasLine == null)
+        {
+            try
+            {
+                _hasLine = readLine();
+            }
+            catch (IOException ex)
+            {
+                _exception = ex;
+                _hasLine = true;
+            }
+        }
+
+        return _hasLine;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        advance();
+        measureLatency();
+
+        return _reader.decodeLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks only until the first line is available, rest of the batch is
+     * filled with lines that are already buffered.
+     */
+    @Override
+    public int nextBatch(String[] batch) throws IOException
+    {
+        int n = 0;
+
+        while (n < batch.length && (n == 0 ? hasNext() : hasBufferedNext()))
+        {
+            batch[n++] = next();
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks only until the first line is available, rest of the batch is
+     * filled with lines that are already buffered. Buffered data are never
+     * moved while the batch is being filled, so all views stay valid.
+     */
+    @Override
+    public int nextBatch(LineView[] batch) throws IOException
+    {
+        int n = 0;
+
+        while (n < batch.length && (n == 0 ? hasNext() : hasBufferedNext()))
+        {
+            advance();
+            _reader.decodeLine(batch[n++]);
+        }
+
+        if (n > 0)
+        {
+            measureLatency();
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _stopped = true;
+        _hasLine = false;
+        closeWatcher();
+        _reader.close();
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
@@ -0,0 +1,321 @@
+package unifiedloganalyzer.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Source that reads a file from any line and keeps track of line numbers
+ * and byte offsets.
+ *
+ * Reading starts either at a known byte offset of a line, e.g. one stored in
+ * a checkpoint, or at a line number, in which case the nearest preceding
+ * line found in a LineIndex is used and lines before the requested one are
+ * skipped. LineIndex is extended with lines that are read for the first
+ * time, so it can be stored afterwards.
+ *
+ * @author Peter Trsko
+ */
+public class IndexedFileSource extends ASource
+{
+    private final String _file;
+    private final LineIndex _index;
+    private final ChannelLineReader _reader;
+
+    /**
+     * Offset in the file at which the channel was positioned, offsets
+     * provided by ChannelLineReader are relative to it.
+     */
+    private final long _baseOffset;
+
+    /**
+     * Number of the next line, starting from zero, and number of the line
+     * at which reading stops.
+     */
+    private long _lineNumber;
+    private final long _endLine;
+    private boolean _isIndexExtended = false;
+
+    /**
+     * State of look-ahead done by hasNext(); <code>null</code> means that it
+     * wasn't done yet.
+     */
+    private Boolean _hasLine = null;
+    private IOException _exception = null;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct source that starts at specified byte offset.
+     *
+     * @param file
+     *   Path to uncompressed file.
+     * @param index
+     *   Index of the file, it's extended while reading.
+     * @param line
+     *   Number of the line, starting from zero, that starts at offset.
+     * @param offset
+     *   Byte offset of the line.
+     * @param endLine
+     *   Number of the first line that isn't read, i.e. reading stops before
+     *   it, or <code>Long.MAX_VALUE</code> to read until the end of file.
+     *
+     * @throws FileNotFoundException
+     *   If file doesn't exist.
+     * @throws IOException
+     *   If file can't be opened.
+     */
+    public IndexedFileSource(String file, LineIndex index, long line,
+        long offset, long endLine) throws FileNotFoundException, IOException
+    {
+        if (file == null || index == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (line < 0 || offset < 0)
+        {
+            throw new IllegalArgumentException(
+                "line = " + line + ", offset = " + offset);
+        }
+
+        FileChannel channel;
+
+        try
+        {
+            channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ);
+        }
+        catch (NoSuchFileException ex)
+        {
+            throw new FileNotFoundException(file);
+        }
+
+        channel.position(offset);
+
+        _file = file;
+        _index = index;
+        _reader = new ChannelLineReader(channel);
+        _baseOffset = offset;
+        _lineNumber = line;
+        _endLine = endLine;
+    }
+
+    /**
+     * Construct source that starts at specified line, using index to find
+     * where it is.
+     *
+     * @param file
+     *   Path to uncompressed file.
+     * @param index
+     *   Index of the file, it's extended while reading.
+     * @param firstLine
+     *   Number of the first line that is read, starting from zero.
+     * @param endLine
+     *   Number of the first line that isn't read, or
+     *   <code>Long.MAX_VALUE</code> to read until the end of file.
+     */
+    public IndexedFileSource(String file, LineIndex index, long firstLine,
+        long endLine) throws FileNotFoundException, IOException
+    {
+        this(file, index, index.floorLine(firstLine),
+            index.getOffset(index.floorLine(firstLine)), endLine);
+
+        while (_lineNumber < firstLine && hasNext())
+        {
+            advance();
+        }
+    }
+
+    /**
+     * Construct source that reads whole file and builds its index.
+     */
+    public IndexedFileSource(String file, LineIndex index)
+        throws FileNotFoundException, IOException
+    {
+        this(file, index, 0, 0, Long.MAX_VALUE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private boolean readLine(boolean block) throws IOException
+    {
+        if (_lineNumber >= _endLine || !_reader.readLine(block))
+        {
+            return false;
+        }
+
+        _isIndexExtended |= _index.add(_lineNumber,
+            _baseOffset + _reader.getLineOffset());
+
+        return true;
+    }
+
+    /**
+     * Same as hasNext(), but never blocks, <code>false</code> is returned
+     * instead.
+     */
+    private boolean hasBufferedNext()
+    {
+        if (_hasLine == null)
+        {
+            try
+            {
+                if (!readLine(false))
+                {
+                    return false;
+                }
+            }
+            catch (IOException ex)
+            {
+                _exception = ex;
+            }
+
+            _hasLine = true;
+        }
+
+        return _hasLine;
+    }
+
+    /**
+     * Consume line found by look-ahead.
+     */
+    private void advance() throws NoSuchElementException, IOException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        _hasLine = null;
+
+        if (_exception != null)
+        {
+            IOException ex = _exception;
+
+            _exception = null;
+            throw ex;
+        }
+
+        _lineNumber++;
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    // {{{ Getters ////////////////////////////////////////////////////////////
+
+    public String getFile()
+    {
+        return _file;
+    }
+
+    public LineIndex getIndex()
+    {
+        return _index;
+    }
+
+    /**
+     * Check if index was extended by reading lines that weren't indexed yet.
+     */
+    public boolean isIndexExtended()
+    {
+        return _isIndexExtended;
+    }
+
+    /**
+     * Number of the line, starting from zero, that will be returned next.
+     */
+    public long getLineNumber()
+    {
+        return _lineNumber;
+    }
+
+    /**
+     * Byte offset of the line that will be returned next.
+     */
+    public long getOffset()
+    {
+        // Look-ahead done by hasNext() already found the next line.
+        return _baseOffset + (_hasLine != null && _hasLine
+            ? _reader.getLineOffset()
+            : _reader.getNextLineOffset());
+    }
+
+    // }}} Getters ////////////////////////////////////////////////////////////
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (_hasLine == null)
+        {
+            try
+            {
+                _hasLine = readLine(true);
+            }
+            catch (IOException ex)
+            {
+                _exception = ex;
+                _hasLine = true;
+            }
+        }
+
+        return _hasLine;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        advance();
+
+        return _reader.decodeLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the first line may cause more data to be read, so that all views
+     * stay valid. Batch therefore ends where buffered data end.
+     */
+    @Override
+    public int nextBatch(LineView[] batch) throws IOException
+    {
+        int n = 0;
+
+        while (n < batch.length && (n == 0 ? hasNext() : hasBufferedNext()))
+        {
+            advance();
+            _reader.decodeLine(batch[n++]);
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _hasLine = false;
+        _reader.close();
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
@@ -0,0 +1,205 @@
+package unifiedloganalyzer.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Decodes lines that were split at the byte level in to strings.
+ *
+ * Instances keep their buffers between calls, therefore decoding a line
+ * allocates only the resulting String, or nothing at all when decoding in to
+ * a LineView. Lines that contain only ASCII bytes,
+ * which is what strace produces unless told otherwise, skip the charset
+ * decoder entirely.
+ *
+ * Not thread safe.
+ *
+ * @author Peter Trsko
+ */
+final class LineDecoder
+{
+    private static final Charset _ASCII_COMPATIBLE =
+        Charset.forName("ISO-8859-1");
+
+    private static final String _ASCII_SAMPLE = "09AZaz /._-()\"=";
+
+    private final CharsetDecoder _decoder;
+    private final boolean _isAsciiCompatible;
+    private byte[] _bytes = new byte[256];
+    private CharBuffer _chars = CharBuffer.allocate(256);
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct decoder for specified charset.
+     *
+     * Malformed input and unmappable characters are replaced, which is the
+     * same behaviour as that of InputStreamReader.
+     *
+     * @param charset
+     *   Charset used for decoding lines that contain non-ASCII bytes.
+     */
+    public LineDecoder(Charset charset)
+    {
+        if (charset == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        // UTF-16 and UTF-32, for example, encode ASCII characters using more
+        // then one byte.
+        _isAsciiCompatible = Arrays.equals(_ASCII_SAMPLE.getBytes(charset),
+            _ASCII_SAMPLE.getBytes(_ASCII_COMPATIBLE));
+    }
+
+    /**
+     * Construct decoder that uses platform default charset, same as
+     * FileReader does.
+     */
+    public LineDecoder()
+    {
+        this(Charset.defaultCharset());
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Decode bytes <code>buffer[from, to)</code> in to a String.
+     *
+     * Position and limit of the buffer are restored before this method
+     * returns.
+     *
+     * @param buffer
+     *   Buffer containing the line.
+     * @param from
+     *   Index of the first byte of the line (inclusive).
+     * @param to
+     *   Index of the last byte of the line (exclusive), line terminator should
+     *   be already excluded.
+     * @param isAscii
+     *   <code>true</code> if caller already knows that all bytes in the range
+     *   are ASCII characters.
+     *
+     * @return
+     *   Decoded line.
+     */
+    public String decode(ByteBuffer buffer, int from, int to, boolean isAscii)
+    {
+        int length = to - from;
+
+        if (length == 0)
+        {
+            return "";
+        }
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+
+        try
+        {
+            return doDecode(buffer, from, to, length, isAscii);
+        }
+        finally
+        {
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+    }
+
+    private String doDecode(ByteBuffer buffer, int from, int to, int length,
+        boolean isAscii)
+    {
+        if (isAscii && _isAsciiCompatible)
+        {
+            if (_bytes.length < length)
+            {
+                _bytes = new byte[Math.max(length, _bytes.length * 2)];
+            }
+
+            buffer.limit(to);
+            buffer.position(from);
+            buffer.get(_bytes, 0, length);
+
+            return new String(_bytes, 0, length, _ASCII_COMPATIBLE);
+        }
+
+        return decodeChars(buffer, from, to, length).toString();
+    }
+
+    /**
+     * Decode bytes <code>buffer[from, to)</code> in to a line view.
+     *
+     * ASCII lines are not decoded at all, view points directly in to the
+     * buffer. Other lines are decoded and copied in to the view.
+     *
+     * @param buffer
+     *   Buffer containing the line.
+     * @param from
+     *   Index of the first byte of the line (inclusive).
+     * @param to
+     *   Index of the last byte of the line (exclusive), line terminator should
+     *   be already excluded.
+     * @param isAscii
+     *   <code>true</code> if caller already knows that all bytes in the range
+     *   are ASCII characters.
+     * @param view
+     *   View that is set to the decoded line.
+     */
+    public void decode(ByteBuffer buffer, int from, int to, boolean isAscii,
+        LineView view)
+    {
+        if (isAscii && _isAsciiCompatible)
+        {
+            view.set(buffer, from, to);
+
+            return;
+        }
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+
+        try
+        {
+            CharBuffer chars = decodeChars(buffer, from, to, to - from);
+
+            view.set(chars.array(), 0, chars.limit());
+        }
+        finally
+        {
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+    }
+
+    private CharBuffer decodeChars(ByteBuffer buffer, int from, int to,
+        int length)
+    {
+        int maxChars = (int)Math.ceil(length * _decoder.maxCharsPerByte());
+        if (_chars.capacity() < maxChars)
+        {
+            _chars = CharBuffer.allocate(Math.max(maxChars,
+                _chars.capacity() * 2));
+        }
+
+        buffer.limit(to);
+        buffer.position(from);
+        _chars.clear();
+        _decoder.reset();
+        _decoder.decode(buffer, _chars, true);
+        _decoder.flush(_chars);
+        _chars.flip();
+
+        return _chars;
+    }
+}
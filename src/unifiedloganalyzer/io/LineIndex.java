@@ -0,0 +1,253 @@
+package unifiedloganalyzer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * Index of byte offsets of every N-th line of a file.
+ *
+ * Index is built while the file is read for the first time and it's stored
+ * in a sidecar file next to it, <code>FILE.idx</code>. Later runs can then
+ * start reading at any line without reading the file from the beginning,
+ * only at most N-1 lines have to be skipped.
+ *
+ * Index may cover only a part of the file, e.g. when the first run didn't
+ * read the whole file, then it's extended when the rest is read. Sidecar
+ * file is valid only as long as the indexed file has the same size and
+ * modification time as when the index was saved.
+ *
+ * @author Peter Trsko
+ */
+public class LineIndex implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default number of lines between two indexed lines.
+     */
+    public static final int DEFAULT_INTERVAL = 10000;
+
+    private static final int _MAGIC = 0x554c4149;   // "ULAI"
+    private static final int _VERSION = 1;
+
+    private final int _interval;
+
+    /**
+     * Offset of line <code>i * _interval</code> is
+     * <code>_offsets[i]</code>, offset of line zero is always present.
+     */
+    private long[] _offsets;
+    private int _size;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct empty index.
+     *
+     * @param interval
+     *   Number of lines between two indexed lines.
+     */
+    public LineIndex(int interval)
+    {
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("interval = " + interval);
+        }
+
+        _interval = interval;
+        _offsets = new long[64];
+        _offsets[0] = 0;
+        _size = 1;
+    }
+
+    public LineIndex()
+    {
+        this(DEFAULT_INTERVAL);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Index operations ///////////////////////////////////////////////////
+
+    public int getInterval()
+    {
+        return _interval;
+    }
+
+    /**
+     * Number of lines for which the index already knows the offset of their
+     * indexed predecessor, i.e. lines below this number can be found in
+     * constant time.
+     */
+    public long getCoveredLines()
+    {
+        return (long)_size * _interval;
+    }
+
+    /**
+     * Record offset of a line, it's ignored unless it's the next line that
+     * should be indexed.
+     *
+     * @param line
+     *   Line number, starting from zero.
+     * @param offset
+     *   Byte offset of the first character of the line.
+     *
+     * @return
+     *   <code>true</code> if index was extended.
+     */
+    public boolean add(long line, long offset)
+    {
+        if (line != getCoveredLines())
+        {
+            return false;
+        }
+
+        if (_size == _offsets.length)
+        {
+            _offsets = Arrays.copyOf(_offsets, _size * 2);
+        }
+        _offsets[_size++] = offset;
+
+        return true;
+    }
+
+    /**
+     * Find the nearest indexed line that isn't after the specified line.
+     *
+     * @param line
+     *   Line number, starting from zero.
+     *
+     * @return
+     *   Number of the indexed line, offset of which is returned by
+     *   getOffset().
+     */
+    public long floorLine(long line)
+    {
+        return Math.min(line / _interval, _size - 1) * _interval;
+    }
+
+    /**
+     * Byte offset of an indexed line.
+     *
+     * @param indexedLine
+     *   Line number returned by floorLine().
+     */
+    public long getOffset(long indexedLine)
+    {
+        if (indexedLine % _interval != 0
+            || indexedLine / _interval >= _size)
+        {
+            throw new IllegalArgumentException("line = " + indexedLine);
+        }
+
+        return _offsets[(int)(indexedLine / _interval)];
+    }
+
+    // }}} Index operations ///////////////////////////////////////////////////
+
+    // {{{ Sidecar file ///////////////////////////////////////////////////////
+
+    /**
+     * Sidecar file in which index of specified file is stored.
+     */
+    public static File sidecarOf(String file)
+    {
+        return new File(file + ".idx");
+    }
+
+    /**
+     * Load index of a file from its sidecar file.
+     *
+     * @param file
+     *   Indexed file, not the sidecar file.
+     *
+     * @return
+     *   Index, or <code>null</code> if sidecar file doesn't exist or if it
+     *   doesn't match current state of the indexed file.
+     *
+     * @throws IOException
+     *   If sidecar file can't be read.
+     */
+    public static LineIndex load(String file) throws IOException
+    {
+        File sidecar = sidecarOf(file);
+        File indexed = new File(file);
+
+        if (!sidecar.isFile())
+        {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(sidecar))))
+        {
+            if (in.readInt() != _MAGIC || in.readInt() != _VERSION)
+            {
+                return null;
+            }
+
+            long length = in.readLong();
+            long lastModified = in.readLong();
+
+            if (length != indexed.length()
+                || lastModified != indexed.lastModified())
+            {
+                return null;
+            }
+
+            LineIndex index = new LineIndex(in.readInt());
+            int size = in.readInt();
+
+            index._offsets = new long[Math.max(size, 1)];
+            for (int i = 0; i < size; i++)
+            {
+                index._offsets[i] = in.readLong();
+            }
+            index._size = size;
+
+            return index;
+        }
+    }
+
+    /**
+     * Store index of a file in to its sidecar file.
+     *
+     * @param file
+     *   Indexed file, not the sidecar file.
+     *
+     * @throws IOException
+     *   If sidecar file can't be written.
+     */
+    public void save(String file) throws IOException
+    {
+        File indexed = new File(file);
+
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(sidecarOf(file)))))
+        {
+            out.writeInt(_MAGIC);
+            out.writeInt(_VERSION);
+            out.writeLong(indexed.length());
+            out.writeLong(indexed.lastModified());
+            out.writeInt(_interval);
+            out.writeInt(_size);
+
+            for (int i = 0; i < _size; i++)
+            {
+                out.writeLong(_offsets[i]);
+            }
+        }
+    }
+
+    // }}} Sidecar file ///////////////////////////////////////////////////////
+}
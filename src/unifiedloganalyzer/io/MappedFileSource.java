@@ -0,0 +1,295 @@
+package unifiedloganalyzer.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Source that memory maps input file and splits it in to lines at the byte
+ * level.
+ *
+ * File is mapped in segments, so that even files that are larger then what
+ * can be addressed by one MappedByteBuffer can be processed. Newlines are
+ * searched for directly in the mapped memory and a line is decoded in to a
+ * String only when it's requested by calling next().
+ *
+ * Line terminators are handled the same way as BufferedReader.readLine()
+ * handles them for <code>"\n"</code> and <code>"\r\n"</code>. Input has to be
+ * in ASCII compatible encoding, which is true for platform default encoding on
+ * any reasonable system.
+ *
+ * @author Peter Trsko
+ */
+public class MappedFileSource extends ASource
+{
+    /**
+     * Default size of one mapped segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private File _file = null;
+    private FileInputStream _stream = null;
+    private FileChannel _channel = null;
+    private long _fileSize = 0;
+    private int _segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    /**
+     * Currently mapped segment and its absolute position in the file.
+     */
+    private MappedByteBuffer _segment = null;
+    private long _segmentOffset = 0;
+
+    /**
+     * Boundaries of the next line relative to the start of current segment;
+     * <code>_lineEnd</code> excludes line terminator.
+     */
+    private int _lineStart = 0;
+    private int _lineEnd = 0;
+    private boolean _isAsciiLine = true;
+    private boolean _hasLine = false;
+
+    /**
+     * Position, relative to the start of current segment, where search for
+     * the next line starts.
+     */
+    private int _position = 0;
+
+    private LineDecoder _decoder = null;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct source that maps specified file.
+     *
+     * @param file
+     *   Path to the file.
+     * @param segmentSize
+     *   Size of one mapped segment in bytes. Lines longer then this value are
+     *   still handled correctly, segment is enlarged as needed.
+     *
+     * @throws FileNotFoundException
+     *   If file doesn't exist.
+     * @throws IOException
+     *   If mapping of the file fails.
+     */
+    public MappedFileSource(String file, int segmentSize)
+        throws FileNotFoundException, IOException
+    {
+        if (segmentSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "segmentSize = " + segmentSize);
+        }
+
+        _file = new File(file);
+        _stream = new FileInputStream(_file);
+        _channel = _stream.getChannel();
+        _segmentSize = segmentSize;
+        _decoder = new LineDecoder();
+
+        try
+        {
+            _fileSize = _channel.size();
+            mapSegment(0, _segmentSize);
+            findNextLine();
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            // Nobody else can close the file, since this source isn't
+            // constructed.
+            try
+            {
+                _stream.close();
+            }
+            catch (IOException closeEx)
+            {
+                ex.addSuppressed(closeEx);
+            }
+
+            throw ex;
+        }
+    }
+
+    public MappedFileSource(String file)
+        throws FileNotFoundException, IOException
+    {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Map segment starting at specified absolute offset.
+     *
+     * @param offset
+     *   Absolute position in the file where the segment starts.
+     * @param size
+     *   Requested size of the segment, it's truncated at the end of file.
+     */
+    private void mapSegment(long offset, long size) throws IOException
+    {
+        long length = Math.min(size, _fileSize - offset);
+
+        _segment = _channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        _segmentOffset = offset;
+        _position = 0;
+    }
+
+    private boolean isLastSegment()
+    {
+        return _segmentOffset + _segment.capacity() >= _fileSize;
+    }
+
+    /**
+     * Search for the next line and set <code>_hasLine</code> accordingly.
+     */
+    private void findNextLine() throws IOException
+    {
+        for (;;)
+        {
+            int limit = _segment.capacity();
+            int lineStart = _position;
+            int ascii = 0;
+
+            for (int i = lineStart; i < limit; i++)
+            {
+                byte b = _segment.get(i);
+
+                if (b == '\n')
+                {
+                    setLine(lineStart, i, ascii >= 0);
+                    _position = i + 1;
+
+                    return;
+                }
+
+                ascii |= b;
+            }
+
+            if (isLastSegment())
+            {
+                // Last line isn't terminated by a newline. Empty rest is not a
+                // line, same as with BufferedReader.
+                if (lineStart < limit)
+                {
+                    setLine(lineStart, limit, ascii >= 0);
+                    _position = limit;
+                }
+                else
+                {
+                    _hasLine = false;
+                }
+
+                return;
+            }
+
+            // Line crosses segment boundary, remap so that the segment starts
+            // with it. If the line doesn't fit even in to a whole segment then
+            // it's necessary to enlarge it.
+            long newSize = _segmentSize;
+            if (lineStart == 0)
+            {
+                newSize = Math.min((long)limit * 2, Integer.MAX_VALUE);
+
+                if (newSize == limit)
+                {
+                    throw new IOException(_file.getPath()
+                        + ": Line too long to be mapped.");
+                }
+            }
+
+            mapSegment(_segmentOffset + lineStart, newSize);
+        }
+    }
+
+    private void setLine(int start, int end, boolean isAscii)
+    {
+        // Strip carriage return of "\r\n" line terminator.
+        if (end > start && _segment.get(end - 1) == '\r')
+        {
+            end--;
+        }
+
+        _lineStart = start;
+        _lineEnd = end;
+        _isAsciiLine = isAscii;
+        _hasLine = true;
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return _hasLine;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        String ret = _decoder.decode(_segment, _lineStart, _lineEnd,
+            _isAsciiLine);
+
+        findNextLine();
+
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * ASCII lines are not copied at all, views point directly in to the
+     * mapped memory. Remapping of a segment doesn't invalidate views that
+     * point to the previous one, since it stays mapped while it's referenced.
+     */
+    @Override
+    public int nextBatch(LineView[] batch) throws IOException
+    {
+        int n = 0;
+
+        while (n < batch.length && hasNext())
+        {
+            _decoder.decode(_segment, _lineStart, _lineEnd, _isAsciiLine,
+                batch[n++]);
+            findNextLine();
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _hasLine = false;
+        _segment = null;
+        _channel.close();
+        _stream.close();
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
@@ -0,0 +1,838 @@
+package unifiedloganalyzer.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+
+
+/**
+ * Gzip decompressing input stream that inflates data on background threads.
+ *
+ * Reader thread splits compressed input in to chunks and puts them in to
+ * bounded queue, therefore reading and decompression run ahead of the
+ * consumer only up to a limited amount of memory.
+ *
+ * Chunks are cut at positions that look like a start of a gzip member. For
+ * multi-member files, like those produced by concatenating gzip files or by
+ * compressing independent blocks, each chunk is inflated in parallel by a pool
+ * of workers and results are handed out in original order. Decoding of a chunk
+ * is accepted only if it consists of complete members with valid CRC and size.
+ * When that's not the case, e.g. single-member file or false positive member
+ * start, the rest of the input is inflated sequentially using GZIPInputStream,
+ * still on a background thread and in to a bounded queue of decoded blocks.
+ * Like in GZIPInputStream, malformed header of a member that follows complete
+ * ones ends the input, but empty input and corrupt header CRC are errors.
+ *
+ * Unless number of threads is specified, workers are shared by all streams,
+ * so that many streams that are open at once, e.g. files of strace -ff,
+ * don't start a pool each. Their number is bounded by number of processors
+ * and they terminate when idle. Each stream has its own reader thread, and
+ * another one for sequential inflating, so that it never holds a worker
+ * while it waits for the consumer.
+ *
+ * @author Peter Trsko
+ */
+public class ParallelGzipInputStream extends InputStream
+{
+    /**
+     * Default size of compressed chunk that is inflated by one worker.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final int _GZIP_MAGIC_1 = 0x1f;
+    private static final int _GZIP_MAGIC_2 = 0x8b;
+    private static final int _GZIP_DEFLATE = 8;
+
+    private static final int _FHCRC = 2;
+    private static final int _FEXTRA = 4;
+    private static final int _FNAME = 8;
+    private static final int _FCOMMENT = 16;
+    private static final int _FRESERVED = 0xe0;
+
+    private static final int _INFLATED_SIZE = 64 * 1024;
+    private static final int _INFLATED_QUEUE_CAPACITY = 16;
+
+    /**
+     * Idle workers of the shared pool terminate after this many seconds.
+     */
+    private static final long _WORKER_KEEP_ALIVE = 1;
+
+    /**
+     * Workers shared by streams that don't specify number of threads,
+     * <code>null</code> until the first one is created.
+     */
+    private static ExecutorService _sharedWorkers = null;
+
+    /**
+     * Compressed chunk and its (possibly still running) decoding.
+     */
+    private static class Chunk
+    {
+        public final byte[] raw;
+        public final int length;
+        public final IOException error;
+        public Future<byte[]> decoded = null;
+
+        public Chunk(byte[] raw, int length)
+        {
+            this.raw = raw;
+            this.length = length;
+            this.error = null;
+        }
+
+        public Chunk(IOException error)
+        {
+            this.raw = null;
+            this.length = 0;
+            this.error = error;
+        }
+
+        public boolean isEnd()
+        {
+            return raw == null && error == null;
+        }
+    }
+
+    private static final Chunk _END = new Chunk(null, 0);
+
+    // {{{ Private attributes /////////////////////////////////////////////////
+
+    private final InputStream _in;
+    private final int _chunkSize;
+    private final int _maxChunkSize;
+    private final ExecutorService _workers;
+    private final boolean _ownsWorkers;
+    private final BlockingQueue<Chunk> _chunks;
+    private final Thread _reader;
+
+    /**
+     * Thread that inflates sequentially, <code>null</code> until it's
+     * started.
+     */
+    private Thread _inflater = null;
+
+    /**
+     * Set when parallel decoding failed and rest of the input is inflated
+     * sequentially.
+     */
+    private volatile boolean _sequential = false;
+    private volatile boolean _closed = false;
+
+    /**
+     * Decoded blocks produced by sequential inflating, <code>null</code> until
+     * it's started.
+     */
+    private BlockingQueue<Chunk> _inflated = null;
+
+    private byte[] _current = new byte[0];
+    private int _currentLength = 0;
+    private int _currentPosition = 0;
+    private boolean _eof = false;
+
+    /**
+     * Set after a chunk of complete members was decoded, malformed header of
+     * a member that follows is then treated as end of input, like
+     * GZIPInputStream does.
+     */
+    private boolean _hasDecodedMember = false;
+
+    // }}} Private attributes /////////////////////////////////////////////////
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct gzip decompressing stream.
+     *
+     * @param in
+     *   Compressed input.
+     * @param threads
+     *   Number of worker threads that this stream starts for inflating.
+     * @param chunkSize
+     *   Minimal size of compressed chunk inflated by one worker.
+     */
+    public ParallelGzipInputStream(InputStream in, int threads, int chunkSize)
+    {
+        this(in, threads, chunkSize, true);
+    }
+
+    /**
+     * Construct gzip decompressing stream that uses workers shared with
+     * other streams.
+     */
+    public ParallelGzipInputStream(InputStream in)
+    {
+        this(in, Runtime.getRuntime().availableProcessors(),
+            DEFAULT_CHUNK_SIZE, false);
+    }
+
+    /**
+     * @param ownsWorkers
+     *   Start pool of <code>threads</code> workers, or use the shared one.
+     */
+    private ParallelGzipInputStream(InputStream in, int threads,
+        int chunkSize, boolean ownsWorkers)
+    {
+        if (in == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (threads <= 0 || chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("threads = " + threads
+                + ", chunkSize = " + chunkSize);
+        }
+
+        _in = in;
+        _chunkSize = chunkSize;
+        _maxChunkSize = chunkSize * 4;
+        _ownsWorkers = ownsWorkers;
+        _workers = ownsWorkers
+            ? Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("gzip-inflate"))
+            : sharedWorkers();
+        _chunks = new ArrayBlockingQueue<>(threads * 2);
+        _reader = new DaemonThreadFactory("gzip-reader").newThread(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    readChunks();
+                }
+            });
+        _reader.start();
+    }
+
+    private static synchronized ExecutorService sharedWorkers()
+    {
+        if (_sharedWorkers == null)
+        {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor workers = new ThreadPoolExecutor(threads,
+                threads, _WORKER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("gzip-inflate"));
+
+            workers.allowCoreThreadTimeOut(true);
+            _sharedWorkers = workers;
+        }
+
+        return _sharedWorkers;
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Reader thread //////////////////////////////////////////////////////
+
+    private static boolean isMemberStart(byte[] buff, int i)
+    {
+        return (buff[i] & 0xff) == _GZIP_MAGIC_1
+            && (buff[i + 1] & 0xff) == _GZIP_MAGIC_2
+            && buff[i + 2] == _GZIP_DEFLATE
+            && (buff[i + 3] & _FRESERVED) == 0;
+    }
+
+    private void readChunks()
+    {
+        byte[] buff = new byte[_maxChunkSize];
+        int length = 0;
+        int scanFrom = _chunkSize;
+        boolean isEmpty = true;
+
+        try
+        {
+            for (;;)
+            {
+                int n = _in.read(buff, length, buff.length - length);
+
+                if (n < 0)
+                {
+                    if (length > 0)
+                    {
+                        putChunk(new Chunk(buff, length), true);
+                    }
+                    else if (isEmpty)
+                    {
+                        throw new EOFException("Empty gzip input.");
+                    }
+                    break;
+                }
+                length += n;
+                isEmpty = isEmpty && n == 0;
+
+                // Search for member start after the minimal chunk size was
+                // reached. Header has at least four bytes that we check.
+                int cut = -1;
+                for (int i = scanFrom; i + 4 <= length; i++)
+                {
+                    if (isMemberStart(buff, i))
+                    {
+                        cut = i;
+                        break;
+                    }
+                }
+                scanFrom = Math.max(scanFrom, length - 3);
+
+                if (cut < 0 && length < buff.length)
+                {
+                    continue;
+                }
+
+                // Chunk that was cut without finding member start can not be
+                // inflated independently.
+                boolean isIndependent = cut >= 0;
+                if (cut < 0)
+                {
+                    cut = length;
+                }
+
+                byte[] next = new byte[_maxChunkSize];
+                System.arraycopy(buff, cut, next, 0, length - cut);
+                putChunk(new Chunk(buff, cut), isIndependent);
+
+                buff = next;
+                length -= cut;
+                scanFrom = _chunkSize;
+            }
+
+            putChunk(_END, false);
+        }
+        catch (InterruptedException ex)
+        {
+            // Stream was closed.
+        }
+        catch (IOException ex)
+        {
+            try
+            {
+                putChunk(new Chunk(ex), false);
+            }
+            catch (InterruptedException ex2)
+            {
+                // Stream was closed.
+            }
+        }
+    }
+
+    private void putChunk(final Chunk chunk, boolean isIndependent)
+        throws InterruptedException
+    {
+        if (isIndependent && !_sequential && !_closed)
+        {
+            chunk.decoded = _workers.submit(new Callable<byte[]>()
+                {
+                    @Override
+                    public byte[] call() throws IOException
+                    {
+                        return inflateMembers(chunk.raw, chunk.length);
+                    }
+                });
+        }
+
+        _chunks.put(chunk);
+    }
+
+    // }}} Reader thread //////////////////////////////////////////////////////
+
+    // {{{ Worker threads /////////////////////////////////////////////////////
+
+    private static int readUnsignedShort(byte[] buff, int i)
+    {
+        return (buff[i] & 0xff) | ((buff[i + 1] & 0xff) << 8);
+    }
+
+    private static long readUnsignedInt(byte[] buff, int i)
+    {
+        return ((long)readUnsignedShort(buff, i))
+            | (((long)readUnsignedShort(buff, i + 2)) << 16);
+    }
+
+    private static int skipZeroTerminated(byte[] buff, int i, int length)
+        throws EOFException
+    {
+        while (i < length && buff[i] != 0)
+        {
+            i++;
+        }
+
+        if (i >= length)
+        {
+            throw new EOFException("Truncated gzip header.");
+        }
+
+        return i + 1;
+    }
+
+    /**
+     * Skip gzip member header.
+     *
+     * @return
+     *   Position of the first byte of compressed data.
+     */
+    private static int skipHeader(byte[] buff, int i, int length)
+        throws IOException
+    {
+        if (i + 10 > length)
+        {
+            throw new EOFException("Truncated gzip header.");
+        }
+
+        if (!isMemberStart(buff, i))
+        {
+            throw new ZipException("Not in GZIP format.");
+        }
+
+        int start = i;
+        int flags = buff[i + 3] & 0xff;
+        i += 10;
+
+        if ((flags & _FEXTRA) != 0)
+        {
+            if (i + 2 > length)
+            {
+                throw new EOFException("Truncated gzip header.");
+            }
+            i += 2 + readUnsignedShort(buff, i);
+        }
+
+        if ((flags & _FNAME) != 0)
+        {
+            i = skipZeroTerminated(buff, i, length);
+        }
+
+        if ((flags & _FCOMMENT) != 0)
+        {
+            i = skipZeroTerminated(buff, i, length);
+        }
+
+        if (i > length)
+        {
+            throw new EOFException("Truncated gzip header.");
+        }
+
+        if ((flags & _FHCRC) != 0)
+        {
+            if (i + 2 > length)
+            {
+                throw new EOFException("Truncated gzip header.");
+            }
+
+            CRC32 crc = new CRC32();
+
+            crc.update(buff, start, i - start);
+
+            if (readUnsignedShort(buff, i) != (crc.getValue() & 0xffff))
+            {
+                throw new ZipException("Corrupt gzip header.");
+            }
+            i += 2;
+        }
+
+        return i;
+    }
+
+    /**
+     * Inflate chunk that has to consist of complete gzip members.
+     *
+     * @throws IOException
+     *   If chunk doesn't consist of complete and valid members only.
+     */
+    static byte[] inflateMembers(byte[] raw, int length) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length * 4);
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        byte[] buff = new byte[64 * 1024];
+        int position = 0;
+
+        try
+        {
+            while (position < length)
+            {
+                position = skipHeader(raw, position, length);
+
+                inflater.reset();
+                inflater.setInput(raw, position, length - position);
+                crc.reset();
+                long size = 0;
+
+                while (!inflater.finished())
+                {
+                    int n = inflater.inflate(buff);
+
+                    if (n == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary()))
+                    {
+                        throw new EOFException("Truncated gzip member.");
+                    }
+
+                    crc.update(buff, 0, n);
+                    out.write(buff, 0, n);
+                    size += n;
+                }
+
+                position = length - inflater.getRemaining();
+
+                if (position + 8 > length)
+                {
+                    throw new EOFException("Truncated gzip trailer.");
+                }
+
+                if (readUnsignedInt(raw, position) != crc.getValue()
+                    || readUnsignedInt(raw, position + 4)
+                        != (size & 0xffffffffL))
+                {
+                    throw new ZipException("Corrupt gzip trailer.");
+                }
+
+                position += 8;
+            }
+        }
+        catch (DataFormatException ex)
+        {
+            throw new ZipException(ex.getMessage());
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    // }}} Worker threads /////////////////////////////////////////////////////
+
+    // {{{ Consumer ///////////////////////////////////////////////////////////
+
+    /**
+     * Raw (compressed) bytes of chunks taken from the queue, starting with
+     * the one that couldn't be decoded in parallel.
+     */
+    private class RawChunksInputStream extends InputStream
+    {
+        private Chunk _chunk;
+        private int _position = 0;
+
+        public RawChunksInputStream(Chunk chunk)
+        {
+            _chunk = chunk;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+
+            return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (available() == 0)
+            {
+                return -1;
+            }
+
+            int n = Math.min(len, _chunk.length - _position);
+            System.arraycopy(_chunk.raw, _position, b, off, n);
+            _position += n;
+
+            return n;
+        }
+
+        /**
+         * Returns zero only at the end of input. GZIPInputStream relies on
+         * available() when deciding whether another member follows.
+         */
+        @Override
+        public int available() throws IOException
+        {
+            while (_position >= _chunk.length && !_chunk.isEnd())
+            {
+                _chunk = takeChunk(_chunks);
+                _position = 0;
+
+                if (_chunk.decoded != null)
+                {
+                    _chunk.decoded.cancel(false);
+                }
+            }
+
+            return _chunk.length - _position;
+        }
+    }
+
+    private static Chunk takeChunk(BlockingQueue<Chunk> queue)
+        throws IOException
+    {
+        Chunk chunk;
+
+        try
+        {
+            chunk = queue.take();
+        }
+        catch (InterruptedException ex)
+        {
+            throw new InterruptedIOException();
+        }
+
+        if (chunk.error != null)
+        {
+            throw chunk.error;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Inflate rest of the input, starting with specified chunk, on a
+     * background thread.
+     */
+    private void startSequential(Chunk first)
+    {
+        final InputStream raw = new RawChunksInputStream(first);
+        final boolean isFollowingMember = _hasDecodedMember;
+
+        _sequential = true;
+        _inflated = new ArrayBlockingQueue<>(_INFLATED_QUEUE_CAPACITY);
+        _inflater = new DaemonThreadFactory("gzip-sequential").newThread(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    inflateSequentially(raw, isFollowingMember);
+                }
+            });
+        _inflater.start();
+    }
+
+    /**
+     * @param isFollowingMember
+     *   Raw data start with a member that follows complete ones, its
+     *   malformed header is treated as end of input.
+     */
+    private void inflateSequentially(InputStream raw,
+        boolean isFollowingMember)
+    {
+        try
+        {
+            boolean isHeaderRead = false;
+
+            try (InputStream gzip = new GZIPInputStream(raw, _INFLATED_SIZE))
+            {
+                isHeaderRead = true;
+
+                for (;;)
+                {
+                    byte[] buff = new byte[_INFLATED_SIZE];
+                    int length = 0;
+
+                    while (length < buff.length)
+                    {
+                        int n = gzip.read(buff, length, buff.length - length);
+
+                        if (n < 0)
+                        {
+                            break;
+                        }
+                        length += n;
+                    }
+
+                    if (length == 0)
+                    {
+                        break;
+                    }
+
+                    _inflated.put(new Chunk(buff, length));
+                }
+            }
+            catch (IOException ex)
+            {
+                if (!isHeaderRead && isFollowingMember)
+                {
+                    _inflated.put(_END);
+                }
+                else if (!_closed)
+                {
+                    _inflated.put(new Chunk(ex));
+                }
+
+                return;
+            }
+
+            _inflated.put(_END);
+        }
+        catch (InterruptedException ex)
+        {
+            // Stream was closed.
+        }
+    }
+
+    /**
+     * Make sure that there are decoded data available.
+     *
+     * @return
+     *   <code>false</code> on end of stream.
+     */
+    private boolean fill() throws IOException
+    {
+        while (_currentPosition >= _currentLength && !_eof)
+        {
+            Chunk chunk = takeChunk(_inflated == null ? _chunks : _inflated);
+
+            if (chunk.isEnd())
+            {
+                _eof = true;
+                break;
+            }
+
+            try
+            {
+                if (_inflated != null)
+                {
+                    _current = chunk.raw;
+                    _currentLength = chunk.length;
+                    _currentPosition = 0;
+
+                    continue;
+                }
+
+                if (chunk.decoded != null)
+                {
+                    _current = chunk.decoded.get();
+                    _currentLength = _current.length;
+                    _currentPosition = 0;
+                    _hasDecodedMember = true;
+
+                    continue;
+                }
+            }
+            catch (ExecutionException ex)
+            {
+                // Not a sequence of complete members.
+            }
+            catch (InterruptedException ex)
+            {
+                throw new InterruptedIOException();
+            }
+
+            startSequential(chunk);
+        }
+
+        return _currentPosition < _currentLength;
+    }
+
+    // }}} Consumer ///////////////////////////////////////////////////////////
+
+    // {{{ InputStream implementation /////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+
+        return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (_closed)
+        {
+            throw new IOException("Stream closed.");
+        }
+
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (!fill())
+        {
+            return -1;
+        }
+
+        int n = Math.min(len, _currentLength - _currentPosition);
+        System.arraycopy(_current, _currentPosition, b, off, n);
+        _currentPosition += n;
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException
+    {
+        return _currentLength - _currentPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (_closed)
+        {
+            return;
+        }
+
+        _closed = true;
+        _reader.interrupt();
+
+        if (_inflater != null)
+        {
+            _inflater.interrupt();
+        }
+
+        if (_ownsWorkers)
+        {
+            _workers.shutdownNow();
+        }
+        else
+        {
+            // Shared workers keep running, only chunks of this stream that
+            // weren't inflated yet are dropped.
+            for (Chunk chunk : _chunks)
+            {
+                if (chunk.decoded != null)
+                {
+                    chunk.decoded.cancel(false);
+                }
+            }
+        }
+        _in.close();
+    }
+
+    // }}} InputStream implementation /////////////////////////////////////////
+}
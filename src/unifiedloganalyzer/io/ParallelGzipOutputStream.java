@@ -0,0 +1,261 @@
+package unifiedloganalyzer.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+
+
+/**
+ * Gzip compressing output stream that deflates data on background threads.
+ *
+ * Data are split in to blocks and each block is compressed as an independent
+ * gzip member. Members are written in original order, concatenation of gzip
+ * members is a valid gzip file that any gzip implementation can decompress.
+ * Files written by this stream can also be inflated in parallel by
+ * ParallelGzipInputStream.
+ *
+ * @author Peter Trsko
+ */
+public class ParallelGzipOutputStream extends OutputStream
+{
+    /**
+     * Default size of uncompressed block that is deflated by one worker.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    // {{{ Private attributes /////////////////////////////////////////////////
+
+    private final OutputStream _out;
+    private final int _blockSize;
+    private final int _maxPending;
+    private final ExecutorService _workers;
+    private final Queue<Future<byte[]>> _pending = new ArrayDeque<>();
+
+    private byte[] _block;
+    private int _blockLength = 0;
+    private boolean _hasWrittenMember = false;
+    private boolean _closed = false;
+
+    // }}} Private attributes /////////////////////////////////////////////////
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct gzip compressing stream.
+     *
+     * @param out
+     *   Underlying output stream.
+     * @param threads
+     *   Number of worker threads used for deflating.
+     * @param blockSize
+     *   Size of uncompressed block that is compressed as one gzip member.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads,
+        int blockSize)
+    {
+        if (out == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (threads <= 0 || blockSize <= 0)
+        {
+            throw new IllegalArgumentException("threads = " + threads
+                + ", blockSize = " + blockSize);
+        }
+
+        _out = out;
+        _blockSize = blockSize;
+        _maxPending = threads * 2;
+        _workers = Executors.newFixedThreadPool(threads,
+            new DaemonThreadFactory("gzip-deflate"));
+        _block = new byte[blockSize];
+    }
+
+    public ParallelGzipOutputStream(OutputStream out)
+    {
+        this(out, Runtime.getRuntime().availableProcessors(),
+            DEFAULT_BLOCK_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private static byte[] deflateMember(byte[] block, int length)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024))
+        {
+            gzip.write(block, 0, length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private void submitBlock() throws IOException
+    {
+        final byte[] block = _block;
+        final int length = _blockLength;
+
+        _pending.add(_workers.submit(new Callable<byte[]>()
+            {
+                @Override
+                public byte[] call() throws IOException
+                {
+                    return deflateMember(block, length);
+                }
+            }));
+        _hasWrittenMember = true;
+
+        _block = new byte[_blockSize];
+        _blockLength = 0;
+
+        while (_pending.size() > _maxPending)
+        {
+            writeFirstPending();
+        }
+    }
+
+    private void writeFirstPending() throws IOException
+    {
+        try
+        {
+            _out.write(_pending.remove().get());
+        }
+        catch (InterruptedException ex)
+        {
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof IOException)
+            {
+                throw (IOException)ex.getCause();
+            }
+
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (_closed)
+        {
+            throw new IOException("Stream closed.");
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    // {{{ OutputStream implementation ////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureOpen();
+
+        _block[_blockLength++] = (byte)b;
+
+        if (_blockLength == _blockSize)
+        {
+            submitBlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        ensureOpen();
+
+        while (len > 0)
+        {
+            int n = Math.min(len, _blockSize - _blockLength);
+
+            System.arraycopy(b, off, _block, _blockLength, n);
+            _blockLength += n;
+            off += n;
+            len -= n;
+
+            if (_blockLength == _blockSize)
+            {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compress buffered data as a new gzip member and write all pending
+     * members.
+     *
+     * Each flush terminates current member, therefore flushing too often
+     * degrades compression ratio.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        ensureOpen();
+
+        if (_blockLength > 0)
+        {
+            submitBlock();
+        }
+
+        while (!_pending.isEmpty())
+        {
+            writeFirstPending();
+        }
+
+        _out.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (_closed)
+        {
+            return;
+        }
+
+        try
+        {
+            // Empty input still has to produce a valid gzip file.
+            if (!_hasWrittenMember && _blockLength == 0)
+            {
+                _out.write(deflateMember(_block, 0));
+            }
+
+            flush();
+        }
+        finally
+        {
+            _closed = true;
+            _workers.shutdownNow();
+            _out.close();
+        }
+    }
+
+    // }}} OutputStream implementation ////////////////////////////////////////
+}
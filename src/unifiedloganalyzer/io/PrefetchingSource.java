@@ -0,0 +1,438 @@
+package unifiedloganalyzer.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import unifiedloganalyzer.ISource;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+import unifiedloganalyzer.utils.LineView;
+import unifiedloganalyzer.utils.SpscRingBuffer;
+
+
+/**
+ * Source decorator that reads ahead on a dedicated thread.
+ *
+ * Reading thread takes batches of lines from the underlying source and puts
+ * them in to a bounded lock-free ring buffer, from which they are handed out
+ * on the consumer thread. Disk stalls therefore don't stall parsing as long
+ * as the buffer isn't drained.
+ *
+ * Lines cross thread boundary, therefore they are always materialized as
+ * Strings, even if the underlying source could provide line views that point
+ * in to its buffers.
+ *
+ * I/O errors of the underlying source are rethrown by next() and nextBatch()
+ * on the consumer thread.
+ *
+ * Underlying source is never closed while reading thread is using it. If the
+ * thread doesn't stop in time when this source is closed, e.g. because it's
+ * blocked on standard input, it closes the underlying source itself once it
+ * returns from it.
+ *
+ * @author Peter Trsko
+ */
+public class PrefetchingSource extends ASource
+{
+    /**
+     * Default number of batches that can be read ahead.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Default number of lines read from the underlying source at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Element of ring buffer, either a batch of lines, an error or the end of
+     * input.
+     */
+    private static class Chunk
+    {
+        public final String[] lines;
+        public final int length;
+        public final Exception error;
+
+        public Chunk(String[] lines, int length, Exception error)
+        {
+            this.lines = lines;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    private static final Chunk _END = new Chunk(new String[0], 0, null);
+
+    /**
+     * Time, in milliseconds, that close() waits for reading thread to stop.
+     */
+    private static final long _CLOSE_TIMEOUT = 1000;
+
+    private final ISource _source;
+    private final int _batchSize;
+    private final SpscRingBuffer<Chunk> _ring;
+    private final Thread _reader;
+
+    private volatile boolean _closed = false;
+
+    /**
+     * Reading thread stopped using the underlying source, and whether it has
+     * to close it, guarded by _lock.
+     */
+    private final Object _lock = new Object();
+    private boolean _isReaderFinished = false;
+    private boolean _isClosedByReader = false;
+
+    private Chunk _current = new Chunk(new String[0], 0, null);
+    private int _position = 0;
+    private boolean _isEndOfInput = false;
+    private Exception _error = null;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct prefetching source and start reading thread.
+     *
+     * @param source
+     *   Underlying source, it must not be used directly after this call.
+     * @param capacity
+     *   Number of batches that can be read ahead.
+     * @param batchSize
+     *   Maximal number of lines read from the underlying source at once.
+     */
+    public PrefetchingSource(ISource source, int capacity, int batchSize)
+    {
+        if (source == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize = " + batchSize);
+        }
+
+        _source = source;
+        _batchSize = batchSize;
+        _ring = new SpscRingBuffer<>(capacity);
+        _reader = new DaemonThreadFactory("prefetch").newThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    readAhead();
+                }
+            });
+        _reader.start();
+    }
+
+    public PrefetchingSource(ISource source)
+    {
+        this(source, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Reading thread /////////////////////////////////////////////////////
+
+    private void readAhead()
+    {
+        try
+        {
+            readBatches();
+        }
+        finally
+        {
+            boolean isClosedByReader;
+
+            synchronized (_lock)
+            {
+                _isReaderFinished = true;
+                isClosedByReader = _isClosedByReader;
+            }
+
+            if (isClosedByReader)
+            {
+                try
+                {
+                    _source.close();
+                }
+                catch (IOException ex)
+                {
+                    // Nobody is left to report it to.
+                }
+            }
+        }
+    }
+
+    private void readBatches()
+    {
+        try
+        {
+            try
+            {
+                for (;;)
+                {
+                    String[] lines = new String[_batchSize];
+                    int length = _source.nextBatch(lines);
+
+                    if (_closed)
+                    {
+                        return;
+                    }
+
+                    if (length == 0)
+                    {
+                        break;
+                    }
+
+                    _ring.put(new Chunk(lines, length, null));
+                }
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                if (!_closed)
+                {
+                    _ring.put(new Chunk(null, 0, ex));
+                }
+
+                return;
+            }
+
+            _ring.put(_END);
+        }
+        catch (InterruptedException ex)
+        {
+            // Source was closed.
+        }
+    }
+
+    // }}} Reading thread /////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Make sure that current chunk has lines left, blocking if necessary.
+     *
+     * @return
+     *   <code>false</code> at the end of input or on error.
+     */
+    private boolean fill()
+    {
+        while (_position >= _current.length && !_isEndOfInput)
+        {
+            Chunk chunk;
+
+            try
+            {
+                chunk = _ring.take();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                chunk = new Chunk(null, 0, new InterruptedIOException());
+            }
+
+            if (chunk == _END)
+            {
+                _isEndOfInput = true;
+            }
+            else if (chunk.error != null)
+            {
+                _error = chunk.error;
+                _isEndOfInput = true;
+            }
+            else
+            {
+                _current = chunk;
+                _position = 0;
+            }
+        }
+
+        return _position < _current.length;
+    }
+
+    private void rethrowError() throws IOException
+    {
+        Exception error = _error;
+
+        if (error != null)
+        {
+            _error = null;
+
+            if (error instanceof IOException)
+            {
+                throw (IOException)error;
+            }
+
+            throw (RuntimeException)error;
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    // {{{ Statistics /////////////////////////////////////////////////////////
+
+    /**
+     * Number of times reading thread waited because consumer didn't keep up,
+     * i.e. processing is the bottleneck.
+     */
+    public long getProducerStalls()
+    {
+        return _ring.getProducerStalls();
+    }
+
+    /**
+     * Number of times consumer waited for reading thread, i.e. I/O is the
+     * bottleneck.
+     */
+    public long getConsumerStalls()
+    {
+        return _ring.getConsumerStalls();
+    }
+
+    /**
+     * Average number of batches that were read ahead.
+     */
+    public double getAverageOccupancy()
+    {
+        return _ring.getAverageOccupancy();
+    }
+
+    public int getCapacity()
+    {
+        return _ring.capacity();
+    }
+
+    /**
+     * Human readable summary of statistics.
+     */
+    public String getStatistics()
+    {
+        return String.format(Locale.ROOT,
+            "Prefetching: capacity=%d batches of %d lines,"
+            + " average occupancy=%.2f, reader stalls=%d"
+            + " (processing bound), consumer stalls=%d (I/O bound)",
+            getCapacity(), _batchSize, getAverageOccupancy(),
+            getProducerStalls(), getConsumerStalls());
+    }
+
+    // }}} Statistics /////////////////////////////////////////////////////////
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks until reading thread provides next line or reaches the end of
+     * input. Possible error is thrown by following call to next().
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return fill() || _error != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        if (!fill())
+        {
+            rethrowError();
+
+            throw new NoSuchElementException();
+        }
+
+        return _current.lines[_position++];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Copies lines from at most one batch read by reading thread.
+     */
+    @Override
+    public int nextBatch(String[] batch) throws IOException
+    {
+        if (!fill())
+        {
+            rethrowError();
+
+            return 0;
+        }
+
+        int n = Math.min(batch.length, _current.length - _position);
+
+        System.arraycopy(_current.lines, _position, batch, 0, n);
+        _position += n;
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Sets views to lines from at most one batch read by reading thread.
+     */
+    @Override
+    public int nextBatch(LineView[] batch) throws IOException
+    {
+        if (!fill())
+        {
+            rethrowError();
+
+            return 0;
+        }
+
+        int n = Math.min(batch.length, _current.length - _position);
+
+        for (int i = 0; i < n; i++)
+        {
+            batch[i].set(_current.lines[_position++]);
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Waits for reading thread to stop before the underlying source is
+     * closed, but at most for _CLOSE_TIMEOUT milliseconds. After that the
+     * thread closes the underlying source itself.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _closed = true;
+        _reader.interrupt();
+
+        try
+        {
+            _reader.join(_CLOSE_TIMEOUT);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (_lock)
+        {
+            if (!_isReaderFinished)
+            {
+                _isClosedByReader = true;
+
+                return;
+            }
+        }
+
+        _source.close();
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
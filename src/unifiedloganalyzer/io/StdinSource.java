@@ -0,0 +1,189 @@
+package unifiedloganalyzer.io;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.NoSuchElementException;
+
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Source that reads lines from standard input.
+ *
+ * Input is read through a channel in to a large direct buffer and split in to
+ * lines at the byte level. Each line is handed out as soon as it's terminated,
+ * so that traces written in to a pipe, e.g. by
+ * <code>strace -o /dev/stdout</code>, are analyzed while they are produced.
+ *
+ * @author Peter Trsko
+ */
+public class StdinSource extends ASource
+{
+    private ChannelLineReader _reader = null;
+
+    /**
+     * State of look-ahead done by hasNext(); <code>null</code> means that it
+     * wasn't done yet.
+     */
+    private Boolean _hasLine = null;
+    private IOException _exception = null;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct source that reads standard input.
+     *
+     * @param bufferSize
+     *   Initial size of the buffer for input data.
+     */
+    public StdinSource(int bufferSize)
+    {
+        _reader = new ChannelLineReader(Channels.newChannel(System.in),
+            bufferSize);
+    }
+
+    public StdinSource()
+    {
+        this(ChannelLineReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks until next line is terminated or until the end of input is
+     * reached. Possible I/O error is thrown by following call to next().
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (_hasLine == null)
+        {
+            try
+            {
+                _hasLine = _reader.readLine();
+            }
+            catch (IOException ex)
+            {
+                _exception = ex;
+                _hasLine = true;
+            }
+        }
+
+        return _hasLine;
+    }
+
+    /**
+     * Same as hasNext(), but never blocks, <code>false</code> is returned
+     * instead.
+     */
+    private boolean hasBufferedNext()
+    {
+        if (_hasLine == null)
+        {
+            try
+            {
+                if (!_reader.readLine(false))
+                {
+                    return false;
+                }
+            }
+            catch (IOException ex)
+            {
+                _exception = ex;
+            }
+
+            _hasLine = true;
+        }
+
+        return _hasLine;
+    }
+
+    /**
+     * Consume line found by look-ahead.
+     */
+    private void advance() throws NoSuchElementException, IOException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        // Don't look ahead, that would block until next line is available.
+        _hasLine = null;
+
+        if (_exception != null)
+        {
+            IOException ex = _exception;
+
+            _exception = null;
+            throw ex;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        advance();
+
+        return _reader.decodeLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks only until the first line is available, rest of the batch is
+     * filled with lines that are already buffered.
+     */
+    @Override
+    public int nextBatch(String[] batch) throws IOException
+    {
+        int n = 0;
+
+        while (n < batch.length && (n == 0 ? hasNext() : hasBufferedNext()))
+        {
+            batch[n++] = next();
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks only until the first line is available, rest of the batch is
+     * filled with lines that are already buffered. Buffered data are never
+     * moved while the batch is being filled, so all views stay valid.
+     */
+    @Override
+    public int nextBatch(LineView[] batch) throws IOException
+    {
+        int n = 0;
+
+        while (n < batch.length && (n == 0 ? hasNext() : hasBufferedNext()))
+        {
+            advance();
+            _reader.decodeLine(batch[n++]);
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _hasLine = false;
+        _reader.close();
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
@@ -0,0 +1,787 @@
+package unifiedloganalyzer.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import unifiedloganalyzer.ISource;
+import unifiedloganalyzer.parse.strace.StraceTimestamp;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+
+
+/**
+ * Source that reads output of <code>strace -ff -o PREFIX</code>, i.e. one
+ * file per traced process named <code>PREFIX.PID</code>, and presents it as
+ * if it was a single trace produced by <code>strace -f</code>.
+ *
+ * Source accepts either a directory, in which case all files with numeric
+ * suffix are used, or the prefix itself. PID of each process is taken from
+ * the file name and it's prepended to each message, since strace doesn't
+ * write it in to per-process files.
+ *
+ * Files are read, decoded and their timestamps parsed concurrently on a pool
+ * of worker threads. Messages are then merged on the consumer thread by their
+ * timestamps, ties are broken by PID. Traces produced with <code>-t</code>,
+ * <code>-tt</code> or <code>-ttt</code> are therefore merged in the order in
+ * which the events happened. Messages keep their timestamps, PID is
+ * inserted before them, which is the same layout as that of
+ * <code>strace -f</code> output, so StraceParser parses them as usual.
+ * Timestamps normalized across files are used only for merging. Messages
+ * without timestamp inherit the timestamp of the previous message from the
+ * same file for this purpose. If there are no
+ * usable timestamps at all, e.g. with <code>-r</code>, files are read one
+ * after another in the order of their PIDs.
+ *
+ * Traces of large builds consist of thousands of files, therefore only a
+ * limited number of them is kept open. At the beginning only the first
+ * message of each file is read. File whose messages are being merged is
+ * then kept open and one batch of its lines is read ahead. When too many
+ * files are open, the one that was least recently advanced is closed, its
+ * read-ahead batch is dropped and all but its next message are forgotten,
+ * it's reopened at the byte offset that follows that message when needed.
+ * Memory and file descriptors used by the source are therefore bounded by
+ * the number of open files, not by the number of traced processes.
+ *
+ * Parsing itself is left to the consumer, StraceParser is stateful, e.g.
+ * unfinished syscalls are paired with their resumed counterparts, and its
+ * callbacks are not thread safe.
+ *
+ * @author Peter Trsko
+ */
+public class StraceFfSource extends ASource
+{
+    /**
+     * Default number of lines read from one file at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    /**
+     * Default maximal number of files that are open and read ahead at the
+     * same time.
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    /**
+     * Maximal number of lines read from each file at the beginning, reading
+     * stops at the first line with timestamp.
+     */
+    private static final int _PROBE_SIZE = 16;
+
+    /**
+     * Initial size of buffer of each open file. It's small, since most of
+     * the processes produce only short traces, and it grows if a line
+     * doesn't fit in to it.
+     */
+    private static final int _READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * File name of <code>strace -ff</code> output, prefix and PID.
+     */
+    private static final Pattern _FILE_NAME_PATTERN =
+        Pattern.compile("^(.+)\\.([0-9]+)$");
+
+    /**
+     * When time of day goes back by more then this, it's considered to be
+     * a midnight rollover and not just a small reordering of events. Traces
+     * that take longer then this can not be merged correctly if they have
+     * only time of day in their timestamps.
+     */
+    private static final long _MIDNIGHT_ROLLOVER_THRESHOLD =
+        StraceTimestamp.NANOS_PER_DAY / 2;
+
+    private static final long _NO_TIMESTAMP = Long.MIN_VALUE;
+
+    /**
+     * Time, in milliseconds, that close() waits for workers to stop.
+     */
+    private static final long _CLOSE_TIMEOUT = 1000;
+
+    /**
+     * Lines read from one file with timestamps normalized within the file,
+     * and byte offsets of the lines that follow them.
+     */
+    private static class Batch
+    {
+        public final String[] lines;
+        public final long[] timestamps;
+        public final long[] nextOffsets;
+        public final int length;
+
+        /**
+         * End of file was reached after the last line.
+         */
+        public final boolean isLast;
+
+        public Batch(String[] lines, long[] timestamps, long[] nextOffsets,
+            int length, boolean isLast)
+        {
+            this.lines = lines;
+            this.timestamps = timestamps;
+            this.nextOffsets = nextOffsets;
+            this.length = length;
+            this.isLast = isLast;
+        }
+
+        /**
+         * Batch with lines starting at position.
+         */
+        public Batch tail(int position)
+        {
+            return new Batch(
+                Arrays.copyOfRange(lines, position, length),
+                Arrays.copyOfRange(timestamps, position, length),
+                Arrays.copyOfRange(nextOffsets, position, length),
+                length - position, isLast);
+        }
+    }
+
+    /**
+     * One per-process file.
+     *
+     * Methods call() and probe() are executed by workers, they are never
+     * executed concurrently for the same file, because the next batch is
+     * requested only after the previous one was received. Fields current,
+     * position and pending are used only by the consumer.
+     */
+    private class TraceFile implements Callable<Batch>
+    {
+        public final int pid;
+        public final File file;
+
+        private ChannelLineReader _reader = null;
+
+        /**
+         * Byte offset at which _reader started and offset of the line that
+         * is read next.
+         */
+        private long _readerOffset = 0;
+        private long _offset = 0;
+
+        private final StraceTimestamp _timestamp = new StraceTimestamp();
+        private long _lastTimestamp = _NO_TIMESTAMP;
+        private long _lastTimeOfDay = _NO_TIMESTAMP;
+        private long _dayOffset = 0;
+
+        /**
+         * Time of day of the first message, it's set by probe().
+         */
+        public long firstTimeOfDay = _NO_TIMESTAMP;
+
+        /**
+         * Day in which this file starts relative to the whole trace, see
+         * computeDayOffsets().
+         */
+        public long offset = 0;
+
+        public Batch current = null;
+        public int position = 0;
+        public Future<Batch> pending = null;
+
+        public TraceFile(int pid, File file)
+        {
+            this.pid = pid;
+            this.file = file;
+        }
+
+        public long currentTimestamp()
+        {
+            long timestamp = current.timestamps[position];
+
+            return timestamp == _NO_TIMESTAMP ? timestamp : timestamp + offset;
+        }
+
+        /**
+         * Read next batch of lines, file is opened if it isn't already.
+         */
+        @Override
+        public Batch call() throws IOException
+        {
+            return read(_batchSize, false);
+        }
+
+        /**
+         * Read first few lines, up to the first one with timestamp, and
+         * close the file.
+         */
+        public Batch probe() throws IOException
+        {
+            Batch batch = read(_PROBE_SIZE, true);
+
+            close();
+
+            return batch.tail(0);
+        }
+
+        private Batch read(int size, boolean isProbe) throws IOException
+        {
+            if (_reader == null)
+            {
+                open();
+            }
+
+            String[] lines = new String[size];
+            long[] timestamps = new long[size];
+            long[] nextOffsets = new long[size];
+            String pidPrefix = Integer.toString(pid) + ' ';
+            int length = 0;
+            boolean isLast = false;
+
+            while (length < size)
+            {
+                if (!_reader.readLine())
+                {
+                    isLast = true;
+                    break;
+                }
+
+                String line = _reader.decodeLine();
+                boolean hasTimestamp = _timestamp.parse(line, 0);
+
+                if (hasTimestamp)
+                {
+                    _lastTimestamp = normalize(_timestamp);
+                }
+                _offset = _readerOffset + _reader.getNextLineOffset();
+
+                lines[length] = pidPrefix.concat(line);
+                timestamps[length] = _lastTimestamp;
+                nextOffsets[length] = _offset;
+                length++;
+
+                if (isProbe && hasTimestamp)
+                {
+                    break;
+                }
+            }
+
+            if (isLast)
+            {
+                close();
+            }
+
+            return new Batch(lines, timestamps, nextOffsets, length, isLast);
+        }
+
+        private void open() throws IOException
+        {
+            FileChannel channel;
+
+            try
+            {
+                channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+            }
+            catch (NoSuchFileException ex)
+            {
+                throw new FileNotFoundException(file.getPath());
+            }
+
+            channel.position(_offset);
+            _reader = new ChannelLineReader(channel, _READ_BUFFER_SIZE);
+            _readerOffset = _offset;
+        }
+
+        /**
+         * Close the file and forget everything that was read after the line
+         * at position in the current batch, it's read again after the file
+         * is reopened. Must not be called while a batch is being read.
+         */
+        public void rewind() throws IOException
+        {
+            close();
+
+            long timestamp = current.timestamps[position];
+
+            _offset = current.nextOffsets[position];
+            _lastTimestamp = timestamp;
+
+            // Normalized time of day is day offset plus time of day, see
+            // normalize().
+            if (_lastTimeOfDay != _NO_TIMESTAMP)
+            {
+                _lastTimeOfDay = timestamp == _NO_TIMESTAMP
+                    ? _NO_TIMESTAMP
+                    : timestamp % StraceTimestamp.NANOS_PER_DAY;
+                _dayOffset = timestamp == _NO_TIMESTAMP
+                    ? 0
+                    : timestamp - _lastTimeOfDay;
+            }
+
+            current = new Batch(current.lines, current.timestamps,
+                current.nextOffsets, position + 1, false).tail(position);
+            position = 0;
+        }
+
+        /**
+         * Convert timestamp in to a value comparable among all files.
+         */
+        private long normalize(StraceTimestamp timestamp)
+        {
+            switch (timestamp.getType())
+            {
+                case TIME_OF_DAY:
+                case TIME_OF_DAY_MICROSECONDS:
+                    long nanos = timestamp.getNanos();
+
+                    if (_lastTimeOfDay == _NO_TIMESTAMP)
+                    {
+                        firstTimeOfDay = nanos;
+                    }
+                    else if (_lastTimeOfDay - nanos
+                        > _MIDNIGHT_ROLLOVER_THRESHOLD)
+                    {
+                        _dayOffset += StraceTimestamp.NANOS_PER_DAY;
+                    }
+                    _lastTimeOfDay = nanos;
+
+                    return _dayOffset + nanos;
+
+                case SECONDS_SINCE_EPOCH:
+                    return timestamp.getNanos();
+            }
+
+            // Relative timestamps can't be compared across files.
+            return _lastTimestamp;
+        }
+
+        public void close() throws IOException
+        {
+            if (_reader != null)
+            {
+                ChannelLineReader reader = _reader;
+
+                _reader = null;
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Order files by timestamp of their current message and then by PID.
+     */
+    private static final Comparator<TraceFile> _ORDER =
+        new Comparator<TraceFile>()
+        {
+            @Override
+            public int compare(TraceFile a, TraceFile b)
+            {
+                int result =
+                    Long.compare(a.currentTimestamp(), b.currentTimestamp());
+
+                return result != 0 ? result : Integer.compare(a.pid, b.pid);
+            }
+        };
+
+    private final int _batchSize;
+    private final int _maxOpenFiles;
+    private final List<TraceFile> _files;
+
+    /**
+     * Files that are open and read ahead, least recently advanced first.
+     */
+    private final LinkedHashSet<TraceFile> _openFiles =
+        new LinkedHashSet<>();
+    private final ExecutorService _executor;
+    private final PriorityQueue<TraceFile> _queue;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct source and read first message of all files.
+     *
+     * @param path
+     *   Directory with <code>strace -ff</code> output or prefix that was
+     *   passed to strace via its <code>-o</code> option.
+     * @param threads
+     *   Number of worker threads.
+     * @param batchSize
+     *   Maximal number of lines read from one file at once.
+     * @param maxOpenFiles
+     *   Maximal number of files that are open and read ahead at the same
+     *   time, files being read by workers at the beginning aside.
+     *
+     * @throws FileNotFoundException
+     *   If no per-process files were found.
+     * @throws IOException
+     *   If reading of the first message of any file failed.
+     */
+    public StraceFfSource(String path, int threads, int batchSize,
+        int maxOpenFiles) throws FileNotFoundException, IOException
+    {
+        if (path == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("threads = " + threads);
+        }
+
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize = " + batchSize);
+        }
+
+        if (maxOpenFiles <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maxOpenFiles = " + maxOpenFiles);
+        }
+
+        _batchSize = batchSize;
+        _maxOpenFiles = maxOpenFiles;
+        _files = findFiles(new File(path));
+
+        if (_files.isEmpty())
+        {
+            throw new FileNotFoundException(path);
+        }
+
+        _executor = Executors.newFixedThreadPool(
+            Math.min(threads, _files.size()),
+            new DaemonThreadFactory("strace-ff"));
+        _queue = new PriorityQueue<>(_files.size(), _ORDER);
+
+        for (final TraceFile file : _files)
+        {
+            file.pending = _executor.submit(new Callable<Batch>()
+                {
+                    @Override
+                    public Batch call() throws IOException
+                    {
+                        return file.probe();
+                    }
+                });
+        }
+
+        for (TraceFile file : _files)
+        {
+            file.current = get(file.pending);
+            file.pending = null;
+        }
+
+        computeDayOffsets();
+
+        for (TraceFile file : _files)
+        {
+            if (file.current.length > 0)
+            {
+                _queue.add(file);
+            }
+        }
+    }
+
+    public StraceFfSource(String path, int threads, int batchSize)
+        throws FileNotFoundException, IOException
+    {
+        this(path, threads, batchSize, DEFAULT_MAX_OPEN_FILES);
+    }
+
+    public StraceFfSource(String path)
+        throws FileNotFoundException, IOException
+    {
+        this(path, Runtime.getRuntime().availableProcessors(),
+            DEFAULT_BATCH_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    /**
+     * List per-process files sorted by PID.
+     */
+    private List<TraceFile> findFiles(File path)
+    {
+        File directory;
+        String prefix;
+
+        if (path.isDirectory())
+        {
+            directory = path;
+            prefix = null;
+        }
+        else
+        {
+            directory = path.getAbsoluteFile().getParentFile();
+            prefix = path.getName();
+        }
+
+        List<TraceFile> files = new ArrayList<>();
+        File[] entries = directory == null ? null : directory.listFiles();
+
+        if (entries == null)
+        {
+            return files;
+        }
+
+        for (File entry : entries)
+        {
+            Matcher matcher = _FILE_NAME_PATTERN.matcher(entry.getName());
+
+            if (!entry.isFile() || !matcher.matches()
+                || (prefix != null && !prefix.equals(matcher.group(1))))
+            {
+                continue;
+            }
+
+            try
+            {
+                files.add(new TraceFile(
+                    Integer.parseInt(matcher.group(2)), entry));
+            }
+            catch (NumberFormatException ex)
+            {
+                // Suffix too long to be a PID.
+            }
+        }
+
+        Collections.sort(files, new Comparator<TraceFile>()
+            {
+                @Override
+                public int compare(TraceFile a, TraceFile b)
+                {
+                    return Integer.compare(a.pid, b.pid);
+                }
+            });
+
+        return files;
+    }
+
+    /**
+     * Files that contain only time of day are normalized relative to their
+     * first message, but each of them may start before or after midnight.
+     *
+     * Start of the whole trace is found as the first time of day that follows
+     * the largest gap between starts of individual files, when going around
+     * the clock. Files that start earlier in the day then that are shifted by
+     * one day.
+     */
+    private void computeDayOffsets()
+    {
+        List<Long> starts = new ArrayList<>();
+
+        for (TraceFile file : _files)
+        {
+            if (file.firstTimeOfDay != _NO_TIMESTAMP)
+            {
+                starts.add(file.firstTimeOfDay);
+            }
+        }
+
+        if (starts.isEmpty())
+        {
+            return;
+        }
+
+        Collections.sort(starts);
+
+        long traceStart = starts.get(0);
+        long largestGap = starts.get(0) + StraceTimestamp.NANOS_PER_DAY
+            - starts.get(starts.size() - 1);
+
+        for (int i = 1; i < starts.size(); i++)
+        {
+            long gap = starts.get(i) - starts.get(i - 1);
+
+            if (gap > largestGap)
+            {
+                largestGap = gap;
+                traceStart = starts.get(i);
+            }
+        }
+
+        for (TraceFile file : _files)
+        {
+            if (file.firstTimeOfDay != _NO_TIMESTAMP
+                && file.firstTimeOfDay < traceStart)
+            {
+                file.offset = StraceTimestamp.NANOS_PER_DAY;
+            }
+        }
+    }
+
+    /**
+     * Wait for batch that is being read.
+     */
+    private static Batch get(Future<Batch> pending) throws IOException
+    {
+        try
+        {
+            return pending.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Replace current batch of a file with the one that was read ahead, or
+     * read it now if the file isn't open, and request the next one. Least
+     * recently advanced file is closed if there are too many open files.
+     */
+    private void advance(TraceFile file) throws IOException
+    {
+        _openFiles.remove(file);
+
+        Batch batch = get(file.pending == null
+            ? _executor.submit(file)
+            : file.pending);
+
+        file.current = batch;
+        file.position = 0;
+        file.pending = null;
+
+        if (batch.isLast)
+        {
+            return;
+        }
+
+        if (_openFiles.size() >= _maxOpenFiles)
+        {
+            Iterator<TraceFile> oldest = _openFiles.iterator();
+            TraceFile evicted = oldest.next();
+
+            oldest.remove();
+
+            // Read-ahead batch is dropped, it's read again after the file
+            // is reopened.
+            get(evicted.pending);
+            evicted.pending = null;
+            evicted.rewind();
+        }
+
+        file.pending = _executor.submit(file);
+        _openFiles.add(file);
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return !_queue.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * May block until the next batch of the file, from which the message was
+     * taken, is read.
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        TraceFile file = _queue.poll();
+
+        if (file == null)
+        {
+            throw new NoSuchElementException();
+        }
+
+        String line = file.current.lines[file.position++];
+
+        if (file.position < file.current.length)
+        {
+            _queue.add(file);
+        }
+        else if (!file.current.isLast)
+        {
+            advance(file);
+
+            if (file.current.length > 0)
+            {
+                _queue.add(file);
+            }
+        }
+
+        return line;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _queue.clear();
+        _openFiles.clear();
+        _executor.shutdownNow();
+
+        // Files must not be closed while workers are reading them.
+        try
+        {
+            _executor.awaitTermination(_CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        IOException exception = null;
+
+        for (TraceFile file : _files)
+        {
+            try
+            {
+                file.close();
+            }
+            catch (IOException ex)
+            {
+                exception = ex;
+            }
+        }
+
+        if (exception != null)
+        {
+            throw exception;
+        }
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
@@ -0,0 +1,484 @@
+package unifiedloganalyzer.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+
+/**
+ * Minimal streaming reader of tar archives.
+ *
+ * Archive is read strictly sequentially, so it can come straight out of
+ * a decompressing stream. After getNextEntry() returns an entry this stream
+ * reads its content and reports the end of input at the end of the entry.
+ *
+ * Only regular files are returned as entries, everything else is skipped.
+ * Supported are ustar headers, including the name prefix, GNU long names
+ * and pax extended headers for path and size. Sparse files and multi-volume
+ * archives are not supported.
+ *
+ * Not thread safe.
+ *
+ * @author Peter Trsko
+ */
+final class TarInputStream extends InputStream
+{
+    private static final int _BLOCK_SIZE = 512;
+
+    private static final Charset _UTF8 = Charset.forName("UTF-8");
+
+    // Header fields, offset and length.
+    private static final int _NAME = 0;
+    private static final int _NAME_LENGTH = 100;
+    private static final int _SIZE = 124;
+    private static final int _SIZE_LENGTH = 12;
+    private static final int _CHECKSUM = 148;
+    private static final int _CHECKSUM_LENGTH = 8;
+    private static final int _TYPE = 156;
+    private static final int _MAGIC = 257;
+    private static final int _PREFIX = 345;
+    private static final int _PREFIX_LENGTH = 155;
+
+    /**
+     * Regular file entry in the archive.
+     */
+    public static final class Entry
+    {
+        private final String _name;
+        private final long _size;
+
+        public Entry(String name, long size)
+        {
+            _name = name;
+            _size = size;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public long getSize()
+        {
+            return _size;
+        }
+    }
+
+    private final InputStream _in;
+    private final byte[] _header = new byte[_BLOCK_SIZE];
+    private final byte[] _skipBuffer = new byte[8 * _BLOCK_SIZE];
+
+    /**
+     * Bytes of current entry that weren't read yet and padding that follows
+     * them.
+     */
+    private long _remaining = 0;
+    private long _padding = 0;
+    private boolean _isEndOfArchive = false;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    public TarInputStream(InputStream in)
+    {
+        if (in == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _in = in;
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Entries ////////////////////////////////////////////////////////////
+
+    /**
+     * Skip rest of the current entry and read header of the next regular
+     * file.
+     *
+     * @return
+     *   Next entry or <code>null</code> at the end of archive.
+     *
+     * @throws IOException
+     *   If archive is truncated or corrupted.
+     */
+    public Entry getNextEntry() throws IOException
+    {
+        String longName = null;
+        long paxSize = -1;
+
+        skipFully(_remaining + _padding);
+        _remaining = 0;
+        _padding = 0;
+
+        while (!_isEndOfArchive)
+        {
+            if (!readHeader())
+            {
+                _isEndOfArchive = true;
+                break;
+            }
+
+            char type = (char)_header[_TYPE];
+            long size = parseNumber(_SIZE, _SIZE_LENGTH);
+            long padding = (_BLOCK_SIZE - size % _BLOCK_SIZE) % _BLOCK_SIZE;
+
+            switch (type)
+            {
+                case '0':
+                case '\0':
+                case '7':
+                    if (paxSize >= 0)
+                    {
+                        size = paxSize;
+                        padding =
+                            (_BLOCK_SIZE - size % _BLOCK_SIZE) % _BLOCK_SIZE;
+                    }
+
+                    _remaining = size;
+                    _padding = padding;
+
+                    return new Entry(
+                        longName != null ? longName : headerName(), size);
+
+                case 'L':
+                    // GNU long name of the next entry.
+                    longName = trimNul(new String(readData(size), _UTF8));
+                    skipFully(padding);
+                    break;
+
+                case 'x':
+                    // Pax extended header of the next entry.
+                    byte[] data = readData(size);
+                    skipFully(padding);
+
+                    String paxPath = paxRecord(data, "path");
+                    if (paxPath != null)
+                    {
+                        longName = paxPath;
+                    }
+
+                    String paxSizeValue = paxRecord(data, "size");
+                    if (paxSizeValue != null)
+                    {
+                        paxSize = parseLong(paxSizeValue);
+                    }
+                    break;
+
+                default:
+                    // Directories, links, devices, global pax headers, etc.
+                    skipFully(size + padding);
+                    longName = null;
+                    paxSize = -1;
+                    break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read and verify next header.
+     *
+     * @return
+     *   <code>false</code> at the end of archive, i.e. when a block of zeros
+     *   or the end of input is reached.
+     */
+    private boolean readHeader() throws IOException
+    {
+        int n = readAtMost(_header, 0, _BLOCK_SIZE);
+
+        if (n == 0)
+        {
+            return false;
+        }
+        else if (n < _BLOCK_SIZE)
+        {
+            throw new EOFException("Truncated tar header.");
+        }
+
+        long sum = 0;
+        boolean isZero = true;
+
+        for (int i = 0; i < _BLOCK_SIZE; i++)
+        {
+            int b = _header[i] & 0xff;
+
+            isZero &= b == 0;
+            sum += i >= _CHECKSUM && i < _CHECKSUM + _CHECKSUM_LENGTH
+                ? ' '
+                : b;
+        }
+
+        if (isZero)
+        {
+            return false;
+        }
+
+        if (sum != parseNumber(_CHECKSUM, _CHECKSUM_LENGTH))
+        {
+            throw new IOException("Invalid tar header checksum.");
+        }
+
+        return true;
+    }
+
+    private String headerName()
+    {
+        String name = field(_NAME, _NAME_LENGTH);
+
+        // GNU tar uses the space of prefix for other data.
+        if (isUstar() && _header[_MAGIC + 5] == 0)
+        {
+            String prefix = field(_PREFIX, _PREFIX_LENGTH);
+
+            if (!prefix.isEmpty())
+            {
+                return prefix + "/" + name;
+            }
+        }
+
+        return name;
+    }
+
+    private boolean isUstar()
+    {
+        return _header[_MAGIC] == 'u' && _header[_MAGIC + 1] == 's'
+            && _header[_MAGIC + 2] == 't' && _header[_MAGIC + 3] == 'a'
+            && _header[_MAGIC + 4] == 'r';
+    }
+
+    private String field(int offset, int length)
+    {
+        int end = offset;
+
+        while (end < offset + length && _header[end] != 0)
+        {
+            end++;
+        }
+
+        return new String(_header, offset, end - offset, _UTF8);
+    }
+
+    /**
+     * Parse octal number, or base-256 number used by GNU tar for large
+     * values.
+     */
+    private long parseNumber(int offset, int length) throws IOException
+    {
+        if ((_header[offset] & 0x80) != 0)
+        {
+            long value = _header[offset] & 0x7f;
+
+            for (int i = offset + 1; i < offset + length; i++)
+            {
+                value = (value << 8) | (_header[i] & 0xff);
+            }
+
+            return value;
+        }
+
+        long value = 0;
+        int i = offset;
+        int end = offset + length;
+
+        while (i < end && (_header[i] == ' ' || _header[i] == 0))
+        {
+            i++;
+        }
+
+        for (; i < end && _header[i] >= '0' && _header[i] <= '7'; i++)
+        {
+            value = (value << 3) | (_header[i] - '0');
+        }
+
+        for (; i < end; i++)
+        {
+            if (_header[i] != ' ' && _header[i] != 0)
+            {
+                throw new IOException("Invalid number in tar header.");
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Find value of a pax record, records have form
+     * <code>"LENGTH KEY=VALUE\n"</code> where LENGTH includes itself.
+     */
+    private static String paxRecord(byte[] data, String key)
+        throws IOException
+    {
+        int i = 0;
+
+        while (i < data.length && data[i] != 0)
+        {
+            int space = i;
+
+            while (space < data.length && data[space] != ' ')
+            {
+                space++;
+            }
+
+            int length = (int)parseLong(
+                new String(data, i, space - i, _UTF8));
+            int end = i + length;
+
+            if (length <= 0 || end > data.length)
+            {
+                throw new IOException("Invalid pax extended header.");
+            }
+
+            String record = new String(data, space + 1, end - space - 2,
+                _UTF8);
+
+            if (record.startsWith(key + "="))
+            {
+                return record.substring(key.length() + 1);
+            }
+
+            i = end;
+        }
+
+        return null;
+    }
+
+    private static long parseLong(String str) throws IOException
+    {
+        try
+        {
+            return Long.parseLong(str);
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IOException("Invalid number in tar header: " + str);
+        }
+    }
+
+    private static String trimNul(String str)
+    {
+        int end = str.indexOf('\0');
+
+        return end < 0 ? str : str.substring(0, end);
+    }
+
+    // }}} Entries ////////////////////////////////////////////////////////////
+
+    // {{{ Low level reading //////////////////////////////////////////////////
+
+    private int readAtMost(byte[] buffer, int offset, int length)
+        throws IOException
+    {
+        int total = 0;
+
+        while (total < length)
+        {
+            int n = _in.read(buffer, offset + total, length - total);
+
+            if (n < 0)
+            {
+                break;
+            }
+            total += n;
+        }
+
+        return total;
+    }
+
+    private byte[] readData(long size) throws IOException
+    {
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Tar header data too large.");
+        }
+
+        byte[] data = new byte[(int)size];
+
+        if (readAtMost(data, 0, data.length) < data.length)
+        {
+            throw new EOFException("Truncated tar archive.");
+        }
+
+        return data;
+    }
+
+    private void skipFully(long length) throws IOException
+    {
+        // InputStream.skip() of decompressing streams reads the data anyway
+        // and may skip less then requested, reading is simpler.
+        while (length > 0)
+        {
+            int n = _in.read(_skipBuffer, 0,
+                (int)Math.min(length, _skipBuffer.length));
+
+            if (n < 0)
+            {
+                throw new EOFException("Truncated tar archive.");
+            }
+            length -= n;
+        }
+    }
+
+    // }}} Low level reading //////////////////////////////////////////////////
+
+    // {{{ InputStream implementation /////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Reads content of the current entry.
+     */
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Reads content of the current entry.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (_remaining == 0)
+        {
+            return -1;
+        }
+
+        int n = _in.read(buffer, offset, (int)Math.min(length, _remaining));
+
+        if (n < 0)
+        {
+            throw new EOFException("Truncated tar archive.");
+        }
+        _remaining -= n;
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException
+    {
+        return (int)Math.min(_in.available(), _remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _in.close();
+    }
+
+    // }}} InputStream implementation /////////////////////////////////////////
+}
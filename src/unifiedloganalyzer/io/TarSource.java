@@ -0,0 +1,138 @@
+package unifiedloganalyzer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Source that reads files stored in a tar archive, possibly compressed by
+ * gzip, without extracting them.
+ *
+ * Archive is read as a stream, entry by entry. Each entry is a separate
+ * input, therefore hasNext() returns <code>false</code> at the end of every
+ * entry and nextEntry() has to be called to continue with the next one.
+ * This way the consumer knows where one input ends and another starts, e.g.
+ * to call IParser.eof() or to analyze each of them separately.
+ *
+ * @author Peter Trsko
+ */
+public class TarSource extends ASource
+{
+    private final TarInputStream _tar;
+    private TarInputStream.Entry _entry = null;
+    private BufferedReader _reader = null;
+    private String _currentLine = null;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Open tar archive, no entry is selected until nextEntry() is called.
+     *
+     * @param file
+     *   Path to tar archive.
+     * @param isGzipped
+     *   Archive is compressed by gzip, i.e. it's a <code>.tar.gz</code> or
+     *   <code>.tgz</code> file.
+     */
+    public TarSource(String file, boolean isGzipped)
+        throws FileNotFoundException, IOException
+    {
+        InputStream stream = new FileInputStream(file);
+
+        stream = isGzipped
+            ? new ParallelGzipInputStream(stream)
+            : new BufferedInputStream(stream);
+
+        _tar = new TarInputStream(stream);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Skip rest of the current entry, if any, and start reading the next
+     * one.
+     *
+     * @return
+     *   <code>false</code> if there are no more entries in the archive.
+     *
+     * @throws IOException
+     *   If archive is truncated or corrupted.
+     */
+    public boolean nextEntry() throws IOException
+    {
+        _entry = _tar.getNextEntry();
+
+        if (_entry == null)
+        {
+            _reader = null;
+            _currentLine = null;
+
+            return false;
+        }
+
+        // Reader isn't closed at the end of entry, since that would close
+        // the whole archive.
+        _reader = new BufferedReader(new InputStreamReader(_tar));
+        _currentLine = _reader.readLine();
+
+        return true;
+    }
+
+    /**
+     * Name, including path inside the archive, of the current entry.
+     */
+    public String getEntryName()
+    {
+        return _entry == null ? null : _entry.getName();
+    }
+
+    // {{{ ISource implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns <code>false</code> at the end of each entry.
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return _currentLine != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String next() throws NoSuchElementException, IOException
+    {
+        String ret = _currentLine;
+
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        // Returns null at the end of entry.
+        _currentLine = _reader.readLine();
+
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _currentLine = null;
+        _tar.close();
+    }
+
+    // }}} ISource implementation /////////////////////////////////////////////
+}
@@ -9,14 +9,20 @@ package unifiedloganalyzer.main;
 public enum AnalysisAlgorithm
 {
     DUMMY(),
-    STRACE_PATH_ANALYSIS(InputFormat.STRACE),
-    STRACE_PATH_ANALYSIS_PARSED_DATA_PRESERVED(InputFormat.STRACE),
+    STRACE_PATH_ANALYSIS(new InputFormat[]{
+        InputFormat.STRACE,
+        InputFormat.STRACE_FF}),
+    STRACE_PATH_ANALYSIS_PARSED_DATA_PRESERVED(new InputFormat[]{
+        InputFormat.STRACE,
+        InputFormat.STRACE_FF}),
     MAGIC_PATH_ANALYSIS(new InputFormat[]{
         InputFormat.DUMMY,
-        InputFormat.STRACE}),
+        InputFormat.STRACE,
+        InputFormat.STRACE_FF}),
     MAGIC_PATH_ANALYSIS_PARSED_DATA_PRESERVED(new InputFormat[]{
         InputFormat.DUMMY,
-        InputFormat.STRACE});
+        InputFormat.STRACE,
+        InputFormat.STRACE_FF});
 
     /**
      * List of supported input formats.
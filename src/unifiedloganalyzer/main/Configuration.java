@@ -1,5 +1,8 @@
 package unifiedloganalyzer.main;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * Internal application configuration produced by parsing command line options.
@@ -13,6 +16,101 @@ public class Configuration
     public InputFormat inputFormat = null;
     public AnalysisAlgorithm analysisAlgorithm = null;
 
+    /**
+     * Read input file using MappedFileSource instead of FileSource.
+     */
+    public boolean memoryMappedInput = false;
+
+    /**
+     * Read input on a dedicated thread using PrefetchingSource.
+     */
+    public boolean prefetchInput = false;
+
+    /**
+     * Follow input file as it grows using FollowingFileSource, analysis
+     * results are reported incrementally.
+     */
+    public boolean followInput = false;
+
+    /**
+     * Load line index of input file from its sidecar file and store it
+     * there when the analysis ends, see LineIndex.
+     */
+    public boolean indexInput = false;
+
+    /**
+     * Number of lines between two checkpoints of the analysis, zero disables
+     * checkpoints.
+     */
+    public long checkpointInterval = 0;
+
+    /**
+     * Resume analysis from the last checkpoint, if there is any.
+     */
+    public boolean resumeFromCheckpoint = false;
+
+    /**
+     * Analyse only lines from firstLine to lastLine, inclusive and numbered
+     * from one. Zero means that the range isn't limited from that side.
+     */
+    public long firstLine = 0;
+    public long lastLine = 0;
+
+    /**
+     * Number of threads that parse input, see ParallelStraceParser. Input is
+     * parsed on the main thread if it's one.
+     */
+    public int parseThreads = 1;
+
+    /**
+     * Aggregate parse errors and keep this many samples of each kind of
+     * them, see ParseErrorAggregator. Negative value means that parse errors
+     * are passed to analysis as they are.
+     */
+    public int parseErrorSamples = -1;
+
+    /**
+     * Run source, parser, analyzer and sink on their own threads, see
+     * Pipeline, with buffers of this many batches between them. Zero means
+     * that everything runs on the main thread.
+     */
+    public int pipelineCapacity = 0;
+
+    /**
+     * Algorithms that analyze the same parsed data in parallel with
+     * analysisAlgorithm, see AnalyzerGraph. Results of all of them are
+     * written to the same output.
+     */
+    public List<AnalysisAlgorithm> parallelAlgorithms = new ArrayList<>();
+
+    /**
+     * Split strace path analysis in to this many shards that analyse
+     * independent process trees in parallel, see ShardedStracePathAnalyzer.
+     */
+    public int analysisShards = 1;
+
+    /**
+     * Analyse every file listed in batchList separately, all of them in one
+     * JVM, see BatchAnalysis. List is read from stdin if batchList is
+     * <code>null</code>.
+     */
+    public boolean batchMode = false;
+    public String batchList = null;
+
+    /**
+     * Directory where batch mode writes results, <code>null</code> means
+     * next to each input.
+     */
+    public String outputDirectory = null;
+
+    /**
+     * Limits of batch mode, maximal number of inputs analysed at the same
+     * time and their maximal total size in bytes. Zero means that the
+     * default is used.
+     */
+    public int maxConcurrency = 0;
+    public long maxMemory = 0;
+
     private Configuration()
     {
         inputFormat = InputFormat.STRACE;
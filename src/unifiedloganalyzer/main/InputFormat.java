@@ -26,6 +26,16 @@ public enum InputFormat
      */
     STRACE,
 
+    /**
+     * Output of <code>strace -ff -o PREFIX</code>, i.e. one file per traced
+     * process named <code>PREFIX.PID</code>. Input is either the PREFIX or
+     * a directory that contains these files.
+     *
+     * Messages are merged in to one trace by their timestamps, therefore
+     * strace should be invoked with <code>-tt</code> or <code>-ttt</code>.
+     */
+    STRACE_FF,
+
     /**
      * Log format that is produced by syslog.
      *
@@ -25,9 +25,31 @@ public final class ParseOptions
             .append("  UnifiedLogAnalyzer")
                 .append(" [{-a|--algorithm} ALGORITHM]")
                 .append(" [{-i|--input-format} INPUT_FORMAT]")
+                .append(" [--mmap] [--prefetch] [{-f|--follow}]")
+                .append(" [--parse-threads N] [--parse-error-samples K]")
+                .append(" [--pipeline CAPACITY]")
+                .append(" [--parallel-algorithm ALGORITHM ...]")
+                .append(" [--shards N]")
                 .append(" [{-o|--output} {FILE|-}] {FILE|-}")
                 .append("\n\n")
 
+            .append("  UnifiedLogAnalyzer")
+                .append(" [{-a|--algorithm} ALGORITHM]")
+                .append(" [{-i|--input-format} INPUT_FORMAT] [--index]")
+                .append(" [--checkpoint-every LINES] [--resume]")
+                .append(" [--lines FROM-[TO]]")
+                .append(" [{-o|--output} {FILE|-}] FILE")
+                .append("\n\n")
+
+            .append("  UnifiedLogAnalyzer")
+                .append(" [{-a|--algorithm} ALGORITHM]")
+                .append(" [{-i|--input-format} INPUT_FORMAT] [--mmap]")
+                .append(" [--parse-error-samples K]")
+                .append(" [--parallel-algorithm ALGORITHM ...]")
+                .append(" [--max-concurrency N] [--max-memory MB]")
+                .append(" [--output-dir DIR] --batch {LIST|-}")
+                .append("\n\n")
+
             .append("  UnifiedLogAnalyzer")
                 .append(" {--list-input-formats|--list-algorithms}")
                 .append("\n\n")
@@ -147,7 +169,7 @@ public final class ParseOptions
                 {
                     for (InputFormat format : InputFormat.values())
                     {
-                        if (format.toString().toLowerCase().equals(args[0]))
+                        if (format.toArgument().equals(args[0]))
                         {
                             config.inputFormat = format;
                             break;
@@ -245,6 +267,325 @@ public final class ParseOptions
             }
         }
 
+        private static class MemoryMappedInput extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                config.memoryMappedInput = true;
+
+                return true;
+            }
+        }
+
+        private static class PrefetchInput extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                config.prefetchInput = true;
+
+                return true;
+            }
+        }
+
+        private static class FollowInput extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                config.followInput = true;
+
+                return true;
+            }
+        }
+
+        private static class IndexInput extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                config.indexInput = true;
+
+                return true;
+            }
+        }
+
+        private static class CheckpointInterval extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    try
+                    {
+                        config.checkpointInterval = Long.parseLong(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    return config.checkpointInterval > 0;
+                }
+
+                return false;
+            }
+        }
+
+        private static class ResumeFromCheckpoint extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                config.resumeFromCheckpoint = true;
+
+                return true;
+            }
+        }
+
+        private static class LineRange extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length != 1)
+                {
+                    return false;
+                }
+
+                int dash = args[0].indexOf('-');
+
+                try
+                {
+                    if (dash < 0)
+                    {
+                        config.firstLine = Long.parseLong(args[0]);
+                        config.lastLine = config.firstLine;
+                    }
+                    else
+                    {
+                        config.firstLine =
+                            Long.parseLong(args[0].substring(0, dash));
+                        config.lastLine = dash == args[0].length() - 1
+                            ? 0
+                            : Long.parseLong(args[0].substring(dash + 1));
+                    }
+                }
+                catch (NumberFormatException ex)
+                {
+                    usageError(args[0], "Invalid line range.");
+                }
+
+                return config.firstLine > 0
+                    && (config.lastLine == 0
+                        || config.lastLine >= config.firstLine);
+            }
+        }
+
+        private static class ParseThreads extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    try
+                    {
+                        config.parseThreads = Integer.parseInt(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    return config.parseThreads > 0;
+                }
+
+                return false;
+            }
+        }
+
+        private static class ParseErrorSamples extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    try
+                    {
+                        config.parseErrorSamples = Integer.parseInt(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    return config.parseErrorSamples >= 0;
+                }
+
+                return false;
+            }
+        }
+
+        private static class PipelineCapacity extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    try
+                    {
+                        config.pipelineCapacity = Integer.parseInt(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    return config.pipelineCapacity > 0;
+                }
+
+                return false;
+            }
+        }
+
+        private static class ParallelAlgorithm extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    for (AnalysisAlgorithm algorithm
+                        : AnalysisAlgorithm.values())
+                    {
+                        if (algorithm.toArgument().equals(args[0]))
+                        {
+                            config.parallelAlgorithms.add(algorithm);
+
+                            return true;
+                        }
+                    }
+                }
+
+                return false;
+            }
+        }
+
+        private static class AnalysisShards extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    try
+                    {
+                        config.analysisShards = Integer.parseInt(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    return config.analysisShards > 0;
+                }
+
+                return false;
+            }
+        }
+
+        private static class BatchList extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    config.batchMode = true;
+                    config.batchList = args[0].equals("-") ? null : args[0];
+
+                    return true;
+                }
+
+                return false;
+            }
+        }
+
+        private static class OutputDirectory extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    config.outputDirectory = args[0];
+
+                    return true;
+                }
+
+                return false;
+            }
+        }
+
+        private static class MaxConcurrency extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    try
+                    {
+                        config.maxConcurrency = Integer.parseInt(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    return config.maxConcurrency > 0;
+                }
+
+                return false;
+            }
+        }
+
+        private static class MaxMemory extends ProcessOption
+        {
+            @Override
+            public boolean processOption(String[] args, Configuration config)
+            {
+                if (args.length == 1)
+                {
+                    long megabytes = 0;
+
+                    try
+                    {
+                        megabytes = Long.parseLong(args[0]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        usageError(args[0], "Not a number.");
+                    }
+
+                    if (megabytes <= 0 || megabytes > Long.MAX_VALUE >> 20)
+                    {
+                        return false;
+                    }
+                    config.maxMemory = megabytes << 20;
+
+                    return true;
+                }
+
+                return false;
+            }
+        }
+
         private static class InputFile extends ProcessOption
         {
             @Override
@@ -293,6 +634,31 @@ public final class ParseOptions
             new ProcessAnalysisAlgorithm();
         public static final ProcessOption listAlgorithms =
             new ListAlgorithms();
+        public static final ProcessOption memoryMappedInput =
+            new MemoryMappedInput();
+        public static final ProcessOption prefetchInput = new PrefetchInput();
+        public static final ProcessOption followInput = new FollowInput();
+        public static final ProcessOption indexInput = new IndexInput();
+        public static final ProcessOption checkpointInterval =
+            new CheckpointInterval();
+        public static final ProcessOption resumeFromCheckpoint =
+            new ResumeFromCheckpoint();
+        public static final ProcessOption lineRange = new LineRange();
+        public static final ProcessOption parseThreads = new ParseThreads();
+        public static final ProcessOption parseErrorSamples =
+            new ParseErrorSamples();
+        public static final ProcessOption pipelineCapacity =
+            new PipelineCapacity();
+        public static final ProcessOption parallelAlgorithm =
+            new ParallelAlgorithm();
+        public static final ProcessOption analysisShards =
+            new AnalysisShards();
+        public static final ProcessOption batchList = new BatchList();
+        public static final ProcessOption outputDirectory =
+            new OutputDirectory();
+        public static final ProcessOption maxConcurrency =
+            new MaxConcurrency();
+        public static final ProcessOption maxMemory = new MaxMemory();
         public static final ProcessOption inputFile = new InputFile();
         public static final ProcessOption outputFile = new OutputFile();
     }
@@ -348,6 +714,95 @@ public final class ParseOptions
          */
         OUTPUT_FILE("o", "output", 1, ProcessOption.outputFile),
 
+        /**
+         * Read input file by mapping it in to memory.
+         */
+        MMAP(null, "mmap", 0, ProcessOption.memoryMappedInput),
+
+        /**
+         * Read input on a dedicated thread.
+         */
+        PREFETCH(null, "prefetch", 0, ProcessOption.prefetchInput),
+
+        /**
+         * Keep reading input file as it grows and report results
+         * incrementally.
+         */
+        FOLLOW("f", "follow", 0, ProcessOption.followInput),
+
+        /**
+         * Use line index of input file stored in its sidecar file and
+         * update it.
+         */
+        INDEX(null, "index", 0, ProcessOption.indexInput),
+
+        /**
+         * Store checkpoint of the analysis every N lines.
+         */
+        CHECKPOINT_EVERY(null, "checkpoint-every", 1,
+            ProcessOption.checkpointInterval),
+
+        /**
+         * Resume analysis from the last checkpoint.
+         */
+        RESUME(null, "resume", 0, ProcessOption.resumeFromCheckpoint),
+
+        /**
+         * Analyse only specified range of lines.
+         */
+        LINES(null, "lines", 1, ProcessOption.lineRange),
+
+        /**
+         * Parse input on N threads.
+         */
+        PARSE_THREADS(null, "parse-threads", 1, ProcessOption.parseThreads),
+
+        /**
+         * Aggregate parse errors and keep K samples of each kind of them.
+         */
+        PARSE_ERROR_SAMPLES(null, "parse-error-samples", 1,
+            ProcessOption.parseErrorSamples),
+
+        /**
+         * Run source, parser, analyzer and sink on their own threads with
+         * buffers of CAPACITY batches between them.
+         */
+        PIPELINE(null, "pipeline", 1, ProcessOption.pipelineCapacity),
+
+        /**
+         * Run another algorithm in parallel with the selected one, can be
+         * used more than once.
+         */
+        PARALLEL_ALGORITHM(null, "parallel-algorithm", 1,
+            ProcessOption.parallelAlgorithm),
+
+        /**
+         * Split strace path analysis in to N shards.
+         */
+        SHARDS(null, "shards", 1, ProcessOption.analysisShards),
+
+        /**
+         * Analyse every file listed in LIST separately.
+         */
+        BATCH(null, "batch", 1, ProcessOption.batchList),
+
+        /**
+         * Write results of batch mode in to DIR.
+         */
+        OUTPUT_DIR(null, "output-dir", 1, ProcessOption.outputDirectory),
+
+        /**
+         * Analyse at most N inputs of batch mode at the same time.
+         */
+        MAX_CONCURRENCY(null, "max-concurrency", 1,
+            ProcessOption.maxConcurrency),
+
+        /**
+         * Limit total size of inputs of batch mode that are analysed at the
+         * same time to MB megabytes.
+         */
+        MAX_MEMORY(null, "max-memory", 1, ProcessOption.maxMemory),
+
         /**
          * Specify input file. Currently only one is supported.
          */
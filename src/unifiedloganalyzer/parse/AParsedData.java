@@ -50,7 +50,7 @@ public abstract class AParsedData implements IParsedData
     public void appendTo(Appendable buff) throws IOException
     {
         buff.append("{ originalMessage = ")
-            .append(_originalMessage)
+            .append(getOriginalMessage())
             .append('\n');
         appendRestTo(buff);
         buff.append("}\n");
@@ -20,7 +20,7 @@ public abstract class AParser implements IParser
 
     public AParser()
     {
-        _callbacksManager = new CallbacksManager<>();
+        _callbacksManager = new CallbacksManager<>(ParsedData.class);
     }
 
     public AParser(ICallback<ParsedData> callback)
@@ -32,6 +32,72 @@ public abstract class AParser implements IParser
 
     // }}} Constructors ///////////////////////////////////////////////////////
 
+    /**
+     * {@inheritDoc}
+     *
+     * Default implementation copies the message and passes it to
+     * parse(String).
+     */
+    @Override
+    public void parse(CharSequence message)
+    {
+        parse(message.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Default implementation calls parse() for each message, parsed data are
+     * then delivered to callbacks in batches, see isBatchDelivery().
+     */
+    @Override
+    public void parseBatch(CharSequence[] messages, int offset, int length)
+    {
+        beginBatch();
+
+        try
+        {
+            for (int i = offset, end = offset + length; i < end; i++)
+            {
+                parse(messages[i]);
+            }
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    /**
+     * Whether parsed data stay valid after the next message is parsed, and
+     * therefore can be collected and delivered to callbacks in batches. It's
+     * <code>true</code> by default.
+     */
+    protected boolean isBatchDelivery()
+    {
+        return true;
+    }
+
+    /**
+     * Collect parsed data passed to runCallbacks() until endBatch(), if
+     * isBatchDelivery() allows it.
+     */
+    protected void beginBatch()
+    {
+        if (isBatchDelivery())
+        {
+            _callbacksManager.beginBatch();
+        }
+    }
+
+    /**
+     * Deliver parsed data collected since beginBatch() as one batch.
+     */
+    protected void endBatch()
+    {
+        _callbacksManager.endBatch();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,24 @@
+package unifiedloganalyzer.parse;
+
+
+/**
+ * Interface for analyzers that can consume parsed data which parser reuses
+ * for subsequent messages.
+ *
+ * Such analyzer must not keep parsed data, nor pass them on, after
+ * analyze() returns, unless it calls retain() on them, see IRetainable.
+ * Parser that supports pooled mode uses it only for these analyzers, since
+ * it avoids allocation of parsed data for every message.
+ *
+ * @author Peter Trsko
+ */
+public interface IPooledDataConsumer
+{
+    /**
+     * Check if parsed data may be reused by parser.
+     *
+     * @return
+     *   <code>true</code> if this analyzer follows rules described above.
+     */
+    boolean acceptsPooledData();
+}
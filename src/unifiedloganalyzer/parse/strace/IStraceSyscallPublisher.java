@@ -0,0 +1,23 @@
+package unifiedloganalyzer.parse.strace;
+
+import java.util.Set;
+
+
+/**
+ * Interface for parsers that fully parse only syscalls their analyzer
+ * consumes, see IStraceSyscallSubscriber.
+ *
+ * @author Peter Trsko
+ */
+public interface IStraceSyscallPublisher
+{
+    /**
+     * Parse fully only specified syscalls, count-only records are produced
+     * for the rest.
+     *
+     * @param syscalls
+     *   Syscalls that should be parsed fully, or <code>null</code> for all
+     *   of them, which is the default.
+     */
+    void setSubscribedSyscalls(Set<StraceSyscallParsedData.Syscall> syscalls);
+}
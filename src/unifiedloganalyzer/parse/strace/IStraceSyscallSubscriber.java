@@ -0,0 +1,26 @@
+package unifiedloganalyzer.parse.strace;
+
+import java.util.Set;
+
+
+/**
+ * Interface for analyzers that consume only some kinds of syscalls.
+ *
+ * Parsers, see IStraceSyscallPublisher, fully parse only syscalls from this
+ * set, for all other syscalls they produce count-only records, see
+ * StraceSyscallParsedData.isCountOnly(), which is enough for keeping
+ * statistics about them.
+ *
+ * @author Peter Trsko
+ */
+public interface IStraceSyscallSubscriber
+{
+    /**
+     * Get kinds of syscalls that this analyzer needs to be fully parsed.
+     *
+     * @return
+     *   Set of syscalls or <code>null</code> if all of them have to be fully
+     *   parsed.
+     */
+    Set<StraceSyscallParsedData.Syscall> getSubscribedSyscalls();
+}
@@ -0,0 +1,376 @@
+package unifiedloganalyzer.parse.strace;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IParser;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+import unifiedloganalyzer.utils.ICheckpointable;
+
+
+/**
+ * Strace parser that parses batches of messages concurrently.
+ *
+ * Messages are collected in to batches that are parsed on worker threads,
+ * each of them with its own StraceParser, see
+ * StraceParser.parseDetached(). Parsed batches are then passed, in the
+ * order in which they were submitted, to StraceParser that handles backlog
+ * of interrupted messages and reassembly of unfinished syscalls, which
+ * depend on preceding messages, including those at the edge of previous
+ * batch. This is done on the thread that calls this parser, and so are
+ * callbacks, therefore analyzer doesn't have to be thread safe. Results are
+ * the same as those of StraceParser.
+ *
+ * Callbacks are run with a delay of a few batches. All results are
+ * delivered by eof() and saveState(), and by parseBatch() if the batch
+ * isn't full, since source has no more messages available at the moment.
+ *
+ * Parsed data are always allocated, pooled mode isn't supported, since they
+ * are handed over between threads.
+ *
+ * @author Peter Trsko
+ */
+public class ParallelStraceParser
+    implements IParser, ICheckpointable, IStraceSyscallPublisher
+{
+    /**
+     * Number of messages parsed by worker at once.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    /**
+     * Time, in seconds, after which idle worker thread terminates.
+     */
+    private static final long _KEEP_ALIVE = 10;
+
+    // {{{ Nested types ///////////////////////////////////////////////////////
+
+    /**
+     * Messages and results of their parsing. Batches are reused once their
+     * results are delivered.
+     */
+    private class Batch implements Callable<Batch>
+    {
+        public final String[] messages = new String[BATCH_SIZE];
+        public final ParsedData[] results = new ParsedData[BATCH_SIZE];
+        public final String[] interrupted = new String[BATCH_SIZE];
+        public final boolean[] continues = new boolean[BATCH_SIZE];
+        public int length = 0;
+        public Set<StraceSyscallParsedData.Syscall> syscalls = null;
+
+        public boolean isFull()
+        {
+            return length == BATCH_SIZE;
+        }
+
+        @Override
+        public Batch call()
+        {
+            _workerParser.get().parseDetached(messages, length, syscalls,
+                results, interrupted, continues);
+
+            return this;
+        }
+
+        /**
+         * Release references, so that they can be garbage collected while
+         * batch waits for reuse.
+         */
+        public void clear()
+        {
+            for (int i = 0; i < length; i++)
+            {
+                messages[i] = null;
+                results[i] = null;
+                interrupted[i] = null;
+            }
+            length = 0;
+        }
+    }
+
+    // }}} Nested types ///////////////////////////////////////////////////////
+
+    private final StraceParser.Method _method;
+
+    /**
+     * Parser that processes results in order and runs callbacks.
+     */
+    private final StraceParser _parser;
+
+    /**
+     * Parser of each worker thread, they are used only by parseDetached().
+     */
+    private final ThreadLocal<StraceParser> _workerParser =
+        new ThreadLocal<StraceParser>()
+        {
+            @Override
+            protected StraceParser initialValue()
+            {
+                return new StraceParser(_method);
+            }
+        };
+
+    private final ThreadPoolExecutor _executor;
+
+    /**
+     * Maximal number of batches that are submitted and not delivered yet.
+     */
+    private final int _maxPending;
+
+    private final Deque<Future<Batch>> _pending = new ArrayDeque<>();
+    private final Deque<Batch> _free = new ArrayDeque<>();
+    private Batch _batch = null;
+
+    private Set<StraceSyscallParsedData.Syscall> _syscalls = null;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * @param threads
+     *   Number of worker threads.
+     */
+    public ParallelStraceParser(int threads)
+    {
+        this(threads, StraceParser.Method.TOKENIZER);
+    }
+
+    /**
+     * @param threads
+     *   Number of worker threads.
+     * @param method
+     *   Method used by all parsers, see StraceParser.Method.
+     */
+    public ParallelStraceParser(int threads, StraceParser.Method method)
+    {
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("threads = " + threads);
+        }
+
+        if (method == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _method = method;
+        _parser = new StraceParser(method);
+        _maxPending = 2 * threads;
+        _executor = new ThreadPoolExecutor(threads, threads,
+            _KEEP_ALIVE, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new DaemonThreadFactory("parser"));
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ IStraceSyscallPublisher interface implementation ///////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSubscribedSyscalls(
+        Set<StraceSyscallParsedData.Syscall> syscalls)
+    {
+        // Batches refer to the set, so it's replaced, never modified.
+        _syscalls = syscalls == null ? null : EnumSet.copyOf(syscalls);
+        _parser.setSubscribedSyscalls(syscalls);
+    }
+
+    // }}} IStraceSyscallPublisher interface implementation ///////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private void append(CharSequence message)
+    {
+        if (_batch == null)
+        {
+            _batch = _free.isEmpty() ? new Batch() : _free.removeFirst();
+        }
+
+        _batch.messages[_batch.length++] = message.toString();
+
+        if (_batch.isFull())
+        {
+            submit();
+        }
+    }
+
+    private void submit()
+    {
+        if (_batch == null)
+        {
+            return;
+        }
+
+        _batch.syscalls = _syscalls;
+        _pending.addLast(_executor.submit(_batch));
+        _batch = null;
+
+        while (_pending.size() > _maxPending)
+        {
+            deliver();
+        }
+    }
+
+    /**
+     * Pass results of the oldest batch to parser, waiting for them if
+     * necessary.
+     */
+    private void deliver()
+    {
+        Batch batch;
+
+        try
+        {
+            batch = _pending.removeFirst().get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(
+                "Interrupted while waiting for parser.", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException)ex.getCause();
+            }
+
+            throw new IllegalStateException(ex.getCause());
+        }
+
+        _parser.parseAttached(batch.results, batch.interrupted,
+            batch.continues, batch.length);
+        batch.clear();
+        _free.addLast(batch);
+    }
+
+    /**
+     * Submit collected messages and deliver results of all batches.
+     */
+    private void drain()
+    {
+        submit();
+
+        while (!_pending.isEmpty())
+        {
+            deliver();
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    // {{{ IParser implementation /////////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerCallback(ICallback<ParsedData> callback)
+    {
+        _parser.registerCallback(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(String message)
+    {
+        append(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(CharSequence message)
+    {
+        append(message);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Collected messages are submitted at the end of each batch, so that
+     * they aren't delayed until another batch arrives.
+     */
+    @Override
+    public void parseBatch(CharSequence[] messages, int offset, int length)
+    {
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            append(messages[i]);
+        }
+
+        if (offset + length < messages.length)
+        {
+            drain();
+
+            return;
+        }
+
+        submit();
+
+        while (!_pending.isEmpty() && _pending.peekFirst().isDone())
+        {
+            deliver();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eof()
+    {
+        drain();
+        _parser.eof();
+    }
+
+    // }}} IParser implementation /////////////////////////////////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * All collected messages are parsed first, therefore state is the same
+     * as that of StraceParser.
+     */
+    @Override
+    public Serializable saveState()
+    {
+        drain();
+
+        return _parser.saveState();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restoreState(Serializable state)
+    {
+        drain();
+        _parser.restoreState(state);
+    }
+
+    // }}} ICheckpointable interface implementation ///////////////////////////
+}
@@ -0,0 +1,463 @@
+package unifiedloganalyzer.parse.strace;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import trskop.container.Pair;
+
+import unifiedloganalyzer.utils.CStringLiteral;
+
+
+/**
+ * Decoded arguments of a syscall, i.e. path, working directory, command line
+ * arguments, environment and exit code.
+ *
+ * StraceParser keeps only unparsed arguments and StraceSyscallParsedData
+ * decodes them when any of these values is accessed for the first time, so
+ * that e.g. environments of execve calls aren't decoded unless some analyzer
+ * needs them.
+ *
+ * @author Peter Trsko
+ */
+final class StraceArguments
+{
+    private static final String _INT_ARGUMENT_REGEX = "^(-?[0-9]+)(, +)?";
+
+    private static final Pattern _INT_ARGUMENT_PATTERN =
+        Pattern.compile(_INT_ARGUMENT_REGEX);
+
+    private String _path = null;
+    private String _workingDirectory = null;
+    private String[] _commandLineArgs = null;
+    private Map<String, String> _environment = null;
+    private int _exitCode = -1;
+
+    private StraceArguments()
+    {
+        // Use parse().
+    }
+
+    // {{{ Getters ////////////////////////////////////////////////////////////
+
+    public String getPath()
+    {
+        return _path;
+    }
+
+    public String getWorkingDirectory()
+    {
+        return _workingDirectory;
+    }
+
+    public String[] getCommandLineArgs()
+    {
+        return _commandLineArgs;
+    }
+
+    /**
+     * Environment of execve call or <code>null</code> if it's empty or
+     * wasn't parsed.
+     */
+    public Map<String, String> getEnvironment()
+    {
+        return _environment;
+    }
+
+    public int getExitCode()
+    {
+        return _exitCode;
+    }
+
+    // }}} Getters ////////////////////////////////////////////////////////////
+
+    /**
+     * Check if any arguments of specified syscall are decoded, arguments of
+     * other syscalls don't have to be kept.
+     */
+    public static boolean hasArguments(StraceSyscallParsedData.Syscall syscall)
+    {
+        switch (syscall)
+        {
+            case ACCESS:    // Pass-through
+            case CHDIR:     // Pass-through
+            case CREAT:     // Pass-through
+            case EXEC:      // Pass-through
+            case EXIT:      // Pass-through
+            case GETCWD:    // Pass-through
+            case LSTAT:     // Pass-through
+            case OPEN:      // Pass-through
+            case OPENAT:    // Pass-through
+            case READLINK:  // Pass-through
+            case STAT:      // Pass-through
+            case STATFS:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decode arguments of specified syscall.
+     *
+     * @param syscall
+     *   Syscall whose arguments are decoded.
+     * @param args
+     *   Unparsed arguments of full or unfinished syscall.
+     *
+     * @return
+     *   Decoded arguments, values that couldn't be decoded are left unset.
+     */
+    public static StraceArguments parse(
+        StraceSyscallParsedData.Syscall syscall,
+        CharSequence args)
+    {
+        StraceArguments ret = new StraceArguments();
+        Pair<String, CharSequence> fileArgumentAndRest = null;
+        Pair<Integer, String> intArgumentAndRest = null;
+
+        switch (syscall)
+        {
+            // Process only syscalls that have path as their first argument.
+            case ACCESS:    // Pass-through
+            case CHDIR:     // Pass-through
+            case CREAT:     // Pass-through
+            case EXEC:      // Pass-through
+            case GETCWD:    // Pass-through
+            case LSTAT:     // Pass-through
+            case OPEN:      // Pass-through
+            case READLINK:  // Pass-through
+            case STAT:      // Pass-through
+            case STATFS:
+                fileArgumentAndRest = parseStringArgument(args);
+                break;
+
+            case OPENAT:
+                fileArgumentAndRest = parseSecondStringArgument(args);
+                break;
+
+            case EXIT:
+                intArgumentAndRest = parseIntArgument(args);
+                break;
+
+            default:
+                break;
+        }
+
+        if (fileArgumentAndRest != null)
+        {
+            // Setting to null is OK, since it's a default value.
+            ret._path = fileArgumentAndRest.first;
+
+            switch (syscall)
+            {
+                case EXEC:
+                    Pair<List<String>, List<Pair<String, String>>> argsAndEnv =
+                        parseExecSpecifics(fileArgumentAndRest.second);
+
+                    if (argsAndEnv.first != null)
+                    {
+                        ret._commandLineArgs =
+                            argsAndEnv.first.toArray(new String[0]);
+                    }
+
+                    if (argsAndEnv.second != null
+                        && !argsAndEnv.second.isEmpty())
+                    {
+                        ret._environment = new HashMap<>();
+
+                        for (Pair<String, String> var : argsAndEnv.second)
+                        {
+                            ret._environment.put(var.first, var.second);
+                        }
+                    }
+
+                    break;
+
+                case CHDIR: // Pass-through
+                case GETCWD:
+                    ret._workingDirectory = fileArgumentAndRest.first;
+                    break;
+            }
+        }
+        else if (intArgumentAndRest != null)
+        {
+            switch (syscall)
+            {
+                case EXIT:
+                    // Don't check on intArgumentAndRest.first != null,
+                    // let NullPointerException occurre since it will indicate
+                    // logical error in parseIntArgument(String).
+                    ret._exitCode = intArgumentAndRest.first.intValue();
+                    break;
+            }
+        }
+
+        return ret;
+    }
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private static int indexOf(CharSequence str, String substring)
+    {
+        for (int i = 0, end = str.length() - substring.length(); i <= end; i++)
+        {
+            int j = 0;
+
+            while (j < substring.length()
+                && str.charAt(i + j) == substring.charAt(j))
+            {
+                j++;
+            }
+
+            if (j == substring.length())
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Part of the sequence starting at specified position, characters are
+     * not copied.
+     *
+     * Slicing a CharBuffer shares its backing sequence, while wrapping it
+     * would add another level of indirection to every charAt(), which would
+     * make parsing of long lists quadratic.
+     */
+    private static CharSequence tail(CharSequence str, int start)
+    {
+        return str instanceof CharBuffer
+            ? str.subSequence(start, str.length())
+            : CharBuffer.wrap(str, start, str.length());
+    }
+
+    private static boolean startsWith(CharSequence str, int start,
+        String prefix)
+    {
+        if (start + prefix.length() > str.length())
+        {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (str.charAt(start + i) != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse first argument as string literal (with C-style escape sequances)
+     * and keep the rest as it is.
+     *
+     * String literal is decoded by CStringLiteral in linear time. It may be
+     * followed by three dots, if strace internal buffer for strings reached
+     * its upper bound, and then by another argument, end of array or end of
+     * arguments.
+     *
+     * @param argsStr  Unparsed syscall arguments.
+     *
+     * @return Pair
+     *     consisting of parsed argument (<code>first</code>) and unparsed rest
+     *     of arguments (<code>second</code>); <code>null</code> in case of
+     *     parsing failure.
+     */
+    private static Pair<String, CharSequence> parseStringArgument(
+        CharSequence argsStr)
+    {
+        StringBuilder decoded = new StringBuilder();
+        int end = CStringLiteral.decode(argsStr, 0, decoded);
+
+        if (end < 0)
+        {
+            return null;
+        }
+
+        if (startsWith(argsStr, end, "..."))
+        {
+            end += 3;
+        }
+
+        CharSequence rest;
+
+        if (end == argsStr.length())
+        {
+            rest = "";      // Last argument.
+        }
+        else if (startsWith(argsStr, end, ", "))
+        {
+            rest = tail(argsStr, end + 2);
+        }
+        else if (argsStr.charAt(end) == ']')
+        {
+            rest = tail(argsStr, end);
+        }
+        else
+        {
+            return null;
+        }
+
+        return new Pair<>(decoded.toString(), rest);
+    }
+
+    private static Pair<String, CharSequence> parseSecondStringArgument(
+        CharSequence argsStr)
+    {
+        int start = indexOf(argsStr, ", ") + 2;
+
+        return parseStringArgument(tail(argsStr, start));
+    }
+
+    /**
+     * Parse list of strings (like <code>["foo", "bar"]</code>) and return it
+     * along with unparsed rest of syscall arguments.
+     *
+     * This function uses parseStringArgument method internally.
+     *
+     * @param argsStr
+     *   List of arguments that should start with the list of strings as first
+     *   one.
+     *
+     * @return
+     *   List of strings passed as a first argument to the syscall and unparsed
+     *   rest of them; <code>null</code> in case of parsing failure, like when
+     *   argsStr isn't starting with list of strings, or when it's truncated
+     *   and list of strings is not terminated properly, etc.
+     */
+    private static Pair<List<String>, CharSequence> parseListOfStringsArgument(
+        CharSequence argsStr)
+    {
+        if (argsStr.length() == 0 || argsStr.charAt(0) != '[')
+        {
+            return null;    // Parsing failed.
+        }
+
+        // Remove leading '[' character.
+        CharSequence rest = tail(argsStr, 1);
+        List<String> items = new ArrayList<>();
+
+        while (rest.length() > 0 && rest.charAt(0) != ']')
+        {
+            Pair<String, CharSequence> strAndRest = parseStringArgument(rest);
+
+            if (strAndRest == null
+                || strAndRest.first == null
+                || strAndRest.second == null
+                // We should have reached end of list and that is indicated by
+                // presence of ']' character.
+                || strAndRest.second.length() == 0)
+            {
+                return null;    // Parsing failed.
+            }
+
+            items.add(strAndRest.first);
+            rest = strAndRest.second;
+        }
+
+        if (rest.length() == 0)
+        {
+            return null;    // Parsing failed.
+        }
+
+        // Skip ']' and optional separator of the next argument.
+        int end = 1;
+
+        if (end < rest.length() && rest.charAt(end) == ',')
+        {
+            end++;
+
+            while (end < rest.length() && rest.charAt(end) == ' ')
+            {
+                end++;
+            }
+        }
+
+        return new Pair<>(items, tail(rest, end));
+    }
+
+    /**
+     * Split environment variable in to name and value at the first '='.
+     * Value may contain any character, including decoded line terminators.
+     */
+    private static Pair<String, String> parseEnvironmentVariable(String str)
+    {
+        int i = str.indexOf('=');
+
+        if (i > 0)
+        {
+            return new Pair<>(str.substring(0, i), str.substring(i + 1));
+        }
+
+        return null;
+    }
+
+    private static Pair<List<String>, List<Pair<String, String>>>
+        parseExecSpecifics(CharSequence str)
+    {
+        Pair<List<String>, List<Pair<String, String>>> ret =
+            new Pair<>(null, null);
+
+        Pair<List<String>, CharSequence> argsAndRest =
+            parseListOfStringsArgument(str);
+        if (argsAndRest == null
+            || argsAndRest.first == null
+            || argsAndRest.second == null)
+        {
+            return ret;    // Parse error.
+        }
+        ret.first = argsAndRest.first;
+
+        Pair<List<String>, CharSequence> envAndRest =
+            parseListOfStringsArgument(argsAndRest.second);
+        if (envAndRest == null
+            || envAndRest.first == null
+            || envAndRest.second == null)
+        {
+            return ret;    // Parse error.
+        }
+
+        List<Pair<String, String>> env = new ArrayList<>();
+        for (String item : envAndRest.first)
+        {
+            Pair<String, String> keyAndValue = parseEnvironmentVariable(item);
+
+            if (keyAndValue == null)
+            {
+                return ret;    // Parse error;
+            }
+            env.add(keyAndValue);
+        }
+        ret.second = env;
+
+        return ret;
+    }
+
+    private static Pair<Integer, String> parseIntArgument(CharSequence str)
+    {
+        Matcher matcher = _INT_ARGUMENT_PATTERN.matcher(str);
+        Pair<Integer, String> ret = null;   // Returned on parsing error.
+
+        if(matcher.find())
+        {
+            ret = new Pair<>(
+                Integer.parseInt(matcher.group(1)),
+                matcher.group(2));
+        }
+
+        return ret;
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+}
@@ -0,0 +1,272 @@
+package unifiedloganalyzer.parse.strace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.utils.IntObjectHashMap;
+
+
+/**
+ * Unfinished syscalls waiting for their resumed halves, at most one per PID.
+ *
+ * StraceParser holds back unfinished half of a syscall until the same
+ * process resumes it, and then it joins both halves in to one message, see
+ * join(), which is parsed as a complete syscall. Unfinished half is released
+ * unchanged when the process does anything else then resuming it, when it's
+ * the oldest one and there are too many of them, or at the end of input.
+ * There is no time limit, since syscalls like wait4() may legitimately stay
+ * unfinished for most of the trace.
+ *
+ * @author Peter Trsko
+ */
+final class StraceCallReassembler
+{
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final String _UNFINISHED = " <unfinished";
+    private static final String _RESUMED = "resumed>";
+
+    private static class Pending
+    {
+        public final int pid;
+        public final ParsedData unfinished;
+        public boolean isReleased = false;
+
+        public Pending(int pid, ParsedData unfinished)
+        {
+            this.pid = pid;
+            this.unfinished = unfinished;
+        }
+    }
+
+    private final int _capacity;
+
+    private final IntObjectHashMap<Pending> _pending;
+
+    /**
+     * Pending halves in order of arrival. Released halves are removed from
+     * it lazily, when they reach its head or when it grows twice as large as
+     * capacity.
+     */
+    private final ArrayDeque<Pending> _arrivals = new ArrayDeque<>();
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    public StraceCallReassembler()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *   Maximal number of pending unfinished halves.
+     */
+    public StraceCallReassembler(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+
+        _capacity = capacity;
+        _pending = new IntObjectHashMap<>(capacity);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private void compact()
+    {
+        for (Iterator<Pending> i = _arrivals.iterator(); i.hasNext(); )
+        {
+            if (i.next().isReleased)
+            {
+                i.remove();
+            }
+        }
+    }
+
+    private static int indexOf(CharSequence str, String substring, int from)
+    {
+        for (int i = from, end = str.length() - substring.length(); i <= end;
+            i++)
+        {
+            int j = 0;
+
+            while (j < substring.length()
+                && str.charAt(i + j) == substring.charAt(j))
+            {
+                j++;
+            }
+
+            if (j == substring.length())
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence str, String substring)
+    {
+        int ret = -1;
+
+        for (int i = indexOf(str, substring, 0); i >= 0;
+            i = indexOf(str, substring, i + 1))
+        {
+            ret = i;
+        }
+
+        return ret;
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    public int size()
+    {
+        return _pending.size();
+    }
+
+    /**
+     * Remove unfinished half of a syscall made by specified process.
+     *
+     * @return
+     *   Unfinished half or <code>null</code> if there is none.
+     */
+    public ParsedData remove(int pid)
+    {
+        Pending pending = _pending.remove(pid);
+
+        if (pending == null)
+        {
+            return null;
+        }
+
+        pending.isReleased = true;
+
+        return pending.unfinished;
+    }
+
+    /**
+     * Hold unfinished half of a syscall until it's resumed. Process must not
+     * have another pending syscall, see remove().
+     *
+     * @return
+     *   The oldest pending half, if it had to be evicted to keep number of
+     *   pending halves within capacity, or <code>null</code>.
+     */
+    public ParsedData put(int pid, ParsedData unfinished)
+    {
+        Pending pending = new Pending(pid, unfinished);
+
+        if (_pending.put(pid, pending) != null)
+        {
+            throw new IllegalStateException("pid = " + pid);
+        }
+
+        _arrivals.addLast(pending);
+
+        if (_arrivals.size() > 2 * _capacity)
+        {
+            compact();
+        }
+
+        return _pending.size() > _capacity ? removeOldest() : null;
+    }
+
+    /**
+     * Remove the oldest pending unfinished half.
+     *
+     * @return
+     *   Unfinished half or <code>null</code> if there are none.
+     */
+    public ParsedData removeOldest()
+    {
+        while (!_arrivals.isEmpty())
+        {
+            Pending pending = _arrivals.pollFirst();
+
+            if (!pending.isReleased)
+            {
+                return remove(pending.pid);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Pending unfinished halves in order of their arrival.
+     */
+    public List<ParsedData> getPending()
+    {
+        List<ParsedData> ret = new ArrayList<>(_pending.size());
+
+        for (Pending pending : _arrivals)
+        {
+            if (!pending.isReleased)
+            {
+                ret.add(pending.unfinished);
+            }
+        }
+
+        return ret;
+    }
+
+    public void clear()
+    {
+        _pending.clear();
+        _arrivals.clear();
+    }
+
+    /**
+     * Join unfinished and resumed halves of a syscall in to one message.
+     *
+     * For example <code>100 read(3,  &lt;unfinished ...&gt;</code> and
+     * <code>100 &lt;... read resumed&gt; "abc", 4096) = 3</code> are joined
+     * in to <code>100 read(3, "abc", 4096) = 3</code>.
+     *
+     * @return
+     *   Joined message or <code>null</code> if either half doesn't contain
+     *   expected marker.
+     */
+    public static String join(CharSequence unfinished, CharSequence resumed)
+    {
+        int end = lastIndexOf(unfinished, _UNFINISHED);
+        int start = indexOf(resumed, _RESUMED, 0);
+
+        if (end < 0 || start < 0)
+        {
+            return null;
+        }
+
+        start += _RESUMED.length();
+
+        while (end > 0 && unfinished.charAt(end - 1) == ' ')
+        {
+            end--;
+        }
+
+        while (start < resumed.length() && resumed.charAt(start) == ' ')
+        {
+            start++;
+        }
+
+        StringBuilder buff = new StringBuilder(
+            end + 1 + resumed.length() - start);
+
+        buff.append(unfinished, 0, end);
+
+        if (end > 0 && unfinished.charAt(end - 1) == ',')
+        {
+            buff.append(' ');
+        }
+
+        return buff.append(resumed, start, resumed.length()).toString();
+    }
+}
@@ -1,7 +1,10 @@
 package unifiedloganalyzer.parse.strace;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.nio.CharBuffer;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -9,19 +12,29 @@ import trskop.ICallback;
 import trskop.container.Pair;
 
 import unifiedloganalyzer.IParsedData;
-import unifiedloganalyzer.IParser;
 import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.parse.AParser;
 import unifiedloganalyzer.parse.ParseError;
-import unifiedloganalyzer.utils.CallbacksManager;
+import unifiedloganalyzer.utils.ICheckpointable;
 import unifiedloganalyzer.utils.IHasPid;
 
 
 /**
  * Parser for strace messages.
  *
+ * Structure of messages is recognized by StraceTokenizer in a single pass by
+ * default. Regular expressions, that describe the same structure, are kept
+ * as a reference implementation and they are also used for messages that
+ * the tokenizer refuses, see Method.
+ *
+ * Unfinished syscall is held back until the same process resumes it and then
+ * both halves are reported as one complete syscall, in place of the resumed
+ * half, see StraceCallReassembler.
+ *
  * @author Peter Trsko
  */
-public class StraceParser implements IParser
+public class StraceParser extends AParser
+    implements ICheckpointable, IStraceSyscallPublisher
 {
     // {{{ Private final attributes ///////////////////////////////////////////
     //
@@ -34,7 +47,9 @@ public class StraceParser implements IParser
      * passed to strace command. Note that this regex supports two formats for
      * it.
      *
-     * This regex doesn't handle interrupted calls nor signals.
+     * This regex doesn't handle interrupted calls nor signals. Timestamp
+     * that follows PID and syscall duration at the end of the message are
+     * parsed by StraceTimestamp.
      */
     private static final String _TOP_LEVEL_REGEX =
         "^((([0-9]+)|\\[pid ([0-9]+)\\]) +)?(.*)$";
@@ -73,36 +88,6 @@ public class StraceParser implements IParser
     private static final String _SIGNAL_REGEX =
         "^-{3} +([A-Z0-9]+) +\\(([^\\)]+)\\).*$";
 
-    // From https://en.wikipedia.org/wiki/Escape_sequences_in_C we get:
-    //
-    // \\a               07      Alarm (Beep, Bell)
-    // \\b               08      Backspace
-    // \\f               0C      Formfeed
-    // \\n               0A      Newline (Line Feed)
-    // \\r               0D      Carriage Return
-    // \\t               09      Horizontal Tab
-    // \\v               0B      Vertical Tab
-    // \\\               5C      Backslash
-    // \\'               27      Single quotation mark
-    // \\"               22      Double quotation mark
-    // \\?               3F      Question mark
-    // \\0               00      Null (string terminator)
-    // \\ and a newline          Macro continuation: ignore the \ and the newline
-    // \\nnn             0–FF    Octal representation
-    // \\xhh             0–FF    Hexadecimal representation
-    // \\uhhhh           0–FFFF  Unicode character
-
-    /**
-     * Parse string and keep the rest.
-     */
-    private static final String _STRING_ARGUMENT_REGEX =
-        "^\"(([^\"]*|\\\\[0abfnrtv\\\\'\"\\?]|\\\\[1-7][0-7]{2}|"
-        + "\\\\x[1-9a-fA-F][0-9a-fA-F]|\\\\u[1-9a-fA-F][0-9a-fA-F]{3})*)\""
-        // Another argument may follow or it's last syscall argument or last
-        // element of array. Three dots may occurre if strace internal buffer
-        // for strings reached its upper bound.
-        + "(\\.{3})?(, (.*)|(\\].*))?$";
-
     private static final String _PROCESS_STATUS_CHANGED_REGEX_CORE =
         "Process +([0-9]+) +(attached|detached|resumed|suspended)$";
 
@@ -112,13 +97,6 @@ public class StraceParser implements IParser
     private static final String _INTERUPTED_BY_PROCESS_STATUS_REGEX =
         "^(.*)" + _PROCESS_STATUS_CHANGED_REGEX_CORE;
 
-    private static final String _INT_ARGUMENT_REGEX = "^(-?[0-9]+)(, +)?";
-
-    /**
-     * Parse environment variables (key=value pairs).
-     */
-    private static final String _ENVIRONMENT_VARIABLE_REGEX = "^([^=]+)=(.*)$";
-
     private static final Pattern _TOP_LEVEL_PATTERN =
         Pattern.compile(_TOP_LEVEL_REGEX);
     private static final Pattern _SYSCALL_PATTERN =
@@ -129,33 +107,49 @@ public class StraceParser implements IParser
         Pattern.compile(_SYSCALL_RESUMED_REGEX);
     private static final Pattern _SIGNAL_PATTERN =
         Pattern.compile(_SIGNAL_REGEX);
-    private static final Pattern _STRING_ARGUMENT_PATTERN =
-        Pattern.compile(_STRING_ARGUMENT_REGEX);
-    private static final Pattern _ENVIRONMENT_VARIABLE_PATTERN =
-        Pattern.compile(_ENVIRONMENT_VARIABLE_REGEX);
     private static final Pattern _PROCESS_STATUS_CHANGED_PATTERN =
         Pattern.compile(_PROCESS_STATUS_CHANGED_REGEX);
     private static final Pattern _INTERUPTED_BY_PROCESS_STATUS_PATTERN =
         Pattern.compile(_INTERUPTED_BY_PROCESS_STATUS_REGEX);
-    private static final Pattern _INT_ARGUMENT_PATTERN =
-        Pattern.compile(_INT_ARGUMENT_REGEX);
+
+    /**
+     * Same value as parsed data use when PID is not known.
+     */
+    private static final int _NO_PID = -1;
 
     // }}} Private final attributes ///////////////////////////////////////////
 
     // {{{ Nested types ///////////////////////////////////////////////////////
 
+    /**
+     * Way in which structure of strace messages is recognized. Both produce
+     * the same parsed data.
+     */
+    public static enum Method
+    {
+        /**
+         * Character level tokenizer, see StraceTokenizer.
+         */
+        TOKENIZER,
+
+        /**
+         * Regular expressions tried one after another.
+         */
+        REGULAR_EXPRESSIONS
+    }
+
     private class Backlog
     {
-        private StringBuffer _buff = null;
+        private StringBuilder _buff = null;
         private boolean _shouldFinalize = false;
 
         public Backlog()
         {
-            _buff = new StringBuffer();
+            _buff = new StringBuilder();
             _shouldFinalize = false;
         }
 
-        public void append(String str)
+        public void append(CharSequence str)
         {
             _buff.append(str);
         }
@@ -206,28 +200,114 @@ public class StraceParser implements IParser
         }
     }
 
+    /**
+     * Records reused in pooled mode, see setPooled().
+     */
+    private static class Pool
+    {
+        public final ParsedData data = ParsedData.pooled();
+        public final StraceSyscallParsedData syscall =
+            StraceSyscallParsedData.pooled();
+    }
+
     // }}} Nested types ///////////////////////////////////////////////////////
 
     private Backlog _backlog = null;
-    private CallbacksManager<ParsedData> _callbacksManager = null;
+
+    /**
+     * Tokenizer or <code>null</code> if only regular expressions are used.
+     */
+    private StraceTokenizer _tokenizer = null;
+
+    /**
+     * Syscalls that are fully parsed, or <code>null</code> if all of them
+     * are.
+     */
+    private Set<StraceSyscallParsedData.Syscall> _syscalls = null;
+
+    private StraceCallReassembler _reassembler = null;
+
+    /**
+     * Reused records or <code>null</code> if pooled mode is off.
+     */
+    private Pool _pool = null;
 
     // {{{ Constructors ///////////////////////////////////////////////////////
 
     public StraceParser()
     {
+        this(Method.TOKENIZER);
+    }
+
+    public StraceParser(Method method)
+    {
+        super();
+
         _backlog = new Backlog();
-        _callbacksManager = new CallbacksManager<>();
+        _tokenizer = method == Method.TOKENIZER ? new StraceTokenizer() : null;
+        _reassembler = new StraceCallReassembler();
     }
 
     public StraceParser(ICallback<ParsedData> callback)
     {
-        this();
+        super(callback);
 
-        _callbacksManager.registerCallback(callback);
+        _backlog = new Backlog();
+        _tokenizer = new StraceTokenizer();
+        _reassembler = new StraceCallReassembler();
     }
 
     // }}} Constructors ///////////////////////////////////////////////////////
 
+    // {{{ IStraceSyscallPublisher interface implementation ///////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSubscribedSyscalls(
+        Set<StraceSyscallParsedData.Syscall> syscalls)
+    {
+        if (syscalls == null)
+        {
+            _syscalls = null;
+        }
+        else
+        {
+            _syscalls = EnumSet.noneOf(StraceSyscallParsedData.Syscall.class);
+            _syscalls.addAll(syscalls);
+        }
+    }
+
+    // }}} IStraceSyscallPublisher interface implementation ///////////////////
+
+    /**
+     * Reuse parsed data of syscalls for subsequent messages, instead of
+     * allocating them for every message. Parsed data then refer to the
+     * message passed to parse() and they are valid only until callback
+     * returns, consumers that keep them have to call retain(), see
+     * IRetainable and IPooledDataConsumer.
+     *
+     * @param isPooled
+     *   Whether pooled mode is on, it's off by default.
+     */
+    public void setPooled(boolean isPooled)
+    {
+        _pool = isPooled ? new Pool() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Pooled records are reused by the next message, therefore they have to
+     * be delivered one by one.
+     */
+    @Override
+    protected boolean isBatchDelivery()
+    {
+        return _pool == null;
+    }
+
     // {{{ IParser implementation /////////////////////////////////////////////
 
     /**
@@ -236,12 +316,57 @@ public class StraceParser implements IParser
     @Override
     public void parse(String message)
     {
-        ParsedData parsedMessage = parseTopLevel(message, _backlog);
+        parse((CharSequence)message);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Message is matched in place, only the original message and the values
+     * that end up in parsed data are copied out of it.
+     */
+    @Override
+    public void parse(CharSequence message)
+    {
+        ParsedData parsedMessage =
+            parseTopLevel(message, _backlog, _tokenizer, _syscalls, _pool);
 
-        // Backlog may contain message, and if it does then that message was
-        // generated before currently processed one, therefore we need to
-        // process backlog first and then continue with current message so that
-        // the ordering woud be preserved.
+        parseBacklog();
+
+        if (parsedMessage != null)
+        {
+            reassemble(parsedMessage);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eof()
+    {
+        // TODO: Should we clear backlog? Report parse error if its not empty?
+
+        // Syscalls that were never resumed are reported as they are.
+        for (ParsedData unfinished = _reassembler.removeOldest();
+            unfinished != null; unfinished = _reassembler.removeOldest())
+        {
+            runCallbacks(unfinished);
+        }
+
+        runCallbacks(new ParsedData(ParsedData.Type.EMPTY_MESSAGE, null));
+    }
+
+    // {{{ IParser implementation: Details ////////////////////////////////////
+
+    /**
+     * Backlog may contain message, and if it does then that message was
+     * generated before currently processed one, therefore we need to process
+     * backlog first and then continue with current message so that the
+     * ordering woud be preserved.
+     */
+    private void parseBacklog()
+    {
         if (_backlog.shouldFinalize())
         {
             String backlogMessage = _backlog.doFinalize();
@@ -249,42 +374,135 @@ public class StraceParser implements IParser
             // Passing null to parseTopLevel indicates that we are already
             // processing backlog.
             ParsedData parsedBacklogMessage =
-                parseTopLevel(backlogMessage, null);
+                parseTopLevel(backlogMessage, null, _tokenizer, _syscalls,
+                    null);
 
             if (parsedBacklogMessage != null)
             {
-                _callbacksManager.runCallbacks(parsedBacklogMessage);
+                reassemble(parsedBacklogMessage);
             }
         }
-
-        if (parsedMessage != null)
-        {
-            _callbacksManager.runCallbacks(parsedMessage);
-        }
     }
 
     /**
-     * {@inheritDoc}
+     * Report parsed message, unless it's an unfinished syscall, which is held
+     * back until it's resumed.
+     *
+     * Any other syscall of the same process releases pending unfinished
+     * half, since it won't be resumed any more, while signals don't, because
+     * they are delivered while syscall is interrupted.
      */
-    @Override
-    public void eof()
+    private void reassemble(ParsedData parsedData)
     {
-        // TODO: Should we clear backlog? Report parse error if its not empty?
+        StraceSyscallParsedData syscall = asSyscall(parsedData);
 
-        _callbacksManager.runCallbacks(
-            new ParsedData(ParsedData.Type.EMPTY_MESSAGE, null));
+        if (syscall == null || syscall.getPid() == _NO_PID)
+        {
+            runCallbacks(parsedData);
+
+            return;
+        }
+
+        ParsedData pending = _reassembler.remove(syscall.getPid());
+
+        if (pending != null
+            && syscall.getFlag() == StraceSyscallParsedData.Flag.RESUMED_CALL)
+        {
+            ParsedData joined = join(asSyscall(pending), syscall);
+
+            if (joined != null)
+            {
+                runCallbacks(joined);
+
+                return;
+            }
+        }
+
+        if (pending != null)
+        {
+            runCallbacks(pending);
+        }
+
+        if (syscall.getFlag() == StraceSyscallParsedData.Flag.UNFINISHED_CALL)
+        {
+            ParsedData evicted =
+                _reassembler.put(syscall.getPid(), parsedData.retain());
+
+            if (evicted != null)
+            {
+                runCallbacks(evicted);
+            }
+        }
+        else
+        {
+            runCallbacks(parsedData);
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * Join unfinished and resumed halves of a syscall.
+     *
+     * @return
+     *   Complete syscall or <code>null</code> if halves don't belong to the
+     *   same syscall or if they can't be joined.
      */
-    @Override
-    public void registerCallback(ICallback<ParsedData> callback)
+    private ParsedData join(StraceSyscallParsedData unfinished,
+        StraceSyscallParsedData resumed)
     {
-        _callbacksManager.registerCallback(callback);
+        if (!unfinished.getSyscallName().equals(resumed.getSyscallName()))
+        {
+            return null;
+        }
+
+        if (unfinished.isCountOnly() || resumed.isCountOnly())
+        {
+            // Call started when it was reported as unfinished and its
+            // duration is reported when it's resumed, the same as when full
+            // message is reassembled below.
+            StraceSyscallParsedData syscall = countOnlySyscall(
+                resumed.getSyscallName(),
+                StraceSyscallParsedData.Flag.FULL_CALL,
+                resumed.getPid());
+
+            syscall.setTiming(unfinished.getTimestampType(),
+                unfinished.getTimestamp(), resumed.getDuration());
+
+            return new ParsedData(ParsedData.Type.PARSED_MESSAGE, syscall);
+        }
+
+        String message = StraceCallReassembler.join(
+            unfinished.getOriginalMessage(), resumed.getOriginalMessage());
+
+        if (message == null)
+        {
+            return null;
+        }
+
+        ParsedData ret =
+            parseTopLevel(message, null, _tokenizer, _syscalls, null);
+        StraceSyscallParsedData syscall = asSyscall(ret);
+
+        if (syscall == null
+            || syscall.getFlag() != StraceSyscallParsedData.Flag.FULL_CALL
+            || syscall.getPid() != resumed.getPid()
+            || !syscall.getSyscallName().equals(resumed.getSyscallName()))
+        {
+            return null;
+        }
+
+        return ret;
     }
 
-    // {{{ IParser implementation: Details ////////////////////////////////////
+    private static StraceSyscallParsedData asSyscall(ParsedData parsedData)
+    {
+        if (parsedData.getType() == ParsedData.Type.PARSED_MESSAGE
+            && parsedData.getData() instanceof StraceSyscallParsedData)
+        {
+            return (StraceSyscallParsedData)parsedData.getData();
+        }
+
+        return null;
+    }
 
     /**
      * Parse strace message and produce ParsedMessage or <code>null</code> if
@@ -298,99 +516,333 @@ public class StraceParser implements IParser
      *   status message(s) or <code>null</code> in case when this method is
      *   currently parsing message from backlog.
      *
+     * @param tokenizer
+     *   Tokenizer used to recognize structure of the message or
+     *   <code>null</code> to use regular expressions.
+     *
+     * @param syscalls
+     *   Syscalls that are parsed fully or <code>null</code> for all of them.
+     *
+     * @param pool
+     *   Records reused for syscalls recognized by tokenizer or
+     *   <code>null</code> to allocate new ones.
+     *
      * @return
      *   ParsedData (that may contain parsed message or parse error) or
      *   <code>null</code> if the parsing was postponed since only partial data
      *   are currently available.
      */
-    private static ParsedData parseTopLevel(String str, Backlog backlog)
+    private static ParsedData parseTopLevel(CharSequence str, Backlog backlog,
+        StraceTokenizer tokenizer,
+        Set<StraceSyscallParsedData.Syscall> syscalls,
+        Pool pool)
     {
+        if (tokenizer == null || !tokenizer.tokenize(str, backlog != null))
+        {
+            return parseTopLevelWithRegex(str, backlog, syscalls);
+        }
+
+        int pid = tokenizer.getPid();
+        IParsedData parsedData = countOnlySyscall(tokenizer, syscalls, pool);
+
+        if (parsedData != null)
+        {
+            setTiming(parsedData, tokenizer.getTimestamp());
+
+            // Neither original message nor any other part of it is copied.
+            return finishTopLevel(null, str, backlog, parsedData, pool);
+        }
+
+        StraceTokenizer.Type type = tokenizer.getType();
+
+        // Pooled syscall record refers to the message instead.
+        String originalMessage = pool != null
+            && (type == StraceTokenizer.Type.SYSCALL
+                || type == StraceTokenizer.Type.UNFINISHED_SYSCALL
+                || type == StraceTokenizer.Type.RESUMED_SYSCALL)
+            ? null
+            : str.toString();
+
+        switch (type)
+        {
+            case PROCESS_STATUS_CHANGED:
+                parsedData = parseProcessStatusChangedDetails(originalMessage,
+                    tokenizer.getStatusPid(), tokenizer.getName());
+                break;
+
+            case INTERRUPTED:
+                // Put to backlog that part of the message that is not
+                // a process status change.
+                backlog.append(
+                    CharBuffer.wrap(str, 0, tokenizer.getInterruptedEnd()));
+                parsedData = parseProcessStatusChangedDetails(originalMessage,
+                    tokenizer.getStatusPid(), tokenizer.getName());
+                break;
+
+            case SYSCALL:
+                parsedData = parseSyscallDetails(
+                    newSyscall(originalMessage, str, tokenizer.getName(),
+                        StraceSyscallParsedData.Flag.FULL_CALL, pool),
+                    pid,
+                    str,
+                    tokenizer.getArgumentsStart(),
+                    tokenizer.getArgumentsEnd(),
+                    tokenizer.getIntegerResult(),
+                    tokenizer.getPointerResult(),
+                    tokenizer.getErrno(),
+                    tokenizer.getErrnoDescription());
+                break;
+
+            case UNFINISHED_SYSCALL:
+                parsedData = parseUnfinishedSyscallDetails(
+                    newSyscall(originalMessage, str, tokenizer.getName(),
+                        StraceSyscallParsedData.Flag.UNFINISHED_CALL, pool),
+                    pid,
+                    str,
+                    tokenizer.getArgumentsStart(),
+                    tokenizer.getArgumentsEnd());
+                break;
+
+            case RESUMED_SYSCALL:
+                parsedData = parseResumedSyscallDetails(
+                    newSyscall(originalMessage, str, tokenizer.getName(),
+                        StraceSyscallParsedData.Flag.RESUMED_CALL, pool),
+                    pid,
+                    tokenizer.getIntegerResult(),
+                    tokenizer.getPointerResult(),
+                    tokenizer.getErrno(),
+                    tokenizer.getErrnoDescription());
+                break;
+
+            case SIGNAL:
+                parsedData = parseSignalDetails(originalMessage, pid,
+                    tokenizer.getName(),
+                    arguments(str, tokenizer).toString());
+                break;
+
+            default:
+                break;
+        }
+
+        setTiming(parsedData, tokenizer.getTimestamp());
+
+        return finishTopLevel(originalMessage, str, backlog, parsedData, pool);
+    }
+
+    /**
+     * Same as parseTopLevel(), but uses only regular expressions.
+     */
+    private static ParsedData parseTopLevelWithRegex(CharSequence str,
+        Backlog backlog, Set<StraceSyscallParsedData.Syscall> syscalls)
+    {
+        String originalMessage = str.toString();
         Matcher topLevelMatcher = _TOP_LEVEL_PATTERN.matcher(str);
-        ParsedData.Type dataType = ParsedData.Type.PARSED_MESSAGE;
         IParsedData parsedData = null;  // Parse error.
 
         // _TOP_LEVEL_REGEX is constructed to always succeed and provide group(5), but you newer know.
-        if (topLevelMatcher.find() && topLevelMatcher.group(5) != null)
+        if (!topLevelMatcher.find() || topLevelMatcher.start(5) < 0)
         {
-            boolean isProcessStatusChange = false;
-            // PID can be provided in two different formats or not at all.
-            String pid = topLevelMatcher.group(3);
-            if (pid == null)
-            {
-                pid = topLevelMatcher.group(4);
-            }
+            return finishTopLevel(originalMessage, str, null, null, null);
+        }
+
+        // PID can be provided in two different formats or not at all.
+        int pid = parsePid(str, topLevelMatcher, 3);
+        if (pid == _NO_PID)
+        {
+            pid = parsePid(str, topLevelMatcher, 4);
+        }
 
-            String rest = topLevelMatcher.group(5);
+        // Rest of the message is not copied, following matchers are
+        // restricted to the region between timestamp and duration.
+        StraceTimestamp timestamp = new StraceTimestamp();
+        int rest = topLevelMatcher.start(5);
+        int end = str.length();
 
-            parsedData = parseProcessStatusChanged(str, rest);
+        if (timestamp.parse(str, rest))
+        {
+            rest = timestamp.getEnd();
+        }
 
-            // If backlog is null then we are already processing it.
-            if (parsedData == null && backlog != null)
-            {
-                // Parsed process status changed message and interupted message.
-                // Original message will be parsed to preserve PID.
-                Pair<String, IParsedData> result = parseInteruptedMessage(str);
+        if (timestamp.parseDuration(str, rest, end))
+        {
+            end = timestamp.getDurationStart();
+        }
+
+        parsedData =
+            parseProcessStatusChanged(originalMessage, str, rest, end);
 
-                if (result != null)
+        // If backlog is null then we are already processing it.
+        if (parsedData == null && backlog != null)
+        {
+            // Parsed process status changed message and interupted message.
+            // Original message will be parsed to preserve PID.
+            Pair<String, IParsedData> result =
+                parseInteruptedMessage(originalMessage, str, end);
+
+            if (result != null)
+            {
+                if (result.first != null)
                 {
-                    if (result.first != null)
-                    {
-                        // Put to backlog that part of the message that is not
-                        // a process status change.
-                        backlog.append(result.first);
-                    }
-                    parsedData = result.second;
+                    // Put to backlog that part of the message that is not
+                    // a process status change.
+                    backlog.append(result.first);
                 }
+                parsedData = result.second;
             }
+        }
 
-            // Either parseProcessStatusChanged or parseInteruptedMessage
-            // succeeded.
-            if (parsedData != null)
-            {
-                isProcessStatusChange = true;
-            }
+        if (parsedData == null)
+        {
+            parsedData = parseSyscall(originalMessage, pid, str, rest, end);
+        }
 
-            if (parsedData == null)
-            {
-                parsedData = parseSyscall(str, pid, rest);
-            }
+        if (parsedData == null)
+        {
+            parsedData = parseUnfinishedSyscall(originalMessage, pid, str,
+                rest, end);
+        }
 
-            if (parsedData == null)
-            {
-                parsedData = parseUnfinishedSyscall(str, pid, rest);
-            }
+        if (parsedData == null)
+        {
+            parsedData =
+                parseResumedSyscall(originalMessage, pid, str, rest, end);
+        }
 
-            if (parsedData == null)
+        if (parsedData == null)
+        {
+            parsedData = parseSignal(originalMessage, pid, str, rest, end);
+        }
+
+        // Syscall is parsed fully anyway, but result has to be the same as
+        // when tokenizer is used.
+        if (parsedData instanceof StraceSyscallParsedData && syscalls != null)
+        {
+            StraceSyscallParsedData syscall =
+                (StraceSyscallParsedData)parsedData;
+
+            if (!syscalls.contains(syscall.getSyscall()))
             {
-                parsedData = parseResumedSyscall(str, pid, rest);
+                parsedData = countOnlySyscall(syscall.getSyscallName(),
+                    syscall.getFlag(), syscall.getPid());
             }
+        }
+
+        setTiming(parsedData, timestamp);
+
+        return finishTopLevel(originalMessage, str, backlog, parsedData, null);
+    }
+
+    /**
+     * Count-only record of a syscall recognized by tokenizer if it's not
+     * one of specified syscalls.
+     *
+     * @return
+     *   Count-only record or <code>null</code> if message isn't a syscall or
+     *   if it should be parsed fully.
+     */
+    private static StraceSyscallParsedData countOnlySyscall(
+        StraceTokenizer tokenizer,
+        Set<StraceSyscallParsedData.Syscall> syscalls,
+        Pool pool)
+    {
+        StraceSyscallParsedData.Flag flag;
+
+        if (syscalls == null)
+        {
+            return null;
+        }
+
+        switch (tokenizer.getType())
+        {
+            case SYSCALL:
+                flag = StraceSyscallParsedData.Flag.FULL_CALL;
+                break;
+
+            case UNFINISHED_SYSCALL:
+                flag = StraceSyscallParsedData.Flag.UNFINISHED_CALL;
+                break;
+
+            case RESUMED_SYSCALL:
+                flag = StraceSyscallParsedData.Flag.RESUMED_CALL;
+                break;
+
+            default:
+                return null;
+        }
+
+        // Name is needed only if syscall isn't parsed fully.
+        if (syscalls.contains(tokenizer.getSyscall()))
+        {
+            return null;
+        }
+
+        String name = tokenizer.getName();
+
+        if (pool != null)
+        {
+            pool.syscall.reset(null, name, flag, true);
+            setPid(pool.syscall, tokenizer.getPid());
+
+            return pool.syscall;
+        }
+
+        return countOnlySyscall(name, flag, tokenizer.getPid());
+    }
+
+    private static StraceSyscallParsedData countOnlySyscall(String name,
+        StraceSyscallParsedData.Flag flag, int pid)
+    {
+        StraceSyscallParsedData ret =
+            StraceSyscallParsedData.countOnly(name, flag);
+
+        setPid(ret, pid);
+
+        return ret;
+    }
 
+    /**
+     * Common part of parseTopLevel() and parseTopLevelWithRegex() that
+     * handles backlog and parse errors.
+     *
+     * @param originalMessage
+     *   Copy of str, it may be <code>null</code> if parsedData aren't.
+     *
+     * @param parsedData
+     *   Recognized message or <code>null</code>.
+     *
+     * @param pool
+     *   Records reused in pooled mode or <code>null</code>.
+     */
+    private static ParsedData finishTopLevel(
+        String originalMessage,
+        CharSequence str,
+        Backlog backlog,
+        IParsedData parsedData,
+        Pool pool)
+    {
+        ParsedData.Type dataType = ParsedData.Type.PARSED_MESSAGE;
+
+        if (backlog != null && backlog.isDirty())
+        {
             if (parsedData == null)
             {
-                parsedData = parseSignal(str, pid, rest);
+                // If message is not recognized till now then it may be a
+                // continuation of interupted message. If so, then backlog
+                // has to be dirty, i.e. there is already a part of the
+                // message.
+                backlog.append(str);
+
+                // Not a parsing error; just skip result of this function
+                // since its going to backlog whole.
+                return null;
             }
-
-            if (backlog != null && backlog.isDirty())
+            else if (!(parsedData
+                instanceof StraceProcessStatusChangedParsedData))
             {
-                if (parsedData == null)
-                {
-                    // If message is not recognized till now then it may be a
-                    // continuation of interupted message. If so, then backlog
-                    // has to be dirty, i.e. there is already a part of the
-                    // message.
-                    backlog.append(str);
-
-                    // Not a parsing error; just skip result of this function
-                    // since its going to backlog whole.
-                    return null;
-                }
-                else if (!isProcessStatusChange)
-                {
-                    // Message other then process status change occurred is
-                    // means that interupted message has already finished.
-                    // Marking backlog as finished will force it's processing.
-                    backlog.markForFinalization();
-                }
+                // Message other then process status change occurred is
+                // means that interupted message has already finished.
+                // Marking backlog as finished will force it's processing.
+                backlog.markForFinalization();
             }
         }
 
@@ -401,25 +853,72 @@ public class StraceParser implements IParser
             // strace sometimes doesn't continue syscall message and prints
             // another (unfinished) syscall message.
             dataType = ParsedData.Type.PARSE_ERROR;
-            parsedData = new ParseError(str, "Unknown type of strace message.");
+            parsedData = new ParseError(originalMessage,
+                "Unknown type of strace message.");
+        }
+
+        if (pool != null && parsedData == pool.syscall)
+        {
+            return pool.data.reset(dataType, parsedData);
         }
 
         return new ParsedData(dataType, parsedData);
     }
 
+    /**
+     * New syscall record or, in pooled mode, the reused one.
+     *
+     * @param originalMessage
+     *   Copy of str, it's <code>null</code> in pooled mode.
+     */
+    private static StraceSyscallParsedData newSyscall(
+        String originalMessage,
+        CharSequence str,
+        String name,
+        StraceSyscallParsedData.Flag flag,
+        Pool pool)
+    {
+        if (pool == null)
+        {
+            return new StraceSyscallParsedData(originalMessage, name, flag);
+        }
+
+        pool.syscall.reset(str, name, flag, false);
+
+        return pool.syscall;
+    }
+
+    /**
+     * Syscall arguments or signal description found by tokenizer, characters
+     * are not copied.
+     */
+    private static CharSequence arguments(CharSequence str,
+        StraceTokenizer tokenizer)
+    {
+        return CharBuffer.wrap(str, tokenizer.getArgumentsStart(),
+            tokenizer.getArgumentsEnd());
+    }
+
     private static IParsedData parseSyscall(
         String originalMessage,
-        String pid,
-        String str)
+        int pid,
+        CharSequence str,
+        int start,
+        int end)
     {
-        Matcher matcher = _SYSCALL_PATTERN.matcher(str);
+        Matcher matcher = _SYSCALL_PATTERN.matcher(str)
+            .region(start, end);
         IParsedData ret = null;
 
         if (matcher.find())
         {
-            ret = parseSyscallDetails(originalMessage, pid,
-                matcher.group(1),   // System call name.
-                matcher.group(2),   // System call arguments.
+            ret = parseSyscallDetails(
+                new StraceSyscallParsedData(originalMessage,
+                    matcher.group(1)),  // System call name.
+                pid,
+                str,
+                matcher.start(2),   // System call arguments.
+                matcher.end(2),
                 matcher.group(4),   // Return value if it's integer.
                 matcher.group(5),   // Return value if it's pointer.
                 matcher.group(7),   // Errno symbolic value.
@@ -431,17 +930,25 @@ public class StraceParser implements IParser
 
     private static IParsedData parseUnfinishedSyscall(
         String originalMessage,
-        String pid,
-        String str)
+        int pid,
+        CharSequence str,
+        int start,
+        int end)
     {
-        Matcher matcher = _SYSCALL_UNFINISHED_PATTERN.matcher(str);
+        Matcher matcher = _SYSCALL_UNFINISHED_PATTERN.matcher(str)
+            .region(start, end);
         IParsedData ret = null;
 
         if (matcher.find())
         {
-            ret = parseUnfinishedSyscallDetails(originalMessage, pid,
-                matcher.group(1),   // System call name.
-                matcher.group(2));  // Argument provided to the call.
+            ret = parseUnfinishedSyscallDetails(
+                new StraceSyscallParsedData(originalMessage,
+                    matcher.group(1),   // System call name.
+                    StraceSyscallParsedData.Flag.UNFINISHED_CALL),
+                pid,
+                str,
+                matcher.start(2),   // Argument provided to the call.
+                matcher.end(2));
         }
 
         return ret;
@@ -449,17 +956,22 @@ public class StraceParser implements IParser
 
     private static IParsedData parseResumedSyscall(
         String originalMessage,
-        String pid,
-        String str)
+        int pid,
+        CharSequence str,
+        int start,
+        int end)
     {
-        Matcher matcher = _SYSCALL_RESUMED_PATTERN.matcher(str);
+        Matcher matcher = _SYSCALL_RESUMED_PATTERN.matcher(str)
+            .region(start, end);
         IParsedData ret = null;
 
         if (matcher.find())
         {
-            ret = parseResumedSyscallDetails(originalMessage, pid,
-                matcher.group(1),   // System call name.
-                matcher.group(2),   // Rest of the arguments.
+            ret = parseResumedSyscallDetails(
+                new StraceSyscallParsedData(originalMessage,
+                    matcher.group(1),   // System call name.
+                    StraceSyscallParsedData.Flag.RESUMED_CALL),
+                pid,
                 matcher.group(4),   // Return value if it's integer.
                 matcher.group(5),   // Return value if it's pointer.
                 matcher.group(7),   // Errno symbolic value.
@@ -471,10 +983,13 @@ public class StraceParser implements IParser
 
     private static IParsedData parseSignal(
         String originalMessage,
-        String pid,
-        String str)
+        int pid,
+        CharSequence str,
+        int start,
+        int end)
     {
-        Matcher matcher = _SIGNAL_PATTERN.matcher(str);
+        Matcher matcher = _SIGNAL_PATTERN.matcher(str)
+            .region(start, end);
         IParsedData ret = null;
 
         if (matcher.find())
@@ -489,16 +1004,19 @@ public class StraceParser implements IParser
 
     private static IParsedData parseProcessStatusChanged(
         String originalMessage,
-        String str)
+        CharSequence str,
+        int start,
+        int end)
     {
-        Matcher matcher = _PROCESS_STATUS_CHANGED_PATTERN.matcher(str);
+        Matcher matcher = _PROCESS_STATUS_CHANGED_PATTERN.matcher(str)
+            .region(start, end);
         IParsedData ret = null;
 
         if (matcher.find())
         {
             ret = parseProcessStatusChangedDetails(originalMessage,
                 // Status changed for process with this PID.
-                matcher.group(1),
+                parsePid(str, matcher, 1),
                 // Type of process status change (attached, detached, resumed
                 // or suspended).
                 matcher.group(2));
@@ -508,11 +1026,13 @@ public class StraceParser implements IParser
     }
 
     private static Pair<String, IParsedData> parseInteruptedMessage(
-        String originalMessage)
+        String originalMessage,
+        CharSequence str,
+        int end)
     {
-        // Parsing originalMessage so that PID will be preserved.
-        Matcher matcher =
-            _INTERUPTED_BY_PROCESS_STATUS_PATTERN.matcher(originalMessage);
+        // Parsing whole message so that PID will be preserved.
+        Matcher matcher = _INTERUPTED_BY_PROCESS_STATUS_PATTERN.matcher(str)
+            .region(0, end);
         Pair<String, IParsedData> ret = null;
 
         if (matcher.find())
@@ -521,7 +1041,7 @@ public class StraceParser implements IParser
                 matcher.group(1),
                 parseProcessStatusChangedDetails(originalMessage,
                     // Status changed for process with this PID.
-                    matcher.group(2),
+                    parsePid(str, matcher, 2),
                     // Type of process status change (attached, detached,
                     // resumed or suspended).
                     matcher.group(3)));
@@ -533,17 +1053,21 @@ public class StraceParser implements IParser
     /**
      * Parse syscall strace message further.
      *
-     * @param originalMessage
-     *   Message as produced by strace.
+     * @param parsedData
+     *   Record of the syscall with original message, name and flag.
      *
      * @param pid
-     *   PID of process that made the syscall or <code>null</code> if not provided.
+     *   PID of process that made the syscall or <code>_NO_PID</code> if not
+     *   provided.
      *
-     * @param name
-     *   Name of the syscall performed.
+     * @param str
+     *   Message as produced by strace.
      *
-     * @param args
-     *   Arguments of syscall.
+     * @param argsStart
+     *   Start of syscall arguments in str.
+     *
+     * @param argsEnd
+     *   End of syscall arguments in str (exclusive).
      *
      * @param intRet
      *   Return value of syscall if it was an integer or <code>null</code>
@@ -560,24 +1084,22 @@ public class StraceParser implements IParser
      *   Description of errno as provided by strace.
      *
      * @return
-     *   Parsed strace log message or <code>null</code> if parsing failed.
+     *   The same record filled with parsed values.
      */
     private static StraceSyscallParsedData parseSyscallDetails(
-        String originalMessage,
-        String pid,
-        String name,
-        String args,
+        StraceSyscallParsedData parsedData,
+        int pid,
+        CharSequence str,
+        int argsStart,
+        int argsEnd,
         String intRet,
         String ptrRet,
         String errno,
         String errnoDescription)
     {
-        StraceSyscallParsedData parsedData =
-            new StraceSyscallParsedData(originalMessage, name);
-
         setPid(parsedData, pid);
         setSyscallResult(parsedData, intRet, ptrRet, errno, errnoDescription);
-        parseFullAndUnfinishedSyscallArguments(parsedData, args);
+        setSyscallArguments(parsedData, str, argsStart, argsEnd);
 
         // TODO
 
@@ -585,17 +1107,14 @@ public class StraceParser implements IParser
     }
 
     private static StraceSyscallParsedData parseUnfinishedSyscallDetails(
-        String originalMessage,
-        String pid,
-        String name,
-        String args)
+        StraceSyscallParsedData parsedData,
+        int pid,
+        CharSequence str,
+        int argsStart,
+        int argsEnd)
     {
-        StraceSyscallParsedData parsedData = new StraceSyscallParsedData(
-            originalMessage, name,
-            StraceSyscallParsedData.Flag.UNFINISHED_CALL);
-
         setPid(parsedData, pid);
-        parseFullAndUnfinishedSyscallArguments(parsedData, args);
+        setSyscallArguments(parsedData, str, argsStart, argsEnd);
 
         // TODO
 
@@ -603,18 +1122,13 @@ public class StraceParser implements IParser
     }
 
     private static StraceSyscallParsedData parseResumedSyscallDetails(
-        String originalMessage,
-        String pid,
-        String name,
-        String args,
+        StraceSyscallParsedData ret,
+        int pid,
         String intRet,
         String ptrRet,
         String errno,
         String errnoDescription)
     {
-        StraceSyscallParsedData ret = new StraceSyscallParsedData(
-            originalMessage, name, StraceSyscallParsedData.Flag.RESUMED_CALL);
-
         setPid(ret, pid);
         setSyscallResult(ret, intRet, ptrRet, errno, errnoDescription);
 
@@ -625,7 +1139,7 @@ public class StraceParser implements IParser
 
     private static StraceSignalParsedData parseSignalDetails(
         String originalMessage,
-        String pid,
+        int pid,
         String signal,
         String signalDescription)
     {
@@ -640,7 +1154,7 @@ public class StraceParser implements IParser
     private static
         StraceProcessStatusChangedParsedData parseProcessStatusChangedDetails(
             String originalMessage,
-            String pid,
+            int pid,
             String typeOfProcessStatusChange)
     {
         StraceProcessStatusChangedParsedData ret =
@@ -652,13 +1166,53 @@ public class StraceParser implements IParser
         return ret;
     }
 
-    private static void setPid(IHasPid parsedData, String pid)
+    /**
+     * Store timestamp and duration of a syscall, other messages don't keep
+     * them.
+     */
+    private static void setTiming(IParsedData parsedData,
+        StraceTimestamp timestamp)
+    {
+        if (parsedData instanceof StraceSyscallParsedData)
+        {
+            ((StraceSyscallParsedData)parsedData).setTiming(
+                timestamp.getType(), timestamp.getNanos(),
+                timestamp.getDuration());
+        }
+    }
+
+    private static void setPid(IHasPid parsedData, int pid)
+    {
+        if (pid != _NO_PID)
+        {
+            parsedData.setPid(pid);
+        }
+    }
+
+    /**
+     * Parse PID captured by specified group without copying it out of the
+     * message.
+     *
+     * @return
+     *   PID or <code>_NO_PID</code> if the group didn't match.
+     */
+    private static int parsePid(CharSequence str, Matcher matcher, int group)
     {
-        if (pid != null)
+        int start = matcher.start(group);
+
+        if (start < 0)
+        {
+            return _NO_PID;
+        }
+
+        // Regex already validated pid to be an integer.
+        int pid = 0;
+        for (int i = start, end = matcher.end(group); i < end; i++)
         {
-            // Regex already validated pid to be an integer.
-            parsedData.setPid(Integer.parseInt(pid));
+            pid = pid * 10 + (str.charAt(i) - '0');
         }
+
+        return pid;
     }
 
     private static void setSyscallResult(
@@ -688,252 +1242,231 @@ public class StraceParser implements IParser
         parsedData.setErrnoDescription(errnoDescription);
     }
 
-    private static void parseFullAndUnfinishedSyscallArguments(
+    /**
+     * Keep arguments of syscalls for which StraceSyscallParsedData decodes
+     * them, e.g. path or environment, on first access. Child PID is set
+     * right away since it's the result of the call.
+     */
+    private static void setSyscallArguments(
         StraceSyscallParsedData parsedData,
-        String args)
+        CharSequence str,
+        int argsStart,
+        int argsEnd)
     {
-        // TODO: Clean-up.
         StraceSyscallParsedData.Syscall syscall = parsedData.getSyscall();
-        Pair<String, String> fileArgumentAndRest = null;
-        Pair<Integer, String> intArgumentAndRest = null;
-
-        switch (syscall)
-        {
-            // Process only syscalls that have path as their first argument.
-            case ACCESS:    // Pass-through
-            case CHDIR:     // Pass-through
-            case CREAT:     // Pass-through
-            case EXEC:      // Pass-through
-            case GETCWD:    // Pass-through
-            case LSTAT:     // Pass-through
-            case OPEN:      // Pass-through
-            case READLINK:  // Pass-through
-            case STAT:      // Pass-through
-            case STATFS:
-                fileArgumentAndRest = parseStringArgument(args);
-                break;
 
-            case OPENAT:
-                fileArgumentAndRest = parseSecondStringArgument(args);
-                break;
-
-            // Set child PID when doing fork/vfork/clone.
-            case FORK:
-                if (parsedData.isResultInteger())
-                {
-                    // Call might not be finished and then child pid won't be
-                    // known.
-                    parsedData.setChildPid(new Integer(parsedData.getResult()));
-                }
-                break;
-
-            case EXIT:
-                intArgumentAndRest = parseIntArgument(args);
-                break;
-
-            default:
-                break;
+        // Set child PID when doing fork/vfork/clone. Call might not be
+        // finished and then child pid won't be known.
+        if (syscall == StraceSyscallParsedData.Syscall.FORK
+            && parsedData.isResultInteger())
+        {
+            parsedData.setChildPid(Integer.parseInt(parsedData.getResult()));
         }
 
-        if (fileArgumentAndRest != null)
+        if (StraceArguments.hasArguments(syscall))
         {
-            // Setting to null is OK, since it's a default value.
-            parsedData.setPath(fileArgumentAndRest.first);
-
-            switch (syscall)
-            {
-                case EXEC:
-                    Pair<List<String>, List<Pair<String, String>>> argsAndEnv =
-                        parseExecSpecifics(fileArgumentAndRest.second);
-
-                    if (argsAndEnv.first != null)
-                    {
-                        parsedData.setCommandLineArgs(argsAndEnv.first.toArray(
-                            new String[0]));
-                    }
-
-                    if (argsAndEnv.second != null)
-                    {
-                        for (Pair<String, String> var : argsAndEnv.second)
-                        {
-                            parsedData.setEnvVar(var.first, var.second);
-                        }
-                    }
-
-                    break;
-
-                case CHDIR: // Pass-through
-                case GETCWD:
-                    parsedData.setWorkingDirectory(fileArgumentAndRest.first);
-                    break;
-            }
+            parsedData.setArguments(str, argsStart, argsEnd);
         }
-        else if (intArgumentAndRest != null)
-        {
-            switch (syscall)
-            {
-                case EXIT:
-                    // Don't check on intArgumentAndRest.first != null,
-                    // let NullPointerException occurre since it will indicate
-                    // logical error in parseIntArgument(String).
-                    parsedData.setExitCode(intArgumentAndRest.first.intValue());
-                    break;
-            }
-        }
-
-        // TODO
     }
+    // }}} IParser implementation: Details ////////////////////////////////////
+
+    // }}} IParser implementation /////////////////////////////////////////////
+
+    // {{{ Parallel parsing ///////////////////////////////////////////////////
 
     /**
-     * Parse first argument as string literal (with C-style escape sequances)
-     * and keep the rest as it is.
+     * First half of parse() that doesn't depend on parser state, therefore
+     * it can run concurrently in separate parsers, see ParallelStraceParser.
      *
-     * @param argsStr  Unparsed syscall arguments.
+     * Messages are parsed as if backlog was empty. Part of interrupted
+     * message, that would be put to backlog, is stored in
+     * <code>interrupted</code> instead, and message that isn't recognized
+     * is reported as parse error. Callbacks aren't run.
      *
-     * @return Pair
-     *     consisting of parsed argument (<code>first</code>) and unparsed rest
-     *     of arguments (<code>second</code>);
+     * @param messages
+     *   Messages to be parsed.
+     * @param length
+     *   Number of messages to be parsed.
+     * @param syscalls
+     *   Syscalls that are parsed fully or <code>null</code> for all of them.
+     * @param results
+     *   Parsed messages, <code>null</code> if message went to backlog whole.
+     * @param interrupted
+     *   Parts of messages for backlog or <code>null</code>.
+     * @param continues
+     *   Whether message would be appended to backlog if it wasn't empty.
      */
-    private static Pair<String, String> parseStringArgument(String argsStr)
+    void parseDetached(CharSequence[] messages, int length,
+        Set<StraceSyscallParsedData.Syscall> syscalls,
+        ParsedData[] results, String[] interrupted, boolean[] continues)
     {
-        Matcher m = _STRING_ARGUMENT_PATTERN.matcher(argsStr);
-        Pair<String, String> ret = null;
-
-        if (m.find())
+        for (int i = 0; i < length; i++)
         {
-            String rest = m.group(5) != null ? m.group(5) : m.group(6);
+            results[i] = parseTopLevel(messages[i], _backlog, _tokenizer,
+                syscalls, null);
+            interrupted[i] = null;
+            continues[i] = false;
 
-            if (rest == null)
+            if (_backlog.isDirty())
             {
-                rest = "";  // Last argument.
+                _backlog.markForFinalization();
+                interrupted[i] = _backlog.doFinalize();
+            }
+            else if (results[i].getType() == ParsedData.Type.PARSE_ERROR)
+            {
+                // Not every message that isn't recognized continues
+                // interrupted message, parse errors are rare, so it's
+                // simpler to try it.
+                _backlog.append(" ");
+                continues[i] = parseTopLevel(messages[i], _backlog,
+                    _tokenizer, syscalls, null) == null;
+                _backlog.markForFinalization();
+                _backlog.doFinalize();
             }
-
-            ret = new Pair<>(m.group(1), rest);
         }
-
-        return ret;
     }
 
-    private static Pair<String, String> parseSecondStringArgument(String argsStr)
-    {
-        return parseStringArgument(argsStr.substring(argsStr.indexOf(", ")+2));
-    }
     /**
-     * Parse list of strings (like <code>["foo", "bar"]</code>) and return it
-     * along with unparsed rest of syscall arguments.
-     *
-     * This function uses parseStringArgument method internally.
-     *
-     * @param argsStr
-     *   List of arguments that should start with the list of strings as first
-     *   one.
+     * Second half of parse() that applies results of parseDetached() to
+     * parser state, in the original order of messages, and runs callbacks.
      *
-     * @return
-     *   List of strings passed as a first argument to the syscall and unparsed
-     *   rest of them; <code>null</code> in case of parsing failure, like when
-     *   argsStr isn't starting with list of strings, or when it's truncated
-     *   and list of strings is not terminated properly, etc.
+     * Outcome is the same as if parse() was called for each message, parsed
+     * data are delivered as one batch.
      */
-    private static Pair<List<String>, String> parseListOfStringsArgument(
-        String argsStr)
+    void parseAttached(ParsedData[] results, String[] interrupted,
+        boolean[] continues, int length)
     {
-        if (argsStr.charAt(0) != '[')
+        beginBatch();
+
+        try
         {
-            return null;    // Parsing failed.
+            attach(results, interrupted, continues, length);
         }
+        finally
+        {
+            endBatch();
+        }
+    }
 
-        String rest = argsStr.substring(1);    // Remove leading '[' character.
-        List<String> items = new ArrayList<>();
-
-        while (rest.charAt(0) != ']')
+    private void attach(ParsedData[] results, String[] interrupted,
+        boolean[] continues, int length)
+    {
+        for (int i = 0; i < length; i++)
         {
-            Pair<String, String> strAndRest = parseStringArgument(rest);
+            ParsedData parsedMessage = results[i];
 
-            if (strAndRest == null
-                || strAndRest.first == null
-                || strAndRest.second == null
-                // We should have reached end of list and that is indicated by
-                // presence of ']' character.
-                || strAndRest.second.isEmpty())
+            if (interrupted[i] != null)
             {
-                return null;    // Parsing failed.
+                _backlog.append(interrupted[i]);
             }
 
-            items.add(strAndRest.first);
-            rest = strAndRest.second;
-        }
+            if (parsedMessage == null)
+            {
+                // Whole message went to backlog.
+                continue;
+            }
 
-        return new Pair<>(items,
-            rest.replaceFirst("](, *)?", ""));
+            // Same as finishTopLevel() does with non-empty backlog.
+            if (_backlog.isDirty())
+            {
+                if (continues[i])
+                {
+                    _backlog.append(parsedMessage.getOriginalMessage());
+
+                    continue;
+                }
+                else if (parsedMessage.getType() != ParsedData.Type.PARSE_ERROR
+                    && !(parsedMessage.getData()
+                        instanceof StraceProcessStatusChangedParsedData))
+                {
+                    _backlog.markForFinalization();
+                }
+            }
+
+            parseBacklog();
+            reassemble(parsedMessage);
+        }
     }
 
-    private static Pair<String, String> parseEnvironmentVariable(String str)
+    // }}} Parallel parsing ///////////////////////////////////////////////////
+
+    // {{{ ICheckpointable interface implementation ///////////////////////////
+
+    /**
+     * {@inheritDoc}
+     *
+     * State is the content of backlog, i.e. part of a message interrupted by
+     * process status message, followed by messages of pending unfinished
+     * syscalls. Backlog is never marked for finalization between two calls
+     * to parse().
+     */
+    @Override
+    public Serializable saveState()
     {
-        Matcher m = _ENVIRONMENT_VARIABLE_PATTERN.matcher(str);
+        List<ParsedData> pending = _reassembler.getPending();
+        String[] state = new String[pending.size() + 1];
+
+        state[0] = _backlog.toString();
 
-        if (m.find())
+        for (int i = 0; i < pending.size(); i++)
         {
-            return new Pair<>(m.group(1), m.group(2));
+            StraceSyscallParsedData syscall = asSyscall(pending.get(i));
+
+            // Count-only record doesn't have original message, but its name
+            // and PID are enough to recreate it.
+            state[i + 1] = syscall.isCountOnly()
+                ? syscall.getPid() + " " + syscall.getSyscallName()
+                    + "( <unfinished ...>"
+                : syscall.getOriginalMessage();
         }
 
-        return null;
+        return state;
     }
 
-    private static Pair<List<String>, List<Pair<String, String>>>
-        parseExecSpecifics(String str)
+    /**
+     * {@inheritDoc}
+     *
+     * State that consists only of backlog, as stored by older versions, is
+     * accepted as well.
+     */
+    @Override
+    public void restoreState(Serializable state)
     {
-        Pair<List<String>, List<Pair<String, String>>> ret =
-            new Pair<>(null, null);
+        String[] messages;
 
-        Pair<List<String>, String> argsAndRest = parseListOfStringsArgument(str);
-        if (argsAndRest == null
-            || argsAndRest.first == null
-            || argsAndRest.second == null)
+        if (state instanceof String)
         {
-            return ret;    // Parse error.
+            messages = new String[] {(String)state};
         }
-        ret.first = argsAndRest.first;
-
-        Pair<List<String>, String> envAndRest =
-            parseListOfStringsArgument(argsAndRest.second);
-        if (envAndRest == null
-            || envAndRest.first == null
-            || envAndRest.second == null)
+        else if (state instanceof String[]
+            && ((String[])state).length > 0)
         {
-            return ret;    // Parse error.
+            messages = (String[])state;
+        }
+        else
+        {
+            throw new IllegalArgumentException("state");
         }
 
-        List<Pair<String, String>> env = new ArrayList<>();
-        for (String item : envAndRest.first)
+        _backlog = new Backlog();
+        _backlog.append(messages[0]);
+        _reassembler.clear();
+
+        for (int i = 1; i < messages.length; i++)
         {
-            Pair<String, String> keyAndValue = parseEnvironmentVariable(item);
+            ParsedData unfinished =
+                parseTopLevel(messages[i], null, _tokenizer, _syscalls, null);
+            StraceSyscallParsedData syscall = asSyscall(unfinished);
 
-            if (keyAndValue == null)
+            if (syscall == null || syscall.getFlag()
+                != StraceSyscallParsedData.Flag.UNFINISHED_CALL)
             {
-                return ret;    // Parse error;
+                throw new IllegalArgumentException("state");
             }
-            env.add(keyAndValue);
-        }
-        ret.second = env;
-
-        return ret;
-    }
-
-    private static Pair<Integer, String> parseIntArgument(String str)
-    {
-        Matcher matcher = _INT_ARGUMENT_PATTERN.matcher(str);
-        Pair<Integer, String> ret = null;   // Returned on parsing error.
 
-        if(matcher.find())
-        {
-            ret = new Pair<>(
-                Integer.parseInt(matcher.group(1)),
-                matcher.group(2));
+            _reassembler.put(syscall.getPid(), unfinished);
         }
-
-        return ret;
     }
-    // }}} IParser implementation: Details ////////////////////////////////////
 
-    // }}} IParser implementation /////////////////////////////////////////////
+    // }}} ICheckpointable interface implementation ///////////////////////////
 }
@@ -0,0 +1,325 @@
+package unifiedloganalyzer.parse.strace;
+
+import java.util.Arrays;
+
+
+/**
+ * Table of known syscall names with their canonical instances and
+ * categories.
+ *
+ * Names are looked up by a perfect hash, i.e. every known name has its own
+ * slot and lookup computes hash of the characters, which is the same as
+ * String.hashCode(), and then compares them with at most one name. It works
+ * on any part of CharSequence, therefore name doesn't have to be copied in
+ * to a String to be categorized, and the same canonical String is shared by
+ * all records of the same syscall.
+ *
+ * Multiplier of the hash is found when the class is loaded, it's a search
+ * over a fixed sequence of candidates, so the table is the same every time.
+ * Lookups are thread safe, the table is never modified afterwards.
+ *
+ * @author Peter Trsko
+ */
+final class StraceSyscallNames
+{
+    /**
+     * Syscalls that are common in traces, names handled by classify() have
+     * to be listed here as well, otherwise they would be UNKNOWN.
+     */
+    private static final String[] _NAMES =
+    {
+        "_exit", "_llseek", "_newselect", "accept", "accept4", "access",
+        "arch_prctl", "bind", "brk", "capget", "capset", "chdir", "chmod",
+        "chown", "chown32", "chroot", "clock_getres", "clock_gettime",
+        "clock_nanosleep", "clone", "clone3", "close", "connect", "creat",
+        "dup", "dup2", "dup3", "epoll_create", "epoll_create1", "epoll_ctl",
+        "epoll_pwait", "epoll_wait", "eventfd2", "execve", "execveat", "exit",
+        "exit_group", "faccessat", "faccessat2", "fadvise64", "fallocate",
+        "fchdir", "fchmod", "fchmodat", "fchown", "fchownat", "fcntl",
+        "fcntl64", "fdatasync", "flock", "fork", "fstat", "fstat64",
+        "fstatat64", "fstatfs", "fstatfs64", "fsync", "ftruncate",
+        "ftruncate64", "futex", "getcwd", "getdents", "getdents64", "getegid",
+        "getegid32", "geteuid", "geteuid32", "getgid", "getgid32",
+        "getgroups", "getpeername", "getpgid", "getpgrp", "getpid",
+        "getppid", "getpriority", "getrandom", "getresgid", "getresuid",
+        "getrlimit", "getrusage", "getsid", "getsockname", "getsockopt",
+        "gettid", "gettimeofday", "getuid", "getuid32", "getxattr",
+        "inotify_add_watch", "inotify_init1", "ioctl", "kill", "lchown",
+        "lgetxattr", "link", "linkat", "listen", "lseek", "lstat", "lstat64",
+        "madvise", "mkdir", "mkdirat", "mknod", "mlock", "mmap", "mmap2",
+        "mount", "mprotect", "mremap", "msync", "munmap", "nanosleep",
+        "newfstatat", "open", "openat", "pipe", "pipe2", "poll", "ppoll",
+        "prctl", "pread64", "preadv", "prlimit64", "pselect6", "pwrite64",
+        "pwritev", "read", "readlink", "readlinkat", "readv", "recvfrom",
+        "recvmsg", "rename", "renameat", "renameat2", "rmdir", "rseq",
+        "rt_sigaction", "rt_sigprocmask", "rt_sigreturn",
+        "rt_sigsuspend", "sched_getaffinity", "sched_yield", "select",
+        "sendfile", "sendmmsg", "sendmsg", "sendto", "set_robust_list",
+        "set_tid_address", "set_thread_area", "setgid", "setgroups",
+        "setitimer", "setpgid", "setpriority", "setresgid", "setresuid",
+        "setrlimit", "setsid", "setsockopt", "setuid", "shutdown",
+        "sigaltstack", "socket", "socketpair", "splice", "stat", "stat64",
+        "statfs", "statfs64", "statx", "symlink", "symlinkat", "sync",
+        "sysinfo", "tgkill", "time", "times", "truncate", "truncate64",
+        "umask", "umount2", "uname", "unlink", "unlinkat", "utime",
+        "utimensat", "utimes", "vfork", "wait4", "waitid", "write", "writev",
+    };
+
+    private static final int _BITS;
+    private static final int _MULTIPLIER;
+    private static final String[] _TABLE;
+    private static final StraceSyscallParsedData.Syscall[] _SYSCALLS;
+
+    static
+    {
+        int bits = 32 - Integer.numberOfLeadingZeros(_NAMES.length) + 3;
+        int multiplier;
+
+        while ((multiplier = findMultiplier(bits)) == 0)
+        {
+            // Only names with the same String.hashCode() get this far.
+            if (++bits > 16)
+            {
+                throw new IllegalStateException(
+                    "No perfect hash of syscall names.");
+            }
+        }
+
+        _BITS = bits;
+        _MULTIPLIER = multiplier;
+        _TABLE = new String[1 << bits];
+        _SYSCALLS = new StraceSyscallParsedData.Syscall[1 << bits];
+
+        for (String name : _NAMES)
+        {
+            int i = slot(name.hashCode());
+
+            _TABLE[i] = name;
+            _SYSCALLS[i] = classify(name);
+        }
+    }
+
+    private StraceSyscallNames()
+    {
+        // Only static methods.
+    }
+
+    // {{{ Table construction /////////////////////////////////////////////////
+
+    /**
+     * Find multiplier for which all names have different slots in table of
+     * specified size.
+     *
+     * @return
+     *   Multiplier or zero if none of the candidates works.
+     */
+    private static int findMultiplier(int bits)
+    {
+        boolean[] used = new boolean[1 << bits];
+
+        for (int candidate = 1; candidate <= 0x10000; candidate++)
+        {
+            // Odd multipliers spread bits of the hash evenly.
+            int multiplier = (candidate * 0x9E3779B9) | 1;
+            boolean isPerfect = true;
+
+            Arrays.fill(used, false);
+
+            for (String name : _NAMES)
+            {
+                int i = (name.hashCode() * multiplier) >>> (32 - bits);
+
+                if (used[i])
+                {
+                    isPerfect = false;
+                    break;
+                }
+                used[i] = true;
+            }
+
+            if (isPerfect)
+            {
+                return multiplier;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Category of a known syscall name, used only to fill the table.
+     */
+    private static StraceSyscallParsedData.Syscall classify(String name)
+    {
+        StraceSyscallParsedData.Syscall syscall =
+            StraceSyscallParsedData.Syscall.UNKNOWN;
+
+        switch (name)
+        {
+            case "access":
+                syscall = StraceSyscallParsedData.Syscall.ACCESS;
+                break;
+
+            case "chdir":
+                syscall = StraceSyscallParsedData.Syscall.CHDIR;
+                break;
+
+            case "creat":
+                syscall = StraceSyscallParsedData.Syscall.CREAT;
+                break;
+
+            case "execve":
+                syscall = StraceSyscallParsedData.Syscall.EXEC;
+                break;
+
+            case "clone":   // Pass-through
+            case "fork":    // Pass-through
+            case "vfork":
+                syscall = StraceSyscallParsedData.Syscall.FORK;
+                break;
+
+            case "fstat":   // Pass-through
+            case "fstat64":
+                syscall = StraceSyscallParsedData.Syscall.FSTAT;
+                break;
+
+            case "getcwd":
+                syscall = StraceSyscallParsedData.Syscall.GETCWD;
+                break;
+
+            case "lstat":   // Pass-through
+            case "lstat64":
+                syscall = StraceSyscallParsedData.Syscall.LSTAT;
+                break;
+
+            case "open":
+                syscall = StraceSyscallParsedData.Syscall.OPEN;
+                break;
+
+            case "openat":
+                syscall = StraceSyscallParsedData.Syscall.OPENAT;
+                break;
+
+            case "readlink":
+                syscall = StraceSyscallParsedData.Syscall.READLINK;
+                break;
+
+            case "stat":    // Pass-through
+            case "stat64":
+                syscall = StraceSyscallParsedData.Syscall.STAT;
+                break;
+
+            case "statfs":  // Pass-through
+            case "statfs64":
+                syscall = StraceSyscallParsedData.Syscall.STATFS;
+                break;
+
+            case "exit":    // Pass-through
+            case "exit_group":
+                syscall = StraceSyscallParsedData.Syscall.EXIT;
+                break;
+        }
+
+        return syscall;
+    }
+
+    // }}} Table construction /////////////////////////////////////////////////
+
+    // {{{ Lookup /////////////////////////////////////////////////////////////
+
+    private static int slot(int hash)
+    {
+        return (hash * _MULTIPLIER) >>> (32 - _BITS);
+    }
+
+    /**
+     * Slot of a known name or -1.
+     */
+    private static int find(CharSequence str, int start, int end)
+    {
+        int hash = 0;
+
+        // Same as String.hashCode().
+        for (int i = start; i < end; i++)
+        {
+            hash = 31 * hash + str.charAt(i);
+        }
+
+        int slot = slot(hash);
+        String name = _TABLE[slot];
+
+        if (name == null || name.length() != end - start)
+        {
+            return -1;
+        }
+
+        for (int i = 0; i < name.length(); i++)
+        {
+            if (name.charAt(i) != str.charAt(start + i))
+            {
+                return -1;
+            }
+        }
+
+        return slot;
+    }
+
+    /**
+     * Slot of a known name or -1, canonical names are recognized without
+     * comparing their characters.
+     */
+    private static int find(String str)
+    {
+        int slot = slot(str.hashCode());
+        String name = _TABLE[slot];
+
+        return name == str || str.equals(name) ? slot : -1;
+    }
+
+    /**
+     * Canonical instance of syscall name <code>str[start, end)</code>.
+     *
+     * @return
+     *   Canonical name or <code>null</code> if the name isn't known.
+     */
+    public static String canonical(CharSequence str, int start, int end)
+    {
+        int slot = find(str, start, end);
+
+        return slot < 0 ? null : _TABLE[slot];
+    }
+
+    /**
+     * Canonical instance of syscall name.
+     *
+     * @return
+     *   Canonical name or <code>name</code> itself if it isn't known.
+     */
+    public static String canonical(String name)
+    {
+        int slot = find(name);
+
+        return slot < 0 ? name : _TABLE[slot];
+    }
+
+    public static StraceSyscallParsedData.Syscall categorize(
+        CharSequence str, int start, int end)
+    {
+        int slot = find(str, start, end);
+
+        return slot < 0
+            ? StraceSyscallParsedData.Syscall.UNKNOWN
+            : _SYSCALLS[slot];
+    }
+
+    public static StraceSyscallParsedData.Syscall categorize(String name)
+    {
+        int slot = find(name);
+
+        return slot < 0
+            ? StraceSyscallParsedData.Syscall.UNKNOWN
+            : _SYSCALLS[slot];
+    }
+
+    // }}} Lookup /////////////////////////////////////////////////////////////
+}
@@ -1,23 +1,35 @@
 package unifiedloganalyzer.parse.strace;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 import trskop.IAppendTo;
 
 import unifiedloganalyzer.parse.AParsedData;
+import unifiedloganalyzer.utils.CStringLiteral;
 import unifiedloganalyzer.utils.IHasPath;
 import unifiedloganalyzer.utils.IHasPid;
+import unifiedloganalyzer.utils.IRetainable;
 
 
 /**
  * Parsed strace syscall message.
  *
+ * Arguments of the syscall are kept unparsed and path, working directory,
+ * command line arguments, environment and exit code are decoded from them
+ * when any of these is accessed for the first time. Decoding happens only
+ * once even if parsed data are accessed from more threads.
+ *
+ * StraceParser in pooled mode reuses one record for subsequent messages and
+ * it refers to the message instead of copying it, therefore such record is
+ * valid only until the callback that received it returns, see retain().
+ *
  * @author Peter Trsko
  */
 public class StraceSyscallParsedData extends AParsedData
-    implements IHasPid, IHasPath
+    implements IHasPid, IHasPath, IRetainable<StraceSyscallParsedData>
 {
     // {{{ Nested types ///////////////////////////////////////////////////////
 
@@ -45,77 +57,22 @@ public class StraceSyscallParsedData extends AParsedData
             buff.append(this.toString());
         }
 
+        /**
+         * Category of syscall with specified name, see StraceSyscallNames.
+         */
         public static Syscall categorize(String name)
         {
-            Syscall syscall = Syscall.UNKNOWN;
-
-            switch (name)
-            {
-                case "access":
-                    syscall = Syscall.ACCESS;
-                    break;
-
-                case "chdir":
-                    syscall = Syscall.CHDIR;
-                    break;
-
-                case "creat":
-                    syscall = Syscall.CREAT;
-                    break;
-
-                case "execve":
-                    syscall = Syscall.EXEC;
-                    break;
-
-                case "clone":   // Pass-through
-                case "fork":    // Pass-through
-                case "vfork":
-                    syscall = Syscall.FORK;
-                    break;
-
-                case "fstat":   // Pass-through
-                case "fstat64":
-                    syscall = Syscall.FSTAT;
-                    break;
-
-                case "getcwd":
-                    syscall = Syscall.GETCWD;
-                    break;
-
-                case "lstat":   // Pass-through
-                case "lstat64":
-                    syscall = Syscall.LSTAT;
-                    break;
-
-                case "open":
-                    syscall = Syscall.OPEN;
-                    break;
-
-                case "openat":
-                    syscall = Syscall.OPENAT;
-                    break;
-
-                case "readlink":
-                    syscall = Syscall.READLINK;
-                    break;
-
-                case "stat":    // Pass-through
-                case "stat64":
-                    syscall = Syscall.STAT;
-                    break;
-
-                case "statfs":  // Pass-through
-                case "statfs64":
-                    syscall = Syscall.STATFS;
-                    break;
-
-                case "exit":    // Pass-through
-                case "exit_group":
-                    syscall = Syscall.EXIT;
-                    break;
-            }
+            return StraceSyscallNames.categorize(name);
+        }
 
-            return syscall;
+        /**
+         * Category of syscall whose name is <code>str[start, end)</code>,
+         * name isn't copied.
+         */
+        public static Syscall categorize(CharSequence str, int start,
+            int end)
+        {
+            return StraceSyscallNames.categorize(str, start, end);
         }
     }
 
@@ -164,6 +121,29 @@ public class StraceSyscallParsedData extends AParsedData
     private String[] _commandLineArgs = null;
     private int _exitCode = -1;
 
+    // Timestamp and duration are primitive, see StraceTimestamp.
+    private StraceTimestamp.Type _timestampType = StraceTimestamp.Type.NONE;
+    private long _timestamp = 0;
+    private long _duration = StraceTimestamp.NO_DURATION;
+
+    /**
+     * Unparsed arguments are <code>_arguments[_argumentsStart,
+     * _argumentsEnd)</code>, they are dropped after they are decoded.
+     */
+    private CharSequence _arguments = null;
+    private int _argumentsStart = 0;
+    private int _argumentsEnd = 0;
+    private volatile boolean _isDecoded = true;
+
+    private boolean _isCountOnly = false;
+
+    /**
+     * Message that pooled record refers to, or <code>null</code> if original
+     * message is stored as usual.
+     */
+    private CharSequence _message = null;
+    private boolean _isPooled = false;
+
     // }}} Private attributes /////////////////////////////////////////////////
 
     // {{{ Constructors ///////////////////////////////////////////////////////
@@ -175,9 +155,10 @@ public class StraceSyscallParsedData extends AParsedData
     {
          super(originalMessage);
 
+         // Records of the same syscall share canonical name.
          _flag = flag;
-         _syscall = Syscall.categorize(syscallName);
-         _syscallName = syscallName;
+         _syscallName = StraceSyscallNames.canonical(syscallName);
+         _syscall = Syscall.categorize(_syscallName);
     }
 
     public StraceSyscallParsedData(String originalMessage, String syscallName)
@@ -185,8 +166,218 @@ public class StraceSyscallParsedData extends AParsedData
         this(originalMessage, syscallName, Flag.FULL_CALL);
     }
 
+    /**
+     * Create count-only record of a syscall, see isCountOnly().
+     *
+     * @param syscallName
+     *   Name of the syscall.
+     * @param flag
+     *   Whether the call is full, unfinished or resumed.
+     *
+     * @return
+     *   Record with empty original message and without result and
+     *   arguments.
+     */
+    public static StraceSyscallParsedData countOnly(String syscallName,
+        Flag flag)
+    {
+        StraceSyscallParsedData ret =
+            new StraceSyscallParsedData("", syscallName, flag);
+
+        ret._isCountOnly = true;
+
+        return ret;
+    }
+
+    /**
+     * Create record that is reused for subsequent messages, see reset().
+     */
+    static StraceSyscallParsedData pooled()
+    {
+        StraceSyscallParsedData ret = countOnly("", Flag.FULL_CALL);
+
+        ret._isPooled = true;
+
+        return ret;
+    }
+
     // }}} Constructors ///////////////////////////////////////////////////////
 
+    // {{{ Pooling ////////////////////////////////////////////////////////////
+
+    /**
+     * Reinitialize pooled record for another message.
+     *
+     * @param message
+     *   Message that this record refers to until the next reset, it is not
+     *   copied. It's ignored for count-only records, which have empty
+     *   original message.
+     * @param syscallName
+     *   Name of the syscall.
+     * @param flag
+     *   Whether the call is full, unfinished or resumed.
+     * @param isCountOnly
+     *   Whether this is count-only record, see isCountOnly().
+     */
+    void reset(CharSequence message, String syscallName, Flag flag,
+        boolean isCountOnly)
+    {
+        if (!_isPooled)
+        {
+            throw new IllegalStateException("Not pooled.");
+        }
+
+        _message = isCountOnly ? null : message;
+        _syscallName = StraceSyscallNames.canonical(syscallName);
+        _syscall = Syscall.categorize(_syscallName);
+        _flag = flag;
+        _pid = -1;
+        _childPid = -1;
+        _path = null;
+        _result = null;
+        _resultType = ResultType.UNKNOWN;
+        _errno = null;
+        _errnoDescription = null;
+        _workingDirectory = null;
+        _environment = null;
+        _commandLineArgs = null;
+        _exitCode = -1;
+        _timestampType = StraceTimestamp.Type.NONE;
+        _timestamp = 0;
+        _duration = StraceTimestamp.NO_DURATION;
+        _arguments = null;
+        _isDecoded = true;
+        _isCountOnly = isCountOnly;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Copy of pooled record keeps arguments undecoded, if they weren't
+     * decoded yet.
+     */
+    @Override
+    public StraceSyscallParsedData retain()
+    {
+        if (!_isPooled)
+        {
+            return this;
+        }
+
+        StraceSyscallParsedData ret = new StraceSyscallParsedData(
+            getOriginalMessage(), _syscallName, _flag);
+
+        synchronized (this)
+        {
+            ret._pid = _pid;
+            ret._childPid = _childPid;
+            ret._path = _path;
+            ret._result = _result;
+            ret._resultType = _resultType;
+            ret._errno = _errno;
+            ret._errnoDescription = _errnoDescription;
+            ret._workingDirectory = _workingDirectory;
+            ret._environment = _environment == null
+                ? null
+                : new HashMap<>(_environment);
+            ret._commandLineArgs = _commandLineArgs;
+            ret._exitCode = _exitCode;
+            ret._timestampType = _timestampType;
+            ret._timestamp = _timestamp;
+            ret._duration = _duration;
+            ret._isCountOnly = _isCountOnly;
+
+            if (!_isDecoded)
+            {
+                ret.setArguments(_arguments, _argumentsStart, _argumentsEnd);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Pooled record copies the message it refers to.
+     */
+    @Override
+    public String getOriginalMessage()
+    {
+        return _message == null
+            ? super.getOriginalMessage()
+            : _message.toString();
+    }
+
+    // }}} Pooling ////////////////////////////////////////////////////////////
+
+    // {{{ Arguments //////////////////////////////////////////////////////////
+
+    /**
+     * Set unparsed arguments of the syscall, i.e. <code>str[start,
+     * end)</code>, which are decoded on demand. Values set explicitly before
+     * this call are replaced by decoded ones.
+     *
+     * Pooled record refers to str, others copy it.
+     */
+    void setArguments(CharSequence str, int start, int end)
+    {
+        synchronized (this)
+        {
+            if (_isPooled)
+            {
+                _arguments = str;
+                _argumentsStart = start;
+                _argumentsEnd = end;
+            }
+            else
+            {
+                _arguments = str.subSequence(start, end).toString();
+                _argumentsStart = 0;
+                _argumentsEnd = end - start;
+            }
+
+            _isDecoded = false;
+        }
+    }
+
+    /**
+     * Decode arguments if it wasn't done yet.
+     */
+    private void decodeArguments()
+    {
+        // Double-checked locking, volatile _isDecoded guarantees that
+        // decoded values are visible to any thread that sees it set.
+        if (_isDecoded)
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (_isDecoded)
+            {
+                return;
+            }
+
+            StraceArguments args = StraceArguments.parse(_syscall,
+                _argumentsStart == 0 && _argumentsEnd == _arguments.length()
+                    ? _arguments
+                    : CharBuffer.wrap(_arguments, _argumentsStart,
+                        _argumentsEnd));
+
+            _path = args.getPath();
+            _workingDirectory = args.getWorkingDirectory();
+            _commandLineArgs = args.getCommandLineArgs();
+            _environment = args.getEnvironment();
+            _exitCode = args.getExitCode();
+            _arguments = null;
+            _isDecoded = true;
+        }
+    }
+
+    // }}} Arguments //////////////////////////////////////////////////////////
+
     // {{{ IHasPid interface implementation ///////////////////////////////////
 
     /**
@@ -226,6 +417,8 @@ public class StraceSyscallParsedData extends AParsedData
     @Override
     public String getPath()
     {
+        decodeArguments();
+
         return _path;
     }
 
@@ -235,6 +428,7 @@ public class StraceSyscallParsedData extends AParsedData
     @Override
     public void setPath(String path)
     {
+        decodeArguments();
         _path = path;
     }
 
@@ -244,6 +438,8 @@ public class StraceSyscallParsedData extends AParsedData
     @Override
     public boolean hasPath()
     {
+        decodeArguments();
+
         return _path != null;
     }
 
@@ -282,11 +478,14 @@ public class StraceSyscallParsedData extends AParsedData
 
     public String getWorkingDirectory()
     {
+        decodeArguments();
+
         return _workingDirectory;
     }
 
     public void setWorkingDirectory(String workingDirectory)
     {
+        decodeArguments();
         _workingDirectory = workingDirectory;
     }
 
@@ -337,17 +536,22 @@ public class StraceSyscallParsedData extends AParsedData
 
     public String[] getCommandLineArgs()
     {
+        decodeArguments();
+
         return _commandLineArgs;
     }
 
     public void setCommandLineArgs(String[] commandLineArgs)
     {
+        decodeArguments();
         _commandLineArgs = commandLineArgs;
     }
 
 
     public String getEnvVar(String name)
     {
+        decodeArguments();
+
         if (_environment == null)
         {
             return null;
@@ -358,6 +562,8 @@ public class StraceSyscallParsedData extends AParsedData
 
     public void setEnvVar(String name, String value)
     {
+        decodeArguments();
+
         if (_environment == null)
         {
             _environment = new HashMap<>();
@@ -377,6 +583,8 @@ public class StraceSyscallParsedData extends AParsedData
      */
     public int getExitCode()
     {
+        decodeArguments();
+
         return _exitCode;
     }
 
@@ -388,13 +596,79 @@ public class StraceSyscallParsedData extends AParsedData
      */
     public void setExitCode(int exitCode)
     {
+        decodeArguments();
         _exitCode = exitCode;
     }
 
+    /**
+     * Kind of timestamp that strace prefixed the message with, it determines
+     * meaning of getTimestamp().
+     */
+    public StraceTimestamp.Type getTimestampType()
+    {
+        return _timestampType;
+    }
+
+    /**
+     * Timestamp of the message in nanoseconds, see StraceTimestamp.getNanos().
+     *
+     * @return
+     *   Time since midnight, time since the epoch or time since previous
+     *   message, depending on getTimestampType(), or zero if message has no
+     *   timestamp.
+     */
+    public long getTimestamp()
+    {
+        return _timestamp;
+    }
+
+    /**
+     * Time spent in the syscall in nanoseconds, as reported by
+     * <code>strace -T</code>.
+     *
+     * @return
+     *   Duration or StraceTimestamp.NO_DURATION if message has none, which
+     *   is the case of unfinished syscalls.
+     */
+    public long getDuration()
+    {
+        return _duration;
+    }
+
+    /**
+     * Sets timestamp and duration of the syscall.
+     *
+     * @param timestampType
+     *   Kind of timestamp, StraceTimestamp.Type.NONE if there is none.
+     * @param timestamp
+     *   Timestamp in nanoseconds.
+     * @param duration
+     *   Duration in nanoseconds or StraceTimestamp.NO_DURATION.
+     */
+    void setTiming(StraceTimestamp.Type timestampType, long timestamp,
+        long duration)
+    {
+        _timestampType = timestampType;
+        _timestamp = timestamp;
+        _duration = duration;
+    }
+
     // }}} Getters and setters ////////////////////////////////////////////////
 
     // {{{ Predicates /////////////////////////////////////////////////////////
 
+    /**
+     * Check if this is a count-only record of a syscall, that wasn't parsed
+     * since analyzer doesn't consume it, see IStraceSyscallSubscriber.
+     *
+     * Such record has only syscall, its name, flag and PID, original message
+     * is empty and result and arguments are unknown.
+     */
+    public boolean isCountOnly()
+    {
+        return _isCountOnly;
+    }
+
     public boolean hasChildPid()
     {
         return _childPid >= 0;
@@ -402,6 +676,8 @@ public class StraceSyscallParsedData extends AParsedData
 
     public boolean hasWorkingDirectory()
     {
+        decodeArguments();
+
         return _workingDirectory != null;
     }
 
@@ -427,9 +703,21 @@ public class StraceSyscallParsedData extends AParsedData
 
     public boolean hasExitCode()
     {
+        decodeArguments();
+
         return _exitCode >= 0;
     }
 
+    public boolean hasTimestamp()
+    {
+        return _timestampType != StraceTimestamp.Type.NONE;
+    }
+
+    public boolean hasDuration()
+    {
+        return _duration != StraceTimestamp.NO_DURATION;
+    }
+
     // }}} Predicates /////////////////////////////////////////////////////////
 
     // {{{ Implementation of abstract methods /////////////////////////////////
@@ -437,6 +725,8 @@ public class StraceSyscallParsedData extends AParsedData
     @Override
     public void appendRestTo(Appendable buff) throws IOException
     {
+        decodeArguments();
+
         buff.append(", syscall = ");
         _syscall.appendTo(buff);
         buff.append('\n');
@@ -457,9 +747,10 @@ public class StraceSyscallParsedData extends AParsedData
             .append(Integer.toString(_childPid))
             .append('\n');
 
-        buff.append(", path = ")
-            .append(_path)
-            .append('\n');
+        // Strings are decoded and may contain line terminators.
+        buff.append(", path = ");
+        CStringLiteral.appendEscaped(buff, _path);
+        buff.append('\n');
 
         buff.append(", result = ")
             .append(_result)
@@ -477,9 +768,9 @@ public class StraceSyscallParsedData extends AParsedData
             .append(_errnoDescription)
             .append('\n');
 
-        buff.append(", workingDirectory = ")
-            .append(_workingDirectory)
-            .append('\n');
+        buff.append(", workingDirectory = ");
+        CStringLiteral.appendEscaped(buff, _workingDirectory);
+        buff.append('\n');
 
         buff.append(", commandLineArguments =");
         if (_commandLineArgs == null || _commandLineArgs.length == 0)
@@ -492,9 +783,9 @@ public class StraceSyscallParsedData extends AParsedData
             boolean firstArg = true;
             for (int i = 0; i < _commandLineArgs.length; i++)
             {
-                buff.append("  ").append(firstArg ? "[ " : ", ")
-                    .append(_commandLineArgs[i])
-                    .append('\n');
+                buff.append("  ").append(firstArg ? "[ " : ", ");
+                CStringLiteral.appendEscaped(buff, _commandLineArgs[i]);
+                buff.append('\n');
 
                 if (firstArg)
                 {
@@ -517,9 +808,11 @@ public class StraceSyscallParsedData extends AParsedData
             boolean firstEnvVar = true;
             for (String name : _environment.keySet())
             {
-                buff.append("  ").append(firstEnvVar ? "[ " : ", ")
-                    .append(name).append(" = ").append(_environment.get(name))
-                    .append('\n');
+                buff.append("  ").append(firstEnvVar ? "[ " : ", ");
+                CStringLiteral.appendEscaped(buff, name);
+                buff.append(" = ");
+                CStringLiteral.appendEscaped(buff, _environment.get(name));
+                buff.append('\n');
 
                 if (firstEnvVar)
                 {
@@ -533,6 +826,23 @@ public class StraceSyscallParsedData extends AParsedData
         buff.append(", exitCode = ")
             .append(Integer.toString(_exitCode))
             .append('\n');
+
+        // Only traces taken with -t, -r or -T options have these.
+        if (hasTimestamp())
+        {
+            buff.append(", timestamp = ")
+                .append(_timestampType.toString())
+                .append(' ')
+                .append(Long.toString(_timestamp))
+                .append('\n');
+        }
+
+        if (hasDuration())
+        {
+            buff.append(", duration = ")
+                .append(Long.toString(_duration))
+                .append('\n');
+        }
     }
 
     // }}} Implementation of abstract methods /////////////////////////////////
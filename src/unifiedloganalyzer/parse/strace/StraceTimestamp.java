@@ -0,0 +1,422 @@
+package unifiedloganalyzer.parse.strace;
+
+
+/**
+ * Parser of timestamps that strace prefixes messages with when invoked with
+ * one of <code>-t</code>, <code>-tt</code>, <code>-ttt</code> or
+ * <code>-r</code> options, and of syscall durations that it appends to them
+ * when invoked with <code>-T</code> option.
+ *
+ * Parsing is done by hand without regular expressions and without allocating
+ * any memory, since it's done for every message. Parsed values are kept in
+ * this object until the next call to parse() or parseDuration(),
+ * respectively, therefore instances are not thread safe.
+ *
+ * @author Peter Trsko
+ */
+public final class StraceTimestamp
+{
+    /**
+     * Kind of timestamp, it determines what parsed value means.
+     */
+    public static enum Type
+    {
+        /**
+         * Message has no timestamp.
+         */
+        NONE,
+
+        /**
+         * Wall clock time with seconds precision, <code>strace -t</code>,
+         * e.g. <code>12:34:56</code>.
+         */
+        TIME_OF_DAY,
+
+        /**
+         * Wall clock time with microseconds precision,
+         * <code>strace -tt</code>, e.g. <code>12:34:56.123456</code>.
+         */
+        TIME_OF_DAY_MICROSECONDS,
+
+        /**
+         * Seconds since the epoch with microseconds precision,
+         * <code>strace -ttt</code>, e.g. <code>1400000000.123456</code>.
+         */
+        SECONDS_SINCE_EPOCH,
+
+        /**
+         * Time elapsed since previous message, <code>strace -r</code>, e.g.
+         * <code>     0.000123</code>.
+         */
+        RELATIVE;
+
+        /**
+         * Check if timestamps of this type can be used to order messages
+         * from different files of the same trace.
+         */
+        public boolean isAbsolute()
+        {
+            return this == TIME_OF_DAY
+                || this == TIME_OF_DAY_MICROSECONDS
+                || this == SECONDS_SINCE_EPOCH;
+        }
+    }
+
+    public static final long NANOS_PER_SECOND = 1000000000L;
+    public static final long NANOS_PER_DAY = 24L * 60L * 60L * NANOS_PER_SECOND;
+
+    /**
+     * Value of duration when message doesn't have one.
+     */
+    public static final long NO_DURATION = -1L;
+
+    /**
+     * Numbers of seconds that are lower then this are considered to be
+     * relative timestamps, higher numbers are seconds since the epoch. The
+     * value corresponds to year 1973, nobody traces processes for that long.
+     */
+    private static final long _MIN_SECONDS_SINCE_EPOCH = 100000000L;
+
+    private Type _type = Type.NONE;
+    private long _nanos = 0;
+    private int _end = 0;
+
+    private long _duration = NO_DURATION;
+    private int _durationStart = 0;
+
+    // {{{ Parsing ////////////////////////////////////////////////////////////
+
+    /**
+     * Parse timestamp at the specified position of a message.
+     *
+     * @param str
+     *   Message as produced by strace, possibly with PID prefix already
+     *   skipped.
+     * @param start
+     *   Index at which timestamp is expected.
+     *
+     * @return
+     *   <code>true</code> if timestamp was found, in which case getType(),
+     *   getNanos() and getEnd() describe it. Otherwise getType() returns
+     *   Type.NONE and getEnd() returns <code>start</code>.
+     */
+    public boolean parse(CharSequence str, int start)
+    {
+        _type = Type.NONE;
+        _nanos = 0;
+        _end = start;
+
+        int length = str.length();
+        int i = start;
+
+        // Relative timestamps are right-aligned.
+        while (i < length && str.charAt(i) == ' ')
+        {
+            i++;
+        }
+
+        int digitsStart = i;
+        long value = 0;
+
+        for (; i < length && isDigit(str.charAt(i)); i++)
+        {
+            value = value * 10 + (str.charAt(i) - '0');
+        }
+
+        if (i == digitsStart || i - digitsStart > 18 || i >= length)
+        {
+            return false;
+        }
+
+        if (str.charAt(i) == ':')
+        {
+            if (digitsStart != start)
+            {
+                return false;
+            }
+
+            return parseTimeOfDay(str, digitsStart, length);
+        }
+        else if (str.charAt(i) == '.')
+        {
+            return parseSeconds(str, value, i + 1, length);
+        }
+
+        return false;
+    }
+
+    /**
+     * Parse syscall duration at the end of a message, e.g.
+     * <code>open("/etc/passwd", O_RDONLY) = 3 &lt;0.000123&gt;</code>.
+     *
+     * @param str
+     *   Message as produced by strace.
+     * @param start
+     *   Index before which duration can not start, e.g. end of timestamp.
+     * @param end
+     *   End of the message.
+     *
+     * @return
+     *   <code>true</code> if duration was found, in which case
+     *   getDuration() and getDurationStart() describe it. Otherwise
+     *   getDuration() returns NO_DURATION and getDurationStart() returns
+     *   <code>end</code>.
+     */
+    public boolean parseDuration(CharSequence str, int start, int end)
+    {
+        _duration = NO_DURATION;
+        _durationStart = end;
+
+        int i = end - 1;
+
+        if (i <= start || str.charAt(i) != '>')
+        {
+            return false;
+        }
+
+        int fractionEnd = i;
+
+        while (i > start && isDigit(str.charAt(i - 1)))
+        {
+            i--;
+        }
+
+        int fractionStart = i;
+
+        if (fractionStart == fractionEnd || i <= start
+            || str.charAt(--i) != '.')
+        {
+            return false;
+        }
+
+        int secondsEnd = i;
+
+        while (i > start && isDigit(str.charAt(i - 1)))
+        {
+            i--;
+        }
+
+        int secondsStart = i;
+
+        if (secondsStart == secondsEnd || secondsEnd - secondsStart > 18
+            || i <= start || str.charAt(--i) != '<'
+            || i <= start || str.charAt(i - 1) != ' ')
+        {
+            return false;
+        }
+
+        // Duration is separated from the result by at least one space.
+        while (i > start && str.charAt(i - 1) == ' ')
+        {
+            i--;
+        }
+
+        if (i == start)
+        {
+            return false;
+        }
+
+        long seconds = 0;
+
+        for (int j = secondsStart; j < secondsEnd; j++)
+        {
+            seconds = seconds * 10 + (str.charAt(j) - '0');
+        }
+
+        _duration = seconds * NANOS_PER_SECOND
+            + fraction(str, fractionStart, fractionEnd);
+        _durationStart = i;
+
+        return true;
+    }
+
+    /**
+     * Parse <code>HH:MM:SS</code> with optional fraction.
+     */
+    private boolean parseTimeOfDay(CharSequence str, int i, int length)
+    {
+        if (i + 8 > length
+            || str.charAt(i + 2) != ':' || str.charAt(i + 5) != ':')
+        {
+            return false;
+        }
+
+        int hours = twoDigits(str, i);
+        int minutes = twoDigits(str, i + 3);
+        int seconds = twoDigits(str, i + 6);
+
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59
+            || seconds < 0 || seconds > 60)
+        {
+            return false;
+        }
+
+        long nanos =
+            ((hours * 60L + minutes) * 60L + seconds) * NANOS_PER_SECOND;
+        Type type = Type.TIME_OF_DAY;
+
+        i += 8;
+        if (i < length && str.charAt(i) == '.')
+        {
+            int fractionEnd = skipDigits(str, i + 1, length);
+
+            if (fractionEnd == i + 1)
+            {
+                return false;
+            }
+
+            nanos += fraction(str, i + 1, fractionEnd);
+            type = Type.TIME_OF_DAY_MICROSECONDS;
+            i = fractionEnd;
+        }
+
+        return finish(str, type, nanos, i, length);
+    }
+
+    /**
+     * Parse fraction part of <code>-ttt</code> or <code>-r</code> timestamp.
+     */
+    private boolean parseSeconds(CharSequence str, long seconds, int i,
+        int length)
+    {
+        int fractionEnd = skipDigits(str, i, length);
+
+        if (fractionEnd == i)
+        {
+            return false;
+        }
+
+        return finish(str,
+            seconds >= _MIN_SECONDS_SINCE_EPOCH
+                ? Type.SECONDS_SINCE_EPOCH
+                : Type.RELATIVE,
+            seconds * NANOS_PER_SECOND + fraction(str, i, fractionEnd),
+            fractionEnd, length);
+    }
+
+    /**
+     * Timestamp has to be followed by at least one space, which is skipped
+     * as well.
+     */
+    private boolean finish(CharSequence str, Type type, long nanos, int i,
+        int length)
+    {
+        if (i >= length || str.charAt(i) != ' ')
+        {
+            return false;
+        }
+
+        while (i < length && str.charAt(i) == ' ')
+        {
+            i++;
+        }
+
+        _type = type;
+        _nanos = nanos;
+        _end = i;
+
+        return true;
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipDigits(CharSequence str, int i, int length)
+    {
+        while (i < length && isDigit(str.charAt(i)))
+        {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static int twoDigits(CharSequence str, int i)
+    {
+        char c1 = str.charAt(i);
+        char c2 = str.charAt(i + 1);
+
+        if (!isDigit(c1) || !isDigit(c2))
+        {
+            return -1;
+        }
+
+        return (c1 - '0') * 10 + (c2 - '0');
+    }
+
+    /**
+     * Convert decimal fraction to nanoseconds, digits beyond nanosecond
+     * precision are ignored.
+     */
+    private static long fraction(CharSequence str, int from, int to)
+    {
+        long nanos = 0;
+        int i = from;
+
+        for (int digits = 0; digits < 9; digits++)
+        {
+            nanos *= 10;
+
+            if (i < to)
+            {
+                nanos += str.charAt(i++) - '0';
+            }
+        }
+
+        return nanos;
+    }
+
+    // }}} Parsing ////////////////////////////////////////////////////////////
+
+    // {{{ Getters ////////////////////////////////////////////////////////////
+
+    /**
+     * Type of timestamp found by the last call to parse().
+     */
+    public Type getType()
+    {
+        return _type;
+    }
+
+    /**
+     * Value of timestamp found by the last call to parse() in nanoseconds.
+     *
+     * Its meaning depends on getType(), it's either time since midnight,
+     * time since the epoch or time since previous message.
+     */
+    public long getNanos()
+    {
+        return _nanos;
+    }
+
+    /**
+     * Index of the first character of a message after the timestamp and
+     * spaces that follow it.
+     */
+    public int getEnd()
+    {
+        return _end;
+    }
+
+    /**
+     * Duration found by the last call to parseDuration() in nanoseconds, or
+     * NO_DURATION.
+     */
+    public long getDuration()
+    {
+        return _duration;
+    }
+
+    /**
+     * Index of the first space that precedes duration, i.e. end of the
+     * message without it.
+     */
+    public int getDurationStart()
+    {
+        return _durationStart;
+    }
+
+    // }}} Getters ////////////////////////////////////////////////////////////
+}
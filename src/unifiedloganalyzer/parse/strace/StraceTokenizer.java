@@ -0,0 +1,849 @@
+package unifiedloganalyzer.parse.strace;
+
+import unifiedloganalyzer.utils.StringCache;
+
+
+/**
+ * Character level tokenizer of strace messages.
+ *
+ * It recognizes the same messages as regular expressions used by
+ * StraceParser and finds the same parts of them, i.e. PID, syscall name,
+ * arguments, return value, errno, signal and process status change, but
+ * without trying several regular expressions on the same message one after
+ * another. Message is scanned from the start to find PID and syscall name
+ * and from the end to find return value and errno, in most cases every
+ * character is examined only once.
+ *
+ * Where regular expressions could match in more than one way, the same
+ * choice as the regular expression engine makes is made, e.g. greedy
+ * arguments of a syscall end with the last closing parenthesis that is
+ * followed by a valid return value. Messages that contain line terminators
+ * are not tokenized at all, since regular expressions treat them specially,
+ * tokenize() returns <code>false</code> for them and they have to be parsed
+ * by regular expressions.
+ *
+ * Timestamp that follows PID and syscall duration at the end of the
+ * message, see StraceTimestamp, are skipped, so that the rest of the message
+ * is tokenized as if strace was invoked without them.
+ *
+ * Instances are reused for all messages, positions refer to the message
+ * passed to the last call of tokenize(). Not thread safe.
+ *
+ * @author Peter Trsko
+ */
+final class StraceTokenizer
+{
+    public static enum Type
+    {
+        /**
+         * Message wasn't recognized.
+         */
+        UNKNOWN,
+
+        /**
+         * Process status change, e.g. <code>Process 123 attached</code>.
+         */
+        PROCESS_STATUS_CHANGED,
+
+        /**
+         * Process status change that interrupted another message, which
+         * precedes it. Part of the message before it is between zero and
+         * getInterruptedEnd().
+         */
+        INTERRUPTED,
+
+        /**
+         * Complete syscall.
+         */
+        SYSCALL,
+
+        /**
+         * Syscall followed by <code>&lt;unfinished ...&gt;</code>.
+         */
+        UNFINISHED_SYSCALL,
+
+        /**
+         * Rest of syscall that starts with <code>&lt;... NAME
+         * resumed&gt;</code>.
+         */
+        RESUMED_SYSCALL,
+
+        /**
+         * Signal, e.g. <code>--- SIGCHLD (Child exited) ---</code>.
+         */
+        SIGNAL
+    }
+
+    /**
+     * Value of PID when message doesn't have PID prefix.
+     */
+    public static final int NO_PID = -1;
+
+    private static final String _PID_PREFIX = "[pid ";
+    private static final String _PROCESS = "Process";
+    private static final String[] _STATUS_CHANGES =
+        {"attached", "detached", "resumed", "suspended"};
+    private static final String _UNFINISHED = "<unfinished";
+    private static final String _RESUMED = "resumed>";
+    private static final String _SIGNAL_PREFIX = "---";
+
+    private CharSequence _str = null;
+    private int _length = 0;
+    private Type _type = Type.UNKNOWN;
+
+    private int _pid = NO_PID;
+    private int _rest = 0;
+
+    // Syscall or signal name, process status change.
+    private int _nameStart = -1;
+    private int _nameEnd = -1;
+
+    // Syscall arguments or signal description.
+    private int _argsStart = -1;
+    private int _argsEnd = -1;
+
+    private int _resultStart = -1;
+    private int _resultEnd = -1;
+    private boolean _isPointerResult = false;
+
+    private int _errnoStart = -1;
+    private int _errnoEnd = -1;
+    private int _errnoDescriptionStart = -1;
+    private int _errnoDescriptionEnd = -1;
+
+    private int _statusPid = NO_PID;
+    private int _interruptedEnd = -1;
+
+    private final StringCache _strings = new StringCache(1024);
+    private final StraceTimestamp _timestamp = new StraceTimestamp();
+
+    // {{{ Tokenizer //////////////////////////////////////////////////////////
+
+    /**
+     * Tokenize strace message.
+     *
+     * @param str
+     *   Strace message without line terminator.
+     * @param isInterruptible
+     *   Recognize process status change at the end of another message, see
+     *   Type.INTERRUPTED.
+     *
+     * @return
+     *   <code>false</code> if message contains line terminator and has to be
+     *   parsed by regular expressions, otherwise getType() tells what kind
+     *   of message it is.
+     */
+    public boolean tokenize(CharSequence str, boolean isInterruptible)
+    {
+        _str = str;
+        _length = str.length();
+        _type = Type.UNKNOWN;
+        _resultStart = -1;
+        _resultEnd = -1;
+        _isPointerResult = false;
+        _errnoStart = -1;
+        _errnoEnd = -1;
+        _errnoDescriptionStart = -1;
+        _errnoDescriptionEnd = -1;
+
+        if (!tokenizePid())
+        {
+            return false;
+        }
+
+        if (_timestamp.parse(_str, _rest))
+        {
+            _rest = _timestamp.getEnd();
+        }
+
+        if (_timestamp.parseDuration(_str, _rest, _length))
+        {
+            _length = _timestamp.getDurationStart();
+        }
+
+        if (isProcessStatusChanged())
+        {
+            _type = Type.PROCESS_STATUS_CHANGED;
+        }
+        else if (isInterruptible && isInterrupted())
+        {
+            _type = Type.INTERRUPTED;
+        }
+        else if (isSyscall())
+        {
+            _type = Type.SYSCALL;
+        }
+        else if (isUnfinishedSyscall())
+        {
+            _type = Type.UNFINISHED_SYSCALL;
+        }
+        else if (isResumedSyscall())
+        {
+            _type = Type.RESUMED_SYSCALL;
+        }
+        else if (isSignal())
+        {
+            _type = Type.SIGNAL;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse optional PID prefix, i.e. <code>"123 "</code> or
+     * <code>"[pid 123] "</code>, and check for line terminators.
+     */
+    private boolean tokenizePid()
+    {
+        for (int i = 0; i < _length; i++)
+        {
+            if (isLineTerminator(_str.charAt(i)))
+            {
+                return false;
+            }
+        }
+
+        _pid = NO_PID;
+        _rest = 0;
+
+        int digitsStart =
+            startsWith(0, _PID_PREFIX) ? _PID_PREFIX.length() : 0;
+        int digitsEnd = skipDigits(digitsStart);
+        int end = digitsEnd;
+
+        if (digitsEnd == digitsStart)
+        {
+            return true;
+        }
+
+        if (digitsStart > 0)
+        {
+            if (!isChar(end, ']'))
+            {
+                return true;
+            }
+            end++;
+        }
+
+        if (isChar(end, ' '))
+        {
+            _pid = parseInt(digitsStart, digitsEnd);
+            _rest = skipSpaces(end);
+        }
+
+        return true;
+    }
+
+    /**
+     * <code>Process +([0-9]+) +(attached|detached|resumed|suspended)$</code>
+     */
+    private boolean isProcessStatusChanged()
+    {
+        if (!startsWith(_rest, _PROCESS))
+        {
+            return false;
+        }
+
+        int digitsStart = skipSpaces(_rest + _PROCESS.length());
+        int digitsEnd = skipDigits(digitsStart);
+        int nameStart = skipSpaces(digitsEnd);
+
+        if (digitsStart == _rest + _PROCESS.length()
+            || digitsEnd == digitsStart
+            || nameStart == digitsEnd
+            || !isStatusChange(nameStart, _length))
+        {
+            return false;
+        }
+
+        _statusPid = parseInt(digitsStart, digitsEnd);
+        _nameStart = nameStart;
+        _nameEnd = _length;
+
+        return true;
+    }
+
+    /**
+     * <code>(.*)Process +([0-9]+) +(attached|...)$</code> on the whole
+     * message. Process status change is matched from the end, only one
+     * position of it is possible.
+     */
+    private boolean isInterrupted()
+    {
+        int nameStart = -1;
+
+        for (String status : _STATUS_CHANGES)
+        {
+            if (_length >= status.length()
+                && startsWith(_length - status.length(), status))
+            {
+                nameStart = _length - status.length();
+                break;
+            }
+        }
+
+        if (nameStart < 0)
+        {
+            return false;
+        }
+
+        int digitsEnd = skipSpacesBackward(nameStart);
+        int digitsStart = digitsEnd;
+
+        while (digitsStart > 0 && isDigit(_str.charAt(digitsStart - 1)))
+        {
+            digitsStart--;
+        }
+
+        int processEnd = skipSpacesBackward(digitsStart);
+        int processStart = processEnd - _PROCESS.length();
+
+        if (digitsEnd == nameStart
+            || digitsStart == digitsEnd
+            || processEnd == digitsStart
+            || processStart < 0
+            || !startsWith(processStart, _PROCESS))
+        {
+            return false;
+        }
+
+        _statusPid = parseInt(digitsStart, digitsEnd);
+        _nameStart = nameStart;
+        _nameEnd = _length;
+        _interruptedEnd = processStart;
+
+        return true;
+    }
+
+    /**
+     * <code>([^\(]+)\((.*)\) += +RESULT( +(E[^ ]+) +\((.*)\))?$</code>
+     */
+    private boolean isSyscall()
+    {
+        int paren = indexOf(_rest, '(');
+
+        if (paren <= _rest)
+        {
+            return false;
+        }
+
+        int argsEnd = lastResult(paren + 1);
+
+        if (argsEnd < 0)
+        {
+            return false;
+        }
+
+        _nameStart = _rest;
+        _nameEnd = paren;
+        _argsStart = paren + 1;
+        _argsEnd = argsEnd;
+
+        return true;
+    }
+
+    /**
+     * <code>([^\(]+)\((.*),? +&lt;unfinished ...&gt;</code>, note that dots
+     * match any character and that the match doesn't have to end at the end
+     * of message.
+     */
+    private boolean isUnfinishedSyscall()
+    {
+        int paren = indexOf(_rest, '(');
+
+        if (paren <= _rest)
+        {
+            return false;
+        }
+
+        // Greedy arguments end right before the space that precedes the last
+        // occurrence, comma is included in them.
+        for (int u = _length - _UNFINISHED.length() - 5; u >= paren + 2; u--)
+        {
+            if (_str.charAt(u - 1) == ' '
+                && startsWith(u, _UNFINISHED)
+                && _str.charAt(u + _UNFINISHED.length()) == ' '
+                && _str.charAt(u + _UNFINISHED.length() + 4) == '>')
+            {
+                _nameStart = _rest;
+                _nameEnd = paren;
+                _argsStart = paren + 1;
+                _argsEnd = u - 1;
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * <code>&lt;... +([^ ]+) +resumed&gt; *(.*)\) += +RESULT(ERRNO)?$</code>,
+     * note that dots match any character.
+     */
+    private boolean isResumedSyscall()
+    {
+        if (!isChar(_rest, '<') || _rest + 4 > _length)
+        {
+            return false;
+        }
+
+        int nameStart = skipSpaces(_rest + 4);
+        int nameEnd = nameStart;
+
+        while (nameEnd < _length && _str.charAt(nameEnd) != ' ')
+        {
+            nameEnd++;
+        }
+
+        int resumed = skipSpaces(nameEnd);
+
+        if (nameStart == _rest + 4
+            || nameEnd == nameStart
+            || resumed == nameEnd
+            || !startsWith(resumed, _RESUMED))
+        {
+            return false;
+        }
+
+        int argsStart = skipSpaces(resumed + _RESUMED.length());
+        int argsEnd = lastResult(argsStart);
+
+        if (argsEnd < 0)
+        {
+            return false;
+        }
+
+        _nameStart = nameStart;
+        _nameEnd = nameEnd;
+        _argsStart = argsStart;
+        _argsEnd = argsEnd;
+
+        return true;
+    }
+
+    /**
+     * <code>-{3} +([A-Z0-9]+) +\(([^\)]+)\).*$</code>
+     */
+    private boolean isSignal()
+    {
+        if (!startsWith(_rest, _SIGNAL_PREFIX))
+        {
+            return false;
+        }
+
+        int nameStart = skipSpaces(_rest + _SIGNAL_PREFIX.length());
+        int nameEnd = nameStart;
+
+        while (nameEnd < _length && isSignalNameChar(_str.charAt(nameEnd)))
+        {
+            nameEnd++;
+        }
+
+        int paren = skipSpaces(nameEnd);
+
+        if (nameStart == _rest + _SIGNAL_PREFIX.length()
+            || nameEnd == nameStart
+            || paren == nameEnd
+            || !isChar(paren, '('))
+        {
+            return false;
+        }
+
+        int descriptionEnd = indexOf(paren + 1, ')');
+
+        if (descriptionEnd <= paren + 1)
+        {
+            return false;
+        }
+
+        _nameStart = nameStart;
+        _nameEnd = nameEnd;
+        _argsStart = paren + 1;
+        _argsEnd = descriptionEnd;
+
+        return true;
+    }
+
+    /**
+     * Find the last closing parenthesis, at or after start, that is followed
+     * by a valid result, i.e. where greedy <code>(.*)</code> that precedes
+     * <code>\) += +RESULT(ERRNO)?$</code> ends.
+     *
+     * @return
+     *   Position of the parenthesis or -1 if there is none.
+     */
+    private int lastResult(int start)
+    {
+        for (int i = _length - 1; i >= start; i--)
+        {
+            if (_str.charAt(i) == ')' && isResult(i + 1))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * <code> += +((-?[0-9]+)|(0x[0-9a-f]+)|\?)( +(E[^ ]+) +\((.*)\))?$</code>
+     */
+    private boolean isResult(int start)
+    {
+        int equals = skipSpaces(start);
+        int result = skipSpaces(equals + 1);
+
+        if (equals == start || !isChar(equals, '=') || result == equals + 1)
+        {
+            return false;
+        }
+
+        // Alternatives are tried in the same order as by the regex.
+        int end = skipDigits(isChar(result, '-') ? result + 1 : result);
+
+        if (end > result && _str.charAt(end - 1) != '-' && isErrno(end))
+        {
+            _isPointerResult = false;
+        }
+        else if (startsWith(result, "0x")
+            && (end = skipHexDigits(result + 2)) > result + 2
+            && isErrno(end))
+        {
+            _isPointerResult = true;
+        }
+        else if (isChar(result, '?') && isErrno(result + 1))
+        {
+            _isPointerResult = false;
+            end = -1;
+            result = -1;
+        }
+        else
+        {
+            return false;
+        }
+
+        _resultStart = result;
+        _resultEnd = end;
+
+        return true;
+    }
+
+    /**
+     * <code>( +(E[^ ]+) +\((.*)\))?$</code>
+     */
+    private boolean isErrno(int start)
+    {
+        _errnoStart = -1;
+        _errnoEnd = -1;
+        _errnoDescriptionStart = -1;
+        _errnoDescriptionEnd = -1;
+
+        if (start == _length)
+        {
+            return true;
+        }
+
+        int errno = skipSpaces(start);
+        int errnoEnd = errno + 1;
+
+        if (errno == start || !isChar(errno, 'E'))
+        {
+            return false;
+        }
+
+        while (errnoEnd < _length && _str.charAt(errnoEnd) != ' ')
+        {
+            errnoEnd++;
+        }
+
+        int paren = skipSpaces(errnoEnd);
+
+        if (errnoEnd == errno + 1
+            || paren == errnoEnd
+            || !isChar(paren, '(')
+            || paren + 1 > _length - 1
+            || _str.charAt(_length - 1) != ')')
+        {
+            return false;
+        }
+
+        _errnoStart = errno;
+        _errnoEnd = errnoEnd;
+        _errnoDescriptionStart = paren + 1;
+        _errnoDescriptionEnd = _length - 1;
+
+        return true;
+    }
+
+    // }}} Tokenizer //////////////////////////////////////////////////////////
+
+    // {{{ Character level helpers ////////////////////////////////////////////
+
+    /**
+     * Characters that <code>.</code> and <code>$</code> of regular
+     * expressions treat as line terminators.
+     */
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+            || c == '\u2029';
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSignalNameChar(char c)
+    {
+        return (c >= 'A' && c <= 'Z') || isDigit(c);
+    }
+
+    private boolean isChar(int i, char c)
+    {
+        return i < _length && _str.charAt(i) == c;
+    }
+
+    private boolean startsWith(int i, String prefix)
+    {
+        if (i + prefix.length() > _length)
+        {
+            return false;
+        }
+
+        for (int j = 0; j < prefix.length(); j++)
+        {
+            if (_str.charAt(i + j) != prefix.charAt(j))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isStatusChange(int start, int end)
+    {
+        for (String status : _STATUS_CHANGES)
+        {
+            if (end - start == status.length() && startsWith(start, status))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int indexOf(int start, char c)
+    {
+        for (int i = start; i < _length; i++)
+        {
+            if (_str.charAt(i) == c)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int skipSpaces(int i)
+    {
+        while (i < _length && _str.charAt(i) == ' ')
+        {
+            i++;
+        }
+
+        return i;
+    }
+
+    private int skipSpacesBackward(int i)
+    {
+        while (i > 0 && _str.charAt(i - 1) == ' ')
+        {
+            i--;
+        }
+
+        return i;
+    }
+
+    private int skipDigits(int i)
+    {
+        while (i < _length && isDigit(_str.charAt(i)))
+        {
+            i++;
+        }
+
+        return i;
+    }
+
+    private int skipHexDigits(int i)
+    {
+        while (i < _length)
+        {
+            char c = _str.charAt(i);
+
+            if (!isDigit(c) && (c < 'a' || c > 'f'))
+            {
+                break;
+            }
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Parse digits, overflow wraps around same as when the regex based
+     * parser does it.
+     */
+    private int parseInt(int start, int end)
+    {
+        int value = 0;
+
+        for (int i = start; i < end; i++)
+        {
+            value = value * 10 + (_str.charAt(i) - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Names, results and errno values repeat a lot, therefore they are
+     * cached instead of being copied out of every message.
+     */
+    private String substring(int start, int end)
+    {
+        return start < 0 ? null : _strings.get(_str, start, end);
+    }
+
+    // }}} Character level helpers ////////////////////////////////////////////
+
+    // {{{ Tokens /////////////////////////////////////////////////////////////
+
+    public Type getType()
+    {
+        return _type;
+    }
+
+    /**
+     * PID from the prefix of the message or NO_PID.
+     */
+    public int getPid()
+    {
+        return _pid;
+    }
+
+    /**
+     * Timestamp and syscall duration of the message, if it has them.
+     */
+    public StraceTimestamp getTimestamp()
+    {
+        return _timestamp;
+    }
+
+    /**
+     * Syscall or signal name, or process status change.
+     *
+     * Known syscall names are canonical instances, see StraceSyscallNames.
+     */
+    public String getName()
+    {
+        if (isSyscallType())
+        {
+            String name =
+                StraceSyscallNames.canonical(_str, _nameStart, _nameEnd);
+
+            if (name != null)
+            {
+                return name;
+            }
+        }
+
+        return substring(_nameStart, _nameEnd);
+    }
+
+    /**
+     * Category of syscall, name isn't copied.
+     *
+     * @return
+     *   Category or <code>null</code> if message isn't a syscall.
+     */
+    public StraceSyscallParsedData.Syscall getSyscall()
+    {
+        return isSyscallType()
+            ? StraceSyscallParsedData.Syscall.categorize(
+                _str, _nameStart, _nameEnd)
+            : null;
+    }
+
+    private boolean isSyscallType()
+    {
+        return _type == Type.SYSCALL
+            || _type == Type.UNFINISHED_SYSCALL
+            || _type == Type.RESUMED_SYSCALL;
+    }
+
+    /**
+     * Start of syscall arguments or of signal description.
+     */
+    public int getArgumentsStart()
+    {
+        return _argsStart;
+    }
+
+    /**
+     * End of syscall arguments or of signal description.
+     */
+    public int getArgumentsEnd()
+    {
+        return _argsEnd;
+    }
+
+    /**
+     * Integer result of syscall, or <code>null</code>.
+     */
+    public String getIntegerResult()
+    {
+        return _isPointerResult ? null : substring(_resultStart, _resultEnd);
+    }
+
+    /**
+     * Pointer result of syscall, or <code>null</code>.
+     */
+    public String getPointerResult()
+    {
+        return _isPointerResult ? substring(_resultStart, _resultEnd) : null;
+    }
+
+    public String getErrno()
+    {
+        return substring(_errnoStart, _errnoEnd);
+    }
+
+    public String getErrnoDescription()
+    {
+        return substring(_errnoDescriptionStart, _errnoDescriptionEnd);
+    }
+
+    /**
+     * PID of process whose status changed.
+     */
+    public int getStatusPid()
+    {
+        return _statusPid;
+    }
+
+    /**
+     * End of the interrupted message that precedes process status change.
+     */
+    public int getInterruptedEnd()
+    {
+        return _interruptedEnd;
+    }
+
+    // }}} Tokens /////////////////////////////////////////////////////////////
+}
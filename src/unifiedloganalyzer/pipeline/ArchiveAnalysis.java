@@ -0,0 +1,498 @@
+package unifiedloganalyzer.pipeline;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.IParser;
+import unifiedloganalyzer.ISink;
+import unifiedloganalyzer.UnifiedLogAnalyzer;
+import unifiedloganalyzer.io.TarSource;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+import unifiedloganalyzer.utils.IFactory;
+
+
+/**
+ * Analysis of archives, where each entry is a separate input, e.g. a trace
+ * of a different command.
+ *
+ * Every entry gets its own parser and analyzer, since the inputs are
+ * independent, and parser.eof() is called at the end of each of them.
+ * Entries are read sequentially, but parsed and analyzed concurrently on up
+ * to <code>threads</code> worker threads. Reading is therefore always done
+ * ahead of analysis, at most a few batches ahead of each entry. Results are
+ * written in the order of entries, see ArchiveOutput.
+ *
+ * @author Peter Trsko
+ */
+public class ArchiveAnalysis
+{
+    /**
+     * Number of batches of an archive entry that are read ahead of its
+     * analysis.
+     */
+    private static final int _ENTRY_QUEUE_CAPACITY = 4;
+
+    // {{{ Nested types ///////////////////////////////////////////////////////
+
+    /**
+     * Results of archive entries written to sink in the order of entries,
+     * while the entries are analysed concurrently.
+     *
+     * Results of the head entry, the oldest one that isn't finished, are
+     * written straight to the sink. Results of the other entries are
+     * buffered, and their workers wait when the buffer is full until the
+     * entry becomes the head. Entries are read in order, therefore the head
+     * entry already has all its input and never waits for the reader.
+     * Memory used by results is thus bounded no matter how large the entries
+     * are.
+     */
+    private static class ArchiveOutput
+    {
+        /**
+         * Results of one entry that aren't written yet.
+         */
+        private static class Entry
+        {
+            private final List<IOutputMessage> _buffer = new ArrayList<>();
+            private boolean _isFinished = false;
+        }
+
+        private final ISink _sink;
+        private final int _capacity;
+        private final Deque<Entry> _entries = new ArrayDeque<>();
+        private Exception _failure = null;
+
+        /**
+         * @param capacity
+         *   Maximal number of buffered results of each entry that isn't the
+         *   head.
+         */
+        public ArchiveOutput(ISink sink, int capacity)
+        {
+            _sink = sink;
+            _capacity = capacity;
+        }
+
+        /**
+         * Register new entry, entries have to be added in their order.
+         */
+        public synchronized Entry addEntry()
+        {
+            Entry entry = new Entry();
+
+            _entries.addLast(entry);
+
+            return entry;
+        }
+
+        /**
+         * Write or buffer result of an entry.
+         *
+         * @throws CancellationException
+         *   If the output was aborted, see abort().
+         */
+        public synchronized void write(Entry entry, IOutputMessage message)
+            throws IOException, InterruptedException
+        {
+            while (_failure == null && entry != _entries.peekFirst()
+                && entry._buffer.size() >= _capacity)
+            {
+                wait();
+            }
+
+            if (_failure != null)
+            {
+                throw new CancellationException();
+            }
+
+            if (entry == _entries.peekFirst())
+            {
+                _sink.write(message);
+            }
+            else
+            {
+                entry._buffer.add(message);
+            }
+        }
+
+        /**
+         * Mark the end of results of an entry. If it's the head entry, the
+         * following finished entries are written and the first unfinished
+         * one becomes the head.
+         */
+        public synchronized void finish(Entry entry) throws IOException
+        {
+            entry._isFinished = true;
+
+            while (_failure == null && !_entries.isEmpty()
+                && _entries.peekFirst()._isFinished)
+            {
+                _entries.removeFirst();
+
+                Entry head = _entries.peekFirst();
+
+                if (head != null)
+                {
+                    for (IOutputMessage message : head._buffer)
+                    {
+                        _sink.write(message);
+                    }
+                    head._buffer.clear();
+                }
+            }
+            notifyAll();
+        }
+
+        /**
+         * Stop writing results of all entries, the first failure is kept.
+         */
+        public synchronized void abort(Exception failure)
+        {
+            if (_failure == null)
+            {
+                _failure = failure;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Failure passed to the first call of abort() or <code>null</code>.
+         */
+        public synchronized Exception getFailure()
+        {
+            return _failure;
+        }
+    }
+
+    /**
+     * Parsing and analysis of one archive entry, which is fed with batches
+     * of messages by the thread that reads the archive. Analysis results are
+     * passed to ArchiveOutput, so that they are written in the order of
+     * entries.
+     */
+    private static class EntryAnalysis implements Callable<Void>
+    {
+        private static final String[] _END = new String[0];
+
+        /**
+         * Wraps failure of ArchiveOutput.write() so that it can pass through
+         * the analyzer.
+         */
+        private static class OutputException extends RuntimeException
+        {
+            private static final long serialVersionUID = 1L;
+
+            public OutputException(IOException cause)
+            {
+                super(cause);
+            }
+        }
+
+        private final BlockingQueue<String[]> _batches =
+            new ArrayBlockingQueue<>(_ENTRY_QUEUE_CAPACITY);
+        private final IParser _parser;
+        private final ArchiveOutput _output;
+        private final ArchiveOutput.Entry _entry;
+
+        public EntryAnalysis(IParser parser, IAnalyzer analyzer,
+            final ArchiveOutput output)
+        {
+            _parser = parser;
+            _output = output;
+            _entry = output.addEntry();
+            UnifiedLogAnalyzer.connect(_parser, analyzer);
+            analyzer.registerCallback(new ICallback<IOutputMessage>()
+                {
+                    @Override
+                    public void runCallback(IOutputMessage message)
+                    {
+                        try
+                        {
+                            output.write(_entry, message);
+                        }
+                        catch (IOException ex)
+                        {
+                            throw new OutputException(ex);
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            Thread.currentThread().interrupt();
+
+                            throw new CancellationException();
+                        }
+                    }
+                });
+        }
+
+        /**
+         * Pass batch of messages, it must not be modified afterwards. Batch
+         * that isn't full has to be terminated by <code>null</code>.
+         *
+         * Blocks while the queue of batches is full. Worker of this entry
+         * is already running, therefore it always makes room eventually.
+         */
+        public void put(String[] batch) throws InterruptedException
+        {
+            _batches.put(batch);
+        }
+
+        /**
+         * Mark the end of entry.
+         */
+        public void finish() throws InterruptedException
+        {
+            _batches.put(_END);
+        }
+
+        @Override
+        public Void call() throws Exception
+        {
+            try
+            {
+                String[] batch;
+
+                while ((batch = _batches.take()) != _END)
+                {
+                    int length = 0;
+
+                    while (length < batch.length && batch[length] != null)
+                    {
+                        length++;
+                    }
+
+                    _parser.parseBatch(batch, 0, length);
+                }
+                _parser.eof();
+                _output.finish(_entry);
+            }
+            catch (OutputException ex)
+            {
+                _output.abort((IOException)ex.getCause());
+
+                throw (IOException)ex.getCause();
+            }
+            catch (Exception ex)
+            {
+                _output.abort(ex);
+
+                throw ex;
+            }
+
+            return null;
+        }
+
+        /**
+         * Consume the rest of the entry after a failure, so that the reader
+         * doesn't block on a full queue.
+         */
+        public void drain() throws InterruptedException
+        {
+            while (_batches.take() != _END)
+            {
+                // Discard batch.
+            }
+        }
+    }
+
+    // }}} Nested types ///////////////////////////////////////////////////////
+
+    private final TarSource _source;
+    private final IFactory<IParser> _parserFactory;
+    private final IFactory<IAnalyzer> _analyzerFactory;
+    private final ISink _sink;
+    private final int _threads;
+    private final int _batchSize;
+
+    /**
+     * @param source
+     *   Archive with inputs.
+     * @param parserFactory
+     *   Creates parser for each entry.
+     * @param analyzerFactory
+     *   Creates analyzer for each entry.
+     * @param sink
+     *   Object used as sink for the analysis results of all entries.
+     * @param threads
+     *   Maximal number of entries that are processed at the same time.
+     * @param batchSize
+     *   Number of messages that are read from source and passed to parser
+     *   at once, it also bounds results buffered for each entry.
+     */
+    public ArchiveAnalysis(
+        TarSource source,
+        IFactory<IParser> parserFactory,
+        IFactory<IAnalyzer> analyzerFactory,
+        ISink sink,
+        int threads,
+        int batchSize)
+    {
+        if (source == null || parserFactory == null
+            || analyzerFactory == null || sink == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (threads < 1 || batchSize < 1)
+        {
+            throw new IllegalArgumentException(
+                "Number of threads and batch size have to be positive.");
+        }
+
+        _source = source;
+        _parserFactory = parserFactory;
+        _analyzerFactory = analyzerFactory;
+        _sink = sink;
+        _threads = threads;
+        _batchSize = batchSize;
+    }
+
+    /**
+     * Wait until the oldest entry is analysed and its results written.
+     */
+    private static void waitForEntry(
+        Deque<Future<Void>> pending,
+        ArchiveOutput output) throws IOException
+    {
+        try
+        {
+            pending.removeFirst().get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException ex)
+        {
+            // Entries that were aborted due to failure of another one report
+            // only cancellation, the original failure is reported instead.
+            Throwable failure = output.getFailure() == null
+                ? ex.getCause()
+                : output.getFailure();
+
+            if (failure instanceof RuntimeException)
+            {
+                throw (RuntimeException)failure;
+            }
+
+            if (failure instanceof IOException)
+            {
+                throw (IOException)failure;
+            }
+
+            throw new IOException(failure);
+        }
+    }
+
+    /**
+     * Analyse all entries of the archive, source and sink are closed
+     * afterwards, even if the analysis fails.
+     *
+     * @throws IOException
+     *   If reading of the archive or writing of results fails.
+     */
+    public void run() throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(_threads,
+            new DaemonThreadFactory("entry"));
+        ArchiveOutput output = new ArchiveOutput(_sink, _batchSize);
+        Deque<Future<Void>> pending = new ArrayDeque<>();
+
+        try
+        {
+            while (_source.nextEntry())
+            {
+                // Every pending entry has a worker thread, therefore entry
+                // that is being read is always processed concurrently and
+                // put() can't block forever.
+                if (pending.size() >= _threads)
+                {
+                    waitForEntry(pending, output);
+                }
+
+                final EntryAnalysis entry = new EntryAnalysis(
+                    _parserFactory.create(), _analyzerFactory.create(),
+                    output);
+
+                pending.addLast(executor.submit(new Callable<Void>()
+                    {
+                        @Override
+                        public Void call() throws Exception
+                        {
+                            try
+                            {
+                                return entry.call();
+                            }
+                            catch (Exception ex)
+                            {
+                                entry.drain();
+
+                                throw ex;
+                            }
+                        }
+                    }));
+
+                for (;;)
+                {
+                    String[] batch = new String[_batchSize];
+
+                    if (_source.nextBatch(batch) == 0)
+                    {
+                        break;
+                    }
+                    entry.put(batch);
+                }
+                entry.finish();
+
+                while (!pending.isEmpty() && pending.peekFirst().isDone())
+                {
+                    waitForEntry(pending, output);
+                }
+            }
+
+            while (!pending.isEmpty())
+            {
+                waitForEntry(pending, output);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException();
+        }
+        finally
+        {
+            // Workers that are still running, due to a failure, must not
+            // write to the sink once it's closed.
+            output.abort(new CancellationException());
+            executor.shutdownNow();
+
+            try
+            {
+                _source.close();
+            }
+            finally
+            {
+                _sink.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package unifiedloganalyzer.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IParser;
+import unifiedloganalyzer.ISink;
+import unifiedloganalyzer.ISource;
+import unifiedloganalyzer.UnifiedLogAnalyzer;
+import unifiedloganalyzer.utils.IFactory;
+import unifiedloganalyzer.utils.VirtualThreads;
+
+
+/**
+ * Analysis of many small inputs, e.g. traces of all commands run by a
+ * build, in one JVM, so that start of JVM and warm-up of JIT is paid only
+ * once.
+ *
+ * Every input is analysed separately by its own source, parser, analyzer
+ * and sink, see UnifiedLogAnalyzer.doMain(), on its own virtual thread if
+ * the JVM provides them, see VirtualThreads. Results of input
+ * <code>DIR/NAME</code> are written to <code>NAME.out</code> in output
+ * directory or in <code>DIR</code>.
+ *
+ * Size of input file is used as an estimate of memory that its analysis
+ * needs, size of gzipped input is multiplied by a typical compression ratio
+ * of logs, because its uncompressed size isn't known in advance. Analysis
+ * starts only after both a free slot and estimated memory are available,
+ * input that is larger than the whole memory limit waits until all others
+ * are finished. Inputs are started in the given order.
+ *
+ * Inputs whose output files would be the same, e.g. inputs with the same
+ * name in different directories and a common output directory, or whose
+ * output file is another input, are rejected before any analysis starts,
+ * see findCollision().
+ *
+ * Gzipped inputs are inflated on the thread that analyses them, since
+ * inputs are analysed concurrently already.
+ *
+ * Archives aren't supported, their analysis fails.
+ *
+ * Failure of one input doesn't stop the others, it's logged and counted.
+ *
+ * @author Peter Trsko
+ */
+public class BatchAnalysis
+{
+    /**
+     * Suffix of names of output files.
+     */
+    public static final String OUTPUT_SUFFIX = ".out";
+
+    /**
+     * Typical ratio of sizes of uncompressed and gzipped logs, it's lower
+     * than what strace logs usually achieve, so that memory isn't
+     * underestimated.
+     */
+    private static final long _GZIP_RATIO_ESTIMATE = 10;
+
+    private final String _outputDirectory;
+    private final boolean _mmap;
+    private final IFactory<IParser> _parserFactory;
+    private final IFactory<IAnalyzer> _analyzerFactory;
+    private final int _maxConcurrency;
+    private final long _maxMemory;
+
+    /**
+     * @param outputDirectory
+     *   Directory where output files are created, or <code>null</code> to
+     *   create them next to input files.
+     * @param mmap
+     *   Map input files in to memory, see MappedFileSource.
+     * @param parserFactory
+     *   Creates parser for each input.
+     * @param analyzerFactory
+     *   Creates analyzer for each input.
+     * @param maxConcurrency
+     *   Maximal number of inputs that are analysed at the same time.
+     * @param maxMemory
+     *   Maximal sum of estimated memory, in bytes, of inputs that are
+     *   analysed at the same time.
+     */
+    public BatchAnalysis(
+        String outputDirectory,
+        boolean mmap,
+        IFactory<IParser> parserFactory,
+        IFactory<IAnalyzer> analyzerFactory,
+        int maxConcurrency,
+        long maxMemory)
+    {
+        if (parserFactory == null || analyzerFactory == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (maxConcurrency < 1 || maxMemory < 1)
+        {
+            throw new IllegalArgumentException(
+                "Limits have to be positive.");
+        }
+
+        _outputDirectory = outputDirectory;
+        _mmap = mmap;
+        _parserFactory = parserFactory;
+        _analyzerFactory = analyzerFactory;
+        _maxConcurrency = maxConcurrency;
+        _maxMemory = maxMemory;
+    }
+
+    /**
+     * Analyse all inputs, each of them separately.
+     *
+     * @param inputs
+     *   Names of input files.
+     *
+     * @return
+     *   Number of inputs whose analysis failed.
+     *
+     * @throws IllegalArgumentException
+     *   If output files of inputs collide, see findCollision().
+     * @throws InterruptedException
+     *   If interrupted while waiting for a slot or for the analysis to
+     *   finish. Running analyses are not interrupted.
+     */
+    public int run(List<String> inputs) throws InterruptedException
+    {
+        if (inputs == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        String collision = findCollision(inputs, _outputDirectory);
+
+        if (collision != null)
+        {
+            throw new IllegalArgumentException(collision
+                + ": Output file collides with another input or its output.");
+        }
+
+        // Memory is accounted in KiB, so that limits up to terabytes fit in
+        // to permits of a semaphore.
+        final int memoryLimit =
+            (int)Math.min((_maxMemory + 1023) / 1024, Integer.MAX_VALUE);
+        final Semaphore memory = new Semaphore(memoryLimit);
+        final Semaphore slots = new Semaphore(_maxConcurrency);
+        final AtomicInteger failures = new AtomicInteger(0);
+        ExecutorService executor =
+            VirtualThreads.newExecutor("batch", _maxConcurrency);
+
+        try
+        {
+            for (final String input : inputs)
+            {
+                final int reserved = (int)Math.min(
+                    (estimatedSize(input) + 1023) / 1024, memoryLimit);
+
+                slots.acquire();
+
+                try
+                {
+                    memory.acquire(reserved);
+                }
+                catch (InterruptedException ex)
+                {
+                    slots.release();
+                    throw ex;
+                }
+
+                executor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                analyze(input, _parserFactory.create(),
+                                    _analyzerFactory.create());
+                            }
+                            catch (IOException | RuntimeException ex)
+                            {
+                                failures.incrementAndGet();
+                                Logger.getLogger(
+                                    BatchAnalysis.class.getName())
+                                    .log(Level.SEVERE, input, ex);
+                            }
+                            finally
+                            {
+                                memory.release(reserved);
+                                slots.release();
+                            }
+                        }
+                    });
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        return failures.get();
+    }
+
+    /**
+     * File where results of input are written.
+     *
+     * @param outputDirectory
+     *   Directory where output files are created, or <code>null</code> if
+     *   they are created next to input files.
+     */
+    public static File outputFile(String input, String outputDirectory)
+    {
+        File inputFile = new File(input);
+
+        return new File(
+            outputDirectory == null
+                ? inputFile.getAbsoluteFile().getParentFile()
+                : new File(outputDirectory),
+            inputFile.getName() + OUTPUT_SUFFIX);
+    }
+
+    /**
+     * Find input whose output file is the same as output file of another
+     * input, or is one of the inputs, which would be read while it's
+     * written. Paths are compared after they are made absolute and
+     * normalized, links aren't resolved.
+     *
+     * @return
+     *   The first such input in the list, or <code>null</code> if there is
+     *   none.
+     */
+    public static String findCollision(List<String> inputs,
+        String outputDirectory)
+    {
+        Set<Path> inputPaths = new HashSet<>();
+        Set<Path> outputPaths = new HashSet<>();
+
+        for (String input : inputs)
+        {
+            inputPaths.add(normalized(new File(input)));
+        }
+
+        for (String input : inputs)
+        {
+            Path output = normalized(outputFile(input, outputDirectory));
+
+            if (!outputPaths.add(output) || inputPaths.contains(output))
+            {
+                return input;
+            }
+        }
+
+        return null;
+    }
+
+    private static Path normalized(File file)
+    {
+        return file.getAbsoluteFile().toPath().normalize();
+    }
+
+    /**
+     * Estimated size of uncompressed input, in bytes.
+     */
+    private static long estimatedSize(String input)
+    {
+        long length = new File(input).length();
+
+        return input.matches(UnifiedLogAnalyzer.IS_GZIPPED_REGEX)
+            ? length * _GZIP_RATIO_ESTIMATE
+            : length;
+    }
+
+    /**
+     * Analyse one input.
+     */
+    private void analyze(String input, IParser parser, IAnalyzer analyzer)
+        throws IOException
+    {
+        if (input.matches(UnifiedLogAnalyzer.IS_TAR_REGEX))
+        {
+            throw new IOException(
+                "Archive can not be analysed in batch mode.");
+        }
+
+        File outputFile = outputFile(input, _outputDirectory);
+
+        // Inputs are already analysed concurrently, threads that inflate
+        // each of them wouldn't be accounted for by the limits.
+        try (ISource source =
+            UnifiedLogAnalyzer.sourceFactory(input, _mmap, false))
+        {
+            ISink sink = UnifiedLogAnalyzer.sinkFactory(outputFile.getPath());
+
+            try
+            {
+                UnifiedLogAnalyzer.doMain(source, parser, analyzer, sink);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                // Sink is closed by doMain() only if it succeeds, and
+                // thousands of inputs mustn't leak file descriptors.
+                try
+                {
+                    sink.close();
+                }
+                catch (IOException closeEx)
+                {
+                    ex.addSuppressed(closeEx);
+                }
+
+                throw ex;
+            }
+        }
+    }
+}
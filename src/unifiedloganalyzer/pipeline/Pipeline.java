@@ -0,0 +1,606 @@
+package unifiedloganalyzer.pipeline;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.IParser;
+import unifiedloganalyzer.ISink;
+import unifiedloganalyzer.ISource;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.adapter.AnalyzerCallback;
+import unifiedloganalyzer.utils.DaemonThreadFactory;
+import unifiedloganalyzer.utils.SpscRingBuffer;
+
+
+/**
+ * Runs source, parser, analyzer and sink concurrently, each of them on its
+ * own thread.
+ *
+ * Stages are connected by bounded SpscRingBuffers that carry batches of
+ * lines, parsed data and output messages in the order in which they were
+ * produced, therefore results are the same as those of
+ * UnifiedLogAnalyzer.doMain(). Capacity of the buffers is what provides
+ * backpressure, stage that gets ahead of the next one waits until there is
+ * free space again, so memory use is bounded by capacity and batch size
+ * however fast the source is.
+ *
+ * Parser and analyzer are used only by their stage threads, so they don't
+ * have to be thread safe. Parsed data are retained before they are handed
+ * over, see ParsedData.retain(), and output messages are written after the
+ * analyzer moved on, so they must not change once reported.
+ *
+ * In incremental mode a batch that isn't full, i.e. source has no more
+ * lines available at the moment, is pushed through all the stages right
+ * away and sink is flushed after it, as doMain() does.
+ *
+ * Each stage measures time when it was busy, idle and blocked, see
+ * StageStatistics. The first error of any stage stops the others and is
+ * rethrown by run().
+ *
+ * @author Peter Trsko
+ */
+public class Pipeline
+{
+    /**
+     * Default number of batches that each buffer between two stages holds.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Default number of items in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // {{{ Nested types ///////////////////////////////////////////////////////
+
+    /**
+     * Element of buffers between stages, either items or the end of input.
+     */
+    private static class Batch<T>
+    {
+        public final T[] items;
+        public int length = 0;
+
+        /**
+         * Sink is flushed after this batch.
+         */
+        public boolean isFlush = false;
+
+        public Batch(T[] items)
+        {
+            this.items = items;
+        }
+
+        public static <T> Batch<T> end()
+        {
+            return new Batch<T>(null);
+        }
+
+        public boolean isEnd()
+        {
+            return items == null;
+        }
+
+        public boolean isFull()
+        {
+            return length == items.length;
+        }
+    }
+
+    /**
+     * Stage thread.
+     */
+    private abstract class Stage implements Runnable
+    {
+        protected final StageStatistics statistics;
+
+        public Stage(String name)
+        {
+            statistics = new StageStatistics(name);
+        }
+
+        protected abstract void process()
+            throws IOException, InterruptedException;
+
+        @Override
+        public void run()
+        {
+            statistics.start();
+
+            try
+            {
+                process();
+            }
+            catch (IOException | InterruptedException | RuntimeException
+                | Error ex)
+            {
+                // Interruption is usually caused by failure of another
+                // stage, which is then already recorded.
+                fail(ex);
+            }
+            finally
+            {
+                statistics.stop();
+            }
+        }
+
+        protected <T> Batch<T> take(SpscRingBuffer<Batch<T>> ring)
+            throws InterruptedException
+        {
+            long start = System.nanoTime();
+            Batch<T> batch = ring.take();
+
+            statistics.addIdleNanos(System.nanoTime() - start);
+
+            return batch;
+        }
+
+        protected <T> void put(SpscRingBuffer<Batch<T>> ring, Batch<T> batch)
+            throws InterruptedException
+        {
+            long start = System.nanoTime();
+
+            ring.put(batch);
+            statistics.addBlockedNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Collects items that a stage produces in to batches and passes them to
+     * the next stage.
+     */
+    private class Output<T>
+    {
+        private final Stage _stage;
+        private final SpscRingBuffer<Batch<T>> _ring;
+        private final Class<T> _type;
+
+        private Batch<T> _pending = null;
+
+        public Output(Stage stage, SpscRingBuffer<Batch<T>> ring,
+            Class<T> type)
+        {
+            _stage = stage;
+            _ring = ring;
+            _type = type;
+        }
+
+        private Batch<T> newBatch()
+        {
+            @SuppressWarnings("unchecked")
+            T[] items = (T[])Array.newInstance(_type, _batchSize);
+
+            return new Batch<>(items);
+        }
+
+        /**
+         * Called from callbacks, which can't throw checked exceptions.
+         */
+        public void add(T item)
+        {
+            if (_pending == null)
+            {
+                _pending = newBatch();
+            }
+
+            _pending.items[_pending.length++] = item;
+
+            if (_pending.isFull())
+            {
+                try
+                {
+                    _stage.put(_ring, _pending);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+
+                    throw new IllegalStateException(
+                        "Interrupted while waiting for next stage.", ex);
+                }
+                _pending = null;
+            }
+        }
+
+        /**
+         * Pass collected items to the next stage.
+         *
+         * @param isFlush
+         *   Sink is flushed after them, batch is passed even if it's empty.
+         */
+        public void flush(boolean isFlush) throws InterruptedException
+        {
+            if (_pending == null && isFlush)
+            {
+                _pending = newBatch();
+            }
+
+            if (_pending != null)
+            {
+                _pending.isFlush = isFlush;
+                _stage.put(_ring, _pending);
+                _pending = null;
+            }
+        }
+
+        public void end() throws InterruptedException
+        {
+            flush(false);
+            _stage.put(_ring, Batch.<T>end());
+        }
+    }
+
+    private class ReaderStage extends Stage
+    {
+        public ReaderStage()
+        {
+            super("reader");
+        }
+
+        @Override
+        protected void process() throws IOException, InterruptedException
+        {
+            for (;;)
+            {
+                // Lines cross thread boundary, therefore they can't be
+                // views in to buffers of the source.
+                Batch<String> batch = new Batch<>(new String[_batchSize]);
+
+                batch.length = _source.nextBatch(batch.items);
+
+                if (batch.length == 0)
+                {
+                    break;
+                }
+
+                batch.isFlush = _incremental && !batch.isFull();
+                statistics.addItems(batch.length);
+                put(_lines, batch);
+            }
+            put(_lines, Batch.<String>end());
+        }
+    }
+
+    private class ParserStage extends Stage implements ICallback<ParsedData>
+    {
+        private final Output<ParsedData> _output =
+            new Output<>(this, _parsed, ParsedData.class);
+
+        public ParserStage()
+        {
+            super("parser");
+        }
+
+        @Override
+        public void runCallback(ParsedData parsedData)
+        {
+            _output.add(parsedData.retain());
+        }
+
+        @Override
+        protected void process() throws InterruptedException
+        {
+            Batch<String> batch;
+
+            while (!(batch = take(_lines)).isEnd())
+            {
+                statistics.addItems(batch.length);
+                _parser.parseBatch(batch.items, 0, batch.length);
+
+                if (batch.isFlush)
+                {
+                    _output.flush(true);
+                }
+            }
+            _parser.eof();
+            _output.end();
+        }
+    }
+
+    private class AnalyzerStage extends Stage
+        implements ICallback<IOutputMessage>
+    {
+        private final Output<IOutputMessage> _output =
+            new Output<>(this, _messages, IOutputMessage.class);
+        private final AnalyzerCallback _callback =
+            new AnalyzerCallback(_analyzer);
+
+        public AnalyzerStage()
+        {
+            super("analyzer");
+        }
+
+        @Override
+        public void runCallback(IOutputMessage message)
+        {
+            _output.add(message);
+        }
+
+        @Override
+        protected void process() throws IOException, InterruptedException
+        {
+            Batch<ParsedData> batch;
+
+            while (!(batch = take(_parsed)).isEnd())
+            {
+                statistics.addItems(batch.length);
+                _callback.runBatchCallback(batch.items, 0, batch.length);
+
+                if (batch.isFlush)
+                {
+                    if (_analyzer instanceof Flushable)
+                    {
+                        ((Flushable)_analyzer).flush();
+                    }
+                    _output.flush(true);
+                }
+            }
+            _output.end();
+        }
+    }
+
+    private class SinkStage extends Stage
+    {
+        public SinkStage()
+        {
+            super("sink");
+        }
+
+        @Override
+        protected void process() throws IOException, InterruptedException
+        {
+            Batch<IOutputMessage> batch;
+
+            while (!(batch = take(_messages)).isEnd())
+            {
+                statistics.addItems(batch.length);
+
+                for (int i = 0; i < batch.length; i++)
+                {
+                    _sink.write(batch.items[i]);
+                }
+
+                if (batch.isFlush)
+                {
+                    _sink.flush();
+                }
+            }
+            _sink.close();
+        }
+    }
+
+    // }}} Nested types ///////////////////////////////////////////////////////
+
+    private final ISource _source;
+    private final IParser _parser;
+    private final IAnalyzer _analyzer;
+    private final ISink _sink;
+    private final boolean _incremental;
+    private final int _batchSize;
+
+    private final SpscRingBuffer<Batch<String>> _lines;
+    private final SpscRingBuffer<Batch<ParsedData>> _parsed;
+    private final SpscRingBuffer<Batch<IOutputMessage>> _messages;
+
+    private final List<Stage> _stages = new ArrayList<>();
+    private final List<Thread> _threads = new ArrayList<>();
+    private final AtomicReference<Throwable> _failure =
+        new AtomicReference<>(null);
+
+    private boolean _isStarted = false;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct pipeline, it's started by run().
+     *
+     * @param source
+     *   Source of messages, it must not be used by anyone else until run()
+     *   returns.
+     * @param parser
+     *   Parser, the pipeline registers its own callback with it. It's
+     *   caller's responsibility to configure it, e.g. subscribed syscalls.
+     * @param analyzer
+     *   Analyzer, the pipeline registers its own callback with it.
+     * @param sink
+     *   Sink for analysis results, it's closed at the end of input.
+     * @param incremental
+     *   Flush sink whenever source has no more messages immediately
+     *   available, see UnifiedLogAnalyzer.doMain().
+     * @param capacity
+     *   Number of batches that each buffer between two stages holds, it's
+     *   rounded up to the nearest power of two. The smaller it is the
+     *   sooner a slow stage stalls those before it.
+     * @param batchSize
+     *   Maximal number of items in a batch.
+     */
+    public Pipeline(ISource source, IParser parser, IAnalyzer analyzer,
+        ISink sink, boolean incremental, int capacity, int batchSize)
+    {
+        if (source == null || parser == null || analyzer == null
+            || sink == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batchSize = " + batchSize);
+        }
+
+        _source = source;
+        _parser = parser;
+        _analyzer = analyzer;
+        _sink = sink;
+        _incremental = incremental;
+        _batchSize = batchSize;
+        _lines = new SpscRingBuffer<>(capacity);
+        _parsed = new SpscRingBuffer<>(capacity);
+        _messages = new SpscRingBuffer<>(capacity);
+    }
+
+    public Pipeline(ISource source, IParser parser, IAnalyzer analyzer,
+        ISink sink, boolean incremental)
+    {
+        this(source, parser, analyzer, sink, incremental, DEFAULT_CAPACITY,
+            DEFAULT_BATCH_SIZE);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Record the first failure and stop all stages.
+     */
+    private void fail(Throwable error)
+    {
+        if (_failure.compareAndSet(null, error))
+        {
+            for (Thread thread : _threads)
+            {
+                if (thread != Thread.currentThread())
+                {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    private void rethrowFailure() throws IOException
+    {
+        Throwable failure = _failure.get();
+
+        if (failure == null)
+        {
+            return;
+        }
+
+        if (failure instanceof IOException)
+        {
+            throw (IOException)failure;
+        }
+
+        if (failure instanceof RuntimeException)
+        {
+            throw (RuntimeException)failure;
+        }
+
+        if (failure instanceof Error)
+        {
+            throw (Error)failure;
+        }
+
+        InterruptedIOException ex = new InterruptedIOException();
+
+        ex.initCause(failure);
+
+        throw ex;
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Process all messages of the source, blocks until sink is closed or
+     * any stage fails.
+     *
+     * Pipeline can be run only once.
+     *
+     * @throws IOException
+     *   First I/O error of any stage.
+     */
+    public void run() throws IOException
+    {
+        if (_isStarted)
+        {
+            throw new IllegalStateException("Pipeline was already run.");
+        }
+        _isStarted = true;
+
+        ParserStage parserStage = new ParserStage();
+        AnalyzerStage analyzerStage = new AnalyzerStage();
+
+        _parser.registerCallback(parserStage);
+        _analyzer.registerCallback(analyzerStage);
+
+        _stages.add(new ReaderStage());
+        _stages.add(parserStage);
+        _stages.add(analyzerStage);
+        _stages.add(new SinkStage());
+
+        // All threads are known before any of them can fail.
+        for (Stage stage : _stages)
+        {
+            _threads.add(new DaemonThreadFactory(
+                "pipeline-" + stage.statistics.getName()).newThread(stage));
+        }
+
+        for (Thread thread : _threads)
+        {
+            thread.start();
+        }
+
+        try
+        {
+            for (Thread thread : _threads)
+            {
+                thread.join();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            fail(ex);
+            Thread.currentThread().interrupt();
+        }
+
+        rethrowFailure();
+    }
+
+    // {{{ Statistics /////////////////////////////////////////////////////////
+
+    /**
+     * Statistics of reader, parser, analyzer and sink stage, in that order.
+     * List is empty until the pipeline is run.
+     */
+    public List<StageStatistics> getStageStatistics()
+    {
+        List<StageStatistics> ret = new ArrayList<>();
+
+        for (Stage stage : _stages)
+        {
+            ret.add(stage.statistics);
+        }
+
+        return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * Human readable summary of statistics.
+     */
+    public String getStatistics()
+    {
+        StringBuilder buff = new StringBuilder(String.format(Locale.ROOT,
+            "Pipeline: capacity=%d batches of %d items",
+            _lines.capacity(), _batchSize));
+
+        for (StageStatistics statistics : getStageStatistics())
+        {
+            buff.append("\n  ").append(statistics);
+        }
+
+        return buff.toString();
+    }
+
+    // }}} Statistics /////////////////////////////////////////////////////////
+}
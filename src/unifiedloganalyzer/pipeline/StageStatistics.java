@@ -0,0 +1,134 @@
+package unifiedloganalyzer.pipeline;
+
+import java.util.Locale;
+
+
+/**
+ * Counters of one Pipeline stage.
+ *
+ * Time of a stage thread is split in to time when it was idle, waiting for
+ * input from the previous stage, blocked, waiting for free space in the
+ * buffer of the next stage, and busy doing its own work, which is the rest.
+ * Stage that is busy most of the time is the bottleneck of the pipeline,
+ * stages before it are mostly blocked and stages after it are mostly idle.
+ *
+ * Counters are written only by the stage thread and can be read by any
+ * other thread, values read while the pipeline is running are only
+ * estimates.
+ *
+ * @author Peter Trsko
+ */
+public class StageStatistics
+{
+    private final String _name;
+
+    private volatile long _items = 0;
+    private volatile long _idleNanos = 0;
+    private volatile long _blockedNanos = 0;
+    private volatile long _startNanos = 0;
+    private volatile long _stopNanos = 0;
+    private volatile boolean _isStarted = false;
+    private volatile boolean _isStopped = false;
+
+    StageStatistics(String name)
+    {
+        _name = name;
+    }
+
+    // {{{ Updates, called only by stage thread ///////////////////////////////
+
+    void start()
+    {
+        _startNanos = System.nanoTime();
+        _isStarted = true;
+    }
+
+    void stop()
+    {
+        _stopNanos = System.nanoTime();
+        _isStopped = true;
+    }
+
+    void addItems(int items)
+    {
+        _items += items;
+    }
+
+    void addIdleNanos(long nanos)
+    {
+        _idleNanos += nanos;
+    }
+
+    void addBlockedNanos(long nanos)
+    {
+        _blockedNanos += nanos;
+    }
+
+    // }}} Updates, called only by stage thread ///////////////////////////////
+
+    public String getName()
+    {
+        return _name;
+    }
+
+    /**
+     * Number of items taken from the previous stage, or read from source by
+     * the first stage.
+     */
+    public long getItems()
+    {
+        return _items;
+    }
+
+    /**
+     * Time for which stage thread was running, in nanoseconds.
+     */
+    public long getElapsedNanos()
+    {
+        if (!_isStarted)
+        {
+            return 0;
+        }
+
+        return (_isStopped ? _stopNanos : System.nanoTime()) - _startNanos;
+    }
+
+    /**
+     * Time spent waiting for input from the previous stage, in nanoseconds.
+     */
+    public long getIdleNanos()
+    {
+        return _idleNanos;
+    }
+
+    /**
+     * Time spent waiting for free space in the buffer of the next stage, in
+     * nanoseconds.
+     */
+    public long getBlockedNanos()
+    {
+        return _blockedNanos;
+    }
+
+    /**
+     * Time spent by the stage's own work, in nanoseconds.
+     */
+    public long getBusyNanos()
+    {
+        return Math.max(0,
+            getElapsedNanos() - getIdleNanos() - getBlockedNanos());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.ROOT,
+            "%s: items=%d, busy=%.3fs, idle=%.3fs (waiting for input),"
+            + " blocked=%.3fs (waiting for next stage)",
+            _name, getItems(), getBusyNanos() / 1e9, getIdleNanos() / 1e9,
+            getBlockedNanos() / 1e9);
+    }
+}
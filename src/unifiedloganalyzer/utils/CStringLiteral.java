@@ -0,0 +1,339 @@
+package unifiedloganalyzer.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * Decoding and encoding of C-style string literals, as printed by strace.
+ *
+ * Literal is scanned from left to right and every character is examined only
+ * once, so that decoding takes linear time regardless of its content, even
+ * for unterminated literals and long sequences of backslashes. Supported
+ * escape sequences are:
+ *
+ * <pre>
+ * \a \b \f \n \r \t \v \\ \' \" \?   Single character
+ * \ and a newline                      Ignored
+ * \n, \nn, \nnn                        Octal representation of a byte
+ * \xh, \xhh                            Hexadecimal representation of a byte
+ * &#92;uhhhh                           Unicode character
+ * </pre>
+ *
+ * Bytes are collected and decoded as UTF-8, since that is how strace prints
+ * non-ASCII file names, unless they aren't valid UTF-8, in which case each
+ * of them is decoded as one ISO-8859-1 character. Unknown or incomplete
+ * escape sequences are kept as they are.
+ *
+ * @author Peter Trsko
+ */
+public final class CStringLiteral
+{
+    private static final Charset _UTF8 = Charset.forName("UTF-8");
+
+    private static final String _SIMPLE_ESCAPES = "abfnrtv\\'\"?";
+    private static final String _SIMPLE_ESCAPE_VALUES =
+        "\u0007\b\f\n\r\t\u000B\\'\"?";
+
+    private CStringLiteral()
+    {
+        // Only static methods.
+    }
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private static int hexDigit(char ch)
+    {
+        if (ch >= '0' && ch <= '9')
+        {
+            return ch - '0';
+        }
+        else if (ch >= 'a' && ch <= 'f')
+        {
+            return ch - 'a' + 10;
+        }
+        else if (ch >= 'A' && ch <= 'F')
+        {
+            return ch - 'A' + 10;
+        }
+
+        return -1;
+    }
+
+    private static boolean isOctalDigit(char ch)
+    {
+        return ch >= '0' && ch <= '7';
+    }
+
+    /**
+     * Append pending bytes to decoded string and clear them.
+     */
+    private static void flushBytes(ByteBuffer bytes, StringBuilder decoded)
+    {
+        if (bytes == null || bytes.position() == 0)
+        {
+            return;
+        }
+
+        bytes.flip();
+
+        boolean isAscii = true;
+
+        for (int i = 0; i < bytes.limit() && isAscii; i++)
+        {
+            isAscii = bytes.get(i) >= 0;
+        }
+
+        if (isAscii)
+        {
+            // Most common case, e.g. control characters, doesn't need
+            // a decoder.
+            while (bytes.hasRemaining())
+            {
+                decoded.append((char)bytes.get());
+            }
+
+            bytes.clear();
+
+            return;
+        }
+
+        CharsetDecoder decoder = _UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        try
+        {
+            decoded.append(decoder.decode(bytes));
+        }
+        catch (CharacterCodingException ex)
+        {
+            bytes.rewind();
+
+            while (bytes.hasRemaining())
+            {
+                decoded.append((char)(bytes.get() & 0xFF));
+            }
+        }
+
+        bytes.clear();
+    }
+
+    private static ByteBuffer appendByte(ByteBuffer bytes, int value)
+    {
+        if (bytes == null)
+        {
+            bytes = ByteBuffer.allocate(16);
+        }
+        else if (!bytes.hasRemaining())
+        {
+            ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+        }
+
+        return bytes.put((byte)value);
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    /**
+     * Decode string literal that starts at specified position.
+     *
+     * @param str
+     *   Sequence that contains string literal.
+     * @param start
+     *   Position of the opening double quote.
+     * @param decoded
+     *   Decoded content of the literal is appended to it. It may contain
+     *   partially decoded content if the literal isn't terminated.
+     *
+     * @return
+     *   Position just after the closing double quote, or -1 if there is no
+     *   string literal at specified position or if it isn't terminated.
+     */
+    public static int decode(CharSequence str, int start,
+        StringBuilder decoded)
+    {
+        if (str == null || decoded == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        int length = str.length();
+
+        if (start < 0 || start >= length || str.charAt(start) != '"')
+        {
+            return -1;
+        }
+
+        // Allocated only when a byte is found.
+        ByteBuffer bytes = null;
+        int i = start + 1;
+
+        while (i < length)
+        {
+            char ch = str.charAt(i++);
+
+            if (ch == '"')
+            {
+                flushBytes(bytes, decoded);
+
+                return i;
+            }
+            else if (ch != '\\')
+            {
+                flushBytes(bytes, decoded);
+                decoded.append(ch);
+                continue;
+            }
+
+            if (i >= length)
+            {
+                break;
+            }
+
+            ch = str.charAt(i++);
+
+            int simple = _SIMPLE_ESCAPES.indexOf(ch);
+
+            if (isOctalDigit(ch))
+            {
+                int value = ch - '0';
+
+                for (int n = 1; n < 3 && i < length
+                    && isOctalDigit(str.charAt(i)); n++)
+                {
+                    value = value * 8 + (str.charAt(i++) - '0');
+                }
+
+                // Values above 0377 don't fit in a byte, C compilers reject
+                // them, here only the lowest byte is used.
+                bytes = appendByte(bytes, value & 0xFF);
+            }
+            else if (ch == 'x' && i < length && hexDigit(str.charAt(i)) >= 0)
+            {
+                int value = hexDigit(str.charAt(i++));
+
+                if (i < length && hexDigit(str.charAt(i)) >= 0)
+                {
+                    value = value * 16 + hexDigit(str.charAt(i++));
+                }
+
+                bytes = appendByte(bytes, value);
+            }
+            else if (ch == 'u' && i + 4 <= length
+                && hexDigit(str.charAt(i)) >= 0
+                && hexDigit(str.charAt(i + 1)) >= 0
+                && hexDigit(str.charAt(i + 2)) >= 0
+                && hexDigit(str.charAt(i + 3)) >= 0)
+            {
+                int value = 0;
+
+                for (int n = 0; n < 4; n++)
+                {
+                    value = value * 16 + hexDigit(str.charAt(i++));
+                }
+
+                flushBytes(bytes, decoded);
+                decoded.append((char)value);
+            }
+            else if (simple >= 0)
+            {
+                flushBytes(bytes, decoded);
+                decoded.append(_SIMPLE_ESCAPE_VALUES.charAt(simple));
+            }
+            else if (ch != '\n')
+            {
+                // Unknown or incomplete escape sequence.
+                flushBytes(bytes, decoded);
+                decoded.append('\\').append(ch);
+            }
+        }
+
+        flushBytes(bytes, decoded);
+
+        return -1;
+    }
+
+    /**
+     * Append string with characters that aren't printable replaced by escape
+     * sequences, same as strace does, but without enclosing double quotes.
+     *
+     * Decoding result of this function gives back the original string,
+     * therefore it can be used to print strings decoded by decode() without
+     * breaking line oriented output.
+     *
+     * @param buff
+     *   Where to append escaped string.
+     * @param str
+     *   String to escape, <code>null</code> is appended as it is.
+     *
+     * @throws IOException
+     *   When appending fails.
+     */
+    public static void appendEscaped(Appendable buff, CharSequence str)
+        throws IOException
+    {
+        if (str == null)
+        {
+            buff.append((CharSequence)null);
+
+            return;
+        }
+
+        for (int i = 0; i < str.length(); i++)
+        {
+            char ch = str.charAt(i);
+            int simple = _SIMPLE_ESCAPE_VALUES.indexOf(ch);
+
+            if (ch == '\'' || ch == '?')
+            {
+                buff.append(ch);
+            }
+            else if (simple >= 0)
+            {
+                buff.append('\\').append(_SIMPLE_ESCAPES.charAt(simple));
+            }
+            else if (ch < ' ' || ch == '\u007F')
+            {
+                // Three digits, so that following digit isn't consumed by
+                // the escape sequence.
+                buff.append('\\')
+                    .append((char)('0' + (ch >> 6)))
+                    .append((char)('0' + ((ch >> 3) & 7)))
+                    .append((char)('0' + (ch & 7)));
+            }
+            else
+            {
+                buff.append(ch);
+            }
+        }
+    }
+
+    /**
+     * Same as appendEscaped(), but returns escaped string.
+     */
+    public static String escape(CharSequence str)
+    {
+        StringBuilder buff = new StringBuilder();
+
+        try
+        {
+            appendEscaped(buff, str);
+        }
+        catch (IOException ex)
+        {
+            // StringBuilder doesn't throw IOException.
+            throw new IllegalStateException(ex);
+        }
+
+        return buff.toString();
+    }
+}
@@ -1,26 +1,55 @@
 package unifiedloganalyzer.utils;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import trskop.ICallback;
 
+import unifiedloganalyzer.IBatchCallback;
 import unifiedloganalyzer.IRegisterCallbacks;
+import unifiedloganalyzer.adapter.BatchCallbackAdapter;
 
 
 /**
+ * Keeps registered callbacks and runs them.
+ *
+ * Messages can be passed one by one or in batches. Manager constructed with
+ * type of messages can also collect them, all messages passed to
+ * runCallbacks() between beginBatch() and endBatch() are delivered as one
+ * batch, or a few if there are more than fit in to its buffer. Callbacks
+ * that don't support batches receive them one by one, see IBatchCallback.
  *
  * @author Peter Trsko
  */
 public class CallbacksManager<T> implements IRegisterCallbacks<T>
 {
-    private List<ICallback<T>> _callbacks;
+    /**
+     * Maximal number of collected messages delivered at once.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    private List<IBatchCallback<T>> _callbacks;
+
+    /**
+     * Collected messages or <code>null</code> if manager doesn't collect
+     * them.
+     */
+    private final T[] _batch;
+    private int _batchLength = 0;
+
+    /**
+     * Number of beginBatch() calls without matching endBatch().
+     */
+    private int _batchDepth = 0;
 
     // {{{ Constructors ///////////////////////////////////////////////////////
 
     public CallbacksManager()
     {
-        _callbacks = new ArrayList<ICallback<T>>();
+        _callbacks = new ArrayList<>();
+        _batch = null;
     }
 
     public CallbacksManager(ICallback<T> callback)
@@ -30,11 +59,31 @@ public class CallbacksManager<T> implements IRegisterCallbacks<T>
         registerCallback(callback);
     }
 
+    /**
+     * Construct manager that can collect messages in to batches.
+     *
+     * @param type
+     *   Type of messages, batches are arrays of it.
+     */
+    public CallbacksManager(Class<T> type)
+    {
+        if (type == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        @SuppressWarnings("unchecked")
+        T[] batch = (T[])Array.newInstance(type, BATCH_SIZE);
+
+        _callbacks = new ArrayList<>();
+        _batch = batch;
+    }
+
     // }}} Constructors ///////////////////////////////////////////////////////
 
     public void registerCallback(ICallback<T> callback)
     {
-        _callbacks.add(callback);
+        _callbacks.add(BatchCallbackAdapter.adapt(callback));
     }
 
     public void runCallbacks(T message)
@@ -44,9 +93,100 @@ public class CallbacksManager<T> implements IRegisterCallbacks<T>
             throw new IllegalArgumentException("null");
         }
 
-        for (ICallback<T> callback : _callbacks)
+        if (_batchDepth > 0)
+        {
+            _batch[_batchLength++] = message;
+
+            if (_batchLength == _batch.length)
+            {
+                deliverBatch();
+            }
+
+            return;
+        }
+
+        for (int i = 0, n = _callbacks.size(); i < n; i++)
+        {
+            _callbacks.get(i).runCallback(message);
+        }
+    }
+
+    /**
+     * Run callbacks with messages <code>messages[offset, offset +
+     * length)</code>, messages that were collected so far are delivered
+     * first.
+     */
+    public void runCallbacks(T[] messages, int offset, int length)
+    {
+        if (messages == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (length == 0)
+        {
+            return;
+        }
+
+        deliverBatch();
+
+        for (int i = 0, n = _callbacks.size(); i < n; i++)
+        {
+            _callbacks.get(i).runBatchCallback(messages, offset, length);
+        }
+    }
+
+    // {{{ Collecting messages ////////////////////////////////////////////////
+
+    /**
+     * Start collecting messages, calls can be nested. It does nothing if
+     * manager wasn't constructed with type of messages.
+     */
+    public void beginBatch()
+    {
+        if (_batch != null)
+        {
+            _batchDepth++;
+        }
+    }
+
+    /**
+     * Stop collecting messages and deliver those that were collected, if
+     * this call matches the outermost beginBatch().
+     */
+    public void endBatch()
+    {
+        if (_batch != null && _batchDepth > 0 && --_batchDepth == 0)
         {
-            callback.runCallback(message);
+            deliverBatch();
         }
     }
+
+    private void deliverBatch()
+    {
+        if (_batchLength == 0)
+        {
+            return;
+        }
+
+        int length = _batchLength;
+
+        _batchLength = 0;
+
+        try
+        {
+            for (int i = 0, n = _callbacks.size(); i < n; i++)
+            {
+                _callbacks.get(i).runBatchCallback(_batch, 0, length);
+            }
+        }
+        finally
+        {
+            // Messages can be garbage collected while buffer waits for
+            // reuse.
+            Arrays.fill(_batch, 0, length, null);
+        }
+    }
+
+    // }}} Collecting messages ////////////////////////////////////////////////
 }
@@ -0,0 +1,50 @@
+package unifiedloganalyzer.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Thread factory that creates named daemon threads.
+ *
+ * Worker threads of I/O and processing stages should never prevent JVM from
+ * terminating, e.g. when main thread exits due to an error.
+ *
+ * @author Peter Trsko
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+    private final String _namePrefix;
+    private final AtomicInteger _threadCounter = new AtomicInteger(0);
+
+    /**
+     * Construct factory for threads named <code>namePrefix-N</code>, where
+     * <code>N</code> is a sequence number starting from zero.
+     *
+     * @param namePrefix
+     *   Prefix of thread names.
+     */
+    public DaemonThreadFactory(String namePrefix)
+    {
+        if (namePrefix == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _namePrefix = namePrefix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+        Thread thread = new Thread(runnable,
+            _namePrefix + "-" + _threadCounter.getAndIncrement());
+
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
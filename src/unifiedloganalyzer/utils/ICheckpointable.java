@@ -0,0 +1,41 @@
+package unifiedloganalyzer.utils;
+
+import java.io.Serializable;
+
+
+/**
+ * Interface for parsers and analyzers whose state can be stored in
+ * a checkpoint and restored later, so that an interrupted analysis can be
+ * resumed without processing the input from the beginning.
+ *
+ * Parsers and analyzers that don't implement this interface are considered
+ * to be stateless, i.e. their state doesn't depend on messages processed so
+ * far.
+ *
+ * @author Peter Trsko
+ */
+public interface ICheckpointable
+{
+    /**
+     * Get current state.
+     *
+     * Returned state may share data with this object, therefore it has to be
+     * serialized before any other message is processed.
+     *
+     * @return
+     *   State that can be passed to restoreState().
+     */
+    Serializable saveState();
+
+    /**
+     * Replace current state with state returned by saveState(), possibly of
+     * another instance.
+     *
+     * @param state
+     *   State returned by saveState().
+     *
+     * @throws IllegalArgumentException
+     *   If state wasn't produced by the same kind of object.
+     */
+    void restoreState(Serializable state);
+}
@@ -0,0 +1,23 @@
+package unifiedloganalyzer.utils;
+
+
+/**
+ * Object that its producer may reuse, e.g. parsed data of a parser that runs
+ * in pooled mode.
+ *
+ * Such object is valid only until the callback, that received it, returns.
+ * Consumer that needs to keep it any longer has to call retain() and keep
+ * its result instead.
+ *
+ * @author Peter Trsko
+ */
+public interface IRetainable<T>
+{
+    /**
+     * Get object with the same content that stays valid.
+     *
+     * @return
+     *   This object if it isn't reused by its producer, otherwise its copy.
+     */
+    T retain();
+}
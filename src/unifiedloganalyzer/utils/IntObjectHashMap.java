@@ -0,0 +1,216 @@
+package unifiedloganalyzer.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * Hash map with primitive int keys, e.g. PIDs.
+ *
+ * Keys are stored in an int array, so that they aren't boxed on every lookup
+ * as they would be in HashMap&lt;Integer, V&gt;. Collisions are resolved by
+ * linear probing and removal shifts following entries back, therefore there
+ * are no tombstones and lookups stay short even after many removals.
+ *
+ * Map is serializable if its values are.
+ *
+ * @author Peter Trsko
+ */
+public final class IntObjectHashMap<V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final int _MIN_CAPACITY = 8;
+
+    private int[] _keys;
+    private Object[] _values;
+    private int _mask;
+    private int _size = 0;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    public IntObjectHashMap()
+    {
+        this(_MIN_CAPACITY);
+    }
+
+    /**
+     * Construct map that can hold specified number of entries without
+     * resizing.
+     */
+    public IntObjectHashMap(int expectedSize)
+    {
+        if (expectedSize < 0 || expectedSize > (1 << 29))
+        {
+            throw new IllegalArgumentException(
+                "expectedSize = " + expectedSize);
+        }
+
+        // Load factor is kept at 1/2 at most.
+        int capacity = Integer.highestOneBit(
+            Math.max(_MIN_CAPACITY, expectedSize * 2) - 1) << 1;
+
+        allocate(capacity);
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Private methods ////////////////////////////////////////////////////
+
+    private void allocate(int capacity)
+    {
+        _keys = new int[capacity];
+        _values = new Object[capacity];
+        _mask = capacity - 1;
+    }
+
+    /**
+     * Spread bits of the key, PIDs are mostly consecutive numbers.
+     */
+    private int slot(int key)
+    {
+        int h = key * 0x9E3779B9;
+
+        return (h ^ (h >>> 16)) & _mask;
+    }
+
+    /**
+     * Index of slot with specified key or of an empty slot where it would
+     * be inserted. Empty slots are recognized by null value.
+     */
+    private int find(int key)
+    {
+        int i = slot(key);
+
+        while (_values[i] != null && _keys[i] != key)
+        {
+            i = (i + 1) & _mask;
+        }
+
+        return i;
+    }
+
+    private void resize()
+    {
+        int[] keys = _keys;
+        Object[] values = _values;
+
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (values[i] != null)
+            {
+                int j = find(keys[i]);
+
+                _keys[j] = keys[i];
+                _values[j] = values[i];
+            }
+        }
+    }
+
+    // }}} Private methods ////////////////////////////////////////////////////
+
+    public int size()
+    {
+        return _size;
+    }
+
+    public boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+    public boolean containsKey(int key)
+    {
+        return _values[find(key)] != null;
+    }
+
+    /**
+     * Get value associated with specified key.
+     *
+     * @return
+     *   Value or <code>null</code> if there is no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key)
+    {
+        return (V)_values[find(key)];
+    }
+
+    /**
+     * Associate value with specified key.
+     *
+     * @param key
+     *   Any int value.
+     * @param value
+     *   Value, it can not be <code>null</code>.
+     *
+     * @return
+     *   Previous value or <code>null</code> if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value)
+    {
+        if (value == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        int i = find(key);
+        V previous = (V)_values[i];
+
+        _keys[i] = key;
+        _values[i] = value;
+
+        if (previous == null && ++_size * 2 > _keys.length)
+        {
+            resize();
+        }
+
+        return previous;
+    }
+
+    /**
+     * Remove value associated with specified key.
+     *
+     * @return
+     *   Removed value or <code>null</code> if there was no such key.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key)
+    {
+        int i = find(key);
+        V previous = (V)_values[i];
+
+        if (previous == null)
+        {
+            return null;
+        }
+
+        // Shift back entries that would become unreachable, i.e. those whose
+        // home slot isn't cyclically in (i, j].
+        for (int j = (i + 1) & _mask; _values[j] != null; j = (j + 1) & _mask)
+        {
+            int home = slot(_keys[j]);
+
+            if (((j - home) & _mask) >= ((j - i) & _mask))
+            {
+                _keys[i] = _keys[j];
+                _values[i] = _values[j];
+                i = j;
+            }
+        }
+
+        _values[i] = null;
+        _size--;
+
+        return previous;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(_values, null);
+        _size = 0;
+    }
+}
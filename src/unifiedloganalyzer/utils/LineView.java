@@ -0,0 +1,219 @@
+package unifiedloganalyzer.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+
+/**
+ * Reusable and mutable view of one line of input.
+ *
+ * View is backed either by bytes of a buffer owned by a source, where each
+ * byte is one character (ASCII or ISO-8859-1 data), or by characters copied
+ * in to an array owned by this view, or by any other CharSequence. In the
+ * first case no characters are copied at all.
+ *
+ * Content of the view is valid only until the owner of the backing buffer
+ * changes it, which is usually the next read from the same source. Consumers
+ * that need to keep any part of the line have to copy it, e.g. by calling
+ * toString() or subSequence(), both of which return a String.
+ *
+ * Not thread safe.
+ *
+ * @author Peter Trsko
+ */
+public final class LineView implements CharSequence
+{
+    private static final Charset _ONE_BYTE_CHARSET =
+        Charset.forName("ISO-8859-1");
+
+    private ByteBuffer _bytes = null;
+    private char[] _chars = new char[0];
+    private CharSequence _sequence = null;
+    private int _offset = 0;
+    private int _length = 0;
+    private byte[] _scratch = new byte[0];
+
+    // {{{ Setters ////////////////////////////////////////////////////////////
+
+    /**
+     * Make this view point to bytes <code>buffer[from, to)</code>, each byte
+     * is interpreted as one character in ISO-8859-1 encoding.
+     *
+     * @param buffer
+     *   Buffer that isn't copied, therefore it must not be modified while
+     *   this view is in use.
+     * @param from
+     *   Index of the first byte (inclusive).
+     * @param to
+     *   Index of the last byte (exclusive).
+     */
+    public void set(ByteBuffer buffer, int from, int to)
+    {
+        if (buffer == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _bytes = buffer;
+        _sequence = null;
+        _offset = from;
+        _length = to - from;
+    }
+
+    /**
+     * Copy characters <code>chars[from, to)</code> in to an array owned by
+     * this view. The array is reused, so the copy allocates memory only when
+     * the line is longer then any previous one.
+     *
+     * @param chars
+     *   Source of characters.
+     * @param from
+     *   Index of the first character (inclusive).
+     * @param to
+     *   Index of the last character (exclusive).
+     */
+    public void set(char[] chars, int from, int to)
+    {
+        if (chars == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        int length = to - from;
+
+        if (_chars.length < length)
+        {
+            _chars = new char[Math.max(length, _chars.length * 2)];
+        }
+        System.arraycopy(chars, from, _chars, 0, length);
+
+        _bytes = null;
+        _sequence = null;
+        _offset = 0;
+        _length = length;
+    }
+
+    /**
+     * Make this view point to specified character sequence.
+     *
+     * @param sequence
+     *   Sequence that isn't copied, usually an immutable String.
+     */
+    public void set(CharSequence sequence)
+    {
+        if (sequence == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        _bytes = null;
+        _sequence = sequence;
+        _offset = 0;
+        _length = sequence.length();
+    }
+
+    // }}} Setters ////////////////////////////////////////////////////////////
+
+    // {{{ CharSequence implementation ////////////////////////////////////////
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int length()
+    {
+        return _length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= _length)
+        {
+            throw new IndexOutOfBoundsException("index = " + index);
+        }
+
+        if (_bytes != null)
+        {
+            return (char)(_bytes.get(_offset + index) & 0xff);
+        }
+        else if (_sequence != null)
+        {
+            return _sequence.charAt(index);
+        }
+
+        return _chars[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returned sequence is a String, i.e. a copy that stays valid after this
+     * view changes.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > _length || start > end)
+        {
+            throw new IndexOutOfBoundsException(
+                "start = " + start + ", end = " + end);
+        }
+
+        if (_sequence != null)
+        {
+            return _sequence.subSequence(start, end).toString();
+        }
+        else if (_bytes != null)
+        {
+            return copyBytes(_offset + start, _offset + end);
+        }
+
+        return new String(_chars, start, end - start);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns a copy that stays valid after this view changes.
+     */
+    @Override
+    public String toString()
+    {
+        return subSequence(0, _length).toString();
+    }
+
+    // }}} CharSequence implementation ////////////////////////////////////////
+
+    private String copyBytes(int from, int to)
+    {
+        int length = to - from;
+
+        if (_scratch.length < length)
+        {
+            _scratch = new byte[Math.max(length, _scratch.length * 2)];
+        }
+
+        // Absolute bulk get is not available, position and limit of the
+        // buffer are restored afterwards.
+        int position = _bytes.position();
+        int limit = _bytes.limit();
+
+        try
+        {
+            _bytes.limit(to);
+            _bytes.position(from);
+            _bytes.get(_scratch, 0, length);
+        }
+        finally
+        {
+            _bytes.limit(limit);
+            _bytes.position(position);
+        }
+
+        return new String(_scratch, 0, length, _ONE_BYTE_CHARSET);
+    }
+}
@@ -0,0 +1,315 @@
+package unifiedloganalyzer.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Bounded lock-free ring buffer for exactly one producer and one consumer
+ * thread.
+ *
+ * Producer and consumer each own one index and only publish it, so neither
+ * side ever takes a lock. When the buffer is full, or empty, the waiting side
+ * spins for a while and then parks until the other side makes progress.
+ *
+ * Buffer keeps counters of such stalls and of its occupancy as seen by the
+ * consumer. Frequent producer stalls with buffer mostly full mean that the
+ * consumer is the bottleneck, frequent consumer stalls with buffer mostly
+ * empty mean that the producer is.
+ *
+ * @author Peter Trsko
+ */
+public final class SpscRingBuffer<T>
+{
+    private static final int _SPIN_TRIES = 100;
+    private static final long _MAX_PARK_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<T> _elements;
+    private final int _mask;
+
+    /**
+     * Index of the next element to be taken, written only by consumer.
+     */
+    private final AtomicLong _head = new AtomicLong(0);
+
+    /**
+     * Index of the next element to be put, written only by producer.
+     */
+    private final AtomicLong _tail = new AtomicLong(0);
+
+    private volatile Thread _waitingProducer = null;
+    private volatile Thread _waitingConsumer = null;
+
+    // Statistics, each counter is written only by one side.
+    private volatile long _producerStalls = 0;
+    private volatile long _consumerStalls = 0;
+    private volatile long _takes = 0;
+    private volatile long _occupancySum = 0;
+
+    // {{{ Constructors ///////////////////////////////////////////////////////
+
+    /**
+     * Construct ring buffer.
+     *
+     * @param capacity
+     *   Maximal number of elements, it's rounded up to the nearest power of
+     *   two.
+     */
+    public SpscRingBuffer(int capacity)
+    {
+        if (capacity <= 0 || capacity > (1 << 30))
+        {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+
+        _elements = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+    }
+
+    // }}} Constructors ///////////////////////////////////////////////////////
+
+    // {{{ Producer side //////////////////////////////////////////////////////
+
+    /**
+     * Put element in to the buffer if there is free space.
+     *
+     * Must be called only from producer thread.
+     *
+     * @param element
+     *   Element to be put in to the buffer.
+     *
+     * @return
+     *   <code>false</code> if buffer is full.
+     */
+    public boolean offer(T element)
+    {
+        if (element == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        long tail = _tail.get();
+
+        if (tail - _head.get() > _mask)
+        {
+            return false;
+        }
+
+        _elements.lazySet((int)tail & _mask, element);
+        _tail.set(tail + 1);
+
+        Thread consumer = _waitingConsumer;
+        if (consumer != null)
+        {
+            LockSupport.unpark(consumer);
+        }
+
+        return true;
+    }
+
+    /**
+     * Put element in to the buffer, waiting for free space if necessary.
+     *
+     * Must be called only from producer thread.
+     *
+     * @param element
+     *   Element to be put in to the buffer.
+     *
+     * @throws InterruptedException
+     *   If producer thread was interrupted while waiting.
+     */
+    public void put(T element) throws InterruptedException
+    {
+        if (offer(element))
+        {
+            return;
+        }
+
+        _producerStalls++;
+
+        for (int i = 0; !offer(element); i++)
+        {
+            if (i < _SPIN_TRIES)
+            {
+                Thread.yield();
+            }
+            else
+            {
+                _waitingProducer = Thread.currentThread();
+
+                // Re-check after announcing that we are waiting, otherwise
+                // wake-up could be lost.
+                if (!offer(element))
+                {
+                    LockSupport.parkNanos(this, _MAX_PARK_NANOS);
+                }
+                else
+                {
+                    _waitingProducer = null;
+
+                    return;
+                }
+
+                _waitingProducer = null;
+            }
+
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    // }}} Producer side //////////////////////////////////////////////////////
+
+    // {{{ Consumer side //////////////////////////////////////////////////////
+
+    /**
+     * Take element from the buffer if there is any.
+     *
+     * Must be called only from consumer thread.
+     *
+     * @return
+     *   Element or <code>null</code> if buffer is empty.
+     */
+    public T poll()
+    {
+        long head = _head.get();
+        long occupancy = _tail.get() - head;
+
+        if (occupancy == 0)
+        {
+            return null;
+        }
+
+        int index = (int)head & _mask;
+        T element = _elements.get(index);
+
+        _elements.lazySet(index, null);
+        _head.set(head + 1);
+
+        _takes++;
+        _occupancySum += occupancy;
+
+        Thread producer = _waitingProducer;
+        if (producer != null)
+        {
+            LockSupport.unpark(producer);
+        }
+
+        return element;
+    }
+
+    /**
+     * Take element from the buffer, waiting for one if necessary.
+     *
+     * Must be called only from consumer thread.
+     *
+     * @return
+     *   Element taken from the buffer.
+     *
+     * @throws InterruptedException
+     *   If consumer thread was interrupted while waiting.
+     */
+    public T take() throws InterruptedException
+    {
+        T element = poll();
+
+        if (element != null)
+        {
+            return element;
+        }
+
+        _consumerStalls++;
+
+        for (int i = 0; (element = poll()) == null; i++)
+        {
+            if (i < _SPIN_TRIES)
+            {
+                Thread.yield();
+            }
+            else
+            {
+                _waitingConsumer = Thread.currentThread();
+
+                // Re-check after announcing that we are waiting, otherwise
+                // wake-up could be lost.
+                element = poll();
+                if (element == null)
+                {
+                    LockSupport.parkNanos(this, _MAX_PARK_NANOS);
+                }
+
+                _waitingConsumer = null;
+
+                if (element != null)
+                {
+                    break;
+                }
+            }
+
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+
+        return element;
+    }
+
+    // }}} Consumer side //////////////////////////////////////////////////////
+
+    // {{{ Statistics /////////////////////////////////////////////////////////
+
+    public int capacity()
+    {
+        return _mask + 1;
+    }
+
+    /**
+     * Current number of elements, it's only an estimate when called
+     * concurrently with producer or consumer.
+     */
+    public int size()
+    {
+        return (int)(_tail.get() - _head.get());
+    }
+
+    /**
+     * Number of times producer had to wait because buffer was full.
+     */
+    public long getProducerStalls()
+    {
+        return _producerStalls;
+    }
+
+    /**
+     * Number of times consumer had to wait because buffer was empty.
+     */
+    public long getConsumerStalls()
+    {
+        return _consumerStalls;
+    }
+
+    /**
+     * Average number of elements in the buffer at the time when consumer took
+     * an element, the element itself included.
+     */
+    public double getAverageOccupancy()
+    {
+        long takes = _takes;
+
+        return takes == 0 ? 0.0 : (double)_occupancySum / takes;
+    }
+
+    // }}} Statistics /////////////////////////////////////////////////////////
+}
@@ -0,0 +1,94 @@
+package unifiedloganalyzer.utils;
+
+
+/**
+ * Cache of short strings that repeat often, like syscall names, their
+ * results or errno values.
+ *
+ * String is looked up by content of a part of any CharSequence, so a new
+ * String is allocated only when it isn't already cached. Each string can be
+ * stored in only one slot and it replaces whatever was there before, which
+ * keeps lookups cheap and the cache bounded.
+ *
+ * Not thread safe.
+ *
+ * @author Peter Trsko
+ */
+public final class StringCache
+{
+    /**
+     * Longer strings aren't cached, they are unlikely to repeat.
+     */
+    private static final int _MAX_LENGTH = 64;
+
+    private final String[] _strings;
+    private final int _mask;
+
+    /**
+     * @param size
+     *   Number of slots, it's rounded up to the nearest power of two.
+     */
+    public StringCache(int size)
+    {
+        if (size <= 0 || size > (1 << 30))
+        {
+            throw new IllegalArgumentException("size = " + size);
+        }
+
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size)
+        {
+            capacity <<= 1;
+        }
+
+        _strings = new String[capacity];
+        _mask = capacity - 1;
+    }
+
+    /**
+     * Get string with the same content as <code>str[start, end)</code>.
+     *
+     * @return
+     *   Cached or newly allocated string.
+     */
+    public String get(CharSequence str, int start, int end)
+    {
+        int length = end - start;
+
+        if (length > _MAX_LENGTH)
+        {
+            return str.subSequence(start, end).toString();
+        }
+
+        // Same as String.hashCode(), which is cached by String itself.
+        int hash = 0;
+        for (int i = start; i < end; i++)
+        {
+            hash = 31 * hash + str.charAt(i);
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & _mask;
+        String cached = _strings[slot];
+
+        if (cached != null && cached.length() == length
+            && cached.hashCode() == hash)
+        {
+            int i = 0;
+
+            while (i < length && cached.charAt(i) == str.charAt(start + i))
+            {
+                i++;
+            }
+
+            if (i == length)
+            {
+                return cached;
+            }
+        }
+
+        String ret = str.subSequence(start, end).toString();
+        _strings[slot] = ret;
+
+        return ret;
+    }
+}
@@ -1,6 +1,7 @@
 package unifiedloganalyzer.utils;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,8 +14,10 @@ import trskop.IAppendTo;
  *
  * @author Peter Trsko
  */
-public class Tag implements IHasTags, IAppendTo
+public class Tag implements IHasTags, IAppendTo, Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     private final String[] _name;
     private final String _value;
 
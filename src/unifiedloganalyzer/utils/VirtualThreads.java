@@ -0,0 +1,92 @@
+package unifiedloganalyzer.utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Executors that run each task on its own virtual thread, if the JVM
+ * provides them.
+ *
+ * Virtual threads are available since Java 21, but the project is compiled
+ * for older versions by default, therefore they are looked up by reflection.
+ * On older JVMs executors fall back to a pool of daemon threads.
+ *
+ * @author Peter Trsko
+ */
+public final class VirtualThreads
+{
+    /**
+     * Method <code>Executors.newVirtualThreadPerTaskExecutor()</code> or
+     * <code>null</code> if this JVM doesn't have it.
+     */
+    private static final Method _NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+        lookupNewVirtualThreadPerTaskExecutor();
+
+    private VirtualThreads()
+    {
+        // Utility class.
+    }
+
+    private static Method lookupNewVirtualThreadPerTaskExecutor()
+    {
+        try
+        {
+            return Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException | SecurityException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if newExecutor() creates executors that use
+     * virtual threads.
+     */
+    public static boolean isAvailable()
+    {
+        return _NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create executor that starts a new virtual thread for each task, or
+     * fixed thread pool of daemon threads on JVMs without virtual threads.
+     *
+     * Number of concurrently running tasks isn't limited by the former, it's
+     * up to the caller.
+     *
+     * @param namePrefix
+     *   Prefix of names of pooled threads, see DaemonThreadFactory.
+     * @param poolSize
+     *   Number of pooled threads, used only when virtual threads aren't
+     *   available.
+     */
+    public static ExecutorService newExecutor(String namePrefix,
+        int poolSize)
+    {
+        if (namePrefix == null)
+        {
+            throw new IllegalArgumentException("null");
+        }
+
+        if (_NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null)
+        {
+            try
+            {
+                return (ExecutorService)
+                    _NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            }
+            catch (IllegalAccessException | InvocationTargetException ex)
+            {
+                // Use pool of platform threads instead.
+            }
+        }
+
+        return Executors.newFixedThreadPool(poolSize,
+            new DaemonThreadFactory(namePrefix));
+    }
+}
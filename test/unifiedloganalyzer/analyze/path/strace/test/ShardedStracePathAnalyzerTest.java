@@ -0,0 +1,207 @@
+package unifiedloganalyzer.analyze.path.strace.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.adapter.AnalyzerCallback;
+import unifiedloganalyzer.analyze.path.strace.ShardedStracePathAnalyzer;
+import unifiedloganalyzer.analyze.path.strace.StracePathAnalyzer;
+import unifiedloganalyzer.parse.strace.StraceParser;
+
+
+/**
+ * Sharded analysis gives the same results as StracePathAnalyzer.
+ *
+ * @author Peter Trsko
+ */
+public class ShardedStracePathAnalyzerTest extends TestCase
+{
+    /**
+     * Three process trees, children forked before and after their parents
+     * changed directory, vfork child that runs before the call is resumed
+     * and then inherits working directory of its parent, thread that makes
+     * only ignored syscalls before it's reported, and reused PID.
+     */
+    private static final String[] _MESSAGES =
+    {
+        "100 chdir(\"/a\") = 0",
+        "200 chdir(\"/b\") = 0",
+        "300 getcwd(\"/c\", 4096) = 3",
+        "100 vfork() = 101",
+        "200 clone(child_stack=0, flags=CLONE_CHILD_CLEARTID|SIGCHLD,"
+            + " child_tidptr=0x7f3c) = 201",
+        "100 chdir(\"/a/sub\") = 0",
+        "101 open(\"x.c\", O_RDONLY) = 3",
+        "201 openat(AT_FDCWD, \"y.c\", O_RDONLY) = 4",
+        "300 vfork( <unfinished ...>",
+        "301 execve(\"/usr/bin/gcc\", [\"gcc\"], [/* 0 vars */]) = 0",
+        "301 open(\"z.c\", O_RDONLY) = 3",
+        "300 <... vfork resumed> ) = 301",
+        "301 open(\"r.c\", O_RDONLY) = 3",
+        "200 clone( <unfinished ...>",
+        "202 read(3, \"\", 4096) = 0",
+        "200 <... clone resumed> child_stack=0, flags=CLONE_VM) = 202",
+        "202 open(\"w.c\", O_RDONLY) = 5",
+        "100 fork() = 102",
+        "102 open(\"./v.c\", O_RDONLY) = 3",
+        "101 exit_group(0) = ?",
+        "100 --- SIGCHLD (Child exited) @ 0 (0) ---",
+        "200 fork() = 101",
+        "101 open(\"u.c\", O_RDONLY) = 3",
+        "400 open(\"t.c\", O_RDONLY) = 3",
+        "garbage",
+        "102 exit_group(1) = ?",
+        "300 open(\"s.c\", O_RDONLY) = 3",
+    };
+
+    public ShardedStracePathAnalyzerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Analyse messages twice, as if they were two inputs, and return
+     * results.
+     */
+    private static List<String> analyze(IAnalyzer analyzer,
+        String[] messages)
+    {
+        final List<String> results = new ArrayList<>();
+        StraceParser parser = new StraceParser();
+
+        analyzer.registerCallback(new ICallback<IOutputMessage>()
+            {
+                @Override
+                public void runCallback(IOutputMessage message)
+                {
+                    StringBuilder buff = new StringBuilder();
+
+                    try
+                    {
+                        message.appendTo(buff);
+                    }
+                    catch (IOException ex)
+                    {
+                        throw new AssertionError(ex);
+                    }
+                    results.add(buff.toString());
+                }
+            });
+        parser.registerCallback(new AnalyzerCallback(analyzer));
+
+        for (int i = 0; i < 2; i++)
+        {
+            for (String message : messages)
+            {
+                parser.parse(message);
+            }
+            parser.eof();
+        }
+
+        return results;
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Paths, their order and statistics are the same regardless of number
+     * of shards and size of batches.
+     */
+    public void testSameResultsAsStracePathAnalyzer()
+    {
+        List<String> expected =
+            analyze(new StracePathAnalyzer(), _MESSAGES);
+
+        for (int shards = 1; shards <= 4; shards++)
+        {
+            for (int batchSize : new int[] {1, 3, 1024})
+            {
+                assertEquals("shards = " + shards
+                    + ", batchSize = " + batchSize,
+                    expected,
+                    analyze(new ShardedStracePathAnalyzer(null, shards, 2,
+                        batchSize), _MESSAGES));
+            }
+        }
+    }
+
+    /**
+     * Forked child is analysed by shard of its parent, therefore it inherits
+     * its working directory, while another process tree is analysed by
+     * another shard.
+     */
+    public void testChildFollowsParent()
+    {
+        ShardedStracePathAnalyzer analyzer =
+            new ShardedStracePathAnalyzer(null, 2, 1, 1);
+        List<String> results = analyze(analyzer, new String[]
+            {
+                "100 chdir(\"/a\") = 0",
+                "200 chdir(\"/b\") = 0",
+                "100 fork() = 101",
+                "200 fork() = 201",
+                "201 open(\"y.c\", O_RDONLY) = 3",
+                "101 open(\"x.c\", O_RDONLY) = 3",
+            });
+
+        assertEquals("{path=\"/b/y.c\", tags=[]}", results.get(0));
+        assertEquals("{path=\"/a/x.c\", tags=[]}", results.get(1));
+        assertFalse(analyzer.isRunning());
+    }
+
+    /**
+     * Child that appeared as a root in another shard, before clone of its
+     * parent was resumed, is moved to the shard of its parent.
+     */
+    public void testAdoptedChildFollowsParent()
+    {
+        ShardedStracePathAnalyzer analyzer =
+            new ShardedStracePathAnalyzer(null, 2, 2, 2);
+        List<String> results = analyze(analyzer, new String[]
+            {
+                "100 chdir(\"/a\") = 0",
+                "100 clone( <unfinished ...>",
+                "101 open(\"x.c\", O_RDONLY) = 3",
+                "100 <... clone resumed> child_stack=0,"
+                    + " flags=SIGCHLD) = 101",
+                "101 open(\"y.c\", O_RDONLY) = 3",
+                "101 fork() = 102",
+                "102 open(\"z.c\", O_RDONLY) = 3",
+            });
+
+        assertEquals("{path=\"x.c\", tags=[]}", results.get(0));
+        assertEquals("{path=\"/a/y.c\", tags=[]}", results.get(1));
+        assertEquals("{path=\"/a/z.c\", tags=[]}", results.get(2));
+    }
+}
@@ -1,7 +1,22 @@
 package unifiedloganalyzer.analyze.path.strace.test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
+import trskop.ICallback;
+
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.adapter.AnalyzerCallback;
+import unifiedloganalyzer.analyze.path.strace.StracePathAnalyzer;
+import unifiedloganalyzer.parse.strace.StraceParser;
+
 
 /**
  *
@@ -9,6 +24,45 @@ import junit.framework.TestCase;
  */
 public class StracePathAnalyzerTest extends TestCase
 {
+    /**
+     * Syscalls that affect neither process model nor output, which is what
+     * most of a typical trace consists of.
+     */
+    private static final String[] _QUIET_MESSAGES =
+    {
+        "100 read(3, \"\\177ELF\\2\\1\\1\\0\", 832) = 832",
+        "100 fstat(3, {st_mode=S_IFREG|0644, st_size=2029224, ...}) = 0",
+        "100 mmap(NULL, 8192, PROT_READ|PROT_WRITE, MAP_PRIVATE|MAP_ANONYMOUS,"
+            + " -1, 0) = 0x7f3c4d5e6000",
+        "100 close(3) = 0",
+        "100 brk(0) = 0x1c2d000",
+        "100 read(3, 0x7ffd5e6f, 4096) = -1 EAGAIN"
+            + " (Resource temporarily unavailable)",
+    };
+
+    private static final String[] _MIXED_MESSAGES =
+    {
+        "100 read(3, \"\\177ELF\\2\\1\\1\\0\", 832) = 832",
+        "100 open(\"/etc/ld.so.cache\", O_RDONLY|O_CLOEXEC) = 3",
+        "100 fstat(3, {st_mode=S_IFREG|0644, st_size=2029224, ...}) = 0",
+        "100 mmap(NULL, 8192, PROT_READ|PROT_WRITE, MAP_PRIVATE|MAP_ANONYMOUS,"
+            + " -1, 0) = 0x7f3c4d5e6000",
+        "100 close(3) = 0",
+        "100 getcwd(\"/home/user\", 4096) = 11",
+        "100 brk(0) = 0x1c2d000",
+        "100 --- SIGCHLD (Child exited) @ 0 (0) ---",
+    };
+
+    private static final int _WARM_UP = 200000;
+    private static final int _ITERATIONS = 200000;
+
+    /**
+     * Steady-state allocation per quiet message, in bytes, that is tolerated
+     * in pooled mode. It's not zero, since allocation counters are sampled
+     * from thread local allocation buffers.
+     */
+    private static final double _MAX_QUIET_BYTES = 8.0;
+
     public StracePathAnalyzerTest(String name)
     {
         super(name);
@@ -35,4 +89,172 @@ public class StracePathAnalyzerTest extends TestCase
     {
         // Empty implementation.
     }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Method that returns number of bytes allocated by a thread, it's
+     * available only on HotSpot and derived JVMs.
+     *
+     * @return
+     *   Method or <code>null</code> if it's not supported.
+     */
+    private static Method allocatedBytesMethod()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        try
+        {
+            Method method =
+                Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+
+            return method.getDeclaringClass().isInstance(bean) ? method : null;
+        }
+        catch (ClassNotFoundException | NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Run messages through StraceParser and StracePathAnalyzer, connected
+     * the same way as UnifiedLogAnalyzer does it, and measure allocation.
+     *
+     * @return
+     *   Average number of bytes allocated per message after warm-up.
+     */
+    private static double allocatedBytesPerMessage(Method allocatedBytes,
+        boolean isPooled, String[] messages) throws Exception
+    {
+        StracePathAnalyzer analyzer = new StracePathAnalyzer();
+        StraceParser parser = new StraceParser();
+
+        analyzer.registerCallback(new ICallback<IOutputMessage>()
+            {
+                @Override
+                public void runCallback(IOutputMessage message)
+                {
+                    // Output isn't interesting here.
+                }
+            });
+        parser.setSubscribedSyscalls(analyzer.getSubscribedSyscalls());
+        parser.setPooled(isPooled && analyzer.acceptsPooledData());
+        parser.registerCallback(new AnalyzerCallback(analyzer));
+
+        for (int i = 0; i < _WARM_UP; i++)
+        {
+            parser.parse(messages[i % messages.length]);
+        }
+
+        Object bean = ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = (Long)allocatedBytes.invoke(bean, threadId);
+
+        for (int i = 0; i < _ITERATIONS; i++)
+        {
+            parser.parse(messages[i % messages.length]);
+        }
+
+        long after = (Long)allocatedBytes.invoke(bean, threadId);
+
+        return (double)(after - before) / _ITERATIONS;
+    }
+
+    /**
+     * Run messages through StraceParser and StracePathAnalyzer and return
+     * results, without those reported at the end of input.
+     */
+    private static List<String> analyze(String... messages)
+    {
+        final List<String> results = new ArrayList<>();
+        StracePathAnalyzer analyzer = new StracePathAnalyzer();
+        StraceParser parser = new StraceParser();
+
+        analyzer.registerCallback(new ICallback<IOutputMessage>()
+            {
+                @Override
+                public void runCallback(IOutputMessage message)
+                {
+                    StringBuilder buff = new StringBuilder();
+
+                    try
+                    {
+                        message.appendTo(buff);
+                    }
+                    catch (IOException ex)
+                    {
+                        throw new AssertionError(ex);
+                    }
+                    results.add(buff.toString());
+                }
+            });
+        parser.registerCallback(new AnalyzerCallback(analyzer));
+
+        for (String message : messages)
+        {
+            parser.parse(message);
+        }
+
+        return results;
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Child that made its first syscall before clone of its parent was
+     * resumed is adopted by the parent and inherits its working directory,
+     * unless it already knows its own.
+     */
+    public void testChildSeenBeforeResumedClone()
+    {
+        assertEquals(Arrays.asList(
+                "{path=\"x.c\", tags=[]}",
+                "{path=\"/a/y.c\", tags=[]}",
+                "{path=\"/c/z.c\", tags=[]}"),
+            analyze(
+                "100 chdir(\"/a\") = 0",
+                "100 clone( <unfinished ...>",
+                "101 open(\"x.c\", O_RDONLY) = 3",
+                "100 <... clone resumed> child_stack=0,"
+                    + " flags=SIGCHLD) = 101",
+                "101 open(\"y.c\", O_RDONLY) = 3",
+                "100 clone( <unfinished ...>",
+                "102 getcwd(\"/c\", 4096) = 3",
+                "100 <... clone resumed> child_stack=0,"
+                    + " flags=SIGCHLD) = 102",
+                "102 open(\"z.c\", O_RDONLY) = 3"));
+    }
+
+    /**
+     * In pooled mode messages that affect neither process model nor output
+     * are analyzed without allocation. The rest still allocate their output
+     * and whatever process model keeps, hence the looser bound on mixed
+     * messages.
+     */
+    public void testAllocationRate() throws Exception
+    {
+        Method allocatedBytes = allocatedBytesMethod();
+
+        if (allocatedBytes == null)
+        {
+            // Allocation can't be measured on this JVM.
+            return;
+        }
+
+        double quietPooled =
+            allocatedBytesPerMessage(allocatedBytes, true, _QUIET_MESSAGES);
+        double quietRegular =
+            allocatedBytesPerMessage(allocatedBytes, false, _QUIET_MESSAGES);
+        double mixedPooled =
+            allocatedBytesPerMessage(allocatedBytes, true, _MIXED_MESSAGES);
+        double mixedRegular =
+            allocatedBytesPerMessage(allocatedBytes, false, _MIXED_MESSAGES);
+        String rates = "quiet: " + quietPooled + " / " + quietRegular
+            + ", mixed: " + mixedPooled + " / " + mixedRegular;
+
+        assertTrue(rates, quietPooled < _MAX_QUIET_BYTES);
+        assertTrue(rates, quietPooled < quietRegular);
+        assertTrue(rates, mixedPooled < mixedRegular * 3 / 4);
+    }
 }
@@ -0,0 +1,251 @@
+package unifiedloganalyzer.analyze.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.IParsedData;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.analyze.AAnalyzer;
+import unifiedloganalyzer.analyze.AnalyzerGraph;
+import unifiedloganalyzer.parse.DummyParsedData;
+
+
+/**
+ * Results of parallel branches and their order.
+ *
+ * @author Peter Trsko
+ */
+public class AnalyzerGraphTest extends TestCase
+{
+    public AnalyzerGraphTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private static class TaggedMessage implements IOutputMessage
+    {
+        private final String _message;
+
+        public TaggedMessage(String message)
+        {
+            _message = message;
+        }
+
+        @Override
+        public void appendTo(Appendable buff) throws IOException
+        {
+            buff.append(_message);
+        }
+
+        @Override
+        public boolean messageEquals(IOutputMessage message)
+        {
+            return message instanceof TaggedMessage
+                && ((TaggedMessage)message)._message.equals(_message);
+        }
+
+        @Override
+        public String toString()
+        {
+            return _message;
+        }
+    }
+
+    /**
+     * Tags each message with its name, fails on message "fail:" followed by
+     * it.
+     */
+    private static class TaggingAnalyzer extends AAnalyzer
+    {
+        public final RuntimeException failure =
+            new RuntimeException("fail");
+
+        private final String _tag;
+
+        public TaggingAnalyzer(String tag)
+        {
+            _tag = tag;
+        }
+
+        @Override
+        protected void processEmptyMessage(IParsedData parsedData)
+        {
+            runCallbacks(new TaggedMessage(_tag + ":eof"));
+        }
+
+        @Override
+        protected void processParsedMessage(IParsedData parsedData)
+        {
+            if (parsedData.getOriginalMessage().equals("fail:" + _tag))
+            {
+                throw failure;
+            }
+
+            runCallbacks(new TaggedMessage(
+                _tag + ":" + parsedData.getOriginalMessage()));
+        }
+
+        @Override
+        protected void processParseError(IParsedData parsedData)
+        {
+            processParsedMessage(parsedData);
+        }
+    }
+
+    private static class Recorder implements ICallback<IOutputMessage>
+    {
+        public final List<String> records = new ArrayList<>();
+
+        @Override
+        public void runCallback(IOutputMessage message)
+        {
+            records.add(message.toString());
+        }
+    }
+
+    private static ParsedData message(String message)
+    {
+        return new ParsedData(new DummyParsedData(message));
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Results of each batch are delivered after all branches processed it,
+     * those of the first branch first, and threads are stopped at the end
+     * of input.
+     */
+    public void testMergedResults()
+    {
+        AnalyzerGraph graph = new AnalyzerGraph(2, 3);
+        Recorder recorder = new Recorder();
+        List<String> expected = new ArrayList<>();
+
+        graph.addBranch(new TaggingAnalyzer("a"));
+        graph.addBranch(new TaggingAnalyzer("b"));
+        graph.registerCallback(recorder);
+
+        for (int i = 0; i < 10; i++)
+        {
+            graph.analyze(message("m" + i));
+        }
+        graph.analyze(ParsedData.emptyMessage());
+
+        for (int batch = 0; batch < 12; batch += 3)
+        {
+            for (String tag : new String[] {"a", "b"})
+            {
+                for (int i = batch; i < batch + 3 && i <= 10; i++)
+                {
+                    expected.add(tag + ":" + (i < 10 ? "m" + i : "eof"));
+                }
+            }
+        }
+
+        assertEquals(expected, recorder.records);
+        assertFalse(graph.isRunning());
+
+        // Graph starts again with another input.
+        recorder.records.clear();
+        graph.analyze(message("x"));
+        assertTrue(graph.isRunning());
+        graph.analyze(ParsedData.emptyMessage());
+
+        assertEquals("[a:x, a:eof, b:x, b:eof]",
+            recorder.records.toString());
+        assertFalse(graph.isRunning());
+    }
+
+    /**
+     * Branch with its own callback doesn't pass results to callbacks of the
+     * graph, and flush() delivers results of incomplete batch.
+     */
+    public void testSeparateOutputAndFlush()
+    {
+        AnalyzerGraph graph = new AnalyzerGraph();
+        Recorder merged = new Recorder();
+        Recorder separate = new Recorder();
+
+        graph.addBranch(new TaggingAnalyzer("a"));
+        graph.addBranch(new TaggingAnalyzer("b"), separate);
+        graph.registerCallback(merged);
+
+        graph.analyze(message("m0"));
+        graph.analyze(message("m1"));
+
+        assertTrue(merged.records.isEmpty());
+
+        graph.flush();
+
+        assertEquals("[a:m0, a:m1]", merged.records.toString());
+        assertEquals("[b:m0, b:m1]", separate.records.toString());
+        assertTrue(graph.isRunning());
+
+        graph.analyze(ParsedData.emptyMessage());
+
+        assertEquals("[a:m0, a:m1, a:eof]", merged.records.toString());
+        assertEquals("[b:m0, b:m1, b:eof]", separate.records.toString());
+    }
+
+    /**
+     * Error of a branch is rethrown and threads are stopped.
+     */
+    public void testFailure()
+    {
+        AnalyzerGraph graph = new AnalyzerGraph(2, 4);
+        TaggingAnalyzer failing = new TaggingAnalyzer("b");
+        Recorder recorder = new Recorder();
+
+        graph.addBranch(new TaggingAnalyzer("a"));
+        graph.addBranch(failing);
+        graph.registerCallback(recorder);
+
+        try
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                graph.analyze(message(i == 5 ? "fail:b" : "m" + i));
+            }
+            graph.analyze(ParsedData.emptyMessage());
+            fail("Error of a branch wasn't rethrown.");
+        }
+        catch (RuntimeException ex)
+        {
+            assertSame(failing.failure, ex);
+        }
+
+        assertFalse(graph.isRunning());
+        assertEquals("[a:m0, a:m1, a:m2, a:m3, b:m0, b:m1, b:m2, b:m3]",
+            recorder.records.toString());
+    }
+}
@@ -0,0 +1,231 @@
+package unifiedloganalyzer.analyze.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.analyze.DummyAnalyzer;
+import unifiedloganalyzer.analyze.DummyOutputMessage;
+import unifiedloganalyzer.analyze.ParseErrorAggregator;
+import unifiedloganalyzer.analyze.path.strace.StracePathAnalyzer;
+import unifiedloganalyzer.parse.DummyParsedData;
+import unifiedloganalyzer.parse.ParseError;
+
+
+/**
+ *
+ * @author Peter Trsko
+ */
+public class ParseErrorAggregatorTest extends TestCase
+{
+    public ParseErrorAggregatorTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private static ParsedData parseError(String message)
+    {
+        return ParsedData.parseError(
+            new ParseError(message, "Unknown type of strace message."));
+    }
+
+    private static ParseErrorAggregator aggregator(int maxSamples,
+        int maxGroups, final List<IOutputMessage> results)
+    {
+        ParseErrorAggregator ret = new ParseErrorAggregator(
+            new DummyAnalyzer(), maxSamples, maxGroups);
+
+        ret.registerCallback(new ICallback<IOutputMessage>()
+            {
+                @Override
+                public void runCallback(IOutputMessage message)
+                {
+                    results.add(message);
+                }
+            });
+
+        return ret;
+    }
+
+    private static String toString(IOutputMessage message) throws IOException
+    {
+        StringBuilder buff = new StringBuilder();
+
+        message.appendTo(buff);
+
+        return buff.toString();
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    public void testSignature()
+    {
+        assertEquals("[pid #] foo(",
+            ParseErrorAggregator.signature(
+                "[pid  123] foo(\"bar\", 0x10) = 0 bad"));
+        assertEquals("# foo(",
+            ParseErrorAggregator.signature("4567 foo(1, 2) = ? <weird>"));
+        assertEquals("+++ exited with # +++",
+            ParseErrorAggregator.signature("+++ exited with 0 +++"));
+        assertEquals("\"\" x",
+            ParseErrorAggregator.signature("\"a\\\"b\" x"));
+        assertEquals("", ParseErrorAggregator.signature(""));
+    }
+
+    /**
+     * Parse errors are summarized at the end of input, everything else
+     * passes through.
+     */
+    public void testSummary() throws IOException
+    {
+        List<IOutputMessage> results = new ArrayList<>();
+        ParseErrorAggregator aggregator = aggregator(2, 10, results);
+
+        aggregator.analyze(parseError("100 foo(1) = 0 bad"));
+        aggregator.analyze(parseError("101 foo(2) = 0 bad"));
+        aggregator.analyze(
+            new ParsedData(new DummyParsedData("message")));
+        aggregator.analyze(parseError("102 foo(3) = 0 bad"));
+        aggregator.analyze(parseError("+++ exited with 0 +++"));
+
+        assertEquals(1, results.size());
+        assertTrue(results.get(0) instanceof DummyOutputMessage);
+
+        aggregator.analyze(ParsedData.emptyMessage());
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(1) instanceof DummyOutputMessage);
+        assertTrue(results.get(2) instanceof ParseErrorAggregator.Summary);
+
+        ParseErrorAggregator.Summary summary =
+            (ParseErrorAggregator.Summary)results.get(2);
+        String str = toString(summary);
+
+        assertEquals(4, summary.getCount());
+        assertEquals(0, summary.getUngroupedCount());
+        assertEquals(2, summary.getGroupCount());
+        assertTrue(str, str.contains("{ signature = # foo(\n"
+            + "    , count = 3\n"
+            + "    , error = Unknown type of strace message.\n"
+            + "    , samples =\n"
+            + "      [ 100 foo(1) = 0 bad\n"
+            + "      , 101 foo(2) = 0 bad\n"
+            + "      ]\n"));
+        assertFalse(str, str.contains("102 foo(3)"));
+        assertTrue(str, str.contains("count = 1\n"));
+
+        // Summary is reported only once and only if there were errors.
+        aggregator.analyze(ParsedData.emptyMessage());
+        assertEquals(4, results.size());
+        assertTrue(results.get(3) instanceof DummyOutputMessage);
+    }
+
+    /**
+     * Analyzer that only counts parse errors gets them as well, so that its
+     * statistics report all of them next to the summary.
+     */
+    public void testParseErrorsAreCounted() throws IOException
+    {
+        final List<IOutputMessage> results = new ArrayList<>();
+        ParseErrorAggregator aggregator = new ParseErrorAggregator(
+            new StracePathAnalyzer(), 1);
+
+        aggregator.registerCallback(new ICallback<IOutputMessage>()
+            {
+                @Override
+                public void runCallback(IOutputMessage message)
+                {
+                    results.add(message);
+                }
+            });
+
+        aggregator.analyze(parseError("100 foo(1) = 0 bad"));
+        aggregator.analyze(parseError("101 foo(2) = 0 bad"));
+        aggregator.analyze(parseError("+++ exited with 0 +++"));
+        aggregator.analyze(ParsedData.emptyMessage());
+
+        String statistics = null;
+        ParseErrorAggregator.Summary summary = null;
+
+        for (IOutputMessage message : results)
+        {
+            if (message instanceof ParseErrorAggregator.Summary)
+            {
+                summary = (ParseErrorAggregator.Summary)message;
+            }
+            else if (toString(message).contains(", parseErrors = "))
+            {
+                statistics = toString(message);
+            }
+        }
+
+        assertNotNull(summary);
+        assertEquals(3, summary.getCount());
+        assertNotNull(statistics);
+        assertTrue(statistics, statistics.contains(", parseErrors = 3\n"));
+    }
+
+    /**
+     * Number of groups and samples is limited, however many errors there
+     * are.
+     */
+    public void testBoundedRetention() throws IOException
+    {
+        List<IOutputMessage> results = new ArrayList<>();
+        ParseErrorAggregator aggregator = aggregator(3, 4, results);
+        StringBuilder longMessage = new StringBuilder("100 foo(");
+
+        for (int i = 0; i < 1000; i++)
+        {
+            longMessage.append('x');
+        }
+
+        for (int i = 0; i < 100000; i++)
+        {
+            aggregator.analyze(parseError(i % 7 == 0
+                ? longMessage.toString()
+                : "100 syscall_" + (char)('a' + i % 7) + "(" + i + ")"));
+        }
+        aggregator.analyze(ParsedData.emptyMessage());
+
+        ParseErrorAggregator.Summary summary =
+            (ParseErrorAggregator.Summary)results.get(results.size() - 1);
+        String str = toString(summary);
+
+        assertEquals(100000, summary.getCount());
+        assertEquals(4, summary.getGroupCount());
+        assertEquals(100000 * 3 / 7, summary.getUngroupedCount(), 1);
+        assertTrue(str.length() < 4 * 3 * 300 + 1000);
+        assertFalse(str, str.contains(longMessage));
+    }
+}
@@ -0,0 +1,224 @@
+package unifiedloganalyzer.io.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.io.MappedFileSource;
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Lines split in mapped memory are the same as those read by
+ * BufferedReader, however they are placed relative to segment boundaries.
+ *
+ * @author Peter Trsko
+ */
+public class MappedFileSourceTest extends TestCase
+{
+    private static final int[] _SEGMENT_SIZES =
+        {1, 2, 3, 4, 5, 7, 8, 13, 64, 4096};
+
+    private File _file;
+
+    public MappedFileSourceTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        _file = File.createTempFile("mapped", ".log");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        _file.delete();
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private static byte[] utf8(String str)
+    {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static String repeat(char c, int count)
+    {
+        char[] chars = new char[count];
+
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+
+    /**
+     * Lines as read by BufferedReader in platform default charset, same as
+     * the one that the source uses.
+     */
+    private static List<String> expectedLines(byte[] data) throws IOException
+    {
+        List<String> ret = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(data), Charset.defaultCharset()));
+
+        for (String line; (line = reader.readLine()) != null; )
+        {
+            ret.add(line);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Read all lines, mixing next() with both kinds of batches.
+     */
+    private List<String> readLines(byte[] data, int segmentSize)
+        throws IOException
+    {
+        List<String> ret = new ArrayList<>();
+        String[] strings = new String[2];
+        LineView[] views = {new LineView(), new LineView(), new LineView()};
+
+        Files.write(_file.toPath(), data);
+
+        try (MappedFileSource source =
+            new MappedFileSource(_file.getPath(), segmentSize))
+        {
+            for (int round = 0; source.hasNext(); round++)
+            {
+                int n;
+
+                switch (round % 3)
+                {
+                    case 0:
+                        ret.add(source.next());
+                        break;
+
+                    case 1:
+                        n = source.nextBatch(strings);
+                        ret.addAll(Arrays.asList(strings).subList(0, n));
+                        break;
+
+                    default:
+                        n = source.nextBatch(views);
+
+                        for (int i = 0; i < n; i++)
+                        {
+                            ret.add(views[i].toString());
+                        }
+                        break;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private void assertSameLines(byte[] data) throws IOException
+    {
+        List<String> expected = expectedLines(data);
+
+        for (int segmentSize : _SEGMENT_SIZES)
+        {
+            assertEquals("segmentSize = " + segmentSize, expected,
+                readLines(data, segmentSize));
+        }
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Empty lines, empty input and input without final newline.
+     */
+    public void testLineTerminators() throws IOException
+    {
+        assertEquals(Arrays.asList(), readLines(new byte[0], 4));
+        assertEquals(Arrays.asList("a", "b"), readLines(utf8("a\nb"), 1));
+        assertEquals(Arrays.asList("", "", "c"),
+            readLines(utf8("\n\r\nc\r\n"), 2));
+
+        String[] inputs = {"", "\n", "\n\n", "a", "a\n", "a\nb", "a\n\nb\n",
+            "\r\n", "a\r\nb\r\n", "a\r\nb", "a\r\n\r\n", "a\r", "a\n\r\n"};
+
+        for (String input : inputs)
+        {
+            assertSameLines(utf8(input));
+        }
+    }
+
+    /**
+     * Lines that don't fit in to a segment, or that cross its boundary at
+     * any position.
+     */
+    public void testSegmentBoundaries() throws IOException
+    {
+        StringBuilder input = new StringBuilder();
+
+        for (int length = 0; length < 40; length++)
+        {
+            input.append(repeat((char)('a' + length % 26), length))
+                .append(length % 3 == 0 ? "\r\n" : "\n");
+        }
+
+        assertSameLines(utf8(input.toString()));
+        assertSameLines(utf8(repeat('x', 10000) + "\n"
+            + repeat('y', 5000) + "\r\nshort\n" + repeat('z', 20000)));
+    }
+
+    /**
+     * Multi-byte characters are decoded even if a segment boundary splits
+     * them, invalid bytes are replaced the same way as by BufferedReader.
+     */
+    public void testMultiByteCharacters() throws IOException
+    {
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < 20; i++)
+        {
+            input.append(repeat('.', i))
+                .append("žluťoučký kůň €")
+                .append(" ☃ 𝄞\r\n");
+        }
+
+        assertSameLines(utf8(input.toString()));
+        assertSameLines(concat(utf8("invalid "), new byte[] {(byte)0xff},
+            utf8(" byte\n€"), new byte[] {(byte)0xe2, (byte)0x82},
+            utf8("\nlast")));
+    }
+}
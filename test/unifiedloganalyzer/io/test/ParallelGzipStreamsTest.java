@@ -0,0 +1,477 @@
+package unifiedloganalyzer.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.io.ParallelGzipInputStream;
+import unifiedloganalyzer.io.ParallelGzipOutputStream;
+
+
+/**
+ * Parallel gzip streams are interchangeable with those of java.util.zip,
+ * including the way they fail.
+ *
+ * @author Peter Trsko
+ */
+public class ParallelGzipStreamsTest extends TestCase
+{
+    /**
+     * Sizes are small, so that inputs consist of many blocks and chunks.
+     */
+    private static final int _BLOCK_SIZE = 1000;
+    private static final int _CHUNK_SIZE = 100;
+    private static final int _THREADS = 3;
+
+    private static final int _FTEXT = 1;
+    private static final int _FHCRC = 2;
+    private static final int _FEXTRA = 4;
+    private static final int _FNAME = 8;
+    private static final int _FCOMMENT = 16;
+
+    public ParallelGzipStreamsTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Log-like data, so that it compresses the way logs do.
+     */
+    private static byte[] data(int size, long seed)
+    {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(size + 100);
+
+        while (builder.length() < size)
+        {
+            builder.append(random.nextInt(100000))
+                .append(" open(\"/usr/lib/lib")
+                .append(Integer.toString(random.nextInt(50), 36))
+                .append(".so\", O_RDONLY) = ")
+                .append(random.nextInt(10) - 2)
+                .append('\n');
+        }
+        builder.setLength(size);
+
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OutputStream gzip = new GZIPOutputStream(out))
+        {
+            gzip.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Compress data by ParallelGzipOutputStream, writing it in pieces of
+     * various sizes, including single bytes.
+     */
+    private static byte[] parallelGzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OutputStream gzip =
+            new ParallelGzipOutputStream(out, _THREADS, _BLOCK_SIZE))
+        {
+            int position = 0;
+
+            for (int piece = 0; position < data.length; piece++)
+            {
+                if (piece % 4 == 0)
+                {
+                    gzip.write(data[position++]);
+
+                    continue;
+                }
+
+                int n = Math.min(piece * 37 % 2500, data.length - position);
+
+                gzip.write(data, position, n);
+                position += n;
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Gzip member with specified header flags, built byte by byte as
+     * described by RFC 1952.
+     */
+    private static byte[] member(byte[] data, int flags) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write(new byte[] {0x1f, (byte)0x8b, 8, (byte)flags,
+            1, 2, 3, 4, 0, 3});
+
+        if ((flags & _FEXTRA) != 0)
+        {
+            // Extra field that contains what looks like a member start.
+            byte[] extra = {'A', 'p', 6, 0, 0x1f, (byte)0x8b, 8, 0, 0, 0};
+
+            writeShort(out, extra.length);
+            out.write(extra);
+        }
+
+        if ((flags & _FNAME) != 0)
+        {
+            out.write("access.log\0".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        if ((flags & _FCOMMENT) != 0)
+        {
+            out.write("Comment.\0".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        if ((flags & _FHCRC) != 0)
+        {
+            CRC32 crc = new CRC32();
+            byte[] header = out.toByteArray();
+
+            crc.update(header, 0, header.length);
+            writeShort(out, (int)crc.getValue() & 0xffff);
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buff = new byte[4096];
+
+        deflater.setInput(data);
+        deflater.finish();
+
+        while (!deflater.finished())
+        {
+            out.write(buff, 0, deflater.deflate(buff));
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+
+        crc.update(data, 0, data.length);
+        writeInt(out, crc.getValue());
+        writeInt(out, data.length);
+
+        return out.toByteArray();
+    }
+
+    private static void writeShort(OutputStream out, int value)
+        throws IOException
+    {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, long value)
+        throws IOException
+    {
+        writeShort(out, (int)value & 0xffff);
+        writeShort(out, (int)(value >>> 16) & 0xffff);
+    }
+
+    /**
+     * Read whole stream, mixing single byte and bulk reads.
+     */
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buff = new byte[777];
+
+        for (int round = 0; ; round++)
+        {
+            if (round % 5 == 0)
+            {
+                int b = in.read();
+
+                if (b < 0)
+                {
+                    break;
+                }
+                out.write(b);
+
+                continue;
+            }
+
+            int n = in.read(buff, 0, buff.length);
+
+            if (n < 0)
+            {
+                break;
+            }
+            out.write(buff, 0, n);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException
+    {
+        try (InputStream in =
+            new GZIPInputStream(new ByteArrayInputStream(compressed)))
+        {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] parallelGunzip(byte[] compressed)
+        throws IOException
+    {
+        try (InputStream in = new ParallelGzipInputStream(
+            new ByteArrayInputStream(compressed), _THREADS, _CHUNK_SIZE))
+        {
+            return readAll(in);
+        }
+    }
+
+    /**
+     * Both streams inflate the same data, or both fail.
+     */
+    private static void assertSameOutcome(String message, byte[] compressed)
+    {
+        byte[] expected;
+
+        try
+        {
+            expected = gunzip(compressed);
+        }
+        catch (IOException ex)
+        {
+            try
+            {
+                parallelGunzip(compressed);
+                fail(message + ": Expected " + ex);
+            }
+            catch (IOException parallelEx)
+            {
+                // Expected.
+            }
+
+            return;
+        }
+
+        try
+        {
+            assertTrue(message,
+                Arrays.equals(expected, parallelGunzip(compressed)));
+        }
+        catch (IOException ex)
+        {
+            fail(message + ": Unexpected " + ex);
+        }
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Data of sizes around block boundaries survive compression and
+     * decompression by any combination of the streams.
+     */
+    public void testRoundTrip() throws IOException
+    {
+        int[] sizes = {0, 1, _BLOCK_SIZE - 1, _BLOCK_SIZE, _BLOCK_SIZE + 1,
+            3 * _BLOCK_SIZE, 3 * _BLOCK_SIZE + 7, 200 * _BLOCK_SIZE};
+
+        for (int size : sizes)
+        {
+            byte[] data = data(size, size);
+            byte[] compressed = parallelGzip(data);
+
+            assertTrue("size = " + size,
+                Arrays.equals(data, gunzip(compressed)));
+            assertTrue("size = " + size,
+                Arrays.equals(data, parallelGunzip(compressed)));
+            assertTrue("size = " + size,
+                Arrays.equals(data, parallelGunzip(gzip(data))));
+        }
+    }
+
+    /**
+     * Empty data still produce valid gzip file, and empty file isn't one.
+     */
+    public void testEmptyInput() throws IOException
+    {
+        byte[] compressed = parallelGzip(new byte[0]);
+
+        assertTrue(compressed.length > 0);
+        assertEquals(0, gunzip(compressed).length);
+        assertEquals(0, parallelGunzip(compressed).length);
+        assertEquals(0, parallelGunzip(gzip(new byte[0])).length);
+
+        assertSameOutcome("empty file", new byte[0]);
+    }
+
+    /**
+     * Concatenated members, of which some are empty and some are larger
+     * than a chunk, are inflated as one stream.
+     */
+    public void testMultipleMembers() throws IOException
+    {
+        byte[] first = data(5000, 1);
+        byte[] second = data(10, 2);
+        byte[] third = data(100000, 3);
+
+        byte[] compressed = concat(gzip(first), gzip(new byte[0]),
+            gzip(second), gzip(third), gzip(new byte[0]));
+
+        assertTrue(Arrays.equals(concat(first, second, third),
+            parallelGunzip(compressed)));
+        assertSameOutcome("members", compressed);
+    }
+
+    /**
+     * Optional header fields are skipped, whether members are inflated in
+     * parallel or sequentially.
+     */
+    public void testHeaderFlags() throws IOException
+    {
+        int[] flagsList = {_FNAME, _FEXTRA, _FCOMMENT, _FHCRC | _FTEXT,
+            _FEXTRA | _FNAME | _FCOMMENT | _FHCRC};
+
+        for (int flags : flagsList)
+        {
+            byte[] small = data(3000, flags);
+            byte[] large = data(300000, flags);
+
+            byte[] compressed = concat(member(small, flags),
+                member(small, 0), member(small, flags));
+
+            assertTrue("flags = " + flags, Arrays.equals(
+                concat(small, small, small), parallelGunzip(compressed)));
+            assertSameOutcome("flags = " + flags, compressed);
+
+            // Single member is inflated sequentially.
+            compressed = member(large, flags);
+
+            assertTrue("flags = " + flags,
+                Arrays.equals(large, parallelGunzip(compressed)));
+            assertSameOutcome("flags = " + flags, compressed);
+        }
+    }
+
+    /**
+     * Input cut at any position, in header, data or trailer of any member,
+     * fails or is accepted the same way as by GZIPInputStream.
+     *
+     * GZIPInputStream ignores up to 26 bytes that follow complete members
+     * at the end of input, even if they are a valid member header. Only
+     * malformed header is ignored here, truncated member isn't.
+     */
+    public void testTruncatedInput() throws IOException
+    {
+        byte[][] members = {member(data(400, 1), _FNAME | _FEXTRA),
+            gzip(data(300, 2)), member(data(500, 3), _FCOMMENT)};
+        int[] headerLengths = {10 + 12 + 11, 10, 10 + 9};
+        byte[] compressed = concat(members);
+
+        // End of the last complete member and of the one being cut.
+        int memberEnd = 0;
+        int nextMemberEnd = members[0].length;
+        int member = 0;
+
+        for (int length = 1; length < compressed.length; length++)
+        {
+            byte[] truncated = Arrays.copyOf(compressed, length);
+            String message = "length = " + length;
+
+            if (length > nextMemberEnd)
+            {
+                memberEnd = nextMemberEnd;
+                nextMemberEnd += members[++member].length;
+            }
+
+            // Header of the member that follows is complete.
+            if (memberEnd > 0
+                && length - memberEnd >= headerLengths[member]
+                && length - memberEnd <= 26)
+            {
+                try
+                {
+                    parallelGunzip(truncated);
+                    fail(message);
+                }
+                catch (IOException ex)
+                {
+                    // Expected.
+                }
+
+                continue;
+            }
+
+            assertSameOutcome(message, truncated);
+        }
+    }
+
+    /**
+     * Input with any byte changed fails or is accepted the same way as by
+     * GZIPInputStream.
+     */
+    public void testCorruptInput() throws IOException
+    {
+        byte[] compressed = concat(member(data(400, 1), _FNAME | _FHCRC),
+            gzip(data(300, 2)), gzip(data(20000, 3)));
+
+        for (int i = 0; i < compressed.length; i += 3)
+        {
+            byte[] corrupt = compressed.clone();
+
+            corrupt[i] ^= 0x5a;
+            assertSameOutcome("position = " + i, corrupt);
+        }
+
+        // Garbage after the last member.
+        assertSameOutcome("garbage", concat(compressed,
+            "garbage".getBytes(StandardCharsets.US_ASCII)));
+    }
+}
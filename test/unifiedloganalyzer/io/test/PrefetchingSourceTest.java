@@ -0,0 +1,312 @@
+package unifiedloganalyzer.io.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.io.ASource;
+import unifiedloganalyzer.io.PrefetchingSource;
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Reading ahead on a separate thread keeps lines, errors and closing of the
+ * underlying source as they would be without it.
+ *
+ * @author Peter Trsko
+ */
+public class PrefetchingSourceTest extends TestCase
+{
+    private static final long _TIMEOUT_MILLIS = 10000;
+
+    public PrefetchingSourceTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Source of numbered lines that fails with the specified exception after
+     * the last one, or that doesn't end if count is negative. It records
+     * whether it was used after it was closed.
+     */
+    private static class NumberedSource extends ASource
+    {
+        private final int _count;
+        private final Exception _error;
+        private int _next = 0;
+
+        public volatile boolean isClosed = false;
+        public volatile boolean isUsedAfterClose = false;
+        public final CountDownLatch closed = new CountDownLatch(1);
+
+        public NumberedSource(int count, Exception error)
+        {
+            _count = count;
+            _error = error;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (isClosed)
+            {
+                isUsedAfterClose = true;
+            }
+
+            return _count < 0 || _next < _count || _error != null;
+        }
+
+        @Override
+        public String next() throws IOException
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            if (_count >= 0 && _next >= _count)
+            {
+                if (_error instanceof IOException)
+                {
+                    throw (IOException)_error;
+                }
+
+                throw (RuntimeException)_error;
+            }
+
+            return Integer.toString(_next++);
+        }
+
+        @Override
+        public void close()
+        {
+            isClosed = true;
+            closed.countDown();
+        }
+    }
+
+    private static List<String> lines(int count)
+    {
+        List<String> ret = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            ret.add(Integer.toString(i));
+        }
+
+        return ret;
+    }
+
+    private static List<String> readAll(PrefetchingSource source)
+        throws IOException
+    {
+        List<String> ret = new ArrayList<>();
+        String[] batch = new String[5];
+        LineView[] views = new LineView[7];
+
+        for (int i = 0; i < views.length; i++)
+        {
+            views[i] = new LineView();
+        }
+
+        // All three ways of reading are mixed.
+        for (int round = 0; ; round++)
+        {
+            int n;
+
+            switch (round % 3)
+            {
+                case 0:
+                    if (!source.hasNext())
+                    {
+                        return ret;
+                    }
+                    ret.add(source.next());
+                    break;
+
+                case 1:
+                    n = source.nextBatch(batch);
+
+                    for (int i = 0; i < n; i++)
+                    {
+                        ret.add(batch[i]);
+                    }
+                    break;
+
+                default:
+                    n = source.nextBatch(views);
+
+                    for (int i = 0; i < n; i++)
+                    {
+                        ret.add(views[i].toString());
+                    }
+                    break;
+            }
+        }
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Lines are passed in order, across many batches and wraparounds of the
+     * buffer, while reading thread keeps waiting for the consumer.
+     */
+    public void testLinesInOrder() throws IOException
+    {
+        NumberedSource underlying = new NumberedSource(10000, null);
+        PrefetchingSource source = new PrefetchingSource(underlying, 2, 3);
+
+        assertEquals(lines(10000), readAll(source));
+        assertFalse(source.hasNext());
+        assertEquals(0, source.nextBatch(new String[1]));
+
+        source.close();
+        assertTrue(underlying.isClosed);
+        assertFalse(underlying.isUsedAfterClose);
+    }
+
+    /**
+     * Error of the underlying source is thrown on the consumer thread after
+     * the lines that precede it.
+     */
+    public void testErrorIsPropagated() throws IOException
+    {
+        IOException ioError = new IOException("I/O");
+        PrefetchingSource source = new PrefetchingSource(
+            new NumberedSource(10, ioError), 2, 4);
+
+        for (String line : lines(10))
+        {
+            assertTrue(source.hasNext());
+            assertEquals(line, source.next());
+        }
+
+        // Error is pending, therefore there is something to be read.
+        assertTrue(source.hasNext());
+
+        try
+        {
+            source.next();
+            fail("Error wasn't propagated.");
+        }
+        catch (IOException ex)
+        {
+            assertSame(ioError, ex);
+        }
+        source.close();
+
+        IllegalStateException runtimeError = new IllegalStateException();
+
+        source = new PrefetchingSource(
+            new NumberedSource(3, runtimeError), 2, 4);
+
+        try
+        {
+            readAll(source);
+            fail("Error wasn't propagated.");
+        }
+        catch (IllegalStateException ex)
+        {
+            assertSame(runtimeError, ex);
+        }
+        source.close();
+    }
+
+    /**
+     * Closing stops reading thread that waits for free space, and only
+     * then the underlying source is closed.
+     */
+    public void testCloseWhileReaderIsBlocked()
+        throws IOException, InterruptedException
+    {
+        NumberedSource underlying = new NumberedSource(-1, null);
+        PrefetchingSource source = new PrefetchingSource(underlying, 1, 1);
+        long deadline = System.currentTimeMillis() + _TIMEOUT_MILLIS;
+
+        assertEquals("0", source.next());
+
+        while (source.getProducerStalls() == 0)
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        source.close();
+        assertTrue(underlying.isClosed);
+        assertFalse(underlying.isUsedAfterClose);
+    }
+
+    /**
+     * Reading thread that is stuck in the underlying source, e.g. on
+     * standard input, closes it once it returns.
+     */
+    public void testCloseWhileSourceBlocks()
+        throws IOException, InterruptedException
+    {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        NumberedSource underlying = new NumberedSource(-1, null)
+            {
+                @Override
+                public String next() throws IOException
+                {
+                    reading.countDown();
+
+                    // Like blocking I/O, it isn't interruptible.
+                    while (release.getCount() > 0)
+                    {
+                        try
+                        {
+                            release.await();
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            // Keep waiting.
+                        }
+                    }
+
+                    return super.next();
+                }
+            };
+        PrefetchingSource source = new PrefetchingSource(underlying, 1, 1);
+
+        assertTrue(reading.await(_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        source.close();
+        assertFalse(underlying.isClosed);
+
+        release.countDown();
+        assertTrue(underlying.closed.await(_TIMEOUT_MILLIS,
+            TimeUnit.MILLISECONDS));
+        assertFalse(underlying.isUsedAfterClose);
+    }
+}
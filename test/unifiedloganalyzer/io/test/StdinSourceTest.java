@@ -0,0 +1,338 @@
+package unifiedloganalyzer.io.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.io.StdinSource;
+import unifiedloganalyzer.utils.LineView;
+
+
+/**
+ * Lines read from standard input are the same as those read by
+ * BufferedReader, however the input arrives, and they are available as soon
+ * as they are terminated.
+ *
+ * @author Peter Trsko
+ */
+public class StdinSourceTest extends TestCase
+{
+    private static final int[] _BUFFER_SIZES = {1, 2, 3, 5, 8, 64, 4096};
+    private static final int[] _READ_SIZES = {1, 2, 3, 7, 1000};
+    private static final long _TIMEOUT_MILLIS = 10000;
+
+    private InputStream _stdin;
+
+    public StdinSourceTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        _stdin = System.in;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        System.setIn(_stdin);
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Input that returns at most specified number of bytes from each read,
+     * like a pipe does when data are written in small pieces.
+     */
+    private static class TricklingInputStream extends InputStream
+    {
+        private final byte[] _data;
+        private final int _readSize;
+        private int _position = 0;
+
+        public TricklingInputStream(byte[] data, int readSize)
+        {
+            _data = data;
+            _readSize = readSize;
+        }
+
+        @Override
+        public int read()
+        {
+            return _position < _data.length ? _data[_position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (_position >= _data.length)
+            {
+                return -1;
+            }
+
+            int n = Math.min(Math.min(len, _readSize),
+                _data.length - _position);
+
+            System.arraycopy(_data, _position, b, off, n);
+            _position += n;
+
+            return n;
+        }
+    }
+
+    private static byte[] utf8(String str)
+    {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static String repeat(char c, int count)
+    {
+        char[] chars = new char[count];
+
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+
+    /**
+     * Lines as read by BufferedReader in platform default charset, same as
+     * the one that the source uses.
+     */
+    private static List<String> expectedLines(byte[] data) throws IOException
+    {
+        List<String> ret = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(data), Charset.defaultCharset()));
+
+        for (String line; (line = reader.readLine()) != null; )
+        {
+            ret.add(line);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Read all lines, mixing next() with both kinds of batches.
+     */
+    private static List<String> readLines(InputStream in, int bufferSize)
+        throws IOException
+    {
+        List<String> ret = new ArrayList<>();
+        String[] strings = new String[2];
+        LineView[] views = {new LineView(), new LineView(), new LineView()};
+
+        System.setIn(in);
+
+        try (StdinSource source = new StdinSource(bufferSize))
+        {
+            for (int round = 0; source.hasNext(); round++)
+            {
+                int n;
+
+                switch (round % 3)
+                {
+                    case 0:
+                        ret.add(source.next());
+                        break;
+
+                    case 1:
+                        n = source.nextBatch(strings);
+                        ret.addAll(Arrays.asList(strings).subList(0, n));
+                        break;
+
+                    default:
+                        n = source.nextBatch(views);
+
+                        for (int i = 0; i < n; i++)
+                        {
+                            ret.add(views[i].toString());
+                        }
+                        break;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private static void assertSameLines(byte[] data) throws IOException
+    {
+        List<String> expected = expectedLines(data);
+
+        for (int bufferSize : _BUFFER_SIZES)
+        {
+            for (int readSize : _READ_SIZES)
+            {
+                assertEquals("bufferSize = " + bufferSize
+                    + ", readSize = " + readSize, expected,
+                    readLines(new TricklingInputStream(data, readSize),
+                        bufferSize));
+            }
+        }
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Empty lines, empty input and input without final newline.
+     */
+    public void testLineTerminators() throws IOException
+    {
+        assertEquals(Arrays.asList(),
+            readLines(new ByteArrayInputStream(new byte[0]), 4));
+        assertEquals(Arrays.asList("a", "b"),
+            readLines(new ByteArrayInputStream(utf8("a\nb")), 1));
+        assertEquals(Arrays.asList("", "", "c"),
+            readLines(new ByteArrayInputStream(utf8("\n\r\nc\r\n")), 2));
+
+        String[] inputs = {"", "\n", "\n\n", "a", "a\n", "a\nb", "a\n\nb\n",
+            "\r\n", "a\r\nb\r\n", "a\r\nb", "a\r\n\r\n", "a\r", "a\n\r\n"};
+
+        for (String input : inputs)
+        {
+            assertSameLines(utf8(input));
+        }
+    }
+
+    /**
+     * Lines that don't fit in to the buffer, or whose parts arrive in
+     * separate reads.
+     */
+    public void testBufferBoundaries() throws IOException
+    {
+        StringBuilder input = new StringBuilder();
+
+        for (int length = 0; length < 40; length++)
+        {
+            input.append(repeat((char)('a' + length % 26), length))
+                .append(length % 3 == 0 ? "\r\n" : "\n");
+        }
+
+        assertSameLines(utf8(input.toString()));
+        assertSameLines(utf8(repeat('x', 10000) + "\n"
+            + repeat('y', 5000) + "\r\nshort\n" + repeat('z', 20000)));
+    }
+
+    /**
+     * Multi-byte characters are decoded even if they are split between
+     * reads, invalid bytes are replaced the same way as by BufferedReader.
+     */
+    public void testMultiByteCharacters() throws IOException
+    {
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < 20; i++)
+        {
+            input.append(repeat('.', i))
+                .append("žluťoučký kůň €")
+                .append(" ☃ 𝄞\r\n");
+        }
+
+        assertSameLines(utf8(input.toString()));
+        assertSameLines(concat(utf8("invalid "), new byte[] {(byte)0xff},
+            utf8(" byte\n€"), new byte[] {(byte)0xe2, (byte)0x82},
+            utf8("\nlast")));
+    }
+
+    /**
+     * Line is available as soon as its terminator arrives, batch doesn't
+     * wait for more lines.
+     */
+    public void testLineIsAvailableWhenTerminated()
+        throws IOException, InterruptedException
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean isBlocked = new AtomicBoolean(false);
+        final byte[] first = utf8("first\nsecond\r\n");
+        InputStream in = new InputStream()
+            {
+                private int _read = 0;
+
+                @Override
+                public int read()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len)
+                {
+                    if (_read == 0)
+                    {
+                        _read = 1;
+                        System.arraycopy(first, 0, b, off, first.length);
+
+                        return first.length;
+                    }
+
+                    // Writer of the pipe didn't write anything else yet.
+                    try
+                    {
+                        if (!release.await(_TIMEOUT_MILLIS,
+                            TimeUnit.MILLISECONDS))
+                        {
+                            isBlocked.set(true);
+                        }
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return -1;
+                }
+            };
+        String[] batch = new String[10];
+
+        System.setIn(in);
+
+        try (StdinSource source = new StdinSource(64))
+        {
+            assertEquals(2, source.nextBatch(batch));
+            assertFalse(isBlocked.get());
+            assertEquals("first", batch[0]);
+            assertEquals("second", batch[1]);
+
+            release.countDown();
+            assertFalse(source.hasNext());
+        }
+    }
+}
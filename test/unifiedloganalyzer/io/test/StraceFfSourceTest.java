@@ -0,0 +1,201 @@
+package unifiedloganalyzer.io.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.io.StraceFfSource;
+import unifiedloganalyzer.parse.strace.StraceParser;
+import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
+import unifiedloganalyzer.parse.strace.StraceTimestamp;
+
+
+/**
+ * Merging of per-process files of <code>strace -ff</code>.
+ *
+ * @author Peter Trsko
+ */
+public class StraceFfSourceTest extends TestCase
+{
+    private File _directory;
+
+    public StraceFfSourceTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        _directory = Files.createTempDirectory("strace-ff").toFile();
+
+        // Trace starts before midnight and some processes make syscalls
+        // without timestamp.
+        write(100,
+            "23:59:59.000001 execve(\"/bin/sh\", [\"sh\"], [/* 0 vars */]) = 0",
+            "23:59:59.000004 vfork() = 101",
+            "00:00:00.000002 wait4(-1, NULL, 0, NULL) = 101",
+            "00:00:00.000007 exit_group(0) = ?");
+        write(101,
+            "23:59:59.000005 chdir(\"/a\") = 0",
+            "23:59:59.000006 open(\"x\", O_RDONLY) = 3",
+            "close(3) = 0",
+            "00:00:00.000001 exit_group(0) = ?");
+        write(102,
+            "23:59:59.000002 open(\"y\", O_RDONLY) = 3",
+            "23:59:59.000003 read(3, \"\", 4096) = 0",
+            "00:00:00.000005 exit_group(0) = ?");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (File file : _directory.listFiles())
+        {
+            file.delete();
+        }
+        _directory.delete();
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private static final List<String> _MERGED = Arrays.asList(
+        "100 23:59:59.000001 execve(\"/bin/sh\", [\"sh\"],"
+            + " [/* 0 vars */]) = 0",
+        "102 23:59:59.000002 open(\"y\", O_RDONLY) = 3",
+        "102 23:59:59.000003 read(3, \"\", 4096) = 0",
+        "100 23:59:59.000004 vfork() = 101",
+        "101 23:59:59.000005 chdir(\"/a\") = 0",
+        "101 23:59:59.000006 open(\"x\", O_RDONLY) = 3",
+        "101 close(3) = 0",
+        "101 00:00:00.000001 exit_group(0) = ?",
+        "100 00:00:00.000002 wait4(-1, NULL, 0, NULL) = 101",
+        "102 00:00:00.000005 exit_group(0) = ?",
+        "100 00:00:00.000007 exit_group(0) = ?");
+
+    private void write(int pid, String... lines) throws IOException
+    {
+        Files.write(new File(_directory, "trace." + pid).toPath(),
+            Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readAll(StraceFfSource source)
+        throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+
+        while (source.hasNext())
+        {
+            lines.add(source.next());
+        }
+        source.close();
+
+        return lines;
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Messages are merged by their timestamps, across midnight.
+     */
+    public void testMergedByTimestamps() throws IOException
+    {
+        assertEquals(_MERGED,
+            readAll(new StraceFfSource(_directory.getPath())));
+        assertEquals(_MERGED, readAll(new StraceFfSource(
+            new File(_directory, "trace").getPath())));
+    }
+
+    /**
+     * StraceParser gets PIDs and timestamps of messages, the same as if they
+     * were produced by <code>strace -f</code>.
+     */
+    public void testParsedTimestamps() throws IOException
+    {
+        final List<StraceSyscallParsedData> syscalls = new ArrayList<>();
+        StraceParser parser = new StraceParser();
+
+        parser.registerCallback(new ICallback<ParsedData>()
+            {
+                @Override
+                public void runCallback(ParsedData parsedData)
+                {
+                    // End of input is reported as well.
+                    if (parsedData.getData()
+                        instanceof StraceSyscallParsedData)
+                    {
+                        syscalls.add(
+                            (StraceSyscallParsedData)parsedData.getData());
+                    }
+                }
+            });
+
+        for (String line : readAll(
+            new StraceFfSource(_directory.getPath())))
+        {
+            parser.parse(line);
+        }
+        parser.eof();
+
+        assertEquals(_MERGED.size(), syscalls.size());
+
+        StraceSyscallParsedData first = syscalls.get(0);
+
+        assertEquals(100, first.getPid());
+        assertEquals(StraceSyscallParsedData.Syscall.EXEC,
+            first.getSyscall());
+        assertEquals(StraceTimestamp.Type.TIME_OF_DAY_MICROSECONDS,
+            first.getTimestampType());
+        assertEquals((23 * 3600 + 59 * 60 + 59) * 1000000000L + 1000L,
+            first.getTimestamp());
+
+        StraceSyscallParsedData untimed = syscalls.get(6);
+
+        assertEquals(101, untimed.getPid());
+        assertEquals("close", untimed.getSyscallName());
+        assertFalse(untimed.hasTimestamp());
+
+        StraceSyscallParsedData last = syscalls.get(10);
+
+        assertEquals(100, last.getPid());
+        assertEquals(7000L, last.getTimestamp());
+    }
+
+    /**
+     * Files that are closed, because too many of them are open, are
+     * reopened where they were left and the result is the same.
+     */
+    public void testLimitedOpenFiles() throws IOException
+    {
+        for (int batchSize = 1; batchSize <= 4; batchSize++)
+        {
+            for (int maxOpenFiles = 1; maxOpenFiles <= 3; maxOpenFiles++)
+            {
+                assertEquals("batchSize = " + batchSize
+                    + ", maxOpenFiles = " + maxOpenFiles,
+                    _MERGED,
+                    readAll(new StraceFfSource(_directory.getPath(), 2,
+                        batchSize, maxOpenFiles)));
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package unifiedloganalyzer.io.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.io.TarSource;
+
+
+/**
+ * Entries of tar archives, with names and sizes stored in any of the
+ * supported ways, and failures on malformed or truncated archives.
+ *
+ * @author Peter Trsko
+ */
+public class TarSourceTest extends TestCase
+{
+    private static final int _BLOCK_SIZE = 512;
+
+    private File _archive;
+
+    public TarSourceTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        _archive = File.createTempFile("archive", ".tar");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        _archive.delete();
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private static byte[] ascii(String str)
+    {
+        return str.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void put(byte[] block, int offset, String value)
+    {
+        byte[] bytes = ascii(value);
+
+        System.arraycopy(bytes, 0, block, offset, bytes.length);
+    }
+
+    /**
+     * Header block with octal size, as written by POSIX tar.
+     */
+    private static byte[] header(String name, long size, char type)
+    {
+        byte[] block = new byte[_BLOCK_SIZE];
+
+        put(block, 0, name);
+        put(block, 100, "0000644\0");
+        put(block, 124, String.format("%011o\0", size));
+        put(block, 136, "00000000000\0");
+        block[156] = (byte)type;
+        put(block, 257, "ustar\000");
+
+        return block;
+    }
+
+    /**
+     * Store header checksum, header must not be changed afterwards.
+     */
+    private static byte[] checksum(byte[] block)
+    {
+        long sum = 0;
+
+        put(block, 148, "        ");
+
+        for (byte b : block)
+        {
+            sum += b & 0xff;
+        }
+        put(block, 148, String.format("%06o\0 ", sum));
+
+        return block;
+    }
+
+    /**
+     * Data padded to whole blocks.
+     */
+    private static byte[] padded(byte[] data)
+    {
+        return Arrays.copyOf(data,
+            (data.length + _BLOCK_SIZE - 1) / _BLOCK_SIZE * _BLOCK_SIZE);
+    }
+
+    private static byte[] entry(byte[] header, String content)
+    {
+        return concat(checksum(header), padded(ascii(content)));
+    }
+
+    private static byte[] entry(String name, String content)
+    {
+        return entry(header(name, content.length(), '0'), content);
+    }
+
+    /**
+     * Pax extended header with records of form "LENGTH KEY=VALUE\n".
+     */
+    private static byte[] pax(String... keyValues)
+    {
+        StringBuilder records = new StringBuilder();
+
+        for (String keyValue : keyValues)
+        {
+            int length = keyValue.length() + 3;
+
+            // LENGTH includes its own digits.
+            while (Integer.toString(length).length() + keyValue.length() + 2
+                != length)
+            {
+                length++;
+            }
+            records.append(length).append(' ').append(keyValue)
+                .append('\n');
+        }
+
+        return entry(header("PaxHeader", records.length(), 'x'),
+            records.toString());
+    }
+
+    private static byte[] concat(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Archive terminated by two blocks of zeros.
+     */
+    private static byte[] archive(byte[]... entries)
+    {
+        return concat(concat(entries), new byte[2 * _BLOCK_SIZE]);
+    }
+
+    /**
+     * Entries of archive as "NAME: LINE|LINE|...".
+     */
+    private List<String> read(byte[] archive) throws IOException
+    {
+        List<String> ret = new ArrayList<>();
+
+        Files.write(_archive.toPath(), archive);
+
+        try (TarSource source = new TarSource(_archive.getPath(), false))
+        {
+            assertFalse(source.hasNext());
+
+            while (source.nextEntry())
+            {
+                StringBuilder entry =
+                    new StringBuilder(source.getEntryName()).append(':');
+                String separator = " ";
+
+                while (source.hasNext())
+                {
+                    entry.append(separator).append(source.next());
+                    separator = "|";
+                }
+                ret.add(entry.toString());
+            }
+
+            assertNull(source.getEntryName());
+            assertFalse(source.nextEntry());
+        }
+
+        return ret;
+    }
+
+    private void assertFails(String message, byte[] archive)
+    {
+        try
+        {
+            read(archive);
+            fail(message);
+        }
+        catch (IOException ex)
+        {
+            // Expected.
+        }
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Only regular files are entries, with their content split in to lines.
+     */
+    public void testEntries() throws IOException
+    {
+        assertEquals(Arrays.asList("a.log: first|second", "empty:",
+            "b.log: last"),
+            read(archive(
+                entry("a.log", "first\nsecond\n"),
+                entry(header("dir/", 0, '5'), ""),
+                entry("empty", ""),
+                entry(header("link", 0, '2'), ""),
+                entry(header("b.log", 5, '\0'), "last\n"))));
+
+        assertEquals(Arrays.asList(), read(archive()));
+        assertEquals(Arrays.asList(), read(new byte[0]));
+    }
+
+    /**
+     * Entry that wasn't read to the end is skipped, including its padding.
+     */
+    public void testPadding() throws IOException
+    {
+        for (int size : new int[] {1, 511, 512, 513, 1024, 1500})
+        {
+            char[] line = new char[size - 1];
+
+            Arrays.fill(line, 'x');
+
+            byte[] archive = archive(entry("big", new String(line) + "\n"),
+                entry("next", "n\n"));
+
+            assertEquals(Arrays.asList("big: " + new String(line),
+                "next: n"), read(archive));
+
+            Files.write(_archive.toPath(), archive);
+
+            try (TarSource source = new TarSource(_archive.getPath(), false))
+            {
+                assertTrue(source.nextEntry());
+                assertTrue(source.nextEntry());
+                assertEquals("next", source.getEntryName());
+                assertEquals("n", source.next());
+            }
+        }
+    }
+
+    /**
+     * Ustar name prefix is prepended to the name, but not in GNU headers,
+     * which use the same space for other data.
+     */
+    public void testUstarPrefix() throws IOException
+    {
+        byte[] ustar = header("file.log", 2, '0');
+        byte[] gnu = header("gnu.log", 2, '0');
+
+        put(ustar, 345, "some/long/directory");
+        put(gnu, 257, "ustar  \0");
+        put(gnu, 345, "\0\0\0\0\0\0\0\0\0\0\0\0atime");
+
+        assertEquals(Arrays.asList("some/long/directory/file.log: u",
+            "gnu.log: g"),
+            read(archive(entry(ustar, "u\n"), entry(gnu, "g\n"))));
+    }
+
+    /**
+     * Pax extended header overrides name and size of the following entry
+     * only, global pax header is ignored.
+     */
+    public void testPax() throws IOException
+    {
+        char[] name = new char[300];
+
+        Arrays.fill(name, 'p');
+
+        String path = "dir/" + new String(name) + "/file.log";
+
+        assertEquals(Arrays.asList(path + ": pax", "short: plain",
+            "sized: 0123456789"),
+            read(archive(
+                pax("mtime=1.5", "path=" + path),
+                entry("short", "pax\n"),
+                entry(header("pax", 0, 'g'), ""),
+                entry("short", "plain\n"),
+                pax("size=11"),
+                entry(header("sized", 0, '0'), "0123456789\n"))));
+    }
+
+    /**
+     * GNU long name is stored as content of a special entry, terminated by
+     * NUL.
+     */
+    public void testGnuLongName() throws IOException
+    {
+        char[] name = new char[250];
+
+        Arrays.fill(name, 'l');
+
+        assertEquals(Arrays.asList(new String(name) + ": long", "next: n"),
+            read(archive(
+                entry(header("././@LongLink", name.length + 1, 'L'),
+                    new String(name) + "\0"),
+                entry(new String(name).substring(0, 99), "long\n"),
+                entry("next", "n\n"))));
+    }
+
+    /**
+     * Sizes are octal with any terminator, or base-256 number.
+     */
+    public void testSizes() throws IOException
+    {
+        byte[] spaces = header("spaces", 0, '0');
+        byte[] base256 = header("base256", 0, '0');
+
+        put(spaces, 124, "      4     ");
+
+        Arrays.fill(base256, 124, 136, (byte)0);
+        base256[124] = (byte)0x80;
+        base256[134] = 0x02;
+        base256[135] = 0x01;
+
+        char[] line = new char[512];
+
+        Arrays.fill(line, 'b');
+
+        assertEquals(Arrays.asList("spaces: abc", "base256: "
+            + new String(line), "next: n"),
+            read(archive(
+                entry(spaces, "abc\n"),
+                entry(base256, new String(line) + "\n"),
+                entry("next", "n\n"))));
+    }
+
+    /**
+     * Headers with wrong checksum, invalid numbers or pax records are
+     * rejected.
+     */
+    public void testMalformedHeaders() throws IOException
+    {
+        byte[] checksum = entry("checksum", "c\n");
+
+        checksum[0] = 'C';
+        assertFails("checksum", archive(checksum));
+
+        byte[] size = header("size", 2, '0');
+
+        put(size, 124, "00000000009\0");
+        assertFails("size", archive(entry(size, "s\n")));
+
+        assertFails("pax length", archive(
+            entry(header("PaxHeader", 13, 'x'), "99 path=long\n"),
+            entry("short", "p\n")));
+        assertFails("pax number", archive(
+            entry(header("PaxHeader", 13, 'x'), "1x path=long\n"),
+            entry("short", "p\n")));
+        assertFails("pax size", archive(pax("size=big"),
+            entry("short", "p\n")));
+    }
+
+    /**
+     * Archive cut in header, content or padding is an error, cut between
+     * entries is the end of archive.
+     */
+    public void testTruncatedArchive() throws IOException
+    {
+        byte[] first = entry("first", "1\n");
+        byte[] archive = concat(first, entry("second", "2\n"));
+
+        for (int length = 1; length < archive.length; length++)
+        {
+            byte[] truncated = Arrays.copyOf(archive, length);
+
+            if (length == first.length)
+            {
+                assertEquals(Arrays.asList("first: 1"), read(truncated));
+            }
+            else
+            {
+                assertFails("length = " + length, truncated);
+            }
+        }
+
+        assertEquals(Arrays.asList("first: 1", "second: 2"), read(archive));
+    }
+}
@@ -0,0 +1,977 @@
+package unifiedloganalyzer.parse.strace.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IParsedData;
+import unifiedloganalyzer.ParsedData;
+import unifiedloganalyzer.parse.strace.ParallelStraceParser;
+import unifiedloganalyzer.parse.strace.StraceParser;
+import unifiedloganalyzer.parse.strace.StraceSignalParsedData;
+import unifiedloganalyzer.parse.strace.StraceSyscallParsedData;
+import unifiedloganalyzer.parse.strace.StraceTimestamp;
+
+
+/**
+ * Validate that StraceTokenizer recognizes messages in the same way as
+ * regular expressions do, by comparing parsed data produced by StraceParser
+ * using either of them.
+ *
+ * @author Peter Trsko
+ */
+public class StraceParserTest extends TestCase
+{
+    private static final String[] _MESSAGES =
+    {
+        "100 open(\"/etc/passwd\", O_RDONLY) = 3",
+        "100 open(\"/nonexistent\", O_RDONLY) = -1 ENOENT"
+            + " (No such file or directory)",
+        "[pid  101] open(\"a\", O_RDONLY) = 3",
+        "[pid 101] openat(AT_FDCWD, \"b/c\", O_RDONLY|O_CLOEXEC) = 4",
+        "[pid 101]   stat(\"x (y)\", {st_mode=S_IFREG|0644, ...}) = 0",
+        "open(\"no-pid\", O_RDONLY) = 3",
+        "101 mmap(NULL, 4096, PROT_READ, MAP_PRIVATE, 3, 0) = 0x7f3c4d5e6000",
+        "101 mmap(NULL, 4096, PROT_READ, MAP_PRIVATE, 3, 0) = 0x7F3C",
+        "101 brk(0) = 0x0",
+        "101 exit_group(0) = ?",
+        "101 _exit(1)                               = ?",
+        "101 read(3, \"x) = 5\", 10) = 5",
+        "101 read(3, \"abc\\n\", 4096) = -1 EAGAIN (Resource (temporarily)"
+            + " unavailable)",
+        "101 write(1, \"=\", 1) = 1 EFOO",
+        "101 write(1, \"=\", 1) = 1 EFOO (",
+        "101 write(1, \"=\", 1) = 1 EFOO ()",
+        "101 write(1, \"=\", 1) = 1 E (x)",
+        "101 write(1, \"=\", 1) = 1  EFOO  (x)",
+        "101 write(1, \"=\", 1) = 1 XFOO (x)",
+        "101 write(1, \"=\", 1) = -",
+        "101 write(1, \"=\", 1) = -12x",
+        "101 write(1, \"=\", 1) =1",
+        "101 write(1, \"=\", 1)= 1",
+        "101 write(1, \"=\", 1) = 0x",
+        "101 write(1, \"=\", 1) = 0x1g",
+        "101 write(1, \"=\", 1) = ??",
+        "101 write(1, \"=\", 1) = ? ERESTARTSYS (To be restarted)",
+        "101 (no name) = 0",
+        "101 f() = 0",
+        "101 f(() = 0",
+        "101 f(a) = 1) = 2",
+        "100 vfork() = 101",
+        "100 clone(child_stack=0, flags=SIGCHLD, child_tidptr=0x7f3c) = 108",
+        "100 execve(\"/bin/sh\", [\"sh\", \"-c\", \"true\"], [\"PWD=/tmp\","
+            + " \"HOME=/root\"]) = 0",
+        "100 execve(\"/bin/sh\", [\"sh\"], [/* 20 vars */]) = 0",
+        "100 chdir(\"/tmp\") = 0",
+        "100 getcwd(\"/home/user\", 4096) = 11",
+        "100 exit(3) = ?",
+        "100 wait4(-1,  <unfinished ...>",
+        "100 wait4(-1, <unfinished ...>",
+        "100 wait4(-1,<unfinished ...>",
+        "100 wait4(-1, <unfinished ...> trailing",
+        "100 wait4(-1, <unfinished ...> <unfinished ...>",
+        "100 wait4(<unfinished ...>",
+        "100 wait4( <unfinished ...>",
+        "100 wait4(-1, <unfinished xyz>",
+        "100 wait4(-1, <unfinished ..>",
+        "100 <... wait4 resumed> [{WIFEXITED(s) && WEXITSTATUS(s) == 0}],"
+            + " 0, NULL) = 101",
+        "100 <... read resumed> \"abc\\n\", 4096) = -1 ENOENT"
+            + " (No such file or directory)",
+        "100 <... open resumed> ) = 3",
+        "100 <... open resumed>) = 3",
+        "100 <...   open   resumed>   ) = 3",
+        "100 <xyz open resumed> ) = 3",
+        "100 <... open resumed ) = 3",
+        "100 <...open resumed> ) = 3",
+        "100 <... open resumed> ) = ?",
+        "100 --- SIGCHLD (Child exited) @ 0 (0) ---",
+        "100 --- SIGCHLD {si_signo=SIGCHLD, si_pid=101} ---",
+        "100 ---  SIG2  (x)",
+        "100 --- SIGCHLD ()",
+        "100 ---- SIGCHLD (x)",
+        "100 --- sigchld (x)",
+        "Process 101 attached",
+        "Process 101 attached - interrupt to quit",
+        "Process  101  detached",
+        "Process 101 resumed",
+        "Process 101 suspended",
+        "Process 101 exited",
+        "100 Process 101 attached",
+        "[pid 100] Process 101 attached",
+        "100 read(3, Process 101 attached",
+        "100 read(3, Process 101 attachedProcess 102 detached",
+        "100 read(3, xProcess  101   suspended",
+        "100 read(3, Process101 attached",
+        "100 read(3, Process 101attached",
+        "100 read(3, Process 1a01 attached",
+        "\"/etc/passwd\", O_RDONLY) = 3",
+        "+++ exited with 0 +++",
+        "100 +++ killed by SIGKILL +++",
+        "garbage line that is not a syscall 995",
+        "",
+        " ",
+        "100",
+        "100 ",
+        "[pid 100]",
+        "[pid 100]x",
+        "[pid ] open(\"a\") = 3",
+        "99999999999 open(\"a\") = 3",
+        "4294967295 open(\"a\") = 3",
+        "100open(\"a\") = 3",
+        "100 open(\"line\r\nbreak\") = 3",
+        "100 open(\"a\") = 3\n",
+        "100 open(\"a\") = 3\r",
+        "100 open(\" \") = 3",
+    };
+
+    /**
+     * Fragments from which random messages are composed.
+     */
+    private static final String[] _FRAGMENTS =
+    {
+        "100", " ", "  ", "[pid ", "]", "open", "(", ")", "\"", "\\\"",
+        ", ", ",", "=", " = ", "-", "1", "0x", "a", "f", "?", "E", "EFOO",
+        "ENOENT", "No such", "<...", "<", "...", ">", "resumed>",
+        " resumed>", "<unfinished", " <unfinished ...>", "---", "SIGCHLD",
+        "Process", "Process ", "attached", "detached", "resumed",
+        "suspended", "[", "{", "}", "\n", "12:34:56", ".5", "<0.5>",
+        " <0.000123>",
+    };
+
+    /**
+     * Content of string arguments that made regular expression used to
+     * parse them backtrack, some of them lead to quadratic time and others
+     * to stack overflow.
+     */
+    private static final String[] _ADVERSARIAL_STRING_UNITS =
+    {
+        "a", "\\\\", "\\101", "ab\\\"", "\\\"\\\"", "\\x", "\\",
+    };
+
+    /**
+     * Linear time is checked by comparing number of characters that parser
+     * reads from input that is _SCALE times larger, see CountingSequence.
+     * Allowed ratio leaves room for constant overhead, while quadratic
+     * parsing would exceed it several times.
+     */
+    private static final int _SIZE = 2000;
+    private static final int _SCALE = 8;
+    private static final double _MAX_RATIO = 2.0 * _SCALE;
+
+    public StraceParserTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Parse messages and describe parsed data in a way that captures all of
+     * their content.
+     */
+    private static List<String> parse(StraceParser.Method method,
+        List<String> messages) throws IOException
+    {
+        return parse(method, null, messages);
+    }
+
+    private static List<String> parse(StraceParser.Method method,
+        Set<StraceSyscallParsedData.Syscall> syscalls, List<String> messages)
+        throws IOException
+    {
+        return parse(method, syscalls, messages, false);
+    }
+
+    /**
+     * In pooled mode messages are passed in one reused buffer, so that
+     * parsed data which aren't retained properly would change.
+     */
+    private static List<String> parse(StraceParser.Method method,
+        Set<StraceSyscallParsedData.Syscall> syscalls, List<String> messages,
+        boolean isPooled) throws IOException
+    {
+        final List<ParsedData> results = new ArrayList<>();
+        StraceParser parser = new StraceParser(method);
+        StringBuilder buffer = new StringBuilder();
+
+        parser.setSubscribedSyscalls(syscalls);
+        parser.setPooled(isPooled);
+
+        parser.registerCallback(new ICallback<ParsedData>()
+            {
+                @Override
+                public void runCallback(ParsedData parsedData)
+                {
+                    results.add(parsedData.retain());
+                }
+            });
+
+        for (String message : messages)
+        {
+            if (isPooled)
+            {
+                buffer.setLength(0);
+                buffer.append(message);
+                parser.parse(buffer);
+            }
+            else
+            {
+                parser.parse((CharSequence)message);
+            }
+        }
+        parser.eof();
+
+        return describe(results);
+    }
+
+    /**
+     * Describe parsed data in a way that captures all of their content.
+     */
+    private static List<String> describe(List<ParsedData> results)
+        throws IOException
+    {
+        List<String> descriptions = new ArrayList<>();
+
+        for (ParsedData parsedData : results)
+        {
+            StringBuilder buff = new StringBuilder();
+            IParsedData data = parsedData.getData();
+
+            buff.append(parsedData.getType()).append(' ');
+
+            if (data != null)
+            {
+                buff.append(data.getClass().getName()).append(' ');
+                data.appendTo(buff);
+            }
+
+            if (data instanceof StraceSignalParsedData)
+            {
+                buff.append(((StraceSignalParsedData)data)
+                    .getSignalDescription());
+            }
+
+            descriptions.add(buff.toString());
+        }
+
+        return descriptions;
+    }
+
+    private static void assertSameParsedData(List<String> messages)
+        throws IOException
+    {
+        List<String> expected =
+            parse(StraceParser.Method.REGULAR_EXPRESSIONS, messages);
+        List<String> actual = parse(StraceParser.Method.TOKENIZER, messages);
+
+        assertEquals(messages.toString(), expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(messages.toString(), expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameParsedData(String message)
+        throws IOException
+    {
+        List<String> messages = new ArrayList<>();
+
+        messages.add(message);
+        assertSameParsedData(messages);
+    }
+
+    private static String repeat(String str, int count)
+    {
+        StringBuilder buff = new StringBuilder(str.length() * count);
+
+        for (int i = 0; i < count; i++)
+        {
+            buff.append(str);
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * Message that counts characters read from it, including those copied
+     * by toString(), and those read from its subsequences.
+     */
+    private static class CountingSequence implements CharSequence
+    {
+        private final CharSequence _str;
+        private final long[] _count;
+
+        public CountingSequence(CharSequence str, long[] count)
+        {
+            _str = str;
+            _count = count;
+        }
+
+        @Override
+        public int length()
+        {
+            return _str.length();
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            _count[0]++;
+
+            return _str.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return new CountingSequence(_str.subSequence(start, end), _count);
+        }
+
+        @Override
+        public String toString()
+        {
+            _count[0] += _str.length();
+
+            return _str.toString();
+        }
+    }
+
+    /**
+     * Parse message and return number of characters read from it.
+     */
+    private static long scannedCharacters(String message)
+    {
+        long[] count = {0};
+        StraceParser parser = new StraceParser(StraceParser.Method.TOKENIZER);
+
+        parser.parse(new CountingSequence(message, count));
+        parser.eof();
+
+        return count[0];
+    }
+
+    /**
+     * Check that parsing of message produced by specified format and
+     * repeated unit takes time linear in the number of repetitions, i.e.
+     * that number of characters read is.
+     */
+    private static void assertLinearTime(String format, String unit)
+    {
+        String small = String.format(format, repeat(unit, _SIZE));
+        String large = String.format(format, repeat(unit, _SIZE * _SCALE));
+        long smallCount = scannedCharacters(small);
+        long largeCount = scannedCharacters(large);
+        double ratio = (double)largeCount / Math.max(smallCount, 1);
+
+        assertTrue(format + " with " + unit + ": " + smallCount + " and "
+            + largeCount + " characters read", smallCount >= small.length());
+        assertTrue(format + " with " + unit + ": ratio " + ratio,
+            ratio < _MAX_RATIO);
+    }
+
+    private static StraceSyscallParsedData parseSyscall(String message)
+        throws IOException
+    {
+        return parseSyscall(StraceParser.Method.TOKENIZER, message);
+    }
+
+    private static StraceSyscallParsedData parseSyscall(
+        StraceParser.Method method, String message) throws IOException
+    {
+        final List<ParsedData> results = new ArrayList<>();
+        StraceParser parser = new StraceParser(method);
+
+        parser.registerCallback(new ICallback<ParsedData>()
+            {
+                @Override
+                public void runCallback(ParsedData parsedData)
+                {
+                    results.add(parsedData);
+                }
+            });
+        parser.parse((CharSequence)message);
+
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).getData()
+            instanceof StraceSyscallParsedData);
+
+        return (StraceSyscallParsedData)results.get(0).getData();
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Each message on its own.
+     */
+    public void testMessages() throws IOException
+    {
+        for (String message : _MESSAGES)
+        {
+            assertSameParsedData(message);
+        }
+    }
+
+    /**
+     * All messages in sequence, so that interrupted messages go through
+     * backlog.
+     */
+    public void testSequence() throws IOException
+    {
+        List<String> messages = new ArrayList<>();
+
+        for (String message : _MESSAGES)
+        {
+            messages.add(message);
+        }
+
+        assertSameParsedData(messages);
+    }
+
+    /**
+     * Every prefix of every message, which covers messages that are
+     * truncated at any position.
+     */
+    public void testPrefixes() throws IOException
+    {
+        for (String message : _MESSAGES)
+        {
+            for (int i = 0; i < message.length(); i++)
+            {
+                assertSameParsedData(message.substring(0, i));
+            }
+        }
+    }
+
+    /**
+     * Messages where a space is inserted at every position.
+     */
+    public void testInsertedSpaces() throws IOException
+    {
+        for (String message : _MESSAGES)
+        {
+            for (int i = 0; i <= message.length(); i++)
+            {
+                assertSameParsedData(
+                    message.substring(0, i) + ' ' + message.substring(i));
+            }
+        }
+    }
+
+    /**
+     * Messages composed of random fragments, with fixed seed so that the
+     * test is reproducible.
+     */
+    public void testRandomMessages() throws IOException
+    {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++)
+        {
+            StringBuilder message = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+
+            for (int j = 0; j < length; j++)
+            {
+                message.append(_FRAGMENTS[random.nextInt(_FRAGMENTS.length)]);
+            }
+
+            assertSameParsedData(message.toString());
+        }
+    }
+
+    /**
+     * Escape sequences in paths and in arguments of execve are decoded.
+     */
+    public void testDecodedStrings() throws IOException
+    {
+        StraceSyscallParsedData data = parseSyscall(
+            "100 open(\"/tmp/\\303\\241 \\\"x\\\"\\n\", O_RDONLY) = 3");
+
+        assertEquals("/tmp/\u00e1 \"x\"\n", data.getPath());
+
+        data = parseSyscall("100 execve(\"/bin/sh\", [\"sh\", \"a\\tb\"],"
+            + " [\"A=1\\n2\", \"B=\\x41\"]) = 0");
+
+        assertEquals("/bin/sh", data.getPath());
+        assertEquals(2, data.getCommandLineArgs().length);
+        assertEquals("a\tb", data.getCommandLineArgs()[1]);
+        assertEquals("1\n2", data.getEnvVar("A"));
+        assertEquals("A", data.getEnvVar("B"));
+
+        data = parseSyscall("100 open(\"/tmp/truncated\"..., O_RDONLY) = 3");
+
+        assertEquals("/tmp/truncated", data.getPath());
+
+        data = parseSyscall("100 open(\"/tmp/unterminated, O_RDONLY) = 3");
+
+        assertNull(data.getPath());
+    }
+
+    /**
+     * Adversarial string arguments, both valid and invalid ones, are parsed
+     * in linear time.
+     */
+    public void testStringArgumentsInLinearTime() throws IOException
+    {
+        for (String unit : _ADVERSARIAL_STRING_UNITS)
+        {
+            // Terminated string.
+            assertLinearTime("100 open(\"%s\", O_RDONLY) = 3", unit);
+
+            // Closing quote not followed by separator of arguments.
+            assertLinearTime("100 open(\"%s\"x, O_RDONLY) = 3", unit);
+
+            // Unterminated string.
+            assertLinearTime("100 open(\"%s, O_RDONLY) = 3", unit);
+
+            // Unfinished syscall.
+            assertLinearTime("100 open(\"%s <unfinished ...>", unit);
+        }
+    }
+
+    /**
+     * Long lists of arguments and environment variables are parsed in
+     * linear time.
+     */
+    public void testExecveInLinearTime() throws IOException
+    {
+        assertLinearTime("100 execve(\"/bin/sh\", [%s\"x\"], []) = 0",
+            "\"arg\", ");
+        assertLinearTime("100 execve(\"/bin/sh\", [], [%s\"X=1\"]) = 0",
+            "\"A=\\101\", ");
+        assertLinearTime("100 execve(\"/bin/sh\", [], [%s\"X=1\"...) = 0",
+            "\"A=\\\"\", ");
+    }
+
+    /**
+     * Syscalls that aren't subscribed produce count-only records, the rest
+     * is parsed fully, regardless of method.
+     */
+    public void testSubscribedSyscalls() throws IOException
+    {
+        Set<StraceSyscallParsedData.Syscall> syscalls =
+            EnumSet.of(StraceSyscallParsedData.Syscall.OPEN);
+        List<String> messages = new ArrayList<>();
+
+        for (String message : _MESSAGES)
+        {
+            messages.add(message);
+        }
+
+        List<String> all = parse(StraceParser.Method.TOKENIZER, messages);
+        List<String> subscribed =
+            parse(StraceParser.Method.TOKENIZER, syscalls, messages);
+
+        assertEquals(subscribed, parse(StraceParser.Method.REGULAR_EXPRESSIONS,
+            syscalls, messages));
+        assertEquals(all.size(), subscribed.size());
+
+        for (int i = 0; i < all.size(); i++)
+        {
+            if (all.get(i).contains("syscall = OPEN\n"))
+            {
+                assertEquals(all.get(i), subscribed.get(i));
+            }
+            else if (all.get(i).contains("syscall = "))
+            {
+                assertTrue(subscribed.get(i),
+                    subscribed.get(i).contains("originalMessage = \n"));
+            }
+            else
+            {
+                assertEquals(all.get(i), subscribed.get(i));
+            }
+        }
+
+        StraceSyscallParsedData data =
+            parseSyscall("[pid 101] read(3, \"abc\", 3) = 3");
+
+        assertFalse(data.isCountOnly());
+    }
+
+    /**
+     * Unfinished syscalls are joined with their resumed halves, those that
+     * aren't resumed are reported as they are.
+     */
+    public void testReassembledSyscalls() throws IOException
+    {
+        List<String> messages = new ArrayList<>();
+
+        messages.add("100 open(\"/a\", O_RDONLY <unfinished ...>");
+        messages.add("101 read(3,  <unfinished ...>");
+        messages.add("100 --- SIGCHLD (Child exited) @ 0 (0) ---");
+        messages.add("101 <... read resumed> \"x\", 1) = 1");
+        messages.add("100 <... open resumed> ) = 3");
+        messages.add("102 wait4(-1,  <unfinished ...>");
+        messages.add("102 open(\"/b\", O_RDONLY) = 4");
+        messages.add("103 clone(child_stack=0, <unfinished ...>");
+        messages.add("103 <... clone resumed> flags=SIGCHLD) = 104");
+        messages.add("104 <... open resumed> ) = 5");
+        messages.add("105 chdir(\"/c\" <unfinished ...>");
+
+        assertSameParsedData(messages);
+
+        List<String> results =
+            parse(StraceParser.Method.TOKENIZER, messages);
+        String[] expected =
+        {
+            "--- SIGCHLD",
+            "originalMessage = 101 read(3, \"x\", 1) = 1\n",
+            "originalMessage = 100 open(\"/a\", O_RDONLY) = 3\n",
+            "originalMessage = 102 wait4(-1,  <unfinished ...>\n",
+            "originalMessage = 102 open(\"/b\", O_RDONLY) = 4\n",
+            "originalMessage = 103 clone(child_stack=0, flags=SIGCHLD)"
+                + " = 104\n",
+            "originalMessage = 104 <... open resumed> ) = 5\n",
+            "originalMessage = 105 chdir(\"/c\" <unfinished ...>\n",
+            "EMPTY_MESSAGE",
+        };
+
+        assertEquals(results.toString(), expected.length, results.size());
+
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertTrue(results.get(i), results.get(i).contains(expected[i]));
+        }
+
+        assertTrue(results.get(2).contains("flag = FULL_CALL\n"));
+        assertTrue(results.get(5).contains("childPid = 104\n"));
+
+        // Halves of syscalls that aren't subscribed are joined too.
+        List<String> subscribed = parse(StraceParser.Method.TOKENIZER,
+            EnumSet.of(StraceSyscallParsedData.Syscall.OPEN), messages);
+
+        assertEquals(results.size(), subscribed.size());
+        assertTrue(subscribed.get(1).contains("flag = FULL_CALL\n"));
+    }
+
+    /**
+     * Syscall names are categorized without being copied and records of
+     * known syscalls share canonical name.
+     */
+    public void testSyscallNames() throws IOException
+    {
+        Object[][] categories =
+        {
+            {"access", StraceSyscallParsedData.Syscall.ACCESS},
+            {"chdir", StraceSyscallParsedData.Syscall.CHDIR},
+            {"clone", StraceSyscallParsedData.Syscall.FORK},
+            {"creat", StraceSyscallParsedData.Syscall.CREAT},
+            {"execve", StraceSyscallParsedData.Syscall.EXEC},
+            {"exit", StraceSyscallParsedData.Syscall.EXIT},
+            {"exit_group", StraceSyscallParsedData.Syscall.EXIT},
+            {"fork", StraceSyscallParsedData.Syscall.FORK},
+            {"fstat", StraceSyscallParsedData.Syscall.FSTAT},
+            {"fstat64", StraceSyscallParsedData.Syscall.FSTAT},
+            {"getcwd", StraceSyscallParsedData.Syscall.GETCWD},
+            {"lstat", StraceSyscallParsedData.Syscall.LSTAT},
+            {"lstat64", StraceSyscallParsedData.Syscall.LSTAT},
+            {"open", StraceSyscallParsedData.Syscall.OPEN},
+            {"openat", StraceSyscallParsedData.Syscall.OPENAT},
+            {"readlink", StraceSyscallParsedData.Syscall.READLINK},
+            {"stat", StraceSyscallParsedData.Syscall.STAT},
+            {"stat64", StraceSyscallParsedData.Syscall.STAT},
+            {"statfs", StraceSyscallParsedData.Syscall.STATFS},
+            {"statfs64", StraceSyscallParsedData.Syscall.STATFS},
+            {"vfork", StraceSyscallParsedData.Syscall.FORK},
+            {"read", StraceSyscallParsedData.Syscall.UNKNOWN},
+            {"newfstatat", StraceSyscallParsedData.Syscall.UNKNOWN},
+            {"no_such_syscall", StraceSyscallParsedData.Syscall.UNKNOWN},
+            {"ope", StraceSyscallParsedData.Syscall.UNKNOWN},
+            {"openatx", StraceSyscallParsedData.Syscall.UNKNOWN},
+            {"", StraceSyscallParsedData.Syscall.UNKNOWN},
+        };
+
+        for (Object[] category : categories)
+        {
+            String name = (String)category[0];
+            StringBuilder buff = new StringBuilder("100 ")
+                .append(name)
+                .append("(");
+
+            assertEquals(name, category[1],
+                StraceSyscallParsedData.Syscall.categorize(
+                    new String(name)));
+            assertEquals(name, category[1],
+                StraceSyscallParsedData.Syscall.categorize(buff, 4,
+                    4 + name.length()));
+        }
+
+        // Names of known syscalls are canonical, unknown ones are kept.
+        assertSame("openat",
+            new StraceSyscallParsedData("", new String("openat"))
+                .getSyscallName());
+
+        String unknown = new String("no_such_syscall");
+
+        assertSame(unknown,
+            new StraceSyscallParsedData("", unknown).getSyscallName());
+
+        List<String> messages = Arrays.asList(
+            "100 openat(AT_FDCWD, \"a\", O_RDONLY) = 3",
+            "100 openat(AT_FDCWD, \"b\", O_RDONLY) = 4",
+            "100 read(3, \"x\"..., 1) = 1",
+            "100 read(4, \"\\n\"..., 1) = 1");
+
+        for (StraceParser.Method method : StraceParser.Method.values())
+        {
+            List<StraceSyscallParsedData> syscalls = new ArrayList<>();
+
+            for (String message : messages)
+            {
+                syscalls.add(parseSyscall(method, message));
+            }
+
+            assertSame(syscalls.get(0).getSyscallName(),
+                syscalls.get(1).getSyscallName());
+            assertSame(syscalls.get(2).getSyscallName(),
+                syscalls.get(3).getSyscallName());
+            assertEquals("read", syscalls.get(3).getSyscallName());
+        }
+    }
+
+    /**
+     * Timestamps of all kinds and syscall durations are parsed in to
+     * nanoseconds and the rest of the message is parsed as if they weren't
+     * there.
+     */
+    public void testTimestampsAndDurations() throws IOException
+    {
+        String[] messages =
+        {
+            "[pid 100] 1400000000.123456 open(\"a\", O_RDONLY) = 3"
+                + " <0.000123>",
+            "100 12:34:56.5 open(\"a\", O_RDONLY) = -1 ENOENT"
+                + " (No such file or directory) <1.5>",
+            "12:34:56 open(\"a\", O_RDONLY) = 3",
+            "100      0.000042 brk(0) = 0x1c2d000  <0.000002>",
+            "100 1400000000.1 open(\"a\", O_RDONLY <unfinished ...>",
+            "100 1400000000.2 <... open resumed> ) = 3 <0.1>",
+            "100 1400000000.3 --- SIGCHLD (Child exited) @ 0 (0) ---",
+            "100 1400000000.4 Process 101 attached",
+            "100 1400000000.5 read(3, \"<1.5>\", 5) = 5",
+            "100 read(3, \"x\", 1) = 1 <1.>",
+            "100 read(3, \"x\", 1) = 1<1.5>",
+            "<0.5>",
+        };
+
+        for (String message : messages)
+        {
+            assertSameParsedData(message);
+        }
+        assertSameParsedData(Arrays.asList(messages));
+
+        StraceSyscallParsedData syscall = parseSyscall(messages[0]);
+
+        assertEquals(StraceSyscallParsedData.Syscall.OPEN,
+            syscall.getSyscall());
+        assertEquals("3", syscall.getResult());
+        assertEquals(StraceTimestamp.Type.SECONDS_SINCE_EPOCH,
+            syscall.getTimestampType());
+        assertEquals(1400000000123456000L, syscall.getTimestamp());
+        assertEquals(123000L, syscall.getDuration());
+
+        syscall = parseSyscall(messages[1]);
+        assertEquals("ENOENT", syscall.getErrno());
+        assertEquals("No such file or directory",
+            syscall.getErrnoDescription());
+        assertEquals(StraceTimestamp.Type.TIME_OF_DAY_MICROSECONDS,
+            syscall.getTimestampType());
+        assertEquals((12 * 3600 + 34 * 60 + 56) * 1000000000L + 500000000L,
+            syscall.getTimestamp());
+        assertEquals(1500000000L, syscall.getDuration());
+
+        syscall = parseSyscall(messages[2]);
+        assertEquals(StraceTimestamp.Type.TIME_OF_DAY,
+            syscall.getTimestampType());
+        assertFalse(syscall.hasDuration());
+
+        syscall = parseSyscall(messages[3]);
+        assertEquals(StraceTimestamp.Type.RELATIVE,
+            syscall.getTimestampType());
+        assertEquals(42000L, syscall.getTimestamp());
+        assertEquals(2000L, syscall.getDuration());
+        assertTrue(syscall.isResultPointer());
+
+        syscall = parseSyscall(messages[8]);
+        assertEquals("5", syscall.getResult());
+        assertFalse(syscall.hasDuration());
+
+        syscall = parseSyscall(_MESSAGES[0]);
+        assertFalse(syscall.hasTimestamp());
+        assertFalse(syscall.hasDuration());
+
+        // Joined syscall started when it was reported as unfinished and
+        // took as long as reported when it was resumed, whether it's parsed
+        // fully or not.
+        List<String> halves = Arrays.asList(messages[4], messages[5]);
+        String expected = "timestamp = SECONDS_SINCE_EPOCH"
+            + " 1400000000100000000\n, duration = 100000000\n";
+
+        for (Set<StraceSyscallParsedData.Syscall> syscalls
+            : Arrays.asList(null,
+                EnumSet.of(StraceSyscallParsedData.Syscall.EXIT)))
+        {
+            List<String> results =
+                parse(StraceParser.Method.TOKENIZER, syscalls, halves);
+
+            assertEquals(results.toString(), 2, results.size());
+            assertTrue(results.get(0), results.get(0).contains(expected));
+            assertTrue(results.get(0),
+                results.get(0).contains("flag = FULL_CALL\n"));
+        }
+    }
+
+    /**
+     * Parser in pooled mode produces the same parsed data, once they are
+     * retained, as it does in regular mode.
+     */
+    public void testPooledParsedData() throws IOException
+    {
+        Set<StraceSyscallParsedData.Syscall> syscalls =
+            EnumSet.of(StraceSyscallParsedData.Syscall.OPEN);
+        List<String> messages = new ArrayList<>();
+        Random random = new Random(16);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            messages.add(_MESSAGES[random.nextInt(_MESSAGES.length)]);
+        }
+
+        for (StraceParser.Method method : StraceParser.Method.values())
+        {
+            assertEquals(parse(method, null, messages, false),
+                parse(method, null, messages, true));
+            assertEquals(parse(method, syscalls, messages, false),
+                parse(method, syscalls, messages, true));
+        }
+    }
+
+    /**
+     * ParallelStraceParser produces the same parsed data in the same order
+     * as StraceParser, including interrupted messages and unfinished
+     * syscalls that span batches, regardless of how messages are passed.
+     */
+    public void testParallelParser() throws IOException
+    {
+        Set<StraceSyscallParsedData.Syscall> syscalls =
+            EnumSet.of(StraceSyscallParsedData.Syscall.OPEN);
+        List<String> messages = new ArrayList<>();
+        Random random = new Random(17);
+
+        for (int i = 0; i < 5 * ParallelStraceParser.BATCH_SIZE; i++)
+        {
+            messages.add(_MESSAGES[random.nextInt(_MESSAGES.length)]);
+        }
+
+        for (StraceParser.Method method : StraceParser.Method.values())
+        {
+            for (Set<StraceSyscallParsedData.Syscall> subscribed
+                : Arrays.asList(null, syscalls))
+            {
+                final List<ParsedData> results = new ArrayList<>();
+                ParallelStraceParser parser =
+                    new ParallelStraceParser(3, method);
+                CharSequence[] batch = new CharSequence[100];
+
+                parser.setSubscribedSyscalls(subscribed);
+                parser.registerCallback(new ICallback<ParsedData>()
+                    {
+                        @Override
+                        public void runCallback(ParsedData parsedData)
+                        {
+                            results.add(parsedData);
+                        }
+                    });
+
+                for (int i = 0; i < messages.size(); )
+                {
+                    if (random.nextInt(10) == 0)
+                    {
+                        parser.parse(messages.get(i++));
+                        continue;
+                    }
+
+                    // Batches that aren't full are delivered immediately.
+                    int length = Math.min(1 + random.nextInt(batch.length),
+                        messages.size() - i);
+
+                    for (int j = 0; j < length; j++)
+                    {
+                        batch[j] = messages.get(i++);
+                    }
+                    parser.parseBatch(batch, 0, length);
+                }
+                parser.eof();
+
+                assertEquals(parse(method, subscribed, messages),
+                    describe(results));
+            }
+        }
+    }
+
+    /**
+     * Pending unfinished syscalls are part of parser state.
+     */
+    public void testReassemblyState() throws IOException
+    {
+        final List<ParsedData> results = new ArrayList<>();
+        StraceParser parser = new StraceParser();
+
+        parser.parse(
+            (CharSequence)"100 open(\"/a\", O_RDONLY <unfinished ...>");
+        parser.parse((CharSequence)"101 read(3, Process 102 attached");
+
+        StraceParser restored = new StraceParser();
+
+        restored.restoreState(parser.saveState());
+        restored.registerCallback(new ICallback<ParsedData>()
+            {
+                @Override
+                public void runCallback(ParsedData parsedData)
+                {
+                    results.add(parsedData);
+                }
+            });
+        restored.parse((CharSequence)"\"x\", 1) = 1");
+        restored.parse((CharSequence)"100 <... open resumed> ) = 3");
+
+        assertEquals(2, results.size());
+        assertEquals("101 read(3, \"x\", 1) = 1",
+            results.get(0).getOriginalMessage());
+        assertEquals("100 open(\"/a\", O_RDONLY) = 3",
+            results.get(1).getOriginalMessage());
+    }
+}
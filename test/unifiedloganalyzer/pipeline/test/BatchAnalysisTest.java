@@ -0,0 +1,246 @@
+package unifiedloganalyzer.pipeline.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.IAnalyzer;
+import unifiedloganalyzer.IParser;
+import unifiedloganalyzer.UnifiedLogAnalyzer;
+import unifiedloganalyzer.analyze.DummyAnalyzer;
+import unifiedloganalyzer.io.FileSink;
+import unifiedloganalyzer.io.FileSource;
+import unifiedloganalyzer.parse.DummyParser;
+import unifiedloganalyzer.pipeline.BatchAnalysis;
+import unifiedloganalyzer.utils.IFactory;
+
+
+/**
+ * Batch mode analyses every input separately.
+ *
+ * @author Peter Trsko
+ */
+public class BatchAnalysisTest extends TestCase
+{
+    private File _directory;
+
+    public BatchAnalysisTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        _directory = Files.createTempDirectory("batch").toFile();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (File file : _directory.listFiles())
+        {
+            file.delete();
+        }
+        _directory.delete();
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private static final IFactory<IParser> _PARSER_FACTORY =
+        new IFactory<IParser>()
+        {
+            @Override
+            public IParser create()
+            {
+                return new DummyParser();
+            }
+        };
+
+    private static final IFactory<IAnalyzer> _ANALYZER_FACTORY =
+        new IFactory<IAnalyzer>()
+        {
+            @Override
+            public IAnalyzer create()
+            {
+                return new DummyAnalyzer();
+            }
+        };
+
+    private String write(String name, String... lines) throws IOException
+    {
+        File file = new File(_directory, name);
+
+        Files.write(file.toPath(), Arrays.asList(lines),
+            StandardCharsets.UTF_8);
+
+        return file.getPath();
+    }
+
+    private List<String> read(String name) throws IOException
+    {
+        return Files.readAllLines(new File(_directory, name).toPath(),
+            StandardCharsets.UTF_8);
+    }
+
+    private static List<String> sorted(String[] names)
+    {
+        List<String> list = new ArrayList<>(Arrays.asList(names));
+
+        Collections.sort(list);
+
+        return list;
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Results of each input are written next to it, and they are the same
+     * as if the input was analysed alone, regardless of limits.
+     */
+    public void testInputsAreAnalysedSeparately()
+        throws IOException, InterruptedException
+    {
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++)
+        {
+            inputs.add(write("in" + i, "a" + i, "b" + i, "b" + i));
+        }
+
+        for (int maxConcurrency : new int[] {1, 3, 16})
+        {
+            for (long maxMemory : new long[] {1, 1L << 30})
+            {
+                assertEquals(0, new BatchAnalysis(null, false,
+                    _PARSER_FACTORY, _ANALYZER_FACTORY, maxConcurrency,
+                    maxMemory).run(inputs));
+
+                for (int i = 0; i < 10; i++)
+                {
+                    UnifiedLogAnalyzer.doMain(
+                        new FileSource(inputs.get(i), false),
+                        _PARSER_FACTORY.create(),
+                        _ANALYZER_FACTORY.create(),
+                        new FileSink(
+                            new File(_directory, "alone").getPath(),
+                            false, true, -1));
+
+                    assertEquals(read("alone"), read("in" + i
+                        + BatchAnalysis.OUTPUT_SUFFIX));
+                }
+            }
+        }
+    }
+
+    /**
+     * Inputs whose output files would be the same, or would overwrite
+     * another input, are rejected before anything is written.
+     */
+    public void testCollidingOutputs()
+        throws IOException, InterruptedException
+    {
+        File a = new File(_directory, "a");
+        File b = new File(_directory, "b");
+        File outputDirectory = new File(_directory, "out");
+
+        assertTrue(a.mkdir());
+        assertTrue(b.mkdir());
+        assertTrue(outputDirectory.mkdir());
+
+        try
+        {
+            String first = write("a/x", "x");
+            String second = write("b/x", "y");
+
+            assertNull(BatchAnalysis.findCollision(
+                Arrays.asList(first, second), null));
+            assertEquals(second, BatchAnalysis.findCollision(
+                Arrays.asList(first, second), outputDirectory.getPath()));
+            String same = _directory + "/a/../a/x";
+
+            assertEquals(same, BatchAnalysis.findCollision(
+                Arrays.asList(first, same), null));
+
+            String output = write("a/x" + BatchAnalysis.OUTPUT_SUFFIX, "z");
+
+            assertEquals(first, BatchAnalysis.findCollision(
+                Arrays.asList(output, first), null));
+
+            try
+            {
+                new BatchAnalysis(outputDirectory.getPath(), false,
+                    _PARSER_FACTORY, _ANALYZER_FACTORY, 2, 1L << 20)
+                    .run(Arrays.asList(first, second));
+                fail("Colliding outputs were accepted.");
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Expected.
+            }
+
+            assertEquals(0, outputDirectory.list().length);
+        }
+        finally
+        {
+            for (File directory : new File[] {a, b, outputDirectory})
+            {
+                for (File file : directory.listFiles())
+                {
+                    file.delete();
+                }
+                directory.delete();
+            }
+        }
+    }
+
+    /**
+     * Input that can't be analysed is counted as failed and the others are
+     * analysed anyway.
+     */
+    public void testFailedInput() throws IOException, InterruptedException
+    {
+        File outputDirectory = new File(_directory, "out");
+        List<String> inputs = Arrays.asList(
+            write("first", "x"),
+            new File(_directory, "missing").getPath(),
+            write("last", "y"));
+
+        assertTrue(outputDirectory.mkdir());
+
+        try
+        {
+            assertEquals(1, new BatchAnalysis(outputDirectory.getPath(),
+                false, _PARSER_FACTORY, _ANALYZER_FACTORY, 2, 1L << 20)
+                .run(inputs));
+
+            assertEquals(Arrays.asList("first.out", "last.out"),
+                sorted(outputDirectory.list()));
+        }
+        finally
+        {
+            for (File file : outputDirectory.listFiles())
+            {
+                file.delete();
+            }
+            outputDirectory.delete();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package unifiedloganalyzer.pipeline.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.ISink;
+import unifiedloganalyzer.UnifiedLogAnalyzer;
+import unifiedloganalyzer.analyze.DummyAnalyzer;
+import unifiedloganalyzer.analyze.path.strace.StracePathAnalyzer;
+import unifiedloganalyzer.io.ASource;
+import unifiedloganalyzer.parse.DummyParser;
+import unifiedloganalyzer.parse.strace.StraceParser;
+import unifiedloganalyzer.pipeline.Pipeline;
+import unifiedloganalyzer.pipeline.StageStatistics;
+
+
+/**
+ *
+ * @author Peter Trsko
+ */
+public class PipelineTest extends TestCase
+{
+    private static final String[] _MESSAGES =
+    {
+        "100 execve(\"/bin/ls\", [\"ls\"], [/* 20 vars */]) = 0",
+        "100 open(\"/etc/ld.so.cache\", O_RDONLY|O_CLOEXEC) = 3",
+        "100 fstat(3, {st_mode=S_IFREG|0644, st_size=2029224, ...}) = 0",
+        "100 close(3) = 0",
+        "100 clone(child_stack=0, flags=SIGCHLD) = 101",
+        "101 chdir(\"/tmp\") = 0",
+        "100 open(\"foo\", O_RDONLY <unfinished ...>",
+        "101 open(\"bar\", O_RDONLY) = 4",
+        "100 <... open resumed> ) = 5",
+        "100 getcwd(\"/home/user\", 4096) = 11",
+        "101 exit_group(0) = ?",
+        "this is not strace",
+    };
+
+    public PipelineTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Source that returns messages in chunks, as if the rest wasn't
+     * available yet.
+     */
+    private static class ChunkedSource extends ASource
+    {
+        private final String[][] _chunks;
+        private int _chunk = 0;
+        private int _position = 0;
+
+        public ChunkedSource(String[]... chunks)
+        {
+            _chunks = chunks;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (_chunk < _chunks.length
+                && _position >= _chunks[_chunk].length)
+            {
+                _chunk++;
+                _position = 0;
+            }
+
+            return _chunk < _chunks.length;
+        }
+
+        @Override
+        public String next() throws NoSuchElementException
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            return _chunks[_chunk][_position++];
+        }
+
+        @Override
+        public int nextBatch(String[] batch)
+        {
+            if (!hasNext())
+            {
+                return 0;
+            }
+
+            int n = Math.min(batch.length,
+                _chunks[_chunk].length - _position);
+
+            System.arraycopy(_chunks[_chunk], _position, batch, 0, n);
+            _position += n;
+
+            return n;
+        }
+
+        @Override
+        public void close()
+        {
+            // Nothing to close.
+        }
+    }
+
+    /**
+     * Sink that records messages, flushes and closing as strings.
+     */
+    private static class RecordingSink implements ISink
+    {
+        public final List<String> records = new ArrayList<>();
+
+        @Override
+        public void write(IOutputMessage message) throws IOException
+        {
+            StringBuilder buff = new StringBuilder();
+
+            message.appendTo(buff);
+            records.add(buff.toString());
+        }
+
+        @Override
+        public void flush()
+        {
+            records.add("<flush>");
+        }
+
+        @Override
+        public void close()
+        {
+            records.add("<close>");
+        }
+    }
+
+    private static String[] repeat(String[] messages, int count)
+    {
+        String[] ret = new String[messages.length * count];
+
+        for (int i = 0; i < ret.length; i++)
+        {
+            ret[i] = messages[i % messages.length];
+        }
+
+        return ret;
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Results are the same and in the same order as those of doMain(), even
+     * if buffers are as small as possible and unfinished syscalls span
+     * batches.
+     */
+    public void testSameResultsAsDoMain() throws IOException
+    {
+        String[] messages = repeat(_MESSAGES, 500);
+        RecordingSink expected = new RecordingSink();
+        RecordingSink actual = new RecordingSink();
+        StracePathAnalyzer analyzer = new StracePathAnalyzer();
+        StraceParser parser = new StraceParser();
+
+        UnifiedLogAnalyzer.doMain(new ChunkedSource(messages),
+            new StraceParser(), new StracePathAnalyzer(), expected);
+
+        parser.setSubscribedSyscalls(analyzer.getSubscribedSyscalls());
+
+        Pipeline pipeline = new Pipeline(new ChunkedSource(messages), parser,
+            analyzer, actual, false, 1, 7);
+
+        pipeline.run();
+
+        assertEquals(expected.records, actual.records);
+
+        List<StageStatistics> statistics = pipeline.getStageStatistics();
+
+        assertEquals(4, statistics.size());
+        assertEquals("reader", statistics.get(0).getName());
+        assertEquals(messages.length, statistics.get(0).getItems());
+        assertEquals(messages.length, statistics.get(1).getItems());
+        assertEquals(actual.records.size() - 1, statistics.get(3).getItems());
+
+        for (StageStatistics stage : statistics)
+        {
+            assertTrue(stage.toString(), stage.getElapsedNanos() >= 0);
+            assertTrue(stage.toString(), stage.getBusyNanos()
+                <= stage.getElapsedNanos());
+        }
+    }
+
+    /**
+     * In incremental mode sink is flushed after each batch that isn't full,
+     * and only then.
+     */
+    public void testIncrementalFlush() throws IOException
+    {
+        RecordingSink sink = new RecordingSink();
+        Pipeline pipeline = new Pipeline(
+            new ChunkedSource(
+                new String[] {"a", "b"},
+                new String[] {"c", "d", "e", "f"},
+                new String[] {"g"}),
+            new DummyParser(), new DummyAnalyzer(), sink, true, 2, 4);
+
+        pipeline.run();
+
+        List<String> records = new ArrayList<>();
+
+        for (String record : sink.records)
+        {
+            // Only position of flushes relative to messages matters.
+            records.add(record.startsWith("<") ? record : "message");
+        }
+
+        assertEquals(Arrays.asList("message", "message", "<flush>",
+            "message", "message", "message", "message", "message", "<flush>",
+            "message", "<close>"), records);
+    }
+
+    /**
+     * Error of a stage stops the others and is rethrown by run().
+     */
+    public void testFailure()
+    {
+        final IOException error = new IOException("Disk full.");
+        RecordingSink sink = new RecordingSink()
+            {
+                @Override
+                public void write(IOutputMessage message) throws IOException
+                {
+                    if (records.size() == 10)
+                    {
+                        throw error;
+                    }
+                    super.write(message);
+                }
+            };
+        Pipeline pipeline = new Pipeline(
+            new ChunkedSource(repeat(new String[] {"x"}, 100000)),
+            new DummyParser(), new DummyAnalyzer(), sink, false, 1, 16);
+
+        try
+        {
+            pipeline.run();
+            fail("Error wasn't rethrown.");
+        }
+        catch (IOException ex)
+        {
+            assertSame(error, ex);
+        }
+
+        assertEquals(10, sink.records.size());
+        assertTrue(pipeline.getStageStatistics().get(0).getItems() < 100000);
+    }
+}
@@ -0,0 +1,211 @@
+package unifiedloganalyzer.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IOutputMessage;
+import unifiedloganalyzer.IParser;
+import unifiedloganalyzer.UnifiedLogAnalyzer;
+import unifiedloganalyzer.analyze.path.strace.StracePathAnalyzer;
+import unifiedloganalyzer.io.Checkpoint;
+import unifiedloganalyzer.io.FileSink;
+import unifiedloganalyzer.io.IndexedFileSource;
+import unifiedloganalyzer.io.LineIndex;
+import unifiedloganalyzer.parse.strace.ParallelStraceParser;
+import unifiedloganalyzer.parse.strace.StraceParser;
+import unifiedloganalyzer.utils.ICheckpointable;
+
+
+/**
+ * Analysis resumed from a checkpoint produces the same output as
+ * uninterrupted analysis.
+ *
+ * @author Peter Trsko
+ */
+public class UnifiedLogAnalyzerTest extends TestCase
+{
+    private File _directory;
+
+    public UnifiedLogAnalyzerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        _directory = Files.createTempDirectory("checkpoint").toFile();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        for (File file : _directory.listFiles())
+        {
+            file.delete();
+        }
+        _directory.delete();
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    private String write(String name, String... lines) throws IOException
+    {
+        File file = new File(_directory, name);
+
+        Files.write(file.toPath(), Arrays.asList(lines),
+            StandardCharsets.UTF_8);
+
+        return file.getPath();
+    }
+
+    private List<String> read(String name) throws IOException
+    {
+        return Files.readAllLines(new File(_directory, name).toPath(),
+            StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Analyse input by StraceParser, or ParallelStraceParser if parseThreads
+     * is greater than one, and StracePathAnalyzer, which store checkpoints,
+     * and interrupt the analysis after the specified number of results,
+     * unless it's negative.
+     */
+    private void analyzeIndexed(String input, int parseThreads,
+        Checkpoint checkpoint, final int interruptAfter) throws IOException
+    {
+        IParser parser = parseThreads > 1
+            ? new ParallelStraceParser(parseThreads)
+            : new StraceParser();
+        StracePathAnalyzer analyzer = new StracePathAnalyzer();
+        FileSink sink = new FileSink(new File(_directory, "out").getPath(),
+            false, true,
+            checkpoint == null ? -1 : checkpoint.getOutputLength());
+        IndexedFileSource source = checkpoint == null
+            ? new IndexedFileSource(input, new LineIndex())
+            : new IndexedFileSource(input, checkpoint.getIndex(),
+                checkpoint.getLine(), checkpoint.getOffset(), Long.MAX_VALUE);
+
+        if (checkpoint != null)
+        {
+            ((ICheckpointable)parser).restoreState(
+                checkpoint.getParserState());
+            analyzer.restoreState(checkpoint.getAnalyzerState());
+            sink.restoreState(checkpoint.getSinkState());
+        }
+
+        analyzer.registerCallback(new ICallback<IOutputMessage>()
+            {
+                private int _count = 0;
+
+                @Override
+                public void runCallback(IOutputMessage message)
+                {
+                    if (++_count == interruptAfter)
+                    {
+                        throw new IllegalStateException("Interrupted.");
+                    }
+                }
+            });
+
+        UnifiedLogAnalyzer.doMainIndexed(source, parser, analyzer, sink,
+            UnifiedLogAnalyzer.BATCH_SIZE, false);
+    }
+
+    /**
+     * Interrupt analysis of input after the specified number of results,
+     * resume it from the last checkpoint and check that the output is the
+     * same as that of uninterrupted analysis.
+     */
+    private void assertResumedOutput(String input, int parseThreads,
+        int interruptAfter) throws IOException
+    {
+        analyzeIndexed(input, parseThreads, null, -1);
+
+        List<String> expected = read("out");
+
+        try
+        {
+            analyzeIndexed(input, parseThreads, null, interruptAfter);
+            fail("Analysis wasn't interrupted.");
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+
+        Checkpoint checkpoint = Checkpoint.load(input);
+
+        assertNotNull(checkpoint);
+        assertTrue(checkpoint.getSinkState() != null);
+
+        analyzeIndexed(input, parseThreads, checkpoint, -1);
+
+        assertEquals("parseThreads = " + parseThreads
+            + ", interruptAfter = " + interruptAfter,
+            expected, read("out"));
+        assertNull(Checkpoint.load(input));
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Repeated messages are counted the same way with checkpoints, and when
+     * the analysis is resumed from one, as without them.
+     */
+    public void testCheckpointKeepsRepeatedMessages() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i < 5 * UnifiedLogAnalyzer.BATCH_SIZE; i++)
+        {
+            lines.add(i % 1000 == 999
+                ? "100 open(\"y.c\", O_RDONLY) = 3"
+                : "100 open(\"x.c\", O_RDONLY) = 3");
+        }
+
+        assertResumedOutput(write("in", lines.toArray(new String[0])), 1,
+            4000);
+    }
+
+    /**
+     * Results of messages that ParallelStraceParser didn't deliver yet when
+     * checkpoint was stored are part of it, so that they aren't lost when
+     * the analysis is resumed.
+     */
+    public void testCheckpointWithParallelParser() throws IOException
+    {
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i < 20 * UnifiedLogAnalyzer.BATCH_SIZE; i++)
+        {
+            lines.add("100 open(\"" + (i / 3) + ".c\", O_RDONLY) = 3");
+        }
+
+        String input = write("in", lines.toArray(new String[0]));
+
+        for (int interruptAfter : new int[] {3000, 8000, 15000})
+        {
+            assertResumedOutput(input, 4, interruptAfter);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package unifiedloganalyzer.utils.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.utils.CStringLiteral;
+
+
+/**
+ * Decoding and escaping of C-style string literals.
+ *
+ * @author Peter Trsko
+ */
+public class CStringLiteralTest extends TestCase
+{
+    public CStringLiteralTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Decode literal and check that it ends where expected.
+     */
+    private static String decode(String literal, int expectedEnd)
+    {
+        StringBuilder decoded = new StringBuilder();
+
+        assertEquals(literal, expectedEnd,
+            CStringLiteral.decode(literal, 0, decoded));
+
+        return decoded.toString();
+    }
+
+    private static String decode(String literal)
+    {
+        return decode(literal, literal.length());
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    public void testSimpleEscapes()
+    {
+        assertEquals("", decode("\"\""));
+        assertEquals("abc", decode("\"abc\""));
+        assertEquals("\u0007\b\f\n\r\t\u000B\\'\"?",
+            decode("\"\\a\\b\\f\\n\\r\\t\\v\\\\\\'\\\"\\?\""));
+        assertEquals("ab", decode("\"a\\\nb\""));
+    }
+
+    public void testNumericEscapes()
+    {
+        assertEquals("\u0000", decode("\"\\0\""));
+        assertEquals("\u00001", decode("\"\\0001\""));
+        assertEquals("\u001B[0m", decode("\"\\33[0m\""));
+        assertEquals("A8", decode("\"\\1018\""));
+        assertEquals("/", decode("\"\\x2f\""));
+        assertEquals("\u000Fg", decode("\"\\xfg\""));
+        assertEquals("\u20AC", decode("\"\\u20ac\""));
+        assertEquals("\u00e1", decode("\"\\303\\241\""));
+        assertEquals("\u00e1", decode("\"\\xc3\\xa1\""));
+    }
+
+    public void testInvalidUtf8()
+    {
+        // Bytes that aren't valid UTF-8 are decoded one by one.
+        assertEquals("\u00c3x", decode("\"\\303x\""));
+        assertEquals("\u00ff\u00fe", decode("\"\\377\\376\""));
+    }
+
+    public void testUnknownEscapes()
+    {
+        assertEquals("\\q", decode("\"\\q\""));
+        assertEquals("\\xg", decode("\"\\xg\""));
+        assertEquals("\\u12g4", decode("\"\\u12g4\""));
+    }
+
+    public void testEnd()
+    {
+        assertEquals("a", decode("\"a\", \"b\"", 3));
+        assertEquals("a\\", decode("\"a\\\\\"...", 5));
+        assertEquals("a\", ", decode("\"a\\\", \"", 7));
+        decode("\"a", -1);
+        decode("\"a\\\"", -1);
+        decode("\"a\\", -1);
+        decode("a\"", -1);
+        decode("", -1);
+    }
+
+    public void testEscapeRoundTrip()
+    {
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++)
+        {
+            StringBuilder str = new StringBuilder();
+            int length = random.nextInt(10);
+
+            for (int j = 0; j < length; j++)
+            {
+                // Mostly ASCII, including control characters.
+                str.append((char)(random.nextInt(10) == 0
+                    ? random.nextInt(0x800)
+                    : random.nextInt(0x80)));
+            }
+
+            String escaped = CStringLiteral.escape(str);
+
+            for (int j = 0; j < escaped.length(); j++)
+            {
+                assertTrue(escaped, escaped.charAt(j) >= ' ');
+            }
+
+            assertEquals(str.toString(), decode('"' + escaped + '"'));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package unifiedloganalyzer.utils.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import trskop.ICallback;
+
+import unifiedloganalyzer.IBatchCallback;
+import unifiedloganalyzer.utils.CallbacksManager;
+
+
+/**
+ * Delivery of messages one by one and in batches.
+ *
+ * @author Peter Trsko
+ */
+public class CallbacksManagerTest extends TestCase
+{
+    public CallbacksManagerTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Records messages, and sizes of batches as negative numbers.
+     */
+    private static class BatchRecorder implements IBatchCallback<Integer>
+    {
+        public final List<Integer> records = new ArrayList<>();
+
+        @Override
+        public void runCallback(Integer message)
+        {
+            records.add(message);
+        }
+
+        @Override
+        public void runBatchCallback(Integer[] messages, int offset,
+            int length)
+        {
+            records.add(-length);
+            records.addAll(
+                Arrays.asList(messages).subList(offset, offset + length));
+        }
+    }
+
+    private static class Recorder implements ICallback<Integer>
+    {
+        public final List<Integer> records = new ArrayList<>();
+
+        @Override
+        public void runCallback(Integer message)
+        {
+            records.add(message);
+        }
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Messages passed between beginBatch() and endBatch() are delivered as
+     * one batch, callbacks that don't support batches get them one by one.
+     */
+    public void testCollectedBatch()
+    {
+        CallbacksManager<Integer> manager =
+            new CallbacksManager<>(Integer.class);
+        BatchRecorder batchRecorder = new BatchRecorder();
+        Recorder recorder = new Recorder();
+
+        manager.registerCallback(batchRecorder);
+        manager.registerCallback(recorder);
+
+        manager.runCallbacks(1);
+        manager.beginBatch();
+        manager.runCallbacks(2);
+        manager.beginBatch();
+        manager.runCallbacks(3);
+        manager.endBatch();
+        manager.runCallbacks(4);
+
+        assertEquals(Arrays.asList(1), batchRecorder.records);
+
+        manager.endBatch();
+        manager.runCallbacks(new Integer[] {0, 5, 6}, 1, 2);
+
+        assertEquals(Arrays.asList(1, -3, 2, 3, 4, -2, 5, 6),
+            batchRecorder.records);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), recorder.records);
+    }
+
+    /**
+     * Batch that doesn't fit in to the buffer is delivered in parts, and
+     * explicit batch is preceded by messages collected before it.
+     */
+    public void testLargeBatch()
+    {
+        CallbacksManager<Integer> manager =
+            new CallbacksManager<>(Integer.class);
+        BatchRecorder recorder = new BatchRecorder();
+        int count = CallbacksManager.BATCH_SIZE + 10;
+
+        manager.registerCallback(recorder);
+        manager.beginBatch();
+
+        for (int i = 0; i < count; i++)
+        {
+            manager.runCallbacks(i);
+        }
+
+        manager.runCallbacks(new Integer[] {-100}, 0, 1);
+        manager.endBatch();
+
+        assertEquals(count + 4, recorder.records.size());
+        assertEquals(-CallbacksManager.BATCH_SIZE,
+            (int)recorder.records.get(0));
+        assertEquals(-10,
+            (int)recorder.records.get(CallbacksManager.BATCH_SIZE + 1));
+        assertEquals(Arrays.asList(-1, -100),
+            recorder.records.subList(count + 2, count + 4));
+    }
+
+    /**
+     * Manager constructed without type of messages doesn't collect them.
+     */
+    public void testWithoutCollecting()
+    {
+        CallbacksManager<Integer> manager = new CallbacksManager<>();
+        BatchRecorder recorder = new BatchRecorder();
+
+        manager.registerCallback(recorder);
+        manager.beginBatch();
+        manager.runCallbacks(1);
+        manager.runCallbacks(2);
+        manager.endBatch();
+
+        assertEquals(Arrays.asList(1, 2), recorder.records);
+    }
+}
@@ -0,0 +1,105 @@
+package unifiedloganalyzer.utils.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.utils.IntObjectHashMap;
+
+
+/**
+ * Compare IntObjectHashMap with HashMap on random operations.
+ *
+ * @author Peter Trsko
+ */
+public class IntObjectHashMapTest extends TestCase
+{
+    public IntObjectHashMapTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    public void testBasics()
+    {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.put(-1, "a"));
+        assertNull(map.put(0, "b"));
+        assertEquals("a", map.put(-1, "c"));
+        assertEquals(2, map.size());
+        assertEquals("c", map.get(-1));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(1));
+        assertEquals("b", map.remove(0));
+        assertNull(map.remove(0));
+        assertEquals(1, map.size());
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1));
+    }
+
+    /**
+     * Keys from a small range, so that there are many collisions and
+     * removals that have to shift following entries.
+     */
+    public void testRandomOperations()
+    {
+        Random random = new Random(42);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 200000; i++)
+        {
+            int key = random.nextInt(512) * (random.nextBoolean() ? 1 : 64);
+
+            switch (random.nextInt(3))
+            {
+                case 0:
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+                    break;
+            }
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package unifiedloganalyzer.utils.test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import unifiedloganalyzer.utils.SpscRingBuffer;
+
+
+/**
+ * Single producer single consumer ring buffer, alone and with producer and
+ * consumer on different threads.
+ *
+ * @author Peter Trsko
+ */
+public class SpscRingBufferTest extends TestCase
+{
+    /**
+     * Time, in milliseconds, after which a thread that didn't finish is
+     * considered blocked, and the limit for threads that should finish.
+     */
+    private static final long _BLOCKED_MILLIS = 100;
+    private static final long _TIMEOUT_MILLIS = 10000;
+
+    public SpscRingBufferTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.lang.Exception
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        // Empty implementation.
+    }
+
+    // {{{ Helpers ////////////////////////////////////////////////////////////
+
+    /**
+     * Thread that runs action and records its failure, if any.
+     */
+    private abstract static class Party extends Thread
+    {
+        public final AtomicReference<Throwable> failure =
+            new AtomicReference<>();
+
+        protected abstract void act() throws Exception;
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                act();
+            }
+            catch (Throwable ex)
+            {
+                failure.set(ex);
+            }
+        }
+    }
+
+    private static void assertBlocked(Thread thread)
+        throws InterruptedException
+    {
+        thread.join(_BLOCKED_MILLIS);
+        assertTrue(thread.isAlive());
+    }
+
+    private static void assertFinished(Thread thread)
+        throws InterruptedException
+    {
+        thread.join(_TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+    }
+
+    // }}} Helpers ////////////////////////////////////////////////////////////
+
+    public void testCapacity()
+    {
+        assertEquals(1, new SpscRingBuffer<String>(1).capacity());
+        assertEquals(4, new SpscRingBuffer<String>(3).capacity());
+        assertEquals(4, new SpscRingBuffer<String>(4).capacity());
+        assertEquals(8, new SpscRingBuffer<String>(5).capacity());
+
+        for (int capacity : new int[] {0, -1, (1 << 30) + 1})
+        {
+            try
+            {
+                new SpscRingBuffer<String>(capacity);
+                fail("capacity = " + capacity);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Expected.
+            }
+        }
+
+        try
+        {
+            new SpscRingBuffer<String>(1).offer(null);
+            fail("null");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected.
+        }
+    }
+
+    /**
+     * Elements come out in order, however many times indices wrapped
+     * around, and only as many fit in as is the capacity.
+     */
+    public void testWraparound()
+    {
+        SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+
+        assertNull(ring.poll());
+
+        for (int round = 0; round < 100; round++)
+        {
+            // Number of elements differs from capacity, so that the
+            // boundary is crossed at every position.
+            for (int i = 0; i < 3; i++)
+            {
+                assertTrue(ring.offer(next++));
+            }
+            assertEquals(3, ring.size());
+
+            for (int i = 0; i < 3; i++)
+            {
+                assertEquals(Integer.valueOf(expected++), ring.poll());
+            }
+            assertNull(ring.poll());
+            assertEquals(0, ring.size());
+        }
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(ring.offer(next++));
+        }
+        assertFalse(ring.offer(next));
+        assertEquals(4, ring.size());
+        assertEquals(Integer.valueOf(expected++), ring.poll());
+        assertTrue(ring.offer(next++));
+        assertFalse(ring.offer(next));
+
+        while (ring.size() > 0)
+        {
+            assertEquals(Integer.valueOf(expected++), ring.poll());
+        }
+        assertEquals(next, expected);
+    }
+
+    /**
+     * Producer waits while the buffer is full and continues once consumer
+     * takes an element.
+     */
+    public void testPutBlocksWhenFull() throws InterruptedException
+    {
+        final SpscRingBuffer<String> ring = new SpscRingBuffer<>(2);
+        Party producer = new Party()
+            {
+                @Override
+                protected void act() throws InterruptedException
+                {
+                    ring.put("a");
+                    ring.put("b");
+                    ring.put("c");
+                }
+            };
+
+        producer.start();
+        assertBlocked(producer);
+        assertEquals(2, ring.size());
+
+        assertEquals("a", ring.poll());
+        assertFinished(producer);
+        assertNull(producer.failure.get());
+        assertEquals(1, ring.getProducerStalls());
+        assertEquals("b", ring.poll());
+        assertEquals("c", ring.poll());
+    }
+
+    /**
+     * Consumer waits while the buffer is empty and continues once producer
+     * puts an element.
+     */
+    public void testTakeBlocksWhenEmpty() throws InterruptedException
+    {
+        final SpscRingBuffer<String> ring = new SpscRingBuffer<>(2);
+        final AtomicReference<String> taken = new AtomicReference<>();
+        Party consumer = new Party()
+            {
+                @Override
+                protected void act() throws InterruptedException
+                {
+                    taken.set(ring.take());
+                }
+            };
+
+        consumer.start();
+        assertBlocked(consumer);
+
+        assertTrue(ring.offer("a"));
+        assertFinished(consumer);
+        assertNull(consumer.failure.get());
+        assertEquals("a", taken.get());
+        assertEquals(1, ring.getConsumerStalls());
+    }
+
+    /**
+     * Waiting producer and consumer are interrupted.
+     */
+    public void testInterruptWhileBlocked() throws InterruptedException
+    {
+        final SpscRingBuffer<String> ring = new SpscRingBuffer<>(1);
+        Party producer = new Party()
+            {
+                @Override
+                protected void act() throws InterruptedException
+                {
+                    ring.put("a");
+                    ring.put("b");
+                }
+            };
+
+        producer.start();
+        assertBlocked(producer);
+        producer.interrupt();
+        assertFinished(producer);
+        assertTrue(producer.failure.get() instanceof InterruptedException);
+        assertEquals("a", ring.poll());
+        assertNull(ring.poll());
+
+        Party consumer = new Party()
+            {
+                @Override
+                protected void act() throws InterruptedException
+                {
+                    ring.take();
+                }
+            };
+
+        consumer.start();
+        assertBlocked(consumer);
+        consumer.interrupt();
+        assertFinished(consumer);
+        assertTrue(consumer.failure.get() instanceof InterruptedException);
+    }
+
+    /**
+     * All elements arrive exactly once and in order while producer and
+     * consumer keep overtaking each other.
+     */
+    public void testOrderUnderContention() throws InterruptedException
+    {
+        final int count = 200000;
+        final SpscRingBuffer<Integer> ring = new SpscRingBuffer<>(8);
+        Party producer = new Party()
+            {
+                @Override
+                protected void act() throws InterruptedException
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        ring.put(i);
+                    }
+                }
+            };
+        Party consumer = new Party()
+            {
+                @Override
+                protected void act() throws InterruptedException
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        // Mix of waiting and non-waiting takes.
+                        Integer element = i % 3 == 0 ? ring.poll() : null;
+
+                        if (element == null)
+                        {
+                            element = ring.take();
+                        }
+
+                        assertEquals(Integer.valueOf(i), element);
+                    }
+                }
+            };
+
+        producer.start();
+        consumer.start();
+        assertFinished(producer);
+        assertFinished(consumer);
+        assertNull(producer.failure.get());
+        assertNull(consumer.failure.get());
+        assertNull(ring.poll());
+        assertTrue(ring.getAverageOccupancy() >= 1.0);
+        assertTrue(ring.getAverageOccupancy() <= ring.capacity());
+    }
+}